@@ -49,6 +49,9 @@ import org.apache.sshd.client.config.hosts.HostConfigEntry;
 import org.apache.sshd.client.config.hosts.HostConfigEntryResolver;
 import org.apache.sshd.client.config.keys.ClientIdentityLoader;
 import org.apache.sshd.client.config.keys.DefaultClientIdentitiesWatcher;
+import org.apache.sshd.client.exec.RemoteCommandFanOut;
+import org.apache.sshd.client.exec.RemoteCommandFanOutFuture;
+import org.apache.sshd.client.exec.RemoteCommandListener;
 import org.apache.sshd.client.future.ConnectFuture;
 import org.apache.sshd.client.future.DefaultConnectFuture;
 import org.apache.sshd.client.keyverifier.ServerKeyVerifier;
@@ -64,6 +67,7 @@ import org.apache.sshd.client.simple.SimpleClient;
 import org.apache.sshd.common.Closeable;
 import org.apache.sshd.common.Factory;
 import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.PropertyResolverUtils;
 import org.apache.sshd.common.ServiceFactory;
 import org.apache.sshd.common.channel.Channel;
 import org.apache.sshd.common.config.keys.FilePasswordProvider;
@@ -434,6 +438,18 @@ public class SshClient extends AbstractFactoryManager implements ClientFactoryMa
 
     @Override
     public ConnectFuture connect(String username, String host, int port) throws IOException {
+        return connect(resolveHostConfigEntry(username, host, port));
+    }
+
+    /**
+     * @param username The intended username
+     * @param host The target host name/address
+     * @param port The target port
+     * @return The <U>effective</U> {@link HostConfigEntry} - a synthetic one if
+     * no overrides are configured for the host
+     * @throws IOException If failed to resolve the configuration
+     */
+    protected HostConfigEntry resolveHostConfigEntry(String username, String host, int port) throws IOException {
         HostConfigEntryResolver resolver = getHostConfigEntryResolver();
         HostConfigEntry entry = resolver.resolveEffectiveHost(host, port, username);
         if (entry == null) {
@@ -455,7 +471,57 @@ public class SshClient extends AbstractFactoryManager implements ClientFactoryMa
             }
         }
 
-        return connect(entry);
+        return entry;
+    }
+
+    /**
+     * Executes a command concurrently on multiple hosts using the same username and port
+     *
+     * @param username The username to use for all the hosts
+     * @param hosts The target host names/addresses
+     * @param port The target port
+     * @param command The command to execute - without a terminating LF
+     * @param maxParallel Max. number of hosts on which the command is executed at the same time
+     * @param listener The {@link RemoteCommandListener} to receive the output and results
+     * - if {@code null} then output is ignored
+     * @return A {@link RemoteCommandFanOutFuture} that is completed once the command
+     * execution has ended on all the hosts
+     * @throws IOException If failed to resolve the hosts configuration
+     * @see #executeRemoteCommand(Collection, String, int, RemoteCommandListener)
+     */
+    public RemoteCommandFanOutFuture executeRemoteCommand(
+            String username, Collection<String> hosts, int port, String command, int maxParallel, RemoteCommandListener listener)
+                throws IOException {
+        List<HostConfigEntry> entries = new ArrayList<>(GenericUtils.size(hosts));
+        for (String host : ValidateUtils.checkNotNullAndNotEmpty(hosts, "No hosts")) {
+            entries.add(resolveHostConfigEntry(username, host, port));
+        }
+
+        return executeRemoteCommand(entries, command, maxParallel, listener);
+    }
+
+    /**
+     * Executes a command concurrently on multiple hosts - at most {@code maxParallel}
+     * at a time. The executions are driven by the asynchronous completions of the
+     * client's I/O service, so no thread is allocated per host. <B>Note:</B> the
+     * sessions authenticate using the identities registered on the client.
+     *
+     * @param hosts The target hosts
+     * @param command The command to execute - without a terminating LF
+     * @param maxParallel Max. number of hosts on which the command is executed at the same time
+     * @param listener The {@link RemoteCommandListener} to receive the output and results
+     * - if {@code null} then output is ignored
+     * @return A {@link RemoteCommandFanOutFuture} that is completed once the command
+     * execution has ended on all the hosts
+     * @see RemoteCommandFanOut#HOST_TIMEOUT
+     */
+    public RemoteCommandFanOutFuture executeRemoteCommand(
+            Collection<? extends HostConfigEntry> hosts, String command, int maxParallel, RemoteCommandListener listener) {
+        long hostTimeout = PropertyResolverUtils.getLongProperty(
+            this, RemoteCommandFanOut.HOST_TIMEOUT, RemoteCommandFanOut.DEFAULT_HOST_TIMEOUT);
+        RemoteCommandFanOut fanOut = new RemoteCommandFanOut(
+            this, hosts, command, maxParallel, listener, hostTimeout, getScheduledExecutorService());
+        return fanOut.start();
     }
 
     @Override
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.exec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.sshd.common.future.DefaultVerifiableSshFuture;
+
+/**
+ * A default implementation of {@link RemoteCommandFanOutFuture}
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class DefaultRemoteCommandFanOutFuture
+        extends DefaultVerifiableSshFuture<RemoteCommandFanOutFuture>
+        implements RemoteCommandFanOutFuture {
+    public DefaultRemoteCommandFanOutFuture(Object id, Object lock) {
+        super(id, lock);
+    }
+
+    @Override
+    public RemoteCommandFanOutFuture verify(long timeoutMillis) throws IOException {
+        verifyResult(List.class, timeoutMillis);
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<RemoteCommandResult> getResults() {
+        Object v = getValue();
+        return (v instanceof List<?>) ? (List<RemoteCommandResult>) v : null;
+    }
+
+    @Override
+    public void setResults(List<RemoteCommandResult> results) {
+        setValue(Objects.requireNonNull(results, "No results"));
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.exec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.config.hosts.HostConfigEntry;
+import org.apache.sshd.client.future.AuthFuture;
+import org.apache.sshd.client.future.ConnectFuture;
+import org.apache.sshd.client.future.OpenFuture;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.session.ClientSessionCreator;
+import org.apache.sshd.common.SshException;
+import org.apache.sshd.common.util.GenericUtils;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+
+/**
+ * Executes a command on multiple hosts concurrently - up to a maximum number of
+ * hosts at a time. The executions are driven entirely by the asynchronous
+ * connect/authenticate/open completions, so no thread is allocated per host,
+ * and the command output is streamed to a {@link RemoteCommandListener} as it arrives.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class RemoteCommandFanOut extends AbstractLoggingBean {
+    /**
+     * Max. time (milliseconds) allowed for connecting, authenticating and executing
+     * the command on a single host - if exceeded, the host's session is closed and
+     * its result reports a failure. Non-positive means no limit
+     *
+     * @see #DEFAULT_HOST_TIMEOUT
+     */
+    public static final String HOST_TIMEOUT = "remote-command-fanout-host-timeout";
+
+    /**
+     * Default value for {@link #HOST_TIMEOUT} if none specified
+     */
+    public static final long DEFAULT_HOST_TIMEOUT = TimeUnit.MINUTES.toMillis(10L);
+
+    private final ClientSessionCreator client;
+    private final List<HostConfigEntry> hosts;
+    private final String command;
+    private final int maxParallel;
+    private final RemoteCommandListener listener;
+    private final long hostTimeout;
+    private final ScheduledExecutorService scheduler;
+    private final RemoteCommandResult[] results;
+    private final AtomicInteger nextHost = new AtomicInteger(0);
+    private final AtomicInteger remaining;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final RemoteCommandFanOutFuture future;
+
+    /**
+     * @param client The {@link ClientSessionCreator} used to connect to the hosts
+     * @param hosts The target hosts
+     * @param command The command to execute - without a terminating LF
+     * @param maxParallel Max. number of hosts on which the command is executed at the same time
+     * @param listener The {@link RemoteCommandListener} to receive the output and results
+     * - if {@code null} then output is ignored
+     */
+    public RemoteCommandFanOut(ClientSessionCreator client, Collection<? extends HostConfigEntry> hosts,
+            String command, int maxParallel, RemoteCommandListener listener) {
+        this(client, hosts, command, maxParallel, listener, 0L, null);
+    }
+
+    /**
+     * @param client The {@link ClientSessionCreator} used to connect to the hosts
+     * @param hosts The target hosts
+     * @param command The command to execute - without a terminating LF
+     * @param maxParallel Max. number of hosts on which the command is executed at the same time
+     * @param listener The {@link RemoteCommandListener} to receive the output and results
+     * - if {@code null} then output is ignored
+     * @param hostTimeout Max. time (milliseconds) allowed for the execution on a single host
+     * - non-positive means no limit
+     * @param scheduler The {@link ScheduledExecutorService} used to enforce the host timeout
+     * - ignored if no timeout
+     * @see #HOST_TIMEOUT
+     */
+    public RemoteCommandFanOut(ClientSessionCreator client, Collection<? extends HostConfigEntry> hosts,
+            String command, int maxParallel, RemoteCommandListener listener,
+            long hostTimeout, ScheduledExecutorService scheduler) {
+        this.client = Objects.requireNonNull(client, "No client");
+        this.hosts = new ArrayList<>(ValidateUtils.checkNotNullAndNotEmpty(hosts, "No hosts"));
+        this.command = ValidateUtils.checkNotNullAndNotEmpty(command, "No command");
+        ValidateUtils.checkTrue(maxParallel > 0, "Invalid max. parallel executions: %d", maxParallel);
+        this.maxParallel = maxParallel;
+        this.listener = (listener == null) ? new RemoteCommandListener() { /* ignore everything */ } : listener;
+        this.hostTimeout = hostTimeout;
+        this.scheduler = (hostTimeout > 0L) ? Objects.requireNonNull(scheduler, "No timeout scheduler") : null;
+        this.results = new RemoteCommandResult[this.hosts.size()];
+        this.remaining = new AtomicInteger(this.hosts.size());
+        this.future = new DefaultRemoteCommandFanOutFuture(command, null);
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public List<HostConfigEntry> getHosts() {
+        return Collections.unmodifiableList(hosts);
+    }
+
+    public int getMaxParallel() {
+        return maxParallel;
+    }
+
+    /**
+     * @return Max. time (milliseconds) allowed for the execution on a single host
+     * - non-positive means no limit
+     */
+    public long getHostTimeout() {
+        return hostTimeout;
+    }
+
+    /**
+     * Starts executing the command - returns immediately
+     *
+     * @return A {@link RemoteCommandFanOutFuture} that is completed once the command
+     * execution has ended on all the hosts
+     */
+    public RemoteCommandFanOutFuture start() {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("Already started");
+        }
+
+        for (int index = 0, count = Math.min(getMaxParallel(), hosts.size()); index < count; index++) {
+            startNext();
+        }
+
+        return future;
+    }
+
+    protected void startNext() {
+        int index = nextHost.getAndIncrement();
+        if (index >= hosts.size()) {
+            return;
+        }
+
+        HostConfigEntry host = hosts.get(index);
+        if (log.isDebugEnabled()) {
+            log.debug("startNext({}) execute on host #{}: {}", this, index, host);
+        }
+        new Execution(index, host).start();
+    }
+
+    protected void executionCompleted(int index, RemoteCommandResult result) {
+        if (log.isDebugEnabled()) {
+            log.debug("executionCompleted({}) host #{}: {}", this, index, result);
+        }
+
+        results[index] = result;
+        try {
+            listener.completed(result);
+        } catch (RuntimeException e) {
+            log.warn("executionCompleted({}) listener failed ({}) to handle {}: {}",
+                     this, e.getClass().getSimpleName(), result, e.getMessage());
+        }
+
+        if (remaining.decrementAndGet() > 0) {
+            startNext();
+        } else {
+            future.setResults(Collections.unmodifiableList(Arrays.asList(results)));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + getCommand() + "]";
+    }
+
+    /**
+     * Tracks the execution on a single host through the connect, authenticate,
+     * open and close completions
+     */
+    protected class Execution {
+        protected final int index;
+        protected final HostConfigEntry host;
+        protected final long startTime = System.currentTimeMillis();
+        protected final long startNanos = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile ConnectFuture connectFuture;
+        private volatile Future<?> timeoutFuture;
+        private volatile ClientSession session;
+        private volatile ChannelExec channel;
+
+        protected Execution(int index, HostConfigEntry host) {
+            this.index = index;
+            this.host = host;
+        }
+
+        @SuppressWarnings("synthetic-access")
+        protected void start() {
+            long timeout = getHostTimeout();
+            if (timeout > 0L) {
+                timeoutFuture = scheduler.schedule(this::onTimeout, timeout, TimeUnit.MILLISECONDS);
+            }
+
+            try {
+                connectFuture = client.connect(host);
+                connectFuture.addListener(this::onConnected);
+            } catch (IOException | RuntimeException e) {
+                finish(e);
+            }
+        }
+
+        protected void onTimeout() {
+            if (log.isDebugEnabled()) {
+                log.debug("onTimeout({}) host #{} timed out: {}", RemoteCommandFanOut.this, index, host);
+            }
+            finish(new SshException("Execution on " + host.getHostName() + " timed out after " + getHostTimeout() + " msec."));
+        }
+
+        protected void onConnected(ConnectFuture f) {
+            Throwable t = f.getException();
+            if (t != null) {
+                finish(t);
+                return;
+            }
+
+            session = f.getSession();
+            if (done.get()) {
+                // timed out while connecting
+                session.close(true);
+                return;
+            }
+            session.addCloseFutureListener(cf -> finish(new SshException("Session closed before command ended")));
+            try {
+                session.auth().addListener(this::onAuthenticated);
+            } catch (IOException | RuntimeException e) {
+                finish(e);
+            }
+        }
+
+        protected void onAuthenticated(AuthFuture f) {
+            if (!f.isSuccess()) {
+                Throwable t = f.getException();
+                finish((t == null) ? new SshException("Authentication failed") : t);
+                return;
+            }
+
+            try {
+                channel = session.createExecChannel(getCommand());
+                channel.setOut(new ListenerOutputStream(false));
+                channel.setErr(new ListenerOutputStream(true));
+                channel.open().addListener(this::onOpened);
+            } catch (IOException | RuntimeException e) {
+                finish(e);
+            }
+        }
+
+        protected void onOpened(OpenFuture f) {
+            Throwable t = f.getException();
+            if (t != null) {
+                finish(t);
+                return;
+            }
+
+            channel.addCloseFutureListener(cf -> finish(null));
+        }
+
+        @SuppressWarnings("synthetic-access")
+        protected void finish(Throwable failure) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+
+            Future<?> timeout = timeoutFuture;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+
+            ChannelExec c = channel;
+            Integer exitStatus = (c == null) ? null : c.getExitStatus();
+            String exitSignal = (c == null) ? null : c.getExitSignal();
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            RemoteCommandResult result = new RemoteCommandResult(
+                host, getCommand(), exitStatus, exitSignal, startTime, duration, GenericUtils.peelException(failure));
+
+            ClientSession s = session;
+            if (s != null) {
+                s.close(failure != null);
+            } else {
+                ConnectFuture cf = connectFuture;
+                if ((cf != null) && (!cf.isDone())) {
+                    cf.cancel();
+                }
+            }
+
+            executionCompleted(index, result);
+        }
+
+        /**
+         * Forwards the command output to the listener as it is received
+         */
+        protected class ListenerOutputStream extends OutputStream {
+            private final boolean stderr;
+
+            protected ListenerOutputStream(boolean stderr) {
+                this.stderr = stderr;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @SuppressWarnings("synthetic-access")
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (stderr) {
+                    listener.stderr(host, b, off, len);
+                } else {
+                    listener.stdout(host, b, off, len);
+                }
+            }
+        }
+    }
+}
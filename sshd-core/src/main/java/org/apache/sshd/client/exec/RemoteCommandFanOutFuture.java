@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.exec;
+
+import java.util.List;
+
+import org.apache.sshd.common.future.SshFuture;
+import org.apache.sshd.common.future.VerifiableFuture;
+
+/**
+ * An {@link SshFuture} for a remote command executed on multiple hosts - completed
+ * once the command has ended on all of them
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public interface RemoteCommandFanOutFuture extends SshFuture<RemoteCommandFanOutFuture>, VerifiableFuture<RemoteCommandFanOutFuture> {
+    /**
+     * @return The {@link RemoteCommandResult}s - in the same order as the hosts
+     * - {@code null} if not all executions have ended
+     */
+    List<RemoteCommandResult> getResults();
+
+    /**
+     * Invoked by the executing code once all the executions have ended
+     *
+     * @param results The {@link RemoteCommandResult}s - in the same order as the hosts
+     */
+    void setResults(List<RemoteCommandResult> results);
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.exec;
+
+import java.io.IOException;
+
+import org.apache.sshd.client.config.hosts.HostConfigEntry;
+import org.apache.sshd.common.util.SshdEventListener;
+
+/**
+ * Receives the output and results of a remote command executed on multiple
+ * hosts. <B>Note:</B> the callbacks are invoked from the I/O threads, and
+ * concurrently for different hosts, so they should not block
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public interface RemoteCommandListener extends SshdEventListener {
+    /**
+     * Invoked when data is received on the command's STDOUT
+     *
+     * @param host The {@link HostConfigEntry} of the host
+     * @param data The data buffer - <B>Note:</B> re-used once the method returns
+     * @param offset Offset of the data in the buffer
+     * @param length Number of data bytes
+     * @throws IOException If failed to handle the data - terminates the command
+     */
+    default void stdout(HostConfigEntry host, byte[] data, int offset, int length) throws IOException {
+        // ignored
+    }
+
+    /**
+     * Invoked when data is received on the command's STDERR
+     *
+     * @param host The {@link HostConfigEntry} of the host
+     * @param data The data buffer - <B>Note:</B> re-used once the method returns
+     * @param offset Offset of the data in the buffer
+     * @param length Number of data bytes
+     * @throws IOException If failed to handle the data - terminates the command
+     */
+    default void stderr(HostConfigEntry host, byte[] data, int offset, int length) throws IOException {
+        // ignored
+    }
+
+    /**
+     * Invoked when the command execution on a host has ended - whether
+     * successfully or not
+     *
+     * @param result The {@link RemoteCommandResult}
+     */
+    default void completed(RemoteCommandResult result) {
+        // ignored
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.exec;
+
+import java.util.Objects;
+
+import org.apache.sshd.client.config.hosts.HostConfigEntry;
+
+/**
+ * The outcome of a remote command executed on a single host
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class RemoteCommandResult {
+    private final HostConfigEntry host;
+    private final String command;
+    private final Integer exitStatus;
+    private final String exitSignal;
+    private final long startTime;
+    private final long duration;
+    private final Throwable failure;
+
+    public RemoteCommandResult(HostConfigEntry host, String command,
+            Integer exitStatus, String exitSignal, long startTime, long duration, Throwable failure) {
+        this.host = Objects.requireNonNull(host, "No host");
+        this.command = command;
+        this.exitStatus = exitStatus;
+        this.exitSignal = exitSignal;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.failure = failure;
+    }
+
+    public HostConfigEntry getHost() {
+        return host;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return The reported exit status - {@code null} if none reported
+     */
+    public Integer getExitStatus() {
+        return exitStatus;
+    }
+
+    /**
+     * @return The reported exit signal - {@code null} if none reported
+     */
+    public String getExitSignal() {
+        return exitSignal;
+    }
+
+    /**
+     * @return The time (msec.) when the execution was started
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return The execution duration (msec.) - including connection and authentication
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return The reason the command could not be executed (e.g., failed to connect or
+     * authenticate) - {@code null} if executed
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return {@code true} if the command was executed and reported a zero exit status
+     */
+    public boolean isSuccess() {
+        return (failure == null) && (exitStatus != null) && (exitStatus == 0);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()
+            + "[host=" + getHost().getUsername() + "@" + getHost().getHostName() + ":" + getHost().getPort()
+            + ", exitStatus=" + getExitStatus()
+            + ", exitSignal=" + getExitSignal()
+            + ", duration=" + getDuration()
+            + ", failure=" + ((failure == null) ? null : failure.getClass().getSimpleName() + ": " + failure.getMessage())
+            + "]";
+    }
+}
@@ -35,11 +35,21 @@ import org.apache.sshd.common.util.buffer.Buffer;
 import org.apache.sshd.common.util.closeable.AbstractCloseable;
 
 public class ChannelAsyncOutputStream extends AbstractCloseable implements IoOutputStream, ChannelHolder {
+    /**
+     * Number of bytes a writer must reserve before the {@link Buffer#rpos() read position}
+     * of the written buffer in order for it to be sent &quot;in-place&quot;
+     *
+     * @see #setInPlaceWrites(boolean)
+     */
+    public static final int IN_PLACE_HEADER_LENGTH = SshConstants.SSH_PACKET_HEADER_LEN
+            + 1 /* command */ + Integer.BYTES /* recipient */ + Integer.BYTES /* data type */ + Integer.BYTES /* length */;
+
     private final Channel channelInstance;
     private final PacketWriter packetWriter;
     private final byte cmd;
     private final AtomicReference<IoWriteFutureImpl> pendingWrite = new AtomicReference<>();
     private final Object packetWriteId;
+    private volatile boolean inPlaceWrites;
 
     public ChannelAsyncOutputStream(Channel channel, byte cmd) {
         this.channelInstance = Objects.requireNonNull(channel, "No channel");
@@ -53,6 +63,26 @@ public class ChannelAsyncOutputStream extends AbstractCloseable implements IoOut
         return channelInstance;
     }
 
+    /**
+     * @return {@code true} if written buffers may be sent &quot;in-place&quot;
+     * @see #setInPlaceWrites(boolean)
+     */
+    public boolean isInPlaceWrites() {
+        return inPlaceWrites;
+    }
+
+    /**
+     * @param inPlaceWrites If {@code true} then a written buffer whose (remaining) data fits in a
+     * single channel packet and has at least {@link #IN_PLACE_HEADER_LENGTH} bytes before its read
+     * position is sent as the channel packet itself instead of being copied into a new one. Larger
+     * buffers are split so that their last (full) packet is sent in-place.
+     * <B>Note:</B> should be enabled only if the writer does not re-use the buffer once written,
+     * since its contents are modified (e.g., encrypted) when the packet is sent.
+     */
+    public void setInPlaceWrites(boolean inPlaceWrites) {
+        this.inPlaceWrites = inPlaceWrites;
+    }
+
     public void onWindowExpanded() throws IOException {
         doWriteIfPossible(true);
     }
@@ -104,7 +134,12 @@ public class ChannelAsyncOutputStream extends AbstractCloseable implements IoOut
         if (total > 0) {
             Channel channel = getChannel();
             Window remoteWindow = channel.getRemoteWindow();
-            long length = Math.min(Math.min(remoteWindow.getSize(), total), remoteWindow.getPacketSize());
+            long packetSize = remoteWindow.getPacketSize();
+            long maxLength = Math.min(Math.min(remoteWindow.getSize(), total), packetSize);
+            // if in-place then send the excess first so that the last (full) packet can be sent as-is
+            long length = (isInPlaceWrites() && (total > packetSize) && ((total % packetSize) != 0L))
+                    ? Math.min(maxLength, total % packetSize)
+                    : maxLength;
             if (log.isTraceEnabled()) {
                 log.trace("doWriteIfPossible({})[resume={}] attempting to write {} out of {}", this, resume, length, total);
             }
@@ -120,15 +155,26 @@ public class ChannelAsyncOutputStream extends AbstractCloseable implements IoOut
                     throw new IllegalArgumentException("Command " + SshConstants.getCommandMessageName(cmd) + " length (" + length + ") exceeds int boundaries");
                 }
 
-                Session s = channel.getSession();
-                Buffer buf = s.createBuffer(cmd, (int) length + 12);
-                buf.putInt(channel.getRecipient());
-                if (cmd == SshConstants.SSH_MSG_CHANNEL_EXTENDED_DATA) {
-                    buf.putInt(SshConstants.SSH_EXTENDED_DATA_STDERR);
+                Buffer buf;
+                int headerLength = (cmd == SshConstants.SSH_MSG_CHANNEL_EXTENDED_DATA)
+                        ? IN_PLACE_HEADER_LENGTH
+                        : IN_PLACE_HEADER_LENGTH - Integer.BYTES;
+                if (isInPlaceWrites() && (length == total) && (buffer.rpos() >= headerLength)) {
+                    // write the channel packet header in the space reserved before the data
+                    int wpos = buffer.wpos();
+                    buffer.rpos(buffer.rpos() - headerLength + SshConstants.SSH_PACKET_HEADER_LEN);
+                    buffer.wpos(buffer.rpos());
+                    buf = buffer;
+                    buf.putByte(cmd);
+                    putPacketHeader(buf, channel, length);
+                    buf.wpos(wpos);
+                } else {
+                    Session s = channel.getSession();
+                    buf = s.createBuffer(cmd, (int) length + 12);
+                    putPacketHeader(buf, channel, length);
+                    buf.putRawBytes(buffer.array(), buffer.rpos(), (int) length);
+                    buffer.rpos(buffer.rpos() + (int) length);
                 }
-                buf.putInt(length);
-                buf.putRawBytes(buffer.array(), buffer.rpos(), (int) length);
-                buffer.rpos(buffer.rpos() + (int) length);
                 remoteWindow.consume(length);
 
                 try {
@@ -197,6 +243,14 @@ public class ChannelAsyncOutputStream extends AbstractCloseable implements IoOut
         }
     }
 
+    protected void putPacketHeader(Buffer buf, Channel channel, long length) {
+        buf.putInt(channel.getRecipient());
+        if (cmd == SshConstants.SSH_MSG_CHANNEL_EXTENDED_DATA) {
+            buf.putInt(SshConstants.SSH_EXTENDED_DATA_STDERR);
+        }
+        buf.putInt(length);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "[" + getChannel() + "] cmd=" + SshConstants.getCommandMessageName(cmd & 0xFF);
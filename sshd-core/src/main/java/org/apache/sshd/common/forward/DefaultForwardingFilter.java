@@ -19,19 +19,16 @@
 package org.apache.sshd.common.forward;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.EnumSet;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -85,22 +82,39 @@ public class DefaultForwardingFilter
      */
     public static final long DEFAULT_FORWARD_REQUEST_TIMEOUT = TimeUnit.SECONDS.toMillis(15L);
 
+    /**
+     * Used to configure the default max. number of concurrently forwarded connections
+     * per locally bound tunnel - non-positive means unlimited. The limit can be changed
+     * for a specific tunnel via its {@link ForwardingTunnelStatistics}
+     *
+     * @see #DEFAULT_MAX_TUNNEL_CONNECTIONS
+     * @see #getTunnelStatistics(int)
+     */
+    public static final String MAX_TUNNEL_CONNECTIONS = "tcpip-forward-max-tunnel-connections";
+
+    /**
+     * Default value for {@link #MAX_TUNNEL_CONNECTIONS} if none specified - unlimited
+     */
+    public static final int DEFAULT_MAX_TUNNEL_CONNECTIONS = 0;
+
     public static final Set<ClientChannelEvent> STATIC_IO_MSG_RECEIVED_EVENTS =
             Collections.unmodifiableSet(EnumSet.of(ClientChannelEvent.OPENED, ClientChannelEvent.CLOSED));
 
     private final ConnectionService service;
-    private final IoHandlerFactory socksProxyIoHandlerFactory = () -> new SocksProxy(getConnectionService());
     private final Session sessionInstance;
-    private final Map<Integer, SshdSocketAddress> localToRemote = new TreeMap<>(Comparator.naturalOrder());
-    private final Map<Integer, SshdSocketAddress> remoteToLocal = new TreeMap<>(Comparator.naturalOrder());
-    private final Map<Integer, SocksProxy> dynamicLocal = new TreeMap<>(Comparator.naturalOrder());
-    private final Set<LocalForwardingEntry> localForwards = new HashSet<>();
+    // NOTE: the registry is looked up on the data path (e.g., when a connection is accepted) so it must not be locked
+    private final Map<Integer, SshdSocketAddress> localToRemote = new ConcurrentHashMap<>();
+    private final Map<Integer, SshdSocketAddress> remoteToLocal = new ConcurrentHashMap<>();
+    private final Map<Integer, SocksProxy> dynamicLocal = new ConcurrentHashMap<>();
+    private final Set<LocalForwardingEntry> localForwards = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, ForwardingTunnelStatistics> tunnelStatistics = new ConcurrentHashMap<>();
+    private final Object acceptorLock = new Object();
     private final IoHandlerFactory staticIoHandlerFactory = StaticIoHandler::new;
     private final Collection<PortForwardingEventListener> listeners = new CopyOnWriteArraySet<>();
     private final Collection<PortForwardingEventListenerManager> managersHolder = new CopyOnWriteArraySet<>();
     private final PortForwardingEventListener listenerProxy;
 
-    private IoAcceptor acceptor;
+    private volatile IoAcceptor acceptor;
 
     public DefaultForwardingFilter(ConnectionService service) {
         this.service = Objects.requireNonNull(service, "No connection service");
@@ -175,7 +189,7 @@ public class DefaultForwardingFilter
     }
 
     @Override
-    public synchronized SshdSocketAddress startLocalPortForwarding(SshdSocketAddress local, SshdSocketAddress remote) throws IOException {
+    public SshdSocketAddress startLocalPortForwarding(SshdSocketAddress local, SshdSocketAddress remote) throws IOException {
         Objects.requireNonNull(local, "Local address is null");
         ValidateUtils.checkTrue(local.getPort() >= 0, "Invalid local port: %s", local);
         Objects.requireNonNull(remote, "Remote address is null");
@@ -193,14 +207,11 @@ public class DefaultForwardingFilter
         try {
             bound = doBind(local, staticIoHandlerFactory);
             port = bound.getPort();
-            SshdSocketAddress prev;
-            synchronized (localToRemote) {
-                prev = localToRemote.put(port, remote);
-            }
-
+            SshdSocketAddress prev = localToRemote.putIfAbsent(port, remote);
             if (prev != null) {
                 throw new IOException("Multiple local port forwarding bindings on port=" + port + ": current=" + remote + ", previous=" + prev);
             }
+            registerTunnelStatistics(new SshdSocketAddress(bound.getHostString(), port));
         } catch (IOException | RuntimeException e) {
             try {
                 stopLocalPortForwarding(local);
@@ -225,22 +236,23 @@ public class DefaultForwardingFilter
     }
 
     @Override
-    public synchronized void stopLocalPortForwarding(SshdSocketAddress local) throws IOException {
+    public void stopLocalPortForwarding(SshdSocketAddress local) throws IOException {
         Objects.requireNonNull(local, "Local address is null");
 
-        SshdSocketAddress bound;
-        synchronized (localToRemote) {
-            bound = localToRemote.remove(local.getPort());
+        SshdSocketAddress bound = localToRemote.remove(local.getPort());
+        if (bound != null) {
+            tunnelStatistics.remove(local.getPort());
         }
 
-        if ((bound != null) && (acceptor != null)) {
+        IoAcceptor ioAcceptor = acceptor;
+        if ((bound != null) && (ioAcceptor != null)) {
             if (log.isDebugEnabled()) {
                 log.debug("stopLocalPortForwarding(" + local + ") unbind " + bound);
             }
 
             signalTearingDownExplicitTunnel(bound, true);
             try {
-                acceptor.unbind(bound.toInetSocketAddress());
+                ioAcceptor.unbind(bound.toInetSocketAddress());
             } catch (RuntimeException e) {
                 signalTornDownExplicitTunnel(bound, true, e);
                 throw e;
@@ -255,7 +267,7 @@ public class DefaultForwardingFilter
     }
 
     @Override
-    public synchronized SshdSocketAddress startRemotePortForwarding(SshdSocketAddress remote, SshdSocketAddress local) throws IOException {
+    public SshdSocketAddress startRemotePortForwarding(SshdSocketAddress remote, SshdSocketAddress local) throws IOException {
         Objects.requireNonNull(local, "Local address is null");
         Objects.requireNonNull(remote, "Remote address is null");
 
@@ -279,11 +291,7 @@ public class DefaultForwardingFilter
             }
             port = (remotePort == 0) ? result.getInt() : remote.getPort();
             // TODO: Is it really safe to only store the local address after the request ?
-            SshdSocketAddress prev;
-            synchronized (remoteToLocal) {
-                prev = remoteToLocal.put(port, local);
-            }
-
+            SshdSocketAddress prev = remoteToLocal.putIfAbsent(port, local);
             if (prev != null) {
                 throw new IOException("Multiple remote port forwarding bindings on port=" + port + ": current=" + remote + ", previous=" + prev);
             }
@@ -312,11 +320,8 @@ public class DefaultForwardingFilter
     }
 
     @Override
-    public synchronized void stopRemotePortForwarding(SshdSocketAddress remote) throws IOException {
-        SshdSocketAddress bound;
-        synchronized (remoteToLocal) {
-            bound = remoteToLocal.remove(remote.getPort());
-        }
+    public void stopRemotePortForwarding(SshdSocketAddress remote) throws IOException {
+        SshdSocketAddress bound = remoteToLocal.remove(remote.getPort());
 
         if (bound != null) {
             if (log.isDebugEnabled()) {
@@ -410,7 +415,7 @@ public class DefaultForwardingFilter
     }
 
     @Override
-    public synchronized SshdSocketAddress startDynamicPortForwarding(SshdSocketAddress local) throws IOException {
+    public SshdSocketAddress startDynamicPortForwarding(SshdSocketAddress local) throws IOException {
         Objects.requireNonNull(local, "Local address is null");
         ValidateUtils.checkTrue(local.getPort() >= 0, "Invalid local port: %s", local);
 
@@ -427,15 +432,15 @@ public class DefaultForwardingFilter
         int port;
         signalEstablishingDynamicTunnel(local);
         try {
-            bound = doBind(local, socksProxyIoHandlerFactory);
+            // the static handler dispatches the connections accepted on the bound port to the SOCKS proxy
+            bound = doBind(local, staticIoHandlerFactory);
             port = bound.getPort();
-            synchronized (dynamicLocal) {
-                prev = dynamicLocal.put(port, socksProxy);
-            }
+            prev = dynamicLocal.putIfAbsent(port, socksProxy);
 
             if (prev != null) {
                 throw new IOException("Multiple dynamic port mappings found for port=" + port + ": current=" + socksProxy + ", previous=" + prev);
             }
+            registerTunnelStatistics(new SshdSocketAddress(bound.getHostString(), port));
         } catch (IOException | RuntimeException e) {
             try {
                 stopDynamicPortForwarding(local);
@@ -522,10 +527,10 @@ public class DefaultForwardingFilter
     }
 
     @Override
-    public synchronized void stopDynamicPortForwarding(SshdSocketAddress local) throws IOException {
-        SocksProxy obj;
-        synchronized (dynamicLocal) {
-            obj = dynamicLocal.remove(local.getPort());
+    public void stopDynamicPortForwarding(SshdSocketAddress local) throws IOException {
+        SocksProxy obj = dynamicLocal.remove(local.getPort());
+        if (obj != null) {
+            tunnelStatistics.remove(local.getPort());
         }
 
         if (obj != null) {
@@ -609,14 +614,12 @@ public class DefaultForwardingFilter
     }
 
     @Override
-    public synchronized SshdSocketAddress getForwardedPort(int remotePort) {
-        synchronized (remoteToLocal) {
-            return remoteToLocal.get(remotePort);
-        }
+    public SshdSocketAddress getForwardedPort(int remotePort) {
+        return remoteToLocal.get(remotePort);
     }
 
     @Override
-    public synchronized SshdSocketAddress localPortForwardingRequested(SshdSocketAddress local) throws IOException {
+    public SshdSocketAddress localPortForwardingRequested(SshdSocketAddress local) throws IOException {
         Objects.requireNonNull(local, "Local address is null");
         ValidateUtils.checkTrue(local.getPort() >= 0, "Invalid local port: %s", local);
 
@@ -648,15 +651,12 @@ public class DefaultForwardingFilter
                 log.debug("localPortForwardingRequested(" + local + "): " + result);
             }
 
-            boolean added;
-            synchronized (localForwards) {
-                // NOTE !!! it is crucial to use the bound address host name first
-                added = localForwards.add(new LocalForwardingEntry(result.getHostName(), local.getHostName(), result.getPort()));
-            }
-
+            // NOTE !!! it is crucial to use the bound address host name first
+            boolean added = localForwards.add(new LocalForwardingEntry(result.getHostName(), local.getHostName(), result.getPort()));
             if (!added) {
                 throw new IOException("Failed to add local port forwarding entry for " + local + " -> " + result);
             }
+            registerTunnelStatistics(result);
         } catch (IOException | RuntimeException e) {
             try {
                 localPortForwardingCancelled(local);
@@ -676,23 +676,25 @@ public class DefaultForwardingFilter
     }
 
     @Override
-    public synchronized void localPortForwardingCancelled(SshdSocketAddress local) throws IOException {
-        LocalForwardingEntry entry;
-        synchronized (localForwards) {
-            entry = LocalForwardingEntry.findMatchingEntry(local.getHostName(), local.getPort(), localForwards);
-            if (entry != null) {
-                localForwards.remove(entry);
-            }
+    public void localPortForwardingCancelled(SshdSocketAddress local) throws IOException {
+        LocalForwardingEntry entry = LocalForwardingEntry.findMatchingEntry(local.getHostName(), local.getPort(), localForwards);
+        if ((entry != null) && (!localForwards.remove(entry))) {
+            entry = null;   // concurrently cancelled
         }
 
-        if ((entry != null) && (acceptor != null)) {
+        if (entry != null) {
+            tunnelStatistics.remove(entry.getPort());
+        }
+
+        IoAcceptor ioAcceptor = acceptor;
+        if ((entry != null) && (ioAcceptor != null)) {
             if (log.isDebugEnabled()) {
                 log.debug("localPortForwardingCancelled(" + local + ") unbind " + entry);
             }
 
             signalTearingDownExplicitTunnel(entry, true);
             try {
-                acceptor.unbind(entry.toInetSocketAddress());
+                ioAcceptor.unbind(entry.toInetSocketAddress());
             } catch (RuntimeException e) {
                 signalTornDownExplicitTunnel(entry, true, e);
                 throw e;
@@ -858,8 +860,44 @@ public class DefaultForwardingFilter
         }
     }
 
+    /**
+     * @param port The locally bound tunnel port
+     * @return The {@link ForwardingTunnelStatistics} of the tunnel - {@code null}
+     * if no such locally bound tunnel
+     */
+    public ForwardingTunnelStatistics getTunnelStatistics(int port) {
+        return tunnelStatistics.get(port);
+    }
+
+    /**
+     * @return An un-modifiable <U>live</U> view of the {@link ForwardingTunnelStatistics}
+     * of the currently established locally bound tunnels - key=the bound port
+     */
+    public Map<Integer, ForwardingTunnelStatistics> getTunnelStatistics() {
+        return Collections.unmodifiableMap(tunnelStatistics);
+    }
+
+    /**
+     * @return Total number of currently forwarded connections over all the locally bound tunnels
+     */
+    public int getActiveTunnelConnections() {
+        int count = 0;
+        for (ForwardingTunnelStatistics stats : tunnelStatistics.values()) {
+            count += stats.getActiveConnections();
+        }
+        return count;
+    }
+
+    protected ForwardingTunnelStatistics registerTunnelStatistics(SshdSocketAddress bound) {
+        Session session = getSession();
+        int maxConnections = session.getIntProperty(MAX_TUNNEL_CONNECTIONS, DEFAULT_MAX_TUNNEL_CONNECTIONS);
+        ForwardingTunnelStatistics stats = new ForwardingTunnelStatistics(bound, maxConnections);
+        tunnelStatistics.put(bound.getPort(), stats);
+        return stats;
+    }
+
     @Override
-    protected synchronized Closeable getInnerCloseable() {
+    protected Closeable getInnerCloseable() {
         return builder().parallel(toString(), dynamicLocal.values()).close(acceptor).build();
     }
 
@@ -877,6 +915,13 @@ public class DefaultForwardingFilter
      * @throws IOException If failed to bind
      */
     private InetSocketAddress doBind(SshdSocketAddress address, Factory<? extends IoHandler> handlerFactory) throws IOException {
+        // the resulting address is deduced from the acceptor's bound addresses so binding must be serialized
+        synchronized (acceptorLock) {
+            return doBindLocked(address, handlerFactory);
+        }
+    }
+
+    private InetSocketAddress doBindLocked(SshdSocketAddress address, Factory<? extends IoHandler> handlerFactory) throws IOException {
         if (acceptor == null) {
             Session session = getSession();
             FactoryManager manager = Objects.requireNonNull(session.getFactoryManager(), "No factory manager");
@@ -885,7 +930,6 @@ public class DefaultForwardingFilter
             acceptor = factory.createAcceptor(handler);
         }
 
-        // TODO find a better way to determine the resulting bind address - what if multi-threaded calls...
         Set<SocketAddress> before = acceptor.getBoundAddresses();
         try {
             InetSocketAddress bindAddress = address.toInetSocketAddress();
@@ -930,13 +974,35 @@ public class DefaultForwardingFilter
         public void sessionCreated(IoSession session) throws Exception {
             InetSocketAddress local = (InetSocketAddress) session.getLocalAddress();
             int localPort = local.getPort();
+            ForwardingTunnelStatistics stats = tunnelStatistics.get(localPort);
+            if (stats != null) {
+                if (!stats.connectionAccepted()) {
+                    log.warn("sessionCreated({}) rejected - max. connections ({}) reached for {}",
+                             session, stats.getMaxConnections(), stats.getBoundAddress());
+                    session.close(true);
+                    return;
+                }
+                session.setAttribute(ForwardingTunnelStatistics.class, stats);
+            }
+
+            SocksProxy socksProxy = dynamicLocal.get(localPort);
+            if (socksProxy != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("sessionCreated({}) dynamic forwarding via {}", session, socksProxy);
+                }
+                session.setAttribute(SocksProxy.class, socksProxy);
+                socksProxy.sessionCreated(session);
+                return;
+            }
+
             SshdSocketAddress remote = localToRemote.get(localPort);
             if (log.isDebugEnabled()) {
-                log.debug("sessionCreated({}) remote={}", session, remote);
+                log.debug("sessionCreated({}) remote={}, stats={}", session, remote, stats);
             }
 
             TcpipClientChannel.Type channelType = (remote == null) ? TcpipClientChannel.Type.Forwarded : TcpipClientChannel.Type.Direct;
             TcpipClientChannel channel = new TcpipClientChannel(channelType, session, remote);
+            channel.setTunnelStatistics(stats);
             session.setAttribute(TcpipClientChannel.class, channel);
 
             service.registerChannel(channel);
@@ -958,6 +1024,17 @@ public class DefaultForwardingFilter
         public void sessionClosed(IoSession session) throws Exception {
             TcpipClientChannel channel = (TcpipClientChannel) session.removeAttribute(TcpipClientChannel.class);
             Throwable cause = (Throwable) session.removeAttribute(TcpipForwardingExceptionMarker.class);
+            ForwardingTunnelStatistics stats = (ForwardingTunnelStatistics) session.removeAttribute(ForwardingTunnelStatistics.class);
+            if (stats != null) {
+                stats.connectionClosed();
+            }
+
+            SocksProxy socksProxy = (SocksProxy) session.removeAttribute(SocksProxy.class);
+            if (socksProxy != null) {
+                socksProxy.sessionClosed(session);
+                return;
+            }
+
             if (channel != null) {
                 if (log.isDebugEnabled()) {
                     log.debug("sessionClosed({}) closing channel={} after {} messages - cause={}",
@@ -970,36 +1047,59 @@ public class DefaultForwardingFilter
 
         @Override
         public void messageReceived(IoSession session, Readable message) throws Exception {
+            SocksProxy socksProxy = (SocksProxy) session.getAttribute(SocksProxy.class);
+            if (socksProxy != null) {
+                socksProxy.messageReceived(session, message);
+                return;
+            }
+
             TcpipClientChannel channel = (TcpipClientChannel) session.getAttribute(TcpipClientChannel.class);
             long totalMessages = messagesCounter.incrementAndGet();
-            Buffer buffer = new ByteArrayBuffer(message.available() + Long.SIZE, false);
-            buffer.putBuffer(message);
-
             if (traceEnabled) {
                 log.trace("messageReceived({}) channel={}, count={}, handle len={}",
                           session, channel, totalMessages, message.available());
             }
 
+            ForwardingTunnelStatistics stats = channel.getTunnelStatistics();
+            if (stats != null) {
+                stats.addBytesRead(message.available());
+            }
+
             OpenFuture future = channel.getOpenFuture();
             if (future.isOpened()) {
-                OutputStream outputStream = channel.getInvertedIn();
-                outputStream.write(buffer.array(), buffer.rpos(), buffer.available());
-                outputStream.flush();
-            } else {
-                future.addListener(f -> {
-                    try {
-                        OutputStream outputStream = channel.getInvertedIn();
-                        outputStream.write(buffer.array(), buffer.rpos(), buffer.available());
-                        outputStream.flush();
-                    } catch (IOException e) {
-                        channel.getSession().exceptionCaught(e);
-                    }
-                });
+                channel.getDataPump().write(session, message);
+                return;
             }
+
+            // hold on to the data and stop reading until the channel is open
+            Buffer buffer = new ByteArrayBuffer(message.available() + Long.SIZE, false);
+            buffer.putBuffer(message);
+            session.suspendRead();
+            future.addListener(f -> {
+                if (!f.isOpened()) {
+                    return; // the socket is closed by the open failure handler
+                }
+
+                try {
+                    TcpipChannelDataPump pump = channel.getDataPump();
+                    pump.write(session, buffer);
+                    if (!pump.isPending()) {
+                        session.resumeRead();
+                    }
+                } catch (IOException e) {
+                    channel.getSession().exceptionCaught(e);
+                }
+            });
         }
 
         @Override
         public void exceptionCaught(IoSession session, Throwable cause) throws Exception {
+            SocksProxy socksProxy = (SocksProxy) session.getAttribute(SocksProxy.class);
+            if (socksProxy != null) {
+                socksProxy.exceptionCaught(session, cause);
+                return;
+            }
+
             session.setAttribute(TcpipForwardingExceptionMarker.class, cause);
             if (log.isDebugEnabled()) {
                 log.debug("exceptionCaught({}) {}: {}", session, cause.getClass().getSimpleName(), cause.getMessage());
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.common.forward;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.common.util.net.SshdSocketAddress;
+
+/**
+ * Connection limit and traffic counters of a single forwarding tunnel - i.e.,
+ * a local address bound by the forwarder whose accepted connections are
+ * forwarded over the SSH session. All methods are thread-safe and lock-free.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class ForwardingTunnelStatistics {
+    private final SshdSocketAddress boundAddress;
+    private final AtomicInteger activeConnections = new AtomicInteger(0);
+    private final AtomicLong acceptedConnections = new AtomicLong(0L);
+    private final AtomicLong rejectedConnections = new AtomicLong(0L);
+    private final AtomicLong bytesRead = new AtomicLong(0L);
+    private final AtomicLong bytesWritten = new AtomicLong(0L);
+    private volatile int maxConnections;
+
+    /**
+     * @param boundAddress The tunnel's bound address
+     * @param maxConnections Max. number of concurrently forwarded connections - non-positive
+     * means unlimited
+     */
+    public ForwardingTunnelStatistics(SshdSocketAddress boundAddress, int maxConnections) {
+        this.boundAddress = Objects.requireNonNull(boundAddress, "No bound address");
+        this.maxConnections = maxConnections;
+    }
+
+    public SshdSocketAddress getBoundAddress() {
+        return boundAddress;
+    }
+
+    /**
+     * @return Max. number of concurrently forwarded connections - non-positive
+     * means unlimited
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections Max. number of concurrently forwarded connections - non-positive
+     * means unlimited. <B>Note:</B> lowering the limit does not close any already active
+     * connection - only new ones are rejected
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @return Number of currently forwarded connections
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return Total number of connections accepted since the tunnel was established
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    /**
+     * @return Total number of connections rejected due to the {@link #getMaxConnections() limit}
+     */
+    public long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    /**
+     * @return Total number of bytes read from the forwarded connections and sent
+     * over the SSH session
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return Total number of bytes received over the SSH session and written to
+     * the forwarded connections
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Attempts to register a new forwarded connection
+     *
+     * @return {@code true} if the connection is within the {@link #getMaxConnections() limit}
+     * - in which case {@link #connectionClosed()} must be invoked once it is closed
+     */
+    public boolean connectionAccepted() {
+        for (int limit = getMaxConnections(), active = activeConnections.get();
+                (limit <= 0) || (active < limit);
+                limit = getMaxConnections(), active = activeConnections.get()) {
+            if (activeConnections.compareAndSet(active, active + 1)) {
+                acceptedConnections.incrementAndGet();
+                return true;
+            }
+        }
+
+        rejectedConnections.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Invoked when a previously {@link #connectionAccepted() accepted} connection is closed
+     */
+    public void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    public void addBytesRead(long count) {
+        bytesRead.addAndGet(count);
+    }
+
+    public void addBytesWritten(long count) {
+        bytesWritten.addAndGet(count);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + getBoundAddress() + "]"
+            + " active=" + getActiveConnections() + "/" + getMaxConnections()
+            + ", accepted=" + getAcceptedConnections()
+            + ", rejected=" + getRejectedConnections()
+            + ", read=" + getBytesRead()
+            + ", written=" + getBytesWritten();
+    }
+}
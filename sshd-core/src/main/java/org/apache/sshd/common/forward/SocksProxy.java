@@ -20,32 +20,142 @@ package org.apache.sshd.common.forward;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.sshd.client.future.OpenFuture;
 import org.apache.sshd.common.SshException;
 import org.apache.sshd.common.io.IoHandler;
 import org.apache.sshd.common.io.IoSession;
 import org.apache.sshd.common.session.ConnectionService;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.util.Readable;
 import org.apache.sshd.common.util.buffer.Buffer;
 import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
 import org.apache.sshd.common.util.closeable.AbstractCloseable;
 import org.apache.sshd.common.util.net.SshdSocketAddress;
+import org.apache.sshd.common.util.threads.ThreadUtils;
 
 /**
- * SOCKS proxy server, supporting simple socks4/5 protocols.
+ * SOCKS proxy server, supporting simple socks4/5 protocols. The handshake is
+ * parsed incrementally as data arrives, and once the connection request has
+ * been received the SSH channel is opened while the reply is being prepared.
+ * Until the channel is open, reading from the socket is suspended and any data
+ * sent ahead of the reply is held and forwarded as soon as the channel opens.
  *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  * @see <A HREF="https://en.wikipedia.org/wiki/SOCKS">SOCKS Wikipedia</A>
  */
 public class SocksProxy extends AbstractCloseable implements IoHandler {
+    /**
+     * Max. number of concurrent connection requests for which the SSH channel
+     * is being opened - requests beyond it are rejected
+     *
+     * @see #DEFAULT_MAX_PENDING_OPENS
+     */
+    public static final String MAX_PENDING_OPENS = "socks-proxy-max-pending-opens";
+
+    /**
+     * Default value for {@link #MAX_PENDING_OPENS} if none specified
+     */
+    public static final int DEFAULT_MAX_PENDING_OPENS = 256;
+
+    /**
+     * Whether host names requested via SOCKS4a / SOCKS5 are resolved locally and only
+     * the resolved address is sent to the server. By default (and as SOCKS5h clients
+     * expect) the name is sent as-is and resolved by the server - which is also the
+     * only way to reach names that resolve only on the remote side
+     *
+     * @see #DEFAULT_RESOLVE_HOST_NAMES
+     */
+    public static final String RESOLVE_HOST_NAMES = "socks-proxy-resolve-host-names";
+
+    /**
+     * Default value for {@link #RESOLVE_HOST_NAMES} if none specified
+     */
+    public static final boolean DEFAULT_RESOLVE_HOST_NAMES = false;
+
+    /**
+     * How long (milliseconds) to cache the resolution of a requested host name -
+     * non-positive means no caching. Relevant only if {@link #RESOLVE_HOST_NAMES} is enabled
+     *
+     * @see #DEFAULT_DNS_CACHE_TTL
+     */
+    public static final String DNS_CACHE_TTL = "socks-proxy-dns-cache-ttl";
+
+    /**
+     * Default value for {@link #DNS_CACHE_TTL} if none specified
+     */
+    public static final long DEFAULT_DNS_CACHE_TTL = TimeUnit.SECONDS.toMillis(30L);
+
+    /**
+     * Max. number of cached host name resolutions - the least recently used
+     * ones are evicted
+     */
+    public static final int MAX_DNS_CACHE_ENTRIES = 1024;
+
+    /**
+     * Number of threads used to resolve requested host names that are not cached -
+     * the resolution may block, so it is never done on the I/O thread. Relevant only
+     * if {@link #RESOLVE_HOST_NAMES} is enabled
+     *
+     * @see #DEFAULT_DNS_RESOLVER_THREADS
+     */
+    public static final String DNS_RESOLVER_THREADS = "socks-proxy-dns-resolver-threads";
+
+    /**
+     * Default value for {@link #DNS_RESOLVER_THREADS} if none specified
+     */
+    public static final int DEFAULT_DNS_RESOLVER_THREADS = 4;
+
+    /**
+     * Max. length of a handshake message
+     */
+    public static final int MAX_HANDSHAKE_LENGTH = 1024;
 
     private final ConnectionService service;
     private final Map<IoSession, Proxy> proxies = new ConcurrentHashMap<>();
+    private final Map<String, ResolvedAddress> resolvedAddresses;
+    private final AtomicInteger pendingOpens = new AtomicInteger(0);
+    private final int maxPendingOpens;
+    private final boolean resolveHostNames;
+    private final long dnsCacheTtl;
+    private final int dnsResolverThreads;
+    private ExecutorService dnsResolver;
 
     public SocksProxy(ConnectionService service) {
-        this.service = service;
+        this.service = Objects.requireNonNull(service, "No connection service");
+
+        Session session = service.getSession();
+        this.maxPendingOpens = session.getIntProperty(MAX_PENDING_OPENS, DEFAULT_MAX_PENDING_OPENS);
+        this.resolveHostNames = session.getBooleanProperty(RESOLVE_HOST_NAMES, DEFAULT_RESOLVE_HOST_NAMES);
+        this.dnsCacheTtl = session.getLongProperty(DNS_CACHE_TTL, DEFAULT_DNS_CACHE_TTL);
+        this.dnsResolverThreads = session.getIntProperty(DNS_RESOLVER_THREADS, DEFAULT_DNS_RESOLVER_THREADS);
+        this.resolvedAddresses = new LinkedHashMap<String, ResolvedAddress>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResolvedAddress> eldest) {
+                return size() > MAX_DNS_CACHE_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * @return Number of connection requests for which the SSH channel is currently being opened
+     */
+    public int getPendingOpens() {
+        return pendingOpens.get();
     }
 
     @Override
@@ -64,59 +174,379 @@ public class SocksProxy extends AbstractCloseable implements IoHandler {
     }
 
     @Override
-    public void messageReceived(final IoSession session, org.apache.sshd.common.util.Readable message) throws Exception {
+    public void messageReceived(IoSession session, Readable message) throws Exception {
+        Proxy proxy = proxies.get(session);
+        if (proxy != null) {
+            proxy.onMessage(message);
+            return;
+        }
+
         Buffer buffer = new ByteArrayBuffer(message.available() + Long.SIZE, false);
         buffer.putBuffer(message);
-        Proxy proxy = proxies.get(session);
-        if (proxy == null) {
-            int version = buffer.getUByte();
-            if (version == 0x04) {
-                proxy = new Socks4(session);
-            } else if (version == 0x05) {
-                proxy = new Socks5(session);
-            } else {
-                throw new IllegalStateException("Unsupported version: " + version);
-            }
-            proxy.onMessage(buffer);
-            proxies.put(session, proxy);
+        int version = buffer.getUByte();
+        if (version == 0x04) {
+            proxy = new Socks4(session, buffer);
+        } else if (version == 0x05) {
+            proxy = new Socks5(session, buffer);
         } else {
-            proxy.onMessage(buffer);
+            throw new IllegalStateException("Unsupported version: " + version);
         }
+
+        proxies.put(session, proxy);
+        proxy.onHandshakeData();
     }
 
     @Override
     public void exceptionCaught(IoSession session, Throwable cause) throws Exception {
-        log.warn("Exception caught, closing socks proxy", cause);
+        if (log.isDebugEnabled()) {
+            log.debug("exceptionCaught({}) {}: {}", session, cause.getClass().getSimpleName(), cause.getMessage());
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("exceptionCaught(" + session + ") caught exception details", cause);
+        }
         session.close(false);
     }
 
-    public abstract static class Proxy implements Closeable {
+    @Override
+    protected void doCloseImmediately() {
+        synchronized (this) {
+            if (dnsResolver != null) {
+                dnsResolver.shutdownNow();
+            }
+        }
+        super.doCloseImmediately();
+    }
 
-        IoSession session;
-        TcpipClientChannel channel;
+    /**
+     * @param host The host name
+     * @return The cached {@link InetAddress} of the host - {@code null} if
+     * not cached or the cached resolution has expired
+     */
+    protected InetAddress getCachedAddress(String host) {
+        synchronized (resolvedAddresses) {
+            ResolvedAddress resolved = resolvedAddresses.get(host);
+            if (resolved == null) {
+                return null;
+            }
+            if (resolved.expiration > System.currentTimeMillis()) {
+                return resolved.address;
+            }
 
-        protected Proxy(IoSession session) {
-            this.session = session;
+            resolvedAddresses.remove(host);
+            return null;
         }
+    }
 
-        protected void onMessage(Buffer buffer) throws IOException {
-            channel.getInvertedIn().write(buffer.array(), buffer.rpos(), buffer.available());
-            channel.getInvertedIn().flush();
+    /**
+     * Resolves a requested host name - using a cached result if available.
+     * <B>Note:</B> may block, therefore it is invoked by the proxy's resolver
+     * threads and never on the I/O thread
+     *
+     * @param host The host name
+     * @return The resolved {@link InetAddress}
+     * @throws UnknownHostException If failed to resolve the host
+     */
+    protected InetAddress resolveAddress(String host) throws UnknownHostException {
+        InetAddress address = getCachedAddress(host);
+        if (address != null) {
+            return address;
+        }
+
+        address = InetAddress.getByName(host);
+        if (dnsCacheTtl > 0L) {
+            ResolvedAddress resolved = new ResolvedAddress(address, System.currentTimeMillis() + dnsCacheTtl);
+            synchronized (resolvedAddresses) {
+                resolvedAddresses.put(host, resolved);
+            }
+        }
+
+        return address;
+    }
+
+    /**
+     * @return The {@link ExecutorService} used to resolve host names that are not cached
+     * @throws SshException If the proxy is closing or closed
+     */
+    protected synchronized ExecutorService getDnsResolver() throws SshException {
+        if (isClosing()) {
+            throw new SshException("SocksProxy is closing or closed");
+        }
+        if (dnsResolver == null) {
+            dnsResolver = ThreadUtils.newFixedThreadPool(getClass().getSimpleName() + "-dns", dnsResolverThreads);
+        }
+        return dnsResolver;
+    }
+
+    private static class ResolvedAddress {
+        private final InetAddress address;
+        private final long expiration;
+
+        ResolvedAddress(InetAddress address, long expiration) {
+            this.address = address;
+            this.expiration = expiration;
+        }
+    }
+
+    /**
+     * Handles a single SOCKS connection - parses the handshake and once the channel
+     * is open forwards the data read from the socket via the channel's
+     * {@link TcpipChannelDataPump}
+     */
+    public abstract class Proxy implements Closeable {
+        protected final IoSession session;
+        protected TcpipClientChannel channel;
+
+        private final AtomicBoolean pendingOpen = new AtomicBoolean(false);
+        private Buffer handshake;
+        private Buffer reply;
+        private boolean connected;
+        private boolean rejected;
+        private boolean resolving;
+
+        protected Proxy(IoSession session, Buffer handshake) {
+            this.session = Objects.requireNonNull(session, "No session");
+            this.handshake = Objects.requireNonNull(handshake, "No handshake buffer");
+        }
+
+        protected synchronized void onMessage(Readable message) throws IOException {
+            if (connected) {
+                ForwardingTunnelStatistics stats = channel.getTunnelStatistics();
+                if (stats != null) {
+                    stats.addBytesRead(message.available());
+                }
+                channel.getDataPump().write(session, message);
+                return;
+            }
+
+            if (rejected) {
+                return;     // the session is being closed
+            }
+
+            handshake.compact();
+            handshake.putBuffer(message);
+            if ((channel == null) && (!resolving)) {
+                onHandshakeData();
+            }   // else hold on to the data until the channel is open
+        }
+
+        protected synchronized void onHandshakeData() throws IOException {
+            if (rejected) {
+                return;
+            }
+            if (handshake.available() > MAX_HANDSHAKE_LENGTH) {
+                throw new IllegalStateException("Handshake message exceeds " + MAX_HANDSHAKE_LENGTH + " bytes");
+            }
+            handleHandshake(handshake);
+        }
+
+        /**
+         * Parses the available handshake data - <B>Note:</B> data must be consumed
+         * only once a full message is available
+         *
+         * @param buffer The {@link Buffer} holding the received handshake data
+         * @throws IOException If failed to handle the data
+         */
+        protected abstract void handleHandshake(Buffer buffer) throws IOException;
+
+        /**
+         * @return The reply to send if the channel was successfully opened
+         */
+        protected abstract Buffer prepareReply();
+
+        /**
+         * @param buffer The {@link #prepareReply() prepared} reply to be modified
+         * in order to indicate a failure
+         */
+        protected abstract void updateFailureReply(Buffer buffer);
+
+        /**
+         * Opens the channel to the requested address and prepares the reply
+         * while waiting for the open to complete
+         *
+         * @param host The requested host
+         * @param port The requested port
+         * @throws IOException If failed to send the request
+         */
+        @SuppressWarnings("synthetic-access")
+        protected void openChannel(String host, int port) throws IOException {
+            if (pendingOpens.incrementAndGet() > maxPendingOpens) {
+                pendingOpens.decrementAndGet();
+                log.warn("openChannel({}) rejected request for {}:{} - max. pending opens ({}) exceeded",
+                         session, host, port, maxPendingOpens);
+                sendFailureReply();
+                return;
+            }
+            pendingOpen.set(true);
+
+            SshdSocketAddress remote = new SshdSocketAddress(host, port);
+            channel = new TcpipClientChannel(TcpipClientChannel.Type.Direct, session, remote);
+            channel.setTunnelStatistics((ForwardingTunnelStatistics) session.getAttribute(ForwardingTunnelStatistics.class));
+            // no more data until the channel is open
+            session.suspendRead();
+            service.registerChannel(channel);
+            OpenFuture future = channel.open();
+            reply = prepareReply();
+            future.addListener(this::onChannelOpened);
+        }
+
+        /**
+         * Opens the channel to the requested host name - which is sent as-is for the
+         * server to resolve unless {@link #RESOLVE_HOST_NAMES local resolution} is
+         * enabled. In that case, if its address is not cached then it is resolved
+         * asynchronously and the channel is opened once done
+         *
+         * @param name The requested host name
+         * @param port The requested port
+         * @throws IOException If failed to start the resolution or send the request
+         */
+        @SuppressWarnings("synthetic-access")
+        protected void resolveAndOpenChannel(String name, int port) throws IOException {
+            if (!resolveHostNames) {
+                openChannel(name, port);
+                return;
+            }
+
+            InetAddress address = getCachedAddress(name);
+            if (address != null) {
+                openChannel(address.getHostAddress(), port);
+                return;
+            }
+
+            ExecutorService resolver = getDnsResolver();
+            resolving = true;
+            // no more data until the address is resolved and the channel is open
+            session.suspendRead();
+            resolver.execute(() -> onAddressResolved(name, port));
+        }
+
+        @SuppressWarnings("synthetic-access")
+        protected void onAddressResolved(String name, int port) {
+            InetAddress address = null;
+            try {
+                address = resolveAddress(name);
+            } catch (UnknownHostException e) {
+                log.warn("onAddressResolved({}) failed to resolve {}: {}", session, name, e.getMessage());
+            }
+
+            synchronized (this) {
+                resolving = false;
+                if (rejected || session.isClosing()) {
+                    return;
+                }
+                if (address == null) {
+                    sendUnresolvedReply();
+                    return;
+                }
+
+                try {
+                    openChannel(address.getHostAddress(), port);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("onAddressResolved({}) failed ({}) to open channel to {}:{}: {}",
+                             session, e.getClass().getSimpleName(), name, port, e.getMessage());
+                    session.close(true);
+                }
+            }
+        }
+
+        /**
+         * Sends the reply for a requested host name that could not be resolved
+         */
+        protected void sendUnresolvedReply() {
+            sendFailureReply();
+        }
+
+        @SuppressWarnings("synthetic-access")
+        protected synchronized void onChannelOpened(OpenFuture future) {
+            releasePendingOpen();
+
+            Throwable t = future.getException();
+            if ((t != null) || (!future.isOpened())) {
+                if (log.isDebugEnabled()) {
+                    log.debug("onChannelOpened({}) failed ({}) to open channel={}: {}", session,
+                              (t == null) ? null : t.getClass().getSimpleName(), channel, (t == null) ? null : t.getMessage());
+                }
+                service.unregisterChannel(channel);
+                channel.close(false);
+                updateFailureReply(reply);
+                writeReplyAndClose(reply);
+                return;
+            }
+
+            try {
+                session.writePacket(reply);
+                reply = null;
+                connected = true;
+
+                TcpipChannelDataPump pump = channel.getDataPump();
+                if (handshake.available() > 0) {
+                    ForwardingTunnelStatistics stats = channel.getTunnelStatistics();
+                    if (stats != null) {
+                        stats.addBytesRead(handshake.available());
+                    }
+                    pump.write(session, handshake);
+                }
+                handshake = null;
+
+                if (!pump.isPending()) {
+                    session.resumeRead();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("onChannelOpened({}) failed ({}) to start forwarding via channel={}: {}",
+                         session, e.getClass().getSimpleName(), channel, e.getMessage());
+                session.close(true);
+            }
+        }
+
+        protected void sendFailureReply() {
+            Buffer buffer = prepareReply();
+            updateFailureReply(buffer);
+            writeReplyAndClose(buffer);
+        }
+
+        @SuppressWarnings("synthetic-access")
+        protected void writeReplyAndClose(Buffer buffer) {
+            rejected = true;
+            try {
+                session.writePacket(buffer);
+            } catch (IOException | RuntimeException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("writeReplyAndClose({}) failed ({}) to send reply: {}",
+                              session, e.getClass().getSimpleName(), e.getMessage());
+                }
+            }
+            // graceful close flushes the reply before closing
+            session.close(false);
+        }
+
+        protected void releasePendingOpen() {
+            if (pendingOpen.compareAndSet(true, false)) {
+                pendingOpens.decrementAndGet();
+            }
         }
 
         @Override
         public void close() throws IOException {
+            releasePendingOpen();
             if (channel != null) {
                 channel.close(false);
             }
         }
 
-        protected int getUByte(Buffer buffer) {
-            return buffer.getUByte();
+        protected int getUByte(byte[] data, int offset) {
+            return data[offset] & 0xFF;
         }
 
-        protected int getUShort(Buffer buffer) {
-            return (getUByte(buffer) << Byte.SIZE) + getUByte(buffer);
+        protected int getUShort(byte[] data, int offset) {
+            return (getUByte(data, offset) << Byte.SIZE) + getUByte(data, offset + 1);
+        }
+
+        protected int indexOfNul(byte[] data, int from, int to) {
+            for (int index = from; index < to; index++) {
+                if (data[index] == 0) {
+                    return index;
+                }
+            }
+            return -1;
         }
     }
 
@@ -124,74 +554,79 @@ public class SocksProxy extends AbstractCloseable implements IoHandler {
      * @see <A HREF="https://en.wikipedia.org/wiki/SOCKS#SOCKS4">SOCKS4</A>
      */
     public class Socks4 extends Proxy {
-        public Socks4(IoSession session) {
-            super(session);
+        public Socks4(IoSession session, Buffer handshake) {
+            super(session, handshake);
         }
 
         @SuppressWarnings("synthetic-access")
         @Override
-        protected void onMessage(Buffer buffer) throws IOException {
-            if (channel == null) {
-                int cmd = buffer.getUByte();
-                if (cmd != 1) {
-                    throw new IllegalStateException("Unsupported socks command: " + cmd);
-                }
-                int port = getUShort(buffer);
-                String host = Integer.toString(getUByte(buffer)) + "."
-                        + Integer.toString(getUByte(buffer)) + "."
-                        + Integer.toString(getUByte(buffer)) + "."
-                        + Integer.toString(getUByte(buffer));
-                String userId = getNTString(buffer);
-                // Socks4a
-                if (host.startsWith("0.0.0.")) {
-                    host = getNTString(buffer);
+        protected void handleHandshake(Buffer buffer) throws IOException {
+            // CMD(1) + PORT(2) + IPV4(4) + USERID + NUL [+ HOST + NUL]
+            int start = buffer.rpos();
+            int end = buffer.wpos();
+            if ((end - start) < 7) {
+                return;
+            }
+
+            byte[] data = buffer.array();
+            int cmd = getUByte(data, start);
+            if (cmd != 1) {
+                throw new IllegalStateException("Unsupported socks command: " + cmd);
+            }
+
+            int userEnd = indexOfNul(data, start + 7, end);
+            if (userEnd < 0) {
+                return;
+            }
+
+            int port = getUShort(data, start + 1);
+            String userId = new String(data, start + 7, userEnd - start - 7, StandardCharsets.US_ASCII);
+            String host;
+            int next = userEnd + 1;
+            // Socks4a
+            if ((data[start + 3] == 0) && (data[start + 4] == 0) && (data[start + 5] == 0) && (data[start + 6] != 0)) {
+                int hostEnd = indexOfNul(data, next, end);
+                if (hostEnd < 0) {
+                    return;
                 }
+
+                host = new String(data, next, hostEnd - next, StandardCharsets.US_ASCII);
+                next = hostEnd + 1;
+                buffer.rpos(next);
                 if (log.isDebugEnabled()) {
-                    log.debug("Received socks4 connection request for {} to {}:{}", userId, host, port);
+                    log.debug("Received socks4a connection request for {} to {}:{}", userId, host, port);
                 }
 
-                SshdSocketAddress remote = new SshdSocketAddress(host, port);
-                channel = new TcpipClientChannel(TcpipClientChannel.Type.Direct, session, remote);
-                service.registerChannel(channel);
-                channel.open().addListener(this::onChannelOpened);
-            } else {
-                super.onMessage(buffer);
+                resolveAndOpenChannel(host, port);
+                return;
             }
+
+            buffer.rpos(next);
+            host = InetAddress.getByAddress(Arrays.copyOfRange(data, start + 3, start + 7)).getHostAddress();
+            if (log.isDebugEnabled()) {
+                log.debug("Received socks4 connection request for {} to {}:{}", userId, host, port);
+            }
+
+            openChannel(host, port);
         }
 
-        @SuppressWarnings("synthetic-access")
-        protected void onChannelOpened(OpenFuture future) {
+        @Override
+        protected Buffer prepareReply() {
             Buffer buffer = new ByteArrayBuffer(Long.SIZE, false);
             buffer.putByte((byte) 0x00);
-            Throwable t = future.getException();
-            if (t != null) {
-                service.unregisterChannel(channel);
-                channel.close(false);
-                buffer.putByte((byte) 0x5b);
-            } else {
-                buffer.putByte((byte) 0x5a);
-            }
+            buffer.putByte((byte) 0x5a);
             buffer.putByte((byte) 0x00);
             buffer.putByte((byte) 0x00);
             buffer.putByte((byte) 0x00);
             buffer.putByte((byte) 0x00);
             buffer.putByte((byte) 0x00);
             buffer.putByte((byte) 0x00);
-            try {
-                session.writePacket(buffer);
-            } catch (IOException e) {
-                // TODO Auto-generated catch block
-                log.error("Failed ({}) to send channel open packet for {}: {}", e.getClass().getSimpleName(), channel, e.getMessage());
-                throw new IllegalStateException("Failed to send packet", e);
-            }
+            return buffer;
         }
 
-        private String getNTString(Buffer buffer) {
-            StringBuilder sb = new StringBuilder();
-            for (char c = (char) getUByte(buffer); c != '\0'; c = (char) getUByte(buffer)) {
-                sb.append(c);
-            }
-            return sb.toString();
+        @Override
+        protected void updateFailureReply(Buffer buffer) {
+            buffer.array()[buffer.rpos() + 1] = (byte) 0x5b;
         }
     }
 
@@ -199,115 +634,142 @@ public class SocksProxy extends AbstractCloseable implements IoHandler {
      * @see <A HREF="https://en.wikipedia.org/wiki/SOCKS#SOCKS5">SOCKS5</A>
      */
     public class Socks5 extends Proxy {
-        private byte[] authMethods;
-        private Buffer response;
+        private boolean greeted;
+        private byte[] request;
 
-        public Socks5(IoSession session) {
-            super(session);
+        public Socks5(IoSession session, Buffer handshake) {
+            super(session, handshake);
         }
 
-        @SuppressWarnings("synthetic-access")
         @Override
-        protected void onMessage(Buffer buffer) throws IOException {
-            if (authMethods == null) {
-                int nbAuthMethods = getUByte(buffer);
-                authMethods = new byte[nbAuthMethods];
-                buffer.getRawBytes(authMethods);
-                boolean foundNoAuth = false;
-                for (int i = 0; i < nbAuthMethods; i++) {
-                    foundNoAuth |= authMethods[i] == 0;
-                }
-                buffer = new ByteArrayBuffer(Byte.SIZE, false);
-                buffer.putByte((byte) 0x05);
-                buffer.putByte((byte) (foundNoAuth ? 0x00 : 0xFF));
-                session.writePacket(buffer);
-                if (!foundNoAuth) {
-                    throw new IllegalStateException("Received socks5 greeting without NoAuth method");
-                } else {
-                    log.debug("Received socks5 greeting");
-                }
-            } else if (channel == null) {
-                response = buffer;
-                int version = getUByte(buffer);
-                if (version != 0x05) {
-                    throw new IllegalStateException("Unexpected version: " + version);
-                }
-                int cmd = buffer.getUByte();
-                if (cmd != 1) { // establish a TCP/IP stream connection
-                    throw new IllegalStateException("Unsupported socks command: " + cmd);
-                }
-                final int res = buffer.getUByte();
-                if (res != 0) {
-                    log.debug("No zero reserved value: " + res);
+        protected void handleHandshake(Buffer buffer) throws IOException {
+            if (!greeted) {
+                if (!handleGreeting(buffer)) {
+                    return;
                 }
+                greeted = true;
+            }
 
-                int type = buffer.getUByte();
-                String host;
-                if (type == 0x01) {
-                    host = Integer.toString(getUByte(buffer)) + "."
-                            + Integer.toString(getUByte(buffer)) + "."
-                            + Integer.toString(getUByte(buffer)) + "."
-                            + Integer.toString(getUByte(buffer));
-                } else if (type == 0x03) {
-                    host = getBLString(buffer);
-                } else if (type == 0x04) {
-                    host = Integer.toHexString(getUShort(buffer)) + ":"
-                            + Integer.toHexString(getUShort(buffer)) + ":"
-                            + Integer.toHexString(getUShort(buffer)) + ":"
-                            + Integer.toHexString(getUShort(buffer)) + ":"
-                            + Integer.toHexString(getUShort(buffer)) + ":"
-                            + Integer.toHexString(getUShort(buffer)) + ":"
-                            + Integer.toHexString(getUShort(buffer)) + ":"
-                            + Integer.toHexString(getUShort(buffer));
-                } else {
-                    throw new IllegalStateException("Unsupported address type: " + type);
-                }
-                int port = getUShort(buffer);
-                if (log.isDebugEnabled()) {
-                    log.debug("Received socks5 connection request to {}:{}", host, port);
-                }
-                SshdSocketAddress remote = new SshdSocketAddress(host, port);
-                channel = new TcpipClientChannel(TcpipClientChannel.Type.Direct, session, remote);
-                service.registerChannel(channel);
-                channel.open().addListener(this::onChannelOpened);
+            handleRequest(buffer);
+        }
+
+        @SuppressWarnings("synthetic-access")
+        protected boolean handleGreeting(Buffer buffer) throws IOException {
+            // NMETHODS(1) + METHODS (the version was consumed when the proxy was created)
+            int start = buffer.rpos();
+            int available = buffer.available();
+            if (available < 1) {
+                return false;
+            }
+
+            byte[] data = buffer.array();
+            int nbAuthMethods = getUByte(data, start);
+            if (available < (1 + nbAuthMethods)) {
+                return false;
+            }
+
+            boolean foundNoAuth = false;
+            for (int i = 0; i < nbAuthMethods; i++) {
+                foundNoAuth |= data[start + 1 + i] == 0;
+            }
+            buffer.rpos(start + 1 + nbAuthMethods);
+
+            Buffer response = new ByteArrayBuffer(Byte.SIZE, false);
+            response.putByte((byte) 0x05);
+            response.putByte((byte) (foundNoAuth ? 0x00 : 0xFF));
+            session.writePacket(response);
+            if (!foundNoAuth) {
+                throw new IllegalStateException("Received socks5 greeting without NoAuth method");
             } else {
-                log.debug("Received socks5 connection message");
-                super.onMessage(buffer);
+                log.debug("Received socks5 greeting");
             }
+
+            return true;
         }
 
         @SuppressWarnings("synthetic-access")
-        protected void onChannelOpened(OpenFuture future) {
-            int wpos = response.wpos();
-            response.rpos(0);
-            response.wpos(1);
-            Throwable t = future.getException();
-            if (t != null) {
-                service.unregisterChannel(channel);
-                channel.close(false);
-                response.putByte((byte) 0x01);
+        protected void handleRequest(Buffer buffer) throws IOException {
+            // VER(1) + CMD(1) + RSV(1) + ATYP(1) + ADDR + PORT(2)
+            int start = buffer.rpos();
+            int available = buffer.available();
+            if (available < 5) {
+                return;
+            }
+
+            byte[] data = buffer.array();
+            int version = getUByte(data, start);
+            if (version != 0x05) {
+                throw new IllegalStateException("Unexpected version: " + version);
+            }
+            int cmd = getUByte(data, start + 1);
+            if (cmd != 1) { // establish a TCP/IP stream connection
+                throw new IllegalStateException("Unsupported socks command: " + cmd);
+            }
+            int res = getUByte(data, start + 2);
+            if ((res != 0) && log.isDebugEnabled()) {
+                log.debug("No zero reserved value: " + res);
+            }
+
+            int type = getUByte(data, start + 3);
+            int addrOffset = start + 4;
+            int addrLength;
+            if (type == 0x01) {
+                addrLength = 4;
+            } else if (type == 0x03) {
+                addrLength = getUByte(data, addrOffset);
+                addrOffset++;
+            } else if (type == 0x04) {
+                addrLength = 16;
             } else {
-                response.putByte((byte) 0x00);
+                throw new IllegalStateException("Unsupported address type: " + type);
             }
-            response.wpos(wpos);
-            try {
-                session.writePacket(response);
-            } catch (IOException e) {
-                // TODO Auto-generated catch block
-                log.error("Failed ({}) to send channel open response for {}: {}", e.getClass().getSimpleName(), channel, e.getMessage());
-                throw new IllegalStateException("Failed to send packet", e);
+
+            int end = addrOffset + addrLength + 2;
+            if (end > buffer.wpos()) {
+                return;
+            }
+
+            int port = getUShort(data, end - 2);
+            // the reply echoes the request with the status code replaced
+            request = Arrays.copyOfRange(data, start, end);
+            buffer.rpos(end);
+
+            String host;
+            if (type == 0x03) {
+                host = new String(data, addrOffset, addrLength, StandardCharsets.US_ASCII);
+            } else {
+                host = InetAddress.getByAddress(Arrays.copyOfRange(data, addrOffset, addrOffset + addrLength)).getHostAddress();
             }
-        }
 
-        private String getBLString(Buffer buffer) {
-            int length = getUByte(buffer);
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < length; i++) {
-                sb.append((char) getUByte(buffer));
+            if (log.isDebugEnabled()) {
+                log.debug("Received socks5 connection request to {}:{}", host, port);
+            }
+
+            if (type == 0x03) {
+                resolveAndOpenChannel(host, port);
+            } else {
+                openChannel(host, port);
             }
-            return sb.toString();
         }
 
-    }
+        @Override
+        protected void sendUnresolvedReply() {
+            Buffer reply = prepareReply();
+            reply.array()[reply.rpos() + 1] = (byte) 0x04;  // host unreachable
+            writeReplyAndClose(reply);
+        }
+
+        @Override
+        protected Buffer prepareReply() {
+            Buffer buffer = new ByteArrayBuffer(request.length, false);
+            buffer.putRawBytes(request);
+            buffer.array()[buffer.rpos() + 1] = (byte) 0x00;
+            return buffer;
+        }
 
+        @Override
+        protected void updateFailureReply(Buffer buffer) {
+            buffer.array()[buffer.rpos() + 1] = (byte) 0x01;
+        }
+    }
 }
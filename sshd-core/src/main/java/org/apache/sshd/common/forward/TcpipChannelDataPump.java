@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.common.forward;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.channel.AbstractChannel;
+import org.apache.sshd.common.channel.ChannelHolder;
+import org.apache.sshd.common.channel.Window;
+import org.apache.sshd.common.io.IoSession;
+import org.apache.sshd.common.io.IoWriteFuture;
+import org.apache.sshd.common.io.PacketWriter;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.util.Readable;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.BufferUtils;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+
+/**
+ * Moves data read from a forwarded socket into {@code SSH_MSG_CHANNEL_DATA} packets
+ * of a TCP/IP forwarding channel, without blocking the I/O thread:
+ * <UL>
+ *      <LI>
+ *      The socket data is copied directly into the (reserved) SSH packet buffer
+ *      - no intermediate copies.
+ *      </LI>
+ *
+ *      <LI>
+ *      When the remote channel window is exhausted, reading from the socket is
+ *      {@link IoSession#suspendRead() suspended} and resumed once the window is
+ *      {@link #onWindowExpanded() expanded}.
+ *      </LI>
+ *
+ *      <LI>
+ *      Packet buffers - as well as the buffers used to write data to the socket -
+ *      are recycled once written.
+ *      </LI>
+ * </UL>
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class TcpipChannelDataPump extends AbstractLoggingBean implements ChannelHolder {
+    /**
+     * Max. number of recycled buffers kept by each forwarding channel
+     */
+    public static final String MAX_RECYCLED_BUFFERS_PROP = "tcpip-forward-max-recycled-buffers";
+    public static final int DEFAULT_MAX_RECYCLED_BUFFERS = 8;
+
+    private final AbstractChannel channelInstance;
+    private final PacketWriter packetWriter;
+    private final int maxRecycledBuffers;
+    private final Queue<Buffer> recycledBuffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numRecycled = new AtomicInteger(0);
+    private Buffer pending;
+    private IoSession suspended;
+
+    public TcpipChannelDataPump(AbstractChannel channel) {
+        this.channelInstance = Objects.requireNonNull(channel, "No channel");
+        this.packetWriter = channelInstance.resolveChannelStreamPacketWriter(channel, SshConstants.SSH_MSG_CHANNEL_DATA);
+        this.maxRecycledBuffers = channel.getIntProperty(MAX_RECYCLED_BUFFERS_PROP, DEFAULT_MAX_RECYCLED_BUFFERS);
+    }
+
+    @Override
+    public AbstractChannel getChannel() {
+        return channelInstance;
+    }
+
+    /**
+     * @return {@code true} if some data is waiting for the remote window to expand
+     */
+    public synchronized boolean isPending() {
+        return pending != null;
+    }
+
+    /**
+     * Sends as much of the data as allowed by the remote window - if some data
+     * remains, it is kept aside and reading from the socket is suspended until
+     * the remote window is expanded.
+     *
+     * @param ioSession The {@link IoSession} the data was read from
+     * @param message The data read from the socket - <B>Note:</B> may be re-used
+     * by the caller once this method returns
+     * @throws IOException If failed to send the data
+     */
+    public synchronized void write(IoSession ioSession, Readable message) throws IOException {
+        if (pending != null) {
+            // can happen if some data has already been read when the socket was suspended
+            pending.compact();
+            pending.putBuffer(message);
+            return;
+        }
+
+        sendAvailable(message);
+
+        int remaining = message.available();
+        if (remaining <= 0) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("write({}) suspend reading from {} - remote window exhausted with {} bytes remaining",
+                      this, ioSession, remaining);
+        }
+
+        pending = new ByteArrayBuffer(remaining, false);
+        pending.putBuffer(message);
+        suspended = ioSession;
+        ioSession.suspendRead();
+    }
+
+    /**
+     * Invoked when the remote window has been expanded in order to send
+     * any pending data and resume reading from the socket
+     *
+     * @throws IOException If failed to send the pending data
+     */
+    public void onWindowExpanded() throws IOException {
+        IoSession resumed;
+        synchronized (this) {
+            if (pending == null) {
+                return;
+            }
+
+            sendAvailable(pending);
+            if (pending.available() > 0) {
+                return;
+            }
+
+            resumed = suspended;
+            pending = null;
+            suspended = null;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("onWindowExpanded({}) resume reading from {}", this, resumed);
+        }
+        // resume outside the lock since the next read may complete in this thread
+        resumed.resumeRead();
+    }
+
+    protected void sendAvailable(Readable data) throws IOException {
+        AbstractChannel channel = getChannel();
+        Window remoteWindow = channel.getRemoteWindow();
+        Session session = channel.getSession();
+        for (int total = data.available(); total > 0; total = data.available()) {
+            int length = (int) Math.min(Math.min(remoteWindow.getSize(), total), remoteWindow.getPacketSize());
+            if (length <= 0) {
+                return;
+            }
+
+            Buffer buf = acquireBuffer();
+            buf = (buf == null)
+                ? session.createBuffer(SshConstants.SSH_MSG_CHANNEL_DATA, length + 12)
+                : session.prepareBuffer(SshConstants.SSH_MSG_CHANNEL_DATA, buf);
+            buf.putInt(channel.getRecipient());
+            buf.putInt(length);
+            // read the data directly into its final location in the packet
+            int wpos = buf.wpos();
+            buf.ensureCapacity(length, BufferUtils.DEFAULT_BUFFER_GROWTH_FACTOR);
+            data.getRawBytes(buf.array(), wpos, length);
+            buf.wpos(wpos + length);
+            remoteWindow.consume(length);
+
+            Buffer packet = buf;
+            IoWriteFuture future = packetWriter.writePacket(packet);
+            future.addListener(f -> {
+                if (f.isWritten()) {
+                    releaseBuffer(packet);
+                } else {
+                    handleWriteFailure(length, f.getException());
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies data to be written to the forwarded socket into a (recycled)
+     * buffer since the original data buffer may be re-used once the
+     * call returns.
+     *
+     * @param data The data bytes
+     * @param off Offset of data in bytes
+     * @param len Number of data bytes
+     * @return A {@link Buffer} containing the data - should be {@link #releaseBuffer(Buffer) released}
+     * once written
+     */
+    public Buffer copyForWrite(byte[] data, int off, int len) {
+        Buffer buf = acquireBuffer();
+        if (buf == null) {
+            return ByteArrayBuffer.getCompactClone(data, off, len);
+        }
+
+        buf.rpos(0);
+        buf.wpos(0);
+        buf.putRawBytes(data, off, len);
+        return buf;
+    }
+
+    protected Buffer acquireBuffer() {
+        Buffer buf = recycledBuffers.poll();
+        if (buf != null) {
+            numRecycled.decrementAndGet();
+        }
+        return buf;
+    }
+
+    /**
+     * @param buf A {@link Buffer} that is no longer in use - if the max. number of
+     * recycled buffers has not been reached it will be re-used for subsequent writes
+     */
+    public void releaseBuffer(Buffer buf) {
+        if ((buf == null) || (numRecycled.incrementAndGet() > maxRecycledBuffers)) {
+            numRecycled.decrementAndGet();
+            return;
+        }
+
+        recycledBuffers.offer(buf);
+    }
+
+    protected void handleWriteFailure(int length, Throwable reason) {
+        AbstractChannel channel = getChannel();
+        if (log.isDebugEnabled()) {
+            log.debug("handleWriteFailure({}) failed ({}) to write len={}: {}",
+                      this, reason.getClass().getSimpleName(), length, reason.getMessage());
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("handleWriteFailure(" + this + ") len=" + length + " write failure details", reason);
+        }
+
+        channel.close(true);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + getChannel() + "]";
+    }
+}
@@ -74,6 +74,8 @@ public class TcpipClientChannel extends AbstractClientChannel {
     private final Type typeEnum;
     private final IoSession serverSession;
     private final SshdSocketAddress remote;
+    private TcpipChannelDataPump dataPump;
+    private ForwardingTunnelStatistics tunnelStatistics;
 
     public TcpipClientChannel(Type type, IoSession serverSession, SshdSocketAddress remote) {
         super(Objects.requireNonNull(type, "No type specified").getName());
@@ -82,6 +84,27 @@ public class TcpipClientChannel extends AbstractClientChannel {
         this.remote = remote;
     }
 
+    /**
+     * @return The {@link TcpipChannelDataPump} used to send the data read from the
+     * forwarded socket without blocking the I/O thread - {@code null} until channel
+     * is opened
+     */
+    public TcpipChannelDataPump getDataPump() {
+        return dataPump;
+    }
+
+    /**
+     * @return The {@link ForwardingTunnelStatistics} of the tunnel this channel
+     * belongs to - {@code null} if not tracked
+     */
+    public ForwardingTunnelStatistics getTunnelStatistics() {
+        return tunnelStatistics;
+    }
+
+    public void setTunnelStatistics(ForwardingTunnelStatistics tunnelStatistics) {
+        this.tunnelStatistics = tunnelStatistics;
+    }
+
     public OpenFuture getOpenFuture() {
         return openFuture;
     }
@@ -145,6 +168,7 @@ public class TcpipClientChannel extends AbstractClientChannel {
         }
         out = new ChannelOutputStream(this, getRemoteWindow(), log, SshConstants.SSH_MSG_CHANNEL_DATA, true);
         invertedIn = out;
+        dataPump = new TcpipChannelDataPump(this);
     }
 
     @Override
@@ -152,14 +176,60 @@ public class TcpipClientChannel extends AbstractClientChannel {
         return builder().sequential(serverSession, super.getInnerCloseable()).build();
     }
 
+    @Override
+    public void handleWindowAdjust(Buffer buffer) throws IOException {
+        super.handleWindowAdjust(buffer);
+        if (dataPump != null) {
+            dataPump.onWindowExpanded();
+        }
+    }
+
     @Override
     protected synchronized void doWriteData(byte[] data, int off, long len) throws IOException {
         ValidateUtils.checkTrue(len <= Integer.MAX_VALUE, "Data length exceeds int boundaries: %d", len);
         // Make sure we copy the data as the incoming buffer may be reused
-        Buffer buf = ByteArrayBuffer.getCompactClone(data, off, (int) len);
-        Window wLocal = getLocalWindow();
-        wLocal.consumeAndCheck(len);
-        serverSession.writePacket(buf);
+        TcpipChannelDataPump pump = getDataPump();
+        Buffer buf = (pump == null) ? ByteArrayBuffer.getCompactClone(data, off, (int) len) : pump.copyForWrite(data, off, (int) len);
+        // consume the local window only once the data has been written so the peer cannot overrun the socket
+        serverSession.writePacket(buf).addListener(future -> {
+            if (future.isWritten()) {
+                handleWriteDataSuccess(len);
+                if (pump != null) {
+                    pump.releaseBuffer(buf);
+                }
+            } else {
+                handleWriteDataFailure(len, future.getException());
+            }
+        });
+    }
+
+    protected void handleWriteDataSuccess(long len) {
+        try {
+            ForwardingTunnelStatistics stats = getTunnelStatistics();
+            if (stats != null) {
+                stats.addBytesWritten(len);
+            }
+
+            Window wLocal = getLocalWindow();
+            wLocal.consumeAndCheck(len);
+        } catch (Throwable e) {
+            if (log.isDebugEnabled()) {
+                log.debug("handleWriteDataSuccess({}) failed ({}) to consume len={}: {}",
+                          this, e.getClass().getSimpleName(), len, e.getMessage());
+            }
+            getSession().exceptionCaught(e);
+        }
+    }
+
+    protected void handleWriteDataFailure(long len, Throwable t) {
+        if (log.isDebugEnabled()) {
+            log.debug("handleWriteDataFailure({}) failed ({}) to write len={}: {}",
+                      this, t.getClass().getSimpleName(), len, t.getMessage());
+        }
+
+        if (serverSession.isOpen()) {
+            close(false);
+        }
     }
 
     @Override
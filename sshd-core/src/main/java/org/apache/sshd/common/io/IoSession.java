@@ -88,4 +88,24 @@ public interface IoSession extends PacketWriter, Closeable {
      * @return the {@link IoService} that created this session.
      */
     IoService getService();
+
+    /**
+     * Suspends reading incoming data - i.e., no more data will be delivered
+     * to the {@link IoHandler} until {@link #resumeRead()} is invoked. Used
+     * for flow control when the consumer of the data cannot keep up with it.
+     * <B>Note:</B> data that has already been read may still be delivered.
+     * The default implementation does nothing - i.e., implementations that do
+     * not support it keep delivering the data without flow control.
+     */
+    default void suspendRead() {
+        // ignored
+    }
+
+    /**
+     * Resumes reading incoming data after a previous {@link #suspendRead()} call.
+     * Ignored if reading is not suspended. The default implementation does nothing.
+     */
+    default void resumeRead() {
+        // ignored
+    }
 }
@@ -65,6 +65,9 @@ public class Nio2Session extends AbstractCloseable implements IoSession {
     private final FactoryManager manager;
     private final Queue<Nio2DefaultIoWriteFuture> writes = new LinkedTransferQueue<>();
     private final AtomicReference<Nio2DefaultIoWriteFuture> currentWrite = new AtomicReference<>();
+    private final Object readSuspensionLock = new Object();
+    private boolean readSuspended;
+    private Runnable suspendedReadCycle;
 
     public Nio2Session(Nio2Service service, FactoryManager manager, IoHandler handler, AsynchronousSocketChannel socket) throws IOException {
         this.service = Objects.requireNonNull(service, "No service instance");
@@ -151,6 +154,35 @@ public class Nio2Session extends AbstractCloseable implements IoSession {
         }
     }
 
+    @Override
+    public void suspendRead() {
+        synchronized (readSuspensionLock) {
+            readSuspended = true;
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("suspendRead({})", this);
+        }
+    }
+
+    @Override
+    public void resumeRead() {
+        Runnable readCycle;
+        synchronized (readSuspensionLock) {
+            readSuspended = false;
+            readCycle = suspendedReadCycle;
+            suspendedReadCycle = null;
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("resumeRead({}) pending={}", this, readCycle != null);
+        }
+
+        if ((readCycle != null) && (!closeFuture.isClosed())) {
+            readCycle.run();
+        }
+    }
+
     @Override
     public IoWriteFuture writePacket(Buffer buffer) throws IOException {
         if (log.isDebugEnabled()) {
@@ -340,6 +372,13 @@ public class Nio2Session extends AbstractCloseable implements IoSession {
                 if (!closeFuture.isClosed()) {
                     // re-use reference for next iteration since we finished processing it
                     buffer.clear();
+                    synchronized (readSuspensionLock) {
+                        if (readSuspended) {
+                            // the next read cycle will be issued when reading is resumed
+                            suspendedReadCycle = () -> doReadCycle(buffer, completionHandler);
+                            return;
+                        }
+                    }
                     doReadCycle(buffer, completionHandler);
                 } else {
                     if (debugEnabled) {
@@ -1404,7 +1404,7 @@ public abstract class AbstractSession extends AbstractKexFactoryManager implemen
                 int l = buffer.wpos();
                 buffer.wpos(l + macSize);
                 outMac.updateUInt(seqo);
-                outMac.update(buffer.array(), off, l);
+                outMac.update(buffer.array(), off, l - off);
                 outMac.doFinal(buffer.array(), l);
             }
             // Encrypt packet, excluding mac
@@ -19,7 +19,6 @@
 package org.apache.sshd.server.forward;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.ConnectException;
 import java.util.Collection;
 import java.util.Objects;
@@ -32,9 +31,9 @@ import org.apache.sshd.common.RuntimeSshException;
 import org.apache.sshd.common.SshConstants;
 import org.apache.sshd.common.channel.Channel;
 import org.apache.sshd.common.channel.ChannelFactory;
-import org.apache.sshd.common.channel.ChannelOutputStream;
 import org.apache.sshd.common.channel.Window;
 import org.apache.sshd.common.channel.exception.SshChannelOpenException;
+import org.apache.sshd.common.forward.TcpipChannelDataPump;
 import org.apache.sshd.common.future.CloseFuture;
 import org.apache.sshd.common.io.IoConnectFuture;
 import org.apache.sshd.common.io.IoConnector;
@@ -46,7 +45,6 @@ import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.Readable;
 import org.apache.sshd.common.util.ValidateUtils;
 import org.apache.sshd.common.util.buffer.Buffer;
-import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
 import org.apache.sshd.common.util.net.SshdSocketAddress;
 import org.apache.sshd.common.util.threads.ExecutorServiceCarrier;
 import org.apache.sshd.common.util.threads.ThreadUtils;
@@ -97,7 +95,7 @@ public class TcpipServerChannel extends AbstractServerChannel {
     private final ForwardingFilter.Type type;
     private IoConnector connector;
     private IoSession ioSession;
-    private OutputStream out;
+    private TcpipChannelDataPump dataPump;
 
     public TcpipServerChannel(ForwardingFilter.Type type) {
         this.type = Objects.requireNonNull(type, "No channel type specified");
@@ -159,8 +157,7 @@ public class TcpipServerChannel extends AbstractServerChannel {
             throw new RuntimeSshException(e);
         }
 
-        // TODO: revisit for better threading. Use async io ?
-        out = new ChannelOutputStream(this, getRemoteWindow(), log, SshConstants.SSH_MSG_CHANNEL_DATA, true);
+        dataPump = new TcpipChannelDataPump(this);
         IoHandler handler = new IoHandler() {
             @Override
             @SuppressWarnings("synthetic-access")
@@ -170,10 +167,7 @@ public class TcpipServerChannel extends AbstractServerChannel {
                         log.debug("doInit({}) Ignoring write to channel in CLOSING state", TcpipServerChannel.this);
                     }
                 } else {
-                    Buffer buffer = new ByteArrayBuffer(message.available() + Long.SIZE, false);
-                    buffer.putBuffer(message);
-                    out.write(buffer.array(), buffer.rpos(), buffer.available());
-                    out.flush();
+                    dataPump.write(session, message);
                 }
             }
 
@@ -264,19 +258,20 @@ public class TcpipServerChannel extends AbstractServerChannel {
         boolean debugEnabled = log.isDebugEnabled();
         /*
          * In case of graceful shutdown (e.g. when the remote channel is gently closed)
-         * we also need to close the ChannelOutputStream which flushes remaining buffer
-         * and sends SSH_MSG_CHANNEL_EOF back to the client.
+         * we also need to send SSH_MSG_CHANNEL_EOF back to the client. Note: reading
+         * from the socket is suspended while data is pending, so the socket's EOF
+         * is detected only after all the data has been sent.
          */
-        if ((!immediately) && (out != null)) {
+        if ((!immediately) && (dataPump != null)) {
             try {
                 if (debugEnabled) {
-                    log.debug("Closing channel output stream of {}", this);
+                    log.debug("Sending EOF for {} - pending data={}", this, dataPump.isPending());
                 }
 
-                out.close();
+                sendEof();
             } catch (IOException | RuntimeException ignored) {
                 if (debugEnabled) {
-                    log.debug("{} while closing channel output stream of {}: {}",
+                    log.debug("{} while sending EOF for {}: {}",
                         ignored.getClass().getSimpleName(), this, ignored.getMessage());
                 }
             }
@@ -318,14 +313,23 @@ public class TcpipServerChannel extends AbstractServerChannel {
         }).build().close(false);
     }
 
+    @Override
+    public void handleWindowAdjust(Buffer buffer) throws IOException {
+        super.handleWindowAdjust(buffer);
+        if (dataPump != null) {
+            dataPump.onWindowExpanded();
+        }
+    }
+
     @Override
     protected void doWriteData(byte[] data, int off, long len) throws IOException {
         ValidateUtils.checkTrue(len <= Integer.MAX_VALUE, "Data length exceeds int boundaries: %d", len);
         // Make sure we copy the data as the incoming buffer may be reused
-        Buffer buf = ByteArrayBuffer.getCompactClone(data, off, (int) len);
+        Buffer buf = dataPump.copyForWrite(data, off, (int) len);
         ioSession.writePacket(buf).addListener(future -> {
             if (future.isWritten()) {
                 handleWriteDataSuccess(SshConstants.SSH_MSG_CHANNEL_DATA, buf.array(), 0, (int) len);
+                dataPump.releaseBuffer(buf);
             } else {
                 handleWriteDataFailure(SshConstants.SSH_MSG_CHANNEL_DATA, buf.array(), 0, (int) len, future.getException());
             }
@@ -65,4 +65,19 @@ public interface InvertedShell extends CommandLifecycle, SessionAware {
      * @return the exit value of the shell
      */
     int exitValue();
+
+    /**
+     * Waits for the shell to terminate. The default implementation polls
+     * {@link #isAlive()} - implementations that can block until the underlying
+     * process terminates should override it.
+     *
+     * @return the exit value of the shell
+     * @throws InterruptedException If interrupted while waiting
+     */
+    default int waitFor() throws InterruptedException {
+        while (isAlive()) {
+            Thread.sleep(10L);
+        }
+        return exitValue();
+    }
 }
@@ -22,8 +22,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.sshd.common.RuntimeSshException;
 import org.apache.sshd.common.util.GenericUtils;
@@ -43,6 +47,15 @@ import org.apache.sshd.server.session.ServerSession;
  * processes.
  * When starting the shell, this wrapper will also create a thread used
  * to pump the streams and also to check if the shell is alive.
+ * <P>
+ * If created in <U>blocking</U> pumps mode, each of the shell's streams is
+ * pumped by its own task using blocking reads, so that data flows with no
+ * added latency and an idle shell consumes no CPU. Another task waits for the
+ * shell to terminate and reports its exit - even if its streams are kept open
+ * (e.g., by a child process it started). In this mode the executor must be able
+ * to run (at least) 4 tasks concurrently - which is why it is recommended to share
+ * a cached pool between all the shells - see {@link ProcessShellFactory#getExecutorService()}.
+ * </P>
  *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
@@ -65,6 +78,20 @@ public class InvertedShellWrapper extends AbstractLoggingBean implements Command
      */
     public static final long DEFAULT_PUMP_SLEEP_TIME = 1L;
 
+    /**
+     * Time (millis) to wait - in <U>blocking</U> pumps mode - for the shell's output
+     * streams to be exhausted once it has terminated. The wait is extended as long as
+     * data is still being pumped, but if the streams remain idle and open (e.g.,
+     * held by a child process) for this long then the exit is reported regardless.
+     * Must be <U>positive</U>
+     */
+    public static final String EXIT_DRAIN_TIMEOUT = "inverted-shell-wrapper-exit-drain-timeout";
+
+    /**
+     * Default value for {@link #EXIT_DRAIN_TIMEOUT} if none set
+     */
+    public static final long DEFAULT_EXIT_DRAIN_TIMEOUT = TimeUnit.SECONDS.toMillis(1L);
+
     private final InvertedShell shell;
     private final Executor executor;
     private final int bufferSize;
@@ -77,6 +104,11 @@ public class InvertedShellWrapper extends AbstractLoggingBean implements Command
     private ExitCallback callback;
     private boolean shutdownExecutor;
     private long pumpSleepTime = DEFAULT_PUMP_SLEEP_TIME;
+    private long exitDrainTimeout = DEFAULT_EXIT_DRAIN_TIMEOUT;
+    private final boolean blockingPumps;
+    private final AtomicBoolean exited = new AtomicBoolean(false);
+    private final CountDownLatch outputPumps = new CountDownLatch(2);
+    private final AtomicLong pumpedOutput = new AtomicLong(0L);
 
     /**
      * Auto-allocates an {@link Executor} in order to create the streams pump thread
@@ -107,13 +139,42 @@ public class InvertedShellWrapper extends AbstractLoggingBean implements Command
      * @param shutdownExecutor If {@code true} the executor is shut down when shell wrapper is {@link #destroy()}-ed.
      *                         Ignored if executor service auto-allocated
      * @param bufferSize       Buffer size to use - must be above min. size ({@link Byte#SIZE})
+     * @see #InvertedShellWrapper(InvertedShell, Executor, boolean, int, boolean)
      */
     public InvertedShellWrapper(InvertedShell shell, Executor executor, boolean shutdownExecutor, int bufferSize) {
+        this(shell, executor, shutdownExecutor, bufferSize, false);
+    }
+
+    /**
+     * @param shell            The {@link InvertedShell}
+     * @param executor         The {@link Executor} to use in order to create the streams pump thread(s).
+     *                         If {@code null} one is auto-allocated and shutdown when wrapper is {@link #destroy()}-ed.
+     * @param shutdownExecutor If {@code true} the executor is shut down when shell wrapper is {@link #destroy()}-ed.
+     *                         Ignored if executor service auto-allocated
+     * @param bufferSize       Buffer size to use - must be above min. size ({@link Byte#SIZE})
+     * @param blockingPumps    If {@code true} then each stream is pumped by a separate task using
+     *                         blocking reads instead of the &quot;busy-wait&quot; polling loop. <B>Note:</B>
+     *                         in this case the executor must be able to run at least 4 tasks concurrently
+     */
+    public InvertedShellWrapper(InvertedShell shell, Executor executor, boolean shutdownExecutor, int bufferSize, boolean blockingPumps) {
         this.shell = Objects.requireNonNull(shell, "No shell");
-        this.executor = (executor == null) ? ThreadUtils.newSingleThreadExecutor("shell[0x" + Integer.toHexString(shell.hashCode()) + "]") : executor;
+        if (executor == null) {
+            String poolName = "shell[0x" + Integer.toHexString(shell.hashCode()) + "]";
+            this.executor = blockingPumps ? ThreadUtils.newCachedThreadPool(poolName) : ThreadUtils.newSingleThreadExecutor(poolName);
+        } else {
+            this.executor = executor;
+        }
         ValidateUtils.checkTrue(bufferSize > Byte.SIZE, "Copy buffer size too small: %d", bufferSize);
         this.bufferSize = bufferSize;
         this.shutdownExecutor = (executor == null) || shutdownExecutor;
+        this.blockingPumps = blockingPumps;
+    }
+
+    /**
+     * @return {@code true} if each stream is pumped by a separate task using blocking reads
+     */
+    public boolean isBlockingPumps() {
+        return blockingPumps;
     }
 
     @Override
@@ -140,6 +201,8 @@ public class InvertedShellWrapper extends AbstractLoggingBean implements Command
     public void setSession(ServerSession session) {
         pumpSleepTime = session.getLongProperty(PUMP_SLEEP_TIME, DEFAULT_PUMP_SLEEP_TIME);
         ValidateUtils.checkTrue(pumpSleepTime > 0L, "Invalid " + PUMP_SLEEP_TIME + ": %d", pumpSleepTime);
+        exitDrainTimeout = session.getLongProperty(EXIT_DRAIN_TIMEOUT, DEFAULT_EXIT_DRAIN_TIMEOUT);
+        ValidateUtils.checkTrue(exitDrainTimeout > 0L, "Invalid " + EXIT_DRAIN_TIMEOUT + ": %d", exitDrainTimeout);
         shell.setSession(session);
     }
 
@@ -150,11 +213,21 @@ public class InvertedShellWrapper extends AbstractLoggingBean implements Command
         shellIn = shell.getInputStream();
         shellOut = shell.getOutputStream();
         shellErr = shell.getErrorStream();
-        executor.execute(this::pumpStreams);
+        if (blockingPumps) {
+            executor.execute(this::pumpInputStream);
+            executor.execute(() -> pumpOutputStream(shellOut, out));
+            executor.execute(() -> pumpOutputStream(shellErr, err));
+            executor.execute(this::awaitShellExit);
+        } else {
+            executor.execute(this::pumpStreams);
+        }
     }
 
     @Override
     public synchronized void destroy() throws Exception {
+        // any pumping errors from here on are due to the shell being destroyed
+        exited.set(true);
+
         boolean debugEnabled = log.isDebugEnabled();
         Throwable err = null;
         try {
@@ -221,23 +294,121 @@ public class InvertedShellWrapper extends AbstractLoggingBean implements Command
                 Thread.sleep(pumpSleepTime);
             }
         } catch (Throwable e) {
-            boolean debugEnabled = log.isDebugEnabled();
-            try {
-                shell.destroy();
-            } catch (Throwable err) {
-                log.warn("pumpStreams({}) failed ({}) to destroy shell: {}",
-                         this, e.getClass().getSimpleName(), e.getMessage());
-                if (debugEnabled) {
-                    log.debug("pumpStreams(" + this + ") shell destruction failure details", err);
+            handlePumpingFailure(e);
+        }
+    }
+
+    /**
+     * Pumps the client's input into the shell using blocking reads. Once the client
+     * signals EOF the shell's input stream is closed. Failures are ignored if the
+     * shell is no longer alive - e.g., &quot;broken pipe&quot; errors
+     */
+    protected void pumpInputStream() {
+        try {
+            for (byte[] buffer = new byte[bufferSize];;) {
+                int len = in.read(buffer);
+                if (len < 0) {
+                    break;
+                }
+                if (len > 0) {
+                    shellIn.write(buffer, 0, len);
+                    shellIn.flush();
                 }
             }
 
-            int exitValue = shell.exitValue();
+            shellIn.close();
+        } catch (Throwable e) {
+            if (exited.get() || (!shell.isAlive())) {
+                if (log.isDebugEnabled()) {
+                    log.debug("pumpInputStream({}) ignore {} after shell exit: {}",
+                              this, e.getClass().getSimpleName(), e.getMessage());
+                }
+            } else {
+                handlePumpingFailure(e);
+            }
+        }
+    }
+
+    /**
+     * Pumps one of the shell's outputs using blocking reads until it is exhausted
+     *
+     * @param src The shell's output or error stream
+     * @param dst The client's matching stream
+     * @see #awaitShellExit()
+     */
+    protected void pumpOutputStream(InputStream src, OutputStream dst) {
+        try {
+            for (byte[] buffer = new byte[bufferSize];;) {
+                int len = src.read(buffer);
+                if (len < 0) {
+                    break;
+                }
+                if (len > 0) {
+                    dst.write(buffer, 0, len);
+                    dst.flush();
+                    pumpedOutput.addAndGet(len);
+                }
+            }
+        } catch (Throwable e) {
+            handlePumpingFailure(e);
+        } finally {
+            outputPumps.countDown();
+        }
+    }
+
+    /**
+     * Waits for the shell to terminate and invokes the exit callback with its exit
+     * value - once its outputs have been exhausted, or have been idle for the
+     * {@link #EXIT_DRAIN_TIMEOUT} (e.g., since a child process keeps them open).
+     */
+    protected void awaitShellExit() {
+        try {
+            int exitValue = shell.waitFor();
+            for (long pumped = pumpedOutput.get(); !outputPumps.await(exitDrainTimeout, TimeUnit.MILLISECONDS);) {
+                long current = pumpedOutput.get();
+                if (current == pumped) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("awaitShellExit({}) outputs still open {} msec. after exit={}",
+                                  this, exitDrainTimeout, exitValue);
+                    }
+                    break;
+                }
+                pumped = current;
+            }
+
+            if (exited.compareAndSet(false, true)) {
+                callback.onExit(exitValue);
+            }
+        } catch (Throwable e) {
+            handlePumpingFailure(e);
+        }
+    }
+
+    protected void handlePumpingFailure(Throwable e) {
+        boolean debugEnabled = log.isDebugEnabled();
+        if (blockingPumps && (!exited.compareAndSet(false, true))) {
             if (debugEnabled) {
-                log.debug(e.getClass().getSimpleName() + " while pumping the streams (exit=" + exitValue + "): " + e.getMessage(), e);
+                log.debug("handlePumpingFailure({}) ignore {} after exit: {}",
+                          this, e.getClass().getSimpleName(), e.getMessage());
             }
-            callback.onExit(exitValue, e.getClass().getSimpleName());
+            return;
+        }
+
+        try {
+            shell.destroy();
+        } catch (Throwable err) {
+            log.warn("pumpStreams({}) failed ({}) to destroy shell: {}",
+                     this, e.getClass().getSimpleName(), e.getMessage());
+            if (debugEnabled) {
+                log.debug("pumpStreams(" + this + ") shell destruction failure details", err);
+            }
+        }
+
+        int exitValue = shell.exitValue();
+        if (debugEnabled) {
+            log.debug(e.getClass().getSimpleName() + " while pumping the streams (exit=" + exitValue + "): " + e.getMessage(), e);
         }
+        callback.onExit(exitValue, e.getClass().getSimpleName());
     }
 
     protected boolean pumpStream(InputStream in, OutputStream out, byte[] buffer) throws IOException {
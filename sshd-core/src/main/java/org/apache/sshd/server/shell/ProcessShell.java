@@ -162,6 +162,11 @@ public class ProcessShell extends AbstractLoggingBean implements InvertedShell,
         }
     }
 
+    @Override
+    public int waitFor() throws InterruptedException {
+        return process.waitFor();
+    }
+
     @Override
     public void destroy() {
         // NOTE !!! DO NOT NULL-IFY THE PROCESS SINCE "exitValue" is called subsequently
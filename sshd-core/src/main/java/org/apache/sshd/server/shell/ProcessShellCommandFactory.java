@@ -19,7 +19,8 @@
 
 package org.apache.sshd.server.shell;
 
-import org.apache.sshd.common.Factory;
+import java.util.concurrent.ExecutorService;
+
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.server.command.Command;
 import org.apache.sshd.server.command.CommandFactory;
@@ -33,10 +34,30 @@ public class ProcessShellCommandFactory implements CommandFactory {
     public static final String FACTORY_NAME = "shell-command";
     public static final ProcessShellCommandFactory INSTANCE = new ProcessShellCommandFactory();
 
+    private ExecutorService executorService;
+
     public ProcessShellCommandFactory() {
         super();
     }
 
+    /**
+     * @return The {@link ExecutorService} used to pump the streams of the executed
+     * commands - if {@code null} then the {@link ProcessShellFactory#getDefaultPumpingExecutor()
+     * default} shared one is used
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * @param executorService The {@link ExecutorService} used to pump the streams of the executed
+     * commands - shared by all commands and never shut down by them
+     * @see ProcessShellFactory#setExecutorService(ExecutorService)
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
     @Override
     public String getName() {
         return FACTORY_NAME;
@@ -44,7 +65,8 @@ public class ProcessShellCommandFactory implements CommandFactory {
 
     @Override
     public Command createCommand(String command) {
-        Factory<Command> factory = new ProcessShellFactory(GenericUtils.split(command, ' '));
+        ProcessShellFactory factory = new ProcessShellFactory(GenericUtils.split(command, ' '));
+        factory.setExecutorService(getExecutorService());
         return factory.create();
     }
 }
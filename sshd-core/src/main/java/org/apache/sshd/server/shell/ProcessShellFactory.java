@@ -21,22 +21,27 @@ package org.apache.sshd.server.shell;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.sshd.common.Factory;
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.OsUtils;
 import org.apache.sshd.common.util.ValidateUtils;
 import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+import org.apache.sshd.common.util.threads.ThreadUtils;
 import org.apache.sshd.server.command.Command;
 
 /**
  * A {@link Factory} of {@link Command} that will create a new process and bridge
- * the streams.
+ * the streams. The streams of all the created shells are pumped using blocking
+ * reads by a shared cached thread pool - unless a specific one is configured
+ * via {@link #setExecutorService(ExecutorService)}.
  *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
 public class ProcessShellFactory extends AbstractLoggingBean implements ShellFactory {
     private List<String> command;
+    private ExecutorService executorService;
 
     public ProcessShellFactory() {
         this(Collections.emptyList());
@@ -62,9 +67,28 @@ public class ProcessShellFactory extends AbstractLoggingBean implements ShellFac
         this.command = ValidateUtils.checkNotNullAndNotEmpty(command, "No command");
     }
 
+    /**
+     * @return The {@link ExecutorService} used to pump the streams of the created
+     * shells - if none set then the {@link #getDefaultPumpingExecutor() default}
+     * shared one
+     */
+    public ExecutorService getExecutorService() {
+        return (executorService == null) ? getDefaultPumpingExecutor() : executorService;
+    }
+
+    /**
+     * @param executorService The {@link ExecutorService} used to pump the streams of the created
+     * shells - if {@code null} then the {@link #getDefaultPumpingExecutor() default} shared one is used.
+     * <B>Note:</B> the service is shared by all the created shells and is never shut down by them. Furthermore,
+     * it must be able to run at least 4 concurrent tasks per active shell.
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
     @Override
     public Command create() {
-        return new InvertedShellWrapper(createInvertedShell());
+        return new InvertedShellWrapper(createInvertedShell(), getExecutorService(), false, InvertedShellWrapper.DEFAULT_BUFFER_SIZE, true);
     }
 
     protected InvertedShell createInvertedShell() {
@@ -89,4 +113,16 @@ public class ProcessShellFactory extends AbstractLoggingBean implements ShellFac
 
         return Arrays.asList(OsUtils.WINDOWS_SHELL_COMMAND_NAME, "/C", GenericUtils.join(original, ' '));
     }
+
+    /**
+     * @return A cached thread pool shared by all the process shells of all the
+     * sessions - threads are released once idle for a while
+     */
+    public static ExecutorService getDefaultPumpingExecutor() {
+        return LazyDefaultPumpingExecutorHolder.EXECUTOR;
+    }
+
+    private static class LazyDefaultPumpingExecutorHolder {
+        private static final ExecutorService EXECUTOR = ThreadUtils.newCachedThreadPool("process-shell-pump");
+    }
 }
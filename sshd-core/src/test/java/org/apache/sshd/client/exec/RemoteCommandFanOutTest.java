@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.config.hosts.HostConfigEntry;
+import org.apache.sshd.common.PropertyResolverUtils;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.command.CommandFactory;
+import org.apache.sshd.util.test.BaseTestSupport;
+import org.apache.sshd.util.test.CommandExecutionHelper;
+import org.apache.sshd.util.test.Utils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class RemoteCommandFanOutTest extends BaseTestSupport {
+    private static final String USERNAME = RemoteCommandFanOutTest.class.getSimpleName();
+    private static final AtomicInteger ACTIVE_COMMANDS = new AtomicInteger(0);
+    private static final AtomicInteger MAX_ACTIVE_COMMANDS = new AtomicInteger(0);
+
+    private static SshServer sshd;
+    private static int port;
+    private static SshClient client;
+
+    public RemoteCommandFanOutTest() {
+        super();
+    }
+
+    @BeforeClass
+    public static void setupClientAndServer() throws Exception {
+        sshd = Utils.setupTestServer(RemoteCommandFanOutTest.class);
+        sshd.setCommandFactory(new CommandFactory() {
+            @Override
+            public String getName() {
+                return RemoteCommandFanOutTest.class.getSimpleName();
+            }
+
+            @Override
+            public Command createCommand(String command) {
+                return new CommandExecutionHelper(command) {
+                    @Override
+                    protected boolean handleCommandLine(String command) throws Exception {
+                        int active = ACTIVE_COMMANDS.incrementAndGet();
+                        MAX_ACTIVE_COMMANDS.accumulateAndGet(active, Math::max);
+                        try {
+                            Thread.sleep(25L);
+
+                            OutputStream stdout = getOutputStream();
+                            stdout.write(command.getBytes(StandardCharsets.US_ASCII));
+                            stdout.flush();
+
+                            OutputStream stderr = getErrorStream();
+                            stderr.write(USERNAME.getBytes(StandardCharsets.US_ASCII));
+                            stderr.flush();
+                        } finally {
+                            ACTIVE_COMMANDS.decrementAndGet();
+                        }
+                        return false;
+                    }
+                };
+            }
+        });
+        sshd.start();
+        port = sshd.getPort();
+
+        client = Utils.setupTestClient(RemoteCommandFanOutTest.class);
+        client.addPasswordIdentity(USERNAME);
+        client.start();
+    }
+
+    @AfterClass
+    public static void tearDownClientAndServer() throws Exception {
+        if (sshd != null) {
+            try {
+                sshd.stop(true);
+            } finally {
+                sshd = null;
+            }
+        }
+
+        if (client != null) {
+            try {
+                client.stop();
+            } finally {
+                client = null;
+            }
+        }
+    }
+
+    @Test
+    public void testBoundedParallelExecution() throws Exception {
+        int numHosts = 40;
+        int maxParallel = 4;
+        List<HostConfigEntry> hosts = new ArrayList<>(numHosts);
+        for (int index = 0; index < numHosts; index++) {
+            hosts.add(new HostConfigEntry(TEST_LOCALHOST, TEST_LOCALHOST, port, USERNAME));
+        }
+
+        Map<HostConfigEntry, ByteArrayOutputStream> stdout = Collections.synchronizedMap(new IdentityHashMap<>());
+        Map<HostConfigEntry, ByteArrayOutputStream> stderr = Collections.synchronizedMap(new IdentityHashMap<>());
+        AtomicInteger completed = new AtomicInteger(0);
+        MAX_ACTIVE_COMMANDS.set(0);
+
+        String command = getCurrentTestName();
+        RemoteCommandFanOutFuture future = client.executeRemoteCommand(hosts, command, maxParallel, new RemoteCommandListener() {
+            @Override
+            public void stdout(HostConfigEntry host, byte[] data, int offset, int length) throws IOException {
+                stdout.computeIfAbsent(host, h -> new ByteArrayOutputStream()).write(data, offset, length);
+            }
+
+            @Override
+            public void stderr(HostConfigEntry host, byte[] data, int offset, int length) throws IOException {
+                stderr.computeIfAbsent(host, h -> new ByteArrayOutputStream()).write(data, offset, length);
+            }
+
+            @Override
+            public void completed(RemoteCommandResult result) {
+                completed.incrementAndGet();
+            }
+        });
+        future.verify(30L, TimeUnit.SECONDS);
+
+        List<RemoteCommandResult> results = future.getResults();
+        assertEquals("Mismatched results count", numHosts, results.size());
+        assertEquals("Mismatched completion callbacks", numHosts, completed.get());
+        for (int index = 0; index < numHosts; index++) {
+            HostConfigEntry host = hosts.get(index);
+            RemoteCommandResult result = results.get(index);
+            assertSame("Mismatched host at index=" + index, host, result.getHost());
+            assertTrue("Unsuccessful result at index=" + index + ": " + result, result.isSuccess());
+            assertEquals("Mismatched STDOUT at index=" + index, command, new String(stdout.get(host).toByteArray(), StandardCharsets.US_ASCII));
+            assertEquals("Mismatched STDERR at index=" + index, USERNAME, new String(stderr.get(host).toByteArray(), StandardCharsets.US_ASCII));
+        }
+
+        int maxActive = MAX_ACTIVE_COMMANDS.get();
+        assertTrue("Parallelism exceeded: " + maxActive, maxActive <= maxParallel);
+    }
+
+    @Test
+    public void testUnreachableHostReported() throws Exception {
+        int unusedPort;
+        try (ServerSocket ss = new ServerSocket(0)) {
+            unusedPort = ss.getLocalPort();
+        }
+
+        List<String> hosts = new ArrayList<>();
+        hosts.add(TEST_LOCALHOST);
+        hosts.add(TEST_LOCALHOST);
+        RemoteCommandFanOutFuture future = client.executeRemoteCommand(
+            USERNAME, hosts, unusedPort, getCurrentTestName(), 2, null);
+        future.verify(30L, TimeUnit.SECONDS);
+
+        for (RemoteCommandResult result : future.getResults()) {
+            assertFalse("Unexpected success: " + result, result.isSuccess());
+            assertNotNull("No failure reported: " + result, result.getFailure());
+            assertNull("Unexpected exit status: " + result, result.getExitStatus());
+        }
+    }
+
+    @Test
+    public void testHungHostTimesOut() throws Exception {
+        long hostTimeout = TimeUnit.SECONDS.toMillis(2L);
+        PropertyResolverUtils.updateProperty(client, RemoteCommandFanOut.HOST_TIMEOUT, hostTimeout);
+        // accepts the connection but never sends the server identification
+        try (ServerSocket ss = new ServerSocket(0)) {
+            Thread acceptor = new Thread(getCurrentTestName()) {
+                @Override
+                public void run() {
+                    try (Socket s = ss.accept()) {
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(30L));
+                    } catch (Exception e) {
+                        // ignored - the socket is closed once the test ends
+                    }
+                }
+            };
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            List<HostConfigEntry> hosts = new ArrayList<>();
+            hosts.add(new HostConfigEntry(TEST_LOCALHOST, TEST_LOCALHOST, ss.getLocalPort(), USERNAME));
+            hosts.add(new HostConfigEntry(TEST_LOCALHOST, TEST_LOCALHOST, port, USERNAME));
+            RemoteCommandFanOutFuture future = client.executeRemoteCommand(hosts, getCurrentTestName(), 2, null);
+            future.verify(hostTimeout + TimeUnit.SECONDS.toMillis(15L));
+
+            List<RemoteCommandResult> results = future.getResults();
+            RemoteCommandResult hung = results.get(0);
+            assertFalse("Unexpected success: " + hung, hung.isSuccess());
+            assertNotNull("No failure reported: " + hung, hung.getFailure());
+            assertTrue("Unexpected success of responsive host: " + results.get(1), results.get(1).isSuccess());
+        } finally {
+            PropertyResolverUtils.updateProperty(client, RemoteCommandFanOut.HOST_TIMEOUT, null);
+        }
+    }
+}
@@ -29,12 +29,14 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
@@ -50,6 +52,8 @@ import org.apache.mina.core.service.IoAcceptor;
 import org.apache.mina.core.service.IoHandlerAdapter;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
 import org.apache.sshd.common.FactoryManager;
 import org.apache.sshd.common.util.net.SshdSocketAddress;
 import org.apache.sshd.server.SshServer;
@@ -395,6 +399,167 @@ public class PortForwardingLoadTest extends BaseTestSupport {
         }
     }
 
+    /**
+     * Measures the throughput of a single local forwarding tunnel using the native client
+     * - the amount of data (MB) can be controlled via the {@code PortForwardingLoadTest.throughput.size}
+     * system property. The default is kept small so that the regular test suite stays fast - use
+     * several hundred MB for a meaningful throughput measurement
+     *
+     * @throws Exception If failed to transfer the data
+     */
+    @Test
+    public void testLocalForwardingThroughput() throws Exception {
+        long totalSize = Long.getLong(getClass().getSimpleName() + ".throughput.size", 16L) * 1024L * 1024L;
+        try (ServerSocket ss = new ServerSocket()) {
+            ss.setReuseAddress(true);
+            ss.bind(new InetSocketAddress((InetAddress) null, 0));
+
+            AtomicLong received = new AtomicLong(0L);
+            Thread tSink = new Thread(getCurrentTestName() + "Sink") {
+                @SuppressWarnings("synthetic-access")
+                @Override
+                public void run() {
+                    try (Socket s = ss.accept();
+                         InputStream sockIn = s.getInputStream();
+                         OutputStream sockOut = s.getOutputStream()) {
+                        byte[] buf = new byte[64 * 1024];
+                        while (received.get() < totalSize) {
+                            int l = sockIn.read(buf);
+                            if (l < 0) {
+                                break;
+                            }
+                            received.addAndGet(l);
+                        }
+                        // signal the sender that all data has been received
+                        sockOut.write(1);
+                        sockOut.flush();
+                    } catch (Exception e) {
+                        log.error("Failed to sink data", e);
+                    }
+                }
+            };
+            tSink.start();
+
+            try (SshClient client = setupTestClient()) {
+                client.start();
+
+                try (ClientSession session = client.connect("sshd", TEST_LOCALHOST, sshPort).verify(7L, TimeUnit.SECONDS).getSession()) {
+                    session.addPasswordIdentity("sshd");
+                    session.auth().verify(11L, TimeUnit.SECONDS);
+
+                    SshdSocketAddress bound = session.startLocalPortForwarding(
+                        new SshdSocketAddress(TEST_LOCALHOST, 0), new SshdSocketAddress(TEST_LOCALHOST, ss.getLocalPort()));
+                    try (Socket s = new Socket(TEST_LOCALHOST, bound.getPort());
+                         OutputStream sockOut = s.getOutputStream();
+                         InputStream sockIn = s.getInputStream()) {
+                        s.setSoTimeout((int) TimeUnit.SECONDS.toMillis(30L));
+
+                        byte[] data = new byte[64 * 1024];
+                        Arrays.fill(data, (byte) 'X');
+
+                        long start = System.nanoTime();
+                        for (long written = 0L; written < totalSize; written += data.length) {
+                            sockOut.write(data, 0, (int) Math.min(data.length, totalSize - written));
+                        }
+                        sockOut.flush();
+                        assertEquals("Mismatched completion signal", 1, sockIn.read());
+                        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                        assertEquals("Mismatched received size", totalSize, received.get());
+                        long mbps = (duration <= 0L) ? totalSize : (totalSize * 1000L) / duration / 1024L / 1024L;
+                        log.info("{}: transferred {} MB in {} msec. - {} MB/sec.",
+                                 getCurrentTestName(), totalSize / 1024L / 1024L, duration, mbps);
+                    } finally {
+                        session.stopLocalPortForwarding(bound);
+                    }
+                }
+            }
+
+            tSink.join(TimeUnit.SECONDS.toMillis(11L));
+        }
+    }
+
+    /**
+     * Opens many short-lived SOCKS5 connections through a dynamic forwarding tunnel of the
+     * native client - the number of connections can be controlled via the
+     * {@code PortForwardingLoadTest.socks.connections} system property
+     *
+     * @throws Exception If failed to complete the connections
+     */
+    @Test
+    public void testDynamicForwardingShortLivedConnections() throws Exception {
+        int numConnections = Integer.getInteger(getClass().getSimpleName() + ".socks.connections", 2000);
+        int numThreads = 16;
+        int echoPort = ((InetSocketAddress) acceptor.getLocalAddress()).getPort();
+        try (SshClient client = setupTestClient()) {
+            client.start();
+
+            try (ClientSession session = client.connect("sshd", TEST_LOCALHOST, sshPort).verify(7L, TimeUnit.SECONDS).getSession()) {
+                session.addPasswordIdentity("sshd");
+                session.auth().verify(11L, TimeUnit.SECONDS);
+
+                SshdSocketAddress bound = session.startDynamicPortForwarding(new SshdSocketAddress(TEST_LOCALHOST, 0));
+                try {
+                    java.net.Proxy proxy = new java.net.Proxy(java.net.Proxy.Type.SOCKS,
+                        new InetSocketAddress(TEST_LOCALHOST, bound.getPort()));
+                    AtomicInteger remaining = new AtomicInteger(numConnections);
+                    List<Throwable> errors = new CopyOnWriteArrayList<>();
+                    Thread[] threads = new Thread[numThreads];
+                    for (int i = 0; i < threads.length; i++) {
+                        threads[i] = new Thread(getCurrentTestName() + "[" + i + "]") {
+                            @Override
+                            public void run() {
+                                byte[] expected = getName().getBytes(StandardCharsets.UTF_8);
+                                byte[] buf = new byte[expected.length];
+                                while (remaining.getAndDecrement() > 0) {
+                                    try (Socket s = new Socket(proxy)) {
+                                        s.setSoTimeout((int) TimeUnit.SECONDS.toMillis(30L));
+                                        // unresolved so the host name is sent to the proxy
+                                        s.connect(InetSocketAddress.createUnresolved(TEST_LOCALHOST, echoPort));
+
+                                        OutputStream sockOut = s.getOutputStream();
+                                        sockOut.write(expected);
+                                        sockOut.flush();
+
+                                        InputStream sockIn = s.getInputStream();
+                                        for (int offset = 0; offset < buf.length;) {
+                                            int l = sockIn.read(buf, offset, buf.length - offset);
+                                            if (l < 0) {
+                                                throw new IOException("Premature EOF after " + offset + " bytes");
+                                            }
+                                            offset += l;
+                                        }
+                                        assertArrayEquals("Mismatched echo data", expected, buf);
+                                    } catch (Throwable e) {
+                                        errors.add(e);
+                                    }
+                                }
+                            }
+                        };
+                    }
+
+                    long start = System.nanoTime();
+                    for (Thread thread : threads) {
+                        thread.start();
+                    }
+                    for (Thread thread : threads) {
+                        thread.join(TimeUnit.MINUTES.toMillis(2L));
+                    }
+                    long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                    for (Throwable t : errors) {
+                        log.warn("{}: {}", t.getClass().getSimpleName(), t.getMessage());
+                    }
+                    assertEquals("Mismatched number of errors", 0, errors.size());
+                    log.info("{}: completed {} connections in {} msec. - {} connections/sec.",
+                             getCurrentTestName(), numConnections, duration, (numConnections * 1000L) / Math.max(duration, 1L));
+                } finally {
+                    session.stopDynamicPortForwarding(bound);
+                }
+            }
+        }
+    }
+
     @Test
     public void testForwardingOnLoad() throws Exception {
 //        final String path = "/history/recent/troubles/";
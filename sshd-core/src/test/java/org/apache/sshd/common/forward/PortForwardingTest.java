@@ -634,6 +634,154 @@ public class PortForwardingTest extends BaseTestSupport {
         }
     }
 
+    @Test
+    public void testLocalForwardingTunnelStatistics() throws Exception {
+        try (ClientSession session = createNativeSession(null)) {
+            String expected = getCurrentTestName();
+            byte[] bytes = expected.getBytes(StandardCharsets.UTF_8);
+            byte[] buf = new byte[bytes.length + Long.SIZE];
+
+            SshdSocketAddress local = new SshdSocketAddress("", 0);
+            SshdSocketAddress remote = new SshdSocketAddress(TEST_LOCALHOST, echoPort);
+            SshdSocketAddress bound = session.startLocalPortForwarding(local, remote);
+            try {
+                ConnectionService service = session.getService(ConnectionService.class);
+                DefaultForwardingFilter filter = (DefaultForwardingFilter) service.getForwardingFilter();
+                ForwardingTunnelStatistics stats = filter.getTunnelStatistics(bound.getPort());
+                assertNotNull("No statistics for " + bound, stats);
+                stats.setMaxConnections(1);
+
+                try (Socket s = new Socket(bound.getHostName(), bound.getPort());
+                     OutputStream output = s.getOutputStream();
+                     InputStream input = s.getInputStream()) {
+                    s.setSoTimeout((int) TimeUnit.SECONDS.toMillis(10L));
+                    output.write(bytes);
+                    output.flush();
+
+                    int n = input.read(buf);
+                    assertEquals("Mismatched data", expected, new String(buf, 0, n, StandardCharsets.UTF_8));
+                    assertEquals("Mismatched active connections", 1, stats.getActiveConnections());
+                    assertEquals("Mismatched active tunnel connections", 1, filter.getActiveTunnelConnections());
+
+                    try (Socket rejected = new Socket(bound.getHostName(), bound.getPort());
+                         InputStream rejectedInput = rejected.getInputStream()) {
+                        rejected.setSoTimeout((int) TimeUnit.SECONDS.toMillis(10L));
+                        assertEquals("Connection beyond limit not closed", -1, rejectedInput.read());
+                    } catch (IOException e) {
+                        // ignored - the connection may also be reset
+                    }
+                    assertEquals("Mismatched rejected connections", 1L, stats.getRejectedConnections());
+                }
+
+                for (long maxWait = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10L);
+                        (stats.getActiveConnections() > 0) || (stats.getBytesWritten() < bytes.length);
+                        Thread.sleep(50L)) {
+                    assertTrue("Timeout waiting for tunnel connection closure: " + stats, System.currentTimeMillis() < maxWait);
+                }
+
+                assertEquals("Mismatched accepted connections", 1L, stats.getAcceptedConnections());
+                assertEquals("Mismatched bytes read", bytes.length, stats.getBytesRead());
+                assertEquals("Mismatched bytes written", bytes.length, stats.getBytesWritten());
+            } finally {
+                session.stopLocalPortForwarding(bound);
+            }
+        }
+    }
+
+    @Test
+    public void testDynamicForwardingSocks5() throws Exception {
+        // the requested host name is sent to the server to be resolved there
+        try (ClientSession session = createNativeSession(null)) {
+            testDynamicForwardingSocks5(session);
+        }
+    }
+
+    @Test
+    public void testDynamicForwardingSocks5LocalResolution() throws Exception {
+        try (ClientSession session = createNativeSession(null)) {
+            PropertyResolverUtils.updateProperty(session, SocksProxy.RESOLVE_HOST_NAMES, true);
+            testDynamicForwardingSocks5(session);
+        }
+    }
+
+    private void testDynamicForwardingSocks5(ClientSession session) throws Exception {
+        SshdSocketAddress bound = session.startDynamicPortForwarding(new SshdSocketAddress(TEST_LOCALHOST, 0));
+        try {
+            java.net.Proxy proxy = new java.net.Proxy(java.net.Proxy.Type.SOCKS, new InetSocketAddress(TEST_LOCALHOST, bound.getPort()));
+            String expected = getCurrentTestName();
+            byte[] bytes = expected.getBytes(StandardCharsets.UTF_8);
+            byte[] buf = new byte[bytes.length + Long.SIZE];
+            // if resolved locally then the 2nd time the host resolution is cached
+            for (int i = 0; i < 2; i++) {
+                try (Socket s = new Socket(proxy)) {
+                    s.setSoTimeout((int) TimeUnit.SECONDS.toMillis(10L));
+                    s.connect(InetSocketAddress.createUnresolved(TEST_LOCALHOST, echoPort));
+                    try (OutputStream output = s.getOutputStream();
+                         InputStream input = s.getInputStream()) {
+                        output.write(bytes);
+                        output.flush();
+
+                        int n = input.read(buf);
+                        assertEquals("Mismatched data at iteration #" + i, expected, new String(buf, 0, n, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        } finally {
+            session.stopDynamicPortForwarding(bound);
+        }
+    }
+
+    @Test
+    public void testDynamicForwardingFragmentedSocks4aWithPipelinedData() throws Exception {
+        try (ClientSession session = createNativeSession(null)) {
+            SshdSocketAddress bound = session.startDynamicPortForwarding(new SshdSocketAddress(TEST_LOCALHOST, 0));
+            try (Socket s = new Socket(TEST_LOCALHOST, bound.getPort());
+                 OutputStream output = s.getOutputStream();
+                 InputStream input = s.getInputStream()) {
+                s.setSoTimeout((int) TimeUnit.SECONDS.toMillis(10L));
+                s.setTcpNoDelay(true);
+
+                String expected = getCurrentTestName();
+                byte[] user = "sshd".getBytes(StandardCharsets.US_ASCII);
+                byte[] host = TEST_LOCALHOST.getBytes(StandardCharsets.US_ASCII);
+                byte[] data = expected.getBytes(StandardCharsets.UTF_8);
+                byte[] request = new byte[8 + user.length + 1 + host.length + 1 + data.length];
+                request[0] = 0x04;
+                request[1] = 0x01;
+                request[2] = (byte) (echoPort >> Byte.SIZE);
+                request[3] = (byte) echoPort;
+                request[7] = 0x01;  // SOCKS4a - 0.0.0.x
+                System.arraycopy(user, 0, request, 8, user.length);
+                System.arraycopy(host, 0, request, 8 + user.length + 1, host.length);
+                // data sent without waiting for the reply
+                System.arraycopy(data, 0, request, request.length - data.length, data.length);
+
+                for (byte b : request) {
+                    output.write(b);
+                    output.flush();
+                }
+
+                byte[] reply = new byte[8];
+                for (int offset = 0; offset < reply.length;) {
+                    int n = input.read(reply, offset, reply.length - offset);
+                    assertTrue("Premature EOF after " + offset + " reply bytes", n > 0);
+                    offset += n;
+                }
+                assertEquals("Mismatched reply status", 0x5a, reply[1] & 0xFF);
+
+                byte[] buf = new byte[data.length];
+                for (int offset = 0; offset < buf.length;) {
+                    int n = input.read(buf, offset, buf.length - offset);
+                    assertTrue("Premature EOF after " + offset + " data bytes", n > 0);
+                    offset += n;
+                }
+                assertEquals("Mismatched echoed data", expected, new String(buf, StandardCharsets.UTF_8));
+            } finally {
+                session.stopDynamicPortForwarding(bound);
+            }
+        }
+    }
+
     @Test
     public void testForwardingChannel() throws Exception {
         try (ClientSession session = createNativeSession(null)) {
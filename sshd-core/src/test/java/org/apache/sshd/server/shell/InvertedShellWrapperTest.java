@@ -24,8 +24,13 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.sshd.common.util.threads.ThreadUtils;
 import org.apache.sshd.server.Environment;
 import org.apache.sshd.server.session.ServerSession;
 import org.apache.sshd.util.test.BaseTestSupport;
@@ -74,6 +79,75 @@ public class InvertedShellWrapperTest extends BaseTestSupport {
         }
     }
 
+    @Test
+    public void testBlockingPumpsStreams() throws Exception {
+        BogusInvertedShell shell = newShell("out", "err");
+        shell.setAlive(false);
+
+        try (ByteArrayInputStream in = new ByteArrayInputStream("in".getBytes(StandardCharsets.UTF_8));
+             ByteArrayOutputStream out = new ByteArrayOutputStream(50);
+             ByteArrayOutputStream err = new ByteArrayOutputStream()) {
+
+            ExecutorService executor = ThreadUtils.newCachedThreadPool(getCurrentTestName());
+            InvertedShellWrapper wrapper = new InvertedShellWrapper(shell, executor, true, InvertedShellWrapper.DEFAULT_BUFFER_SIZE, true);
+            BogusExitCallback exitCallback = new BogusExitCallback();
+            try {
+                wrapper.setInputStream(in);
+                wrapper.setOutputStream(out);
+                wrapper.setErrorStream(err);
+                wrapper.setExitCallback(exitCallback);
+                wrapper.start(new BogusEnvironment());
+
+                for (long waitTime = TimeUnit.SECONDS.toMillis(5L); (waitTime > 0L) && (!exitCallback.isExited()); waitTime -= 10L) {
+                    Thread.sleep(10L);
+                }
+                assertTrue("Shell exit not signalled", exitCallback.isExited());
+            } finally {
+                wrapper.destroy();
+            }
+
+            assertTrue("Executor not terminated", executor.awaitTermination(5L, TimeUnit.SECONDS));
+            assertEquals("stdin", "in", shell.getInputStream().toString());
+            assertEquals("stdout", "out", out.toString());
+            assertEquals("stderr", "err", err.toString());
+            assertEquals("Mismatched exit value", 0, exitCallback.getExitValue());
+        }
+    }
+
+    @Test
+    public void testBlockingPumpsExitWhileOutputsOpen() throws Exception {
+        // e.g., a child process of the shell keeps its outputs open
+        ExecutorService executor = ThreadUtils.newCachedThreadPool(getCurrentTestName());
+        try (PipedOutputStream stdout = new PipedOutputStream();
+             PipedOutputStream stderr = new PipedOutputStream()) {
+            BogusInvertedShell shell = new BogusInvertedShell(
+                new ByteArrayOutputStream(), new PipedInputStream(stdout), new PipedInputStream(stderr));
+            shell.setAlive(false);
+
+            InvertedShellWrapper wrapper = new InvertedShellWrapper(shell, executor, true, InvertedShellWrapper.DEFAULT_BUFFER_SIZE, true);
+            BogusExitCallback exitCallback = new BogusExitCallback();
+            try {
+                wrapper.setInputStream(new ByteArrayInputStream(new byte[0]));
+                wrapper.setOutputStream(new ByteArrayOutputStream());
+                wrapper.setErrorStream(new ByteArrayOutputStream());
+                wrapper.setExitCallback(exitCallback);
+                wrapper.start(new BogusEnvironment());
+
+                long waitTime = InvertedShellWrapper.DEFAULT_EXIT_DRAIN_TIMEOUT + TimeUnit.SECONDS.toMillis(5L);
+                for (; (waitTime > 0L) && (!exitCallback.isExited()); waitTime -= 10L) {
+                    Thread.sleep(10L);
+                }
+                assertTrue("Shell exit not signalled", exitCallback.isExited());
+                assertEquals("Mismatched exit value", 0, exitCallback.getExitValue());
+            } finally {
+                wrapper.destroy();
+            }
+        }
+
+        // the output pumps end once the child process closes the outputs
+        assertTrue("Executor not terminated", executor.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
     @Test   // see SSHD-570
     public void testExceptionWhilePumpStreams() throws Exception {
         final BogusInvertedShell bogusShell = newShell("out", "err");
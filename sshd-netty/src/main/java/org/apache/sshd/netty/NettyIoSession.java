@@ -140,6 +140,22 @@ public class NettyIoSession extends AbstractCloseable implements IoSession {
         return service;
     }
 
+    @Override
+    public void suspendRead() {
+        ChannelHandlerContext ctx = context;
+        if (ctx != null) {
+            ctx.channel().config().setAutoRead(false);
+        }
+    }
+
+    @Override
+    public void resumeRead() {
+        ChannelHandlerContext ctx = context;
+        if (ctx != null) {
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
     @Override
     protected CloseFuture doCloseGracefully() {
         context.writeAndFlush(Unpooled.EMPTY_BUFFER)
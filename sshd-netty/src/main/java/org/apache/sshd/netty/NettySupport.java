@@ -41,7 +41,7 @@ public final class NettySupport {
 
             @Override
             public void getRawBytes(byte[] data, int offset, int len) {
-                buffer.getBytes(0, data, offset, len);
+                buffer.readBytes(data, offset, len);
             }
         };
     }
@@ -0,0 +1,569 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.scp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.StreamSupport;
+
+import org.apache.sshd.client.scp.ScpClient.Option;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.session.ClientSessionHolder;
+import org.apache.sshd.common.scp.ScpFileOpener;
+import org.apache.sshd.common.scp.ScpSourceStreamResolver;
+import org.apache.sshd.common.scp.ScpTargetStreamResolver;
+import org.apache.sshd.common.scp.ScpTimestamp;
+import org.apache.sshd.common.scp.ScpTransferEventListener;
+import org.apache.sshd.common.scp.helpers.DefaultScpFileOpener;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionHolder;
+import org.apache.sshd.common.util.GenericUtils;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.io.DirectoryScanner;
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+
+/**
+ * Copies directory trees by running several SCP channels concurrently on the
+ * same {@link ClientSession} instead of sending everything sequentially over
+ * a single channel:
+ * <UL>
+ *      <LI><P>
+ *      <B>Upload</B> - the remote folders hierarchy is first created over a
+ *      single channel (folders only - no files data). The local files are then
+ *      partitioned by their parent folder into batches of at most
+ *      {@link #getMaxFilesPerChannel()} files, each batch being uploaded over
+ *      its own channel.
+ *      </P></LI>
+ *
+ *      <LI><P>
+ *      <B>Download</B> - since SCP has no listing primitive, the caller provides
+ *      the partitioning - i.e., the remote files/folders to be downloaded
+ *      (recursively if so requested) each over its own channel into the same
+ *      local folder.
+ *      </P></LI>
+ * </UL>
+ * At most {@link #getMaxChannels()} channels are open at any given time, and the
+ * progress of all of them is aggregated by the {@link #getTransferProgress() transfer progress}
+ * listener - which is reset at the start of each upload/download.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class ParallelScpClient extends AbstractLoggingBean implements SessionHolder<ClientSession>, ClientSessionHolder {
+    public static final int DEFAULT_MAX_CHANNELS = 4;
+    public static final int DEFAULT_MAX_FILES_PER_CHANNEL = 256;
+
+    private final ClientSession clientSession;
+    private final int maxChannels;
+    private final int maxFilesPerChannel;
+    private final ScpFileOpener opener;
+    private final TransferProgress progress;
+
+    public ParallelScpClient(ClientSession clientSession) {
+        this(clientSession, DEFAULT_MAX_CHANNELS, DEFAULT_MAX_FILES_PER_CHANNEL, null, null);
+    }
+
+    /**
+     * @param clientSession The {@link ClientSession} on which to open the channels
+     * @param maxChannels Max. number of concurrently open SCP channels - must be positive
+     * @param maxFilesPerChannel Max. number of files to upload over a single channel - must be positive
+     * @param fileOpener The {@link ScpFileOpener} to use - if {@code null} then default is used
+     * @param eventListener The {@link ScpTransferEventListener} to be informed of the transfer
+     * events of <U>all</U> the channels - may be {@code null}. <B>Note:</B> the listener is never
+     * invoked concurrently by several channels, so it need not be thread-safe.
+     */
+    public ParallelScpClient(ClientSession clientSession, int maxChannels, int maxFilesPerChannel,
+            ScpFileOpener fileOpener, ScpTransferEventListener eventListener) {
+        this.clientSession = Objects.requireNonNull(clientSession, "No client session");
+        ValidateUtils.checkTrue(maxChannels > 0, "Invalid max. channels: %d", maxChannels);
+        ValidateUtils.checkTrue(maxFilesPerChannel > 0, "Invalid max. files per channel: %d", maxFilesPerChannel);
+        this.maxChannels = maxChannels;
+        this.maxFilesPerChannel = maxFilesPerChannel;
+        this.opener = (fileOpener == null) ? DefaultScpFileOpener.INSTANCE : fileOpener;
+        this.progress = new TransferProgress(eventListener);
+    }
+
+    @Override
+    public ClientSession getClientSession() {
+        return clientSession;
+    }
+
+    @Override
+    public ClientSession getSession() {
+        return getClientSession();
+    }
+
+    public int getMaxChannels() {
+        return maxChannels;
+    }
+
+    public int getMaxFilesPerChannel() {
+        return maxFilesPerChannel;
+    }
+
+    public ScpFileOpener getScpFileOpener() {
+        return opener;
+    }
+
+    /**
+     * @return The {@link TransferProgress} aggregating the events of all the
+     * transfers executed by this client
+     */
+    public TransferProgress getTransferProgress() {
+        return progress;
+    }
+
+    public void upload(Path local, String remote, Option... options) throws IOException {
+        upload(local, remote, GenericUtils.of(options));
+    }
+
+    /**
+     * Uploads a local folder recursively
+     *
+     * @param local The local folder {@link Path}
+     * @param remote The remote <U>existing</U> folder into which the local folder is uploaded
+     * @param options The {@link Option}s to use - <B>Note:</B> {@link Option#Recursive} and
+     * {@link Option#TargetIsDirectory} are implied. If {@link Option#PreserveAttributes} is
+     * used then the folders timestamps may still be updated by the (later) upload of their files
+     * @throws IOException If failed to upload the folder
+     */
+    public void upload(Path local, String remote, Collection<Option> options) throws IOException {
+        Path localPath = Objects.requireNonNull(local, "No local path").normalize().toAbsolutePath();
+        ValidateUtils.checkNotNullAndNotEmpty(remote, "No remote location");
+        LinkOption[] linkOptions = IoUtils.getLinkOptions(true);
+        if (!Files.isDirectory(localPath, linkOptions)) {
+            throw new IOException(localPath + " not a directory");
+        }
+
+        boolean preserve = GenericUtils.isNotEmpty(options) && options.contains(Option.PreserveAttributes);
+        Collection<Option> folderOptions = EnumSet.of(Option.Recursive, Option.TargetIsDirectory);
+        Collection<Option> fileOptions = EnumSet.of(Option.TargetIsDirectory);
+        if (preserve) {
+            folderOptions.add(Option.PreserveAttributes);
+            fileOptions.add(Option.PreserveAttributes);
+        }
+
+        boolean debugEnabled = log.isDebugEnabled();
+        if (debugEnabled) {
+            log.debug("upload({}) {} => {} - creating folders hierarchy", getClientSession(), localPath, remote);
+        }
+        getTransferProgress().reset();
+        createScpClient(new FoldersOnlyScpFileOpener(opener)).upload(localPath, remote, folderOptions);
+
+        String root = resolveRemotePath(remote, Objects.toString(localPath.getFileName(), null));
+        Map<String, List<Path>> filesByFolder = new TreeMap<>();
+        for (String name : new DirectoryScanner(localPath.toString(), "**").scan()) {
+            Path file = localPath.resolve(name);
+            if (!opener.sendAsRegularFile(file, linkOptions)) {
+                continue;
+            }
+
+            int pos = name.lastIndexOf(File.separatorChar);
+            String folder = (pos < 0) ? root : resolveRemotePath(root, name.substring(0, pos).replace(File.separatorChar, '/'));
+            filesByFolder.computeIfAbsent(folder, k -> new ArrayList<>()).add(file);
+        }
+
+        ScpClient client = createScpClient(opener);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        filesByFolder.forEach((folder, files) -> {
+            for (int index = 0, numFiles = files.size(); index < numFiles; index += maxFilesPerChannel) {
+                Path[] batch = files.subList(index, Math.min(numFiles, index + maxFilesPerChannel)).toArray(new Path[0]);
+                tasks.add(() -> {
+                    client.upload(batch, folder, fileOptions);
+                    return null;
+                });
+            }
+        });
+
+        if (debugEnabled) {
+            log.debug("upload({}) {} => {} - {} folders, {} batches",
+                      getClientSession(), localPath, remote, filesByFolder.size(), tasks.size());
+        }
+        invokeAll("upload", tasks);
+    }
+
+    public void download(String[] remote, Path local, Option... options) throws IOException {
+        download(Arrays.asList(remote), local, GenericUtils.of(options));
+    }
+
+    /**
+     * Downloads the remote locations concurrently - each over its own channel
+     *
+     * @param remote The remote files/folders to download
+     * @param local The local <U>existing</U> folder into which the remote locations are downloaded
+     * @param options The {@link Option}s to use - <B>Note:</B> {@link Option#TargetIsDirectory} is implied
+     * @throws IOException If failed to download any of the locations
+     */
+    public void download(Collection<String> remote, Path local, Collection<Option> options) throws IOException {
+        Path localPath = Objects.requireNonNull(local, "No local path").normalize().toAbsolutePath();
+        if (!Files.isDirectory(localPath, IoUtils.getLinkOptions(true))) {
+            throw new IOException(localPath + " not a directory");
+        }
+
+        Collection<Option> partOptions = EnumSet.of(Option.TargetIsDirectory);
+        if (GenericUtils.isNotEmpty(options)) {
+            partOptions.addAll(options);
+        }
+
+        getTransferProgress().reset();
+        ScpClient client = createScpClient(opener);
+        List<Callable<Void>> tasks = new ArrayList<>(GenericUtils.size(remote));
+        for (String path : remote) {
+            ValidateUtils.checkNotNullAndNotEmpty(path, "Invalid remote location in %s", remote);
+            tasks.add(() -> {
+                client.download(path, localPath, partOptions);
+                return null;
+            });
+        }
+
+        invokeAll("download", tasks);
+    }
+
+    protected ScpClient createScpClient(ScpFileOpener fileOpener) {
+        return ScpClientCreator.instance().createScpClient(getClientSession(), fileOpener, getTransferProgress());
+    }
+
+    /**
+     * Runs the tasks using at most {@link #getMaxChannels()} threads. If any of them fails
+     * then the ones that have not yet started are cancelled
+     *
+     * @param location Location used for the threads naming and exceptions messages
+     * @param tasks The tasks to run
+     * @throws IOException If any of the tasks failed - the failures of the others
+     * (if any) are added as suppressed exceptions
+     */
+    protected void invokeAll(String location, List<? extends Callable<Void>> tasks) throws IOException {
+        int numTasks = tasks.size();
+        if (numTasks <= 0) {
+            return;
+        }
+
+        ExecutorService executor = ThreadUtils.newFixedThreadPool(
+            getClass().getSimpleName() + "-" + location, Math.min(getMaxChannels(), numTasks));
+        try {
+            CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+            List<Future<Void>> futures = new ArrayList<>(numTasks);
+            for (Callable<Void> task : tasks) {
+                futures.add(completion.submit(task));
+            }
+
+            IOException err = null;
+            for (int index = 0; index < numTasks; index++) {
+                try {
+                    completion.take().get();
+                } catch (CancellationException e) {
+                    continue;   // due to an earlier failure
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    IOException failure = (cause instanceof IOException)
+                        ? (IOException) cause
+                        : new IOException(location + " failed: " + cause.getMessage(), cause);
+                    if (err == null) {
+                        futures.forEach(f -> f.cancel(false));
+                    }
+                    err = GenericUtils.accumulateException(err, failure);
+                } catch (InterruptedException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    throw (IOException) new InterruptedIOException(location + " interrupted").initCause(e);
+                }
+            }
+
+            if (err != null) {
+                throw err;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static String resolveRemotePath(String parent, String name) {
+        if (parent.endsWith("/")) {
+            return parent + name;
+        } else {
+            return parent + "/" + name;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + getClientSession() + "]"
+            + "[channels=" + getMaxChannels() + ", files/channel=" + getMaxFilesPerChannel() + "]";
+    }
+
+    /**
+     * Aggregates the transfer events of all the channels and forwards them
+     * - one at a time - to the wrapped listener
+     *
+     * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+     */
+    public static class TransferProgress implements ScpTransferEventListener {
+        private final ScpTransferEventListener listener;
+        // not the listener itself since it may be shared - e.g., ScpTransferEventListener#EMPTY
+        private final Object lock = new Object();
+        private final AtomicLong startedFiles = new AtomicLong(0L);
+        private final AtomicLong completedFiles = new AtomicLong(0L);
+        private final AtomicLong failedFiles = new AtomicLong(0L);
+        private final AtomicLong completedFolders = new AtomicLong(0L);
+        private final AtomicLong transferredBytes = new AtomicLong(0L);
+
+        public TransferProgress(ScpTransferEventListener eventListener) {
+            this.listener = (eventListener == null) ? ScpTransferEventListener.EMPTY : eventListener;
+        }
+
+        public ScpTransferEventListener getEventListener() {
+            return listener;
+        }
+
+        /**
+         * Zeroes the counters - invoked by the client at the start of each transfer
+         */
+        public void reset() {
+            startedFiles.set(0L);
+            completedFiles.set(0L);
+            failedFiles.set(0L);
+            completedFolders.set(0L);
+            transferredBytes.set(0L);
+        }
+
+        public long getStartedFiles() {
+            return startedFiles.get();
+        }
+
+        public long getCompletedFiles() {
+            return completedFiles.get();
+        }
+
+        public long getFailedFiles() {
+            return failedFiles.get();
+        }
+
+        public long getCompletedFolders() {
+            return completedFolders.get();
+        }
+
+        /**
+         * @return Total size (in bytes) of the successfully transferred files
+         */
+        public long getTransferredBytes() {
+            return transferredBytes.get();
+        }
+
+        @Override
+        public void startFolderEvent(FileOperation op, Path file, Set<PosixFilePermission> perms) throws IOException {
+            synchronized (lock) {
+                listener.startFolderEvent(op, file, perms);
+            }
+        }
+
+        @Override
+        public void endFolderEvent(FileOperation op, Path file, Set<PosixFilePermission> perms, Throwable thrown) throws IOException {
+            if (thrown == null) {
+                completedFolders.incrementAndGet();
+            }
+
+            synchronized (lock) {
+                listener.endFolderEvent(op, file, perms, thrown);
+            }
+        }
+
+        @Override
+        public void startFileEvent(FileOperation op, Path file, long length, Set<PosixFilePermission> perms) throws IOException {
+            startedFiles.incrementAndGet();
+
+            synchronized (lock) {
+                listener.startFileEvent(op, file, length, perms);
+            }
+        }
+
+        @Override
+        public void endFileEvent(FileOperation op, Path file, long length, Set<PosixFilePermission> perms, Throwable thrown)
+                throws IOException {
+            if (thrown == null) {
+                completedFiles.incrementAndGet();
+                transferredBytes.addAndGet(length);
+            } else {
+                failedFiles.incrementAndGet();
+            }
+
+            synchronized (lock) {
+                listener.endFileEvent(op, file, length, perms, thrown);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName()
+                + "[started=" + getStartedFiles()
+                + ", completed=" + getCompletedFiles()
+                + ", failed=" + getFailedFiles()
+                + ", folders=" + getCompletedFolders()
+                + ", bytes=" + getTransferredBytes()
+                + "]";
+        }
+    }
+
+    /**
+     * Sends only the sub-folders of a folder - used to create the remote folders hierarchy.
+     * Everything else is delegated to the configured {@link ScpFileOpener}
+     *
+     * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+     */
+    protected static class FoldersOnlyScpFileOpener implements ScpFileOpener {
+        private final ScpFileOpener delegate;
+
+        public FoldersOnlyScpFileOpener(ScpFileOpener delegate) {
+            this.delegate = Objects.requireNonNull(delegate, "No delegate opener");
+        }
+
+        public ScpFileOpener getDelegate() {
+            return delegate;
+        }
+
+        @Override
+        public DirectoryStream<Path> getLocalFolderChildren(Path path) throws IOException {
+            DirectoryStream<Path> children = delegate.getLocalFolderChildren(path);
+            LinkOption[] options = IoUtils.getLinkOptions(true);
+            return new DirectoryStream<Path>() {
+                @Override
+                public Iterator<Path> iterator() {
+                    return StreamSupport.stream(children.spliterator(), false)
+                        .filter(p -> {
+                            try {
+                                return sendAsDirectory(p, options);
+                            } catch (IOException e) {
+                                throw new DirectoryIteratorException(e);
+                            }
+                        })
+                        .iterator();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    children.close();
+                }
+            };
+        }
+
+        @Override
+        public Path resolveIncomingFilePath(
+                Path localPath, String name, boolean preserve, Set<PosixFilePermission> permissions, ScpTimestamp time)
+                    throws IOException {
+            return delegate.resolveIncomingFilePath(localPath, name, preserve, permissions, time);
+        }
+
+        @Override
+        public Iterable<String> getMatchingFilesToSend(String basedir, String pattern) {
+            return delegate.getMatchingFilesToSend(basedir, pattern);
+        }
+
+        @Override
+        public boolean sendAsRegularFile(Path path, LinkOption... options) throws IOException {
+            return delegate.sendAsRegularFile(path, options);
+        }
+
+        @Override
+        public boolean sendAsDirectory(Path path, LinkOption... options) throws IOException {
+            return delegate.sendAsDirectory(path, options);
+        }
+
+        @Override
+        public BasicFileAttributes getLocalBasicFileAttributes(Path path, LinkOption... options) throws IOException {
+            return delegate.getLocalBasicFileAttributes(path, options);
+        }
+
+        @Override
+        public Set<PosixFilePermission> getLocalFilePermissions(Path path, LinkOption... options) throws IOException {
+            return delegate.getLocalFilePermissions(path, options);
+        }
+
+        @Override
+        public Path resolveLocalPath(FileSystem fileSystem, String commandPath) throws IOException, InvalidPathException {
+            return delegate.resolveLocalPath(fileSystem, commandPath);
+        }
+
+        @Override
+        public Path resolveIncomingReceiveLocation(Path path, boolean recursive, boolean shouldBeDir, boolean preserve)
+                throws IOException {
+            return delegate.resolveIncomingReceiveLocation(path, recursive, shouldBeDir, preserve);
+        }
+
+        @Override
+        public Path resolveOutgoingFilePath(Path localPath, LinkOption... options) throws IOException {
+            return delegate.resolveOutgoingFilePath(localPath, options);
+        }
+
+        @Override
+        public InputStream openRead(Session session, Path file, OpenOption... options) throws IOException {
+            return delegate.openRead(session, file, options);
+        }
+
+        @Override
+        public ScpSourceStreamResolver createScpSourceStreamResolver(Path path) throws IOException {
+            return delegate.createScpSourceStreamResolver(path);
+        }
+
+        @Override
+        public OutputStream openWrite(Session session, Path file, OpenOption... options) throws IOException {
+            return delegate.openWrite(session, file, options);
+        }
+
+        @Override
+        public ScpTargetStreamResolver createScpTargetStreamResolver(Path path) throws IOException {
+            return delegate.createScpTargetStreamResolver(path);
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[" + delegate + "]";
+        }
+    }
+}
@@ -36,11 +36,14 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.LinkedList;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.sshd.common.PropertyResolverUtils;
 import org.apache.sshd.common.file.util.MockPath;
 import org.apache.sshd.common.scp.ScpTransferEventListener.FileOperation;
 import org.apache.sshd.common.scp.helpers.DefaultScpFileOpener;
@@ -92,6 +95,29 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
     public static final String DEFAULT_DIR_OCTAL_PERMISSIONS = "0755";
     public static final String DEFAULT_FILE_OCTAL_PERMISSIONS = "0644";
 
+    /**
+     * Whether to use the fast transfer mode - i.e., copy the files data using a
+     * {@link #FAST_TRANSFER_BUFFER_SIZE_PROP larger} buffer and - when sending several
+     * files/folders - do not wait for the acknowledgment of a file's data or of a
+     * timestamp/end-of-folder command before sending the next command. The deferred
+     * acknowledgments are read (and validated) before the reply to the next file/folder
+     * header is awaited, so that a rejected file is still detected before its data is
+     * sent. The end of a sent file is reported to the {@link ScpTransferEventListener}
+     * only once its acknowledgment has been validated. <B>Note:</B> since the peer then
+     * acknowledges several commands back-to-back, it is recommended to enable
+     * {@link org.apache.sshd.common.FactoryManager#TCP_NODELAY} as well.
+     */
+    public static final String FAST_TRANSFER_PROP = "scp-fast-transfer";
+    public static final boolean DEFAULT_FAST_TRANSFER = false;
+
+    /**
+     * Size (in bytes) of the copy buffer used in fast transfer mode - if
+     * larger than the requested send / receive buffer size. Each copy buffer
+     * fills the channel output stream with fewer, larger writes
+     */
+    public static final String FAST_TRANSFER_BUFFER_SIZE_PROP = "scp-fast-transfer-buffer-size";
+    public static final int DEFAULT_FAST_TRANSFER_BUFFER_SIZE = 64 * 1024;
+
     protected final InputStream in;
     protected final OutputStream out;
     protected final FileSystem fileSystem;
@@ -99,6 +125,10 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
     protected final ScpTransferEventListener listener;
 
     private final Session sessionInstance;
+    private final boolean fastTransfer;
+    private final int fastTransferBufferSize;
+    private final Deque<DeferredAck> deferredAcks = new LinkedList<>();
+    private boolean deferAcks;
 
     public ScpHelper(Session session, InputStream in, OutputStream out,
             FileSystem fileSystem, ScpFileOpener opener, ScpTransferEventListener eventListener) {
@@ -108,6 +138,9 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
         this.fileSystem = fileSystem;
         this.opener = (opener == null) ? DefaultScpFileOpener.INSTANCE : opener;
         this.listener = (eventListener == null) ? ScpTransferEventListener.EMPTY : eventListener;
+        this.fastTransfer = PropertyResolverUtils.getBooleanProperty(session, FAST_TRANSFER_PROP, DEFAULT_FAST_TRANSFER);
+        this.fastTransferBufferSize = PropertyResolverUtils.getIntProperty(
+            session, FAST_TRANSFER_BUFFER_SIZE_PROP, DEFAULT_FAST_TRANSFER_BUFFER_SIZE);
     }
 
     @Override
@@ -115,6 +148,14 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
         return sessionInstance;
     }
 
+    /**
+     * @return {@code true} if using the fast transfer mode
+     * @see #FAST_TRANSFER_PROP
+     */
+    public boolean isFastTransfer() {
+        return fastTransfer;
+    }
+
     public void receiveFileStream(OutputStream local, int bufferSize) throws IOException {
         receive((line, isDir, timestamp) -> {
             if (isDir) {
@@ -321,6 +362,7 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
             bufSize = MIN_RECEIVE_BUFFER_SIZE;
         }
 
+        bufSize = resolveCopyBufferSize(length, bufSize);
         try (
                 InputStream is = new LimitInputStream(this.in, length);
                 OutputStream os = resolver.resolveTargetStream(getSession(), name, length, perms)
@@ -349,6 +391,21 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
         validateAckReplyCode("receiveStream", resolver, replyCode, false);
     }
 
+    /**
+     * @param length The transferred file size
+     * @param bufSize The copy buffer size derived from the requested one
+     * @return The copy buffer size to use - in {@link #FAST_TRANSFER_PROP fast transfer}
+     * mode at least the {@link #FAST_TRANSFER_BUFFER_SIZE_PROP configured} size, but
+     * no larger than the file
+     */
+    protected int resolveCopyBufferSize(long length, int bufSize) {
+        if ((!isFastTransfer()) || (length <= bufSize)) {
+            return bufSize;
+        }
+
+        return (int) Math.min(length, Math.max(bufSize, fastTransferBufferSize));
+    }
+
     public String readLine() throws IOException {
         return readLine(false);
     }
@@ -379,6 +436,21 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
         }
         validateOperationReadyCode("send", "Paths", readyCode, false);
 
+        deferAcks = isFastTransfer();
+        try {
+            sendPatterns(paths, recursive, preserve, bufferSize);
+            readDeferredAcks();
+        } catch (IOException | RuntimeException e) {
+            abortDeferredAcks(e);
+            throw e;
+        } finally {
+            deferAcks = false;
+            deferredAcks.clear();
+        }
+    }
+
+    protected void sendPatterns(Collection<String> paths, boolean recursive, boolean preserve, int bufferSize) throws IOException {
+        boolean debugEnabled = log.isDebugEnabled();
         LinkOption[] options = IoUtils.getLinkOptions(true);
         for (String pattern : paths) {
             pattern = pattern.replace('/', File.separatorChar);
@@ -428,8 +500,18 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
         validateOperationReadyCode("sendPaths", "Paths", readyCode, false);
 
         LinkOption[] options = IoUtils.getLinkOptions(true);
-        for (Path file : paths) {
-            send(file, recursive, preserve, bufferSize, options);
+        deferAcks = isFastTransfer();
+        try {
+            for (Path file : paths) {
+                send(file, recursive, preserve, bufferSize, options);
+            }
+            readDeferredAcks();
+        } catch (IOException | RuntimeException e) {
+            abortDeferredAcks(e);
+            throw e;
+        } finally {
+            deferAcks = false;
+            deferredAcks.clear();
         }
     }
 
@@ -516,13 +598,17 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
             }
             out.write(cmd.getBytes(StandardCharsets.UTF_8));
             out.write('\n');
-            out.flush();
+            if (deferAcks) {
+                deferredAcks.add(new DeferredAck(cmd, resolver));
+            } else {
+                out.flush();
 
-            int readyCode = readAck(false);
-            if (debugEnabled) {
-                log.debug("sendStream({})[{}] command='{}' ready code={}", this, resolver, cmd, readyCode);
+                int readyCode = readAck(false);
+                if (debugEnabled) {
+                    log.debug("sendStream({})[{}] command='{}' ready code={}", this, resolver, cmd, readyCode);
+                }
+                validateAckReplyCode(cmd, resolver, readyCode, false);
             }
-            validateAckReplyCode(cmd, resolver, readyCode, false);
         }
 
         Set<PosixFilePermission> perms = EnumSet.copyOf(resolver.getPermissions());
@@ -536,6 +622,8 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
         out.write('\n');
         out.flush();
 
+        // the header reply must be awaited since the remote peer may reject the file
+        readDeferredAcks();
         int readyCode = readAck(false);
         if (debugEnabled) {
             log.debug("sendStream({})[{}] command='{}' ready code={}",
@@ -543,8 +631,9 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
         }
         validateAckReplyCode(cmd, resolver, readyCode, false);
 
+        bufSize = resolveCopyBufferSize(fileSize, bufSize);
+        Path path = resolver.getEventListenerFilePath();
         try (InputStream in = resolver.resolveSourceStream(getSession())) {
-            Path path = resolver.getEventListenerFilePath();
             listener.startFileEvent(FileOperation.SEND, path, fileSize, perms);
             try {
                 IoUtils.copy(in, out, bufSize);
@@ -552,8 +641,16 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
                 listener.endFileEvent(FileOperation.SEND, path, fileSize, perms, e);
                 throw e;
             }
-            listener.endFileEvent(FileOperation.SEND, path, fileSize, perms, null);
         }
+
+        if (deferAcks) {
+            // the end event is reported once the peer acknowledged the data
+            out.write(0);
+            deferredAcks.add(new DeferredAck(cmd, resolver, path, fileSize, perms));
+            return;
+        }
+
+        listener.endFileEvent(FileOperation.SEND, path, fileSize, perms, null);
         ack();
 
         readyCode = readAck(false);
@@ -563,6 +660,66 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
         validateAckReplyCode("sendStream", resolver, readyCode, false);
     }
 
+    /**
+     * Reads and validates the acknowledgments that were deferred while
+     * sending in {@link #FAST_TRANSFER_PROP fast transfer} mode - in the
+     * same order as the commands that required them were sent. The end of a
+     * file whose data acknowledgment was deferred is reported once validated
+     *
+     * @throws IOException If failed to read the acknowledgments or one of them
+     * is not a valid reply
+     */
+    protected void readDeferredAcks() throws IOException {
+        if (deferredAcks.isEmpty()) {
+            return;
+        }
+
+        out.flush();
+
+        boolean debugEnabled = log.isDebugEnabled();
+        for (DeferredAck pending = deferredAcks.poll(); pending != null; pending = deferredAcks.poll()) {
+            Path file = pending.getFile();
+            try {
+                int replyCode = readAck(false);
+                if (debugEnabled) {
+                    log.debug("readDeferredAcks({})[{}] command='{}' reply code={}",
+                              this, pending.getLocation(), pending.getCommand(), replyCode);
+                }
+                validateAckReplyCode(pending.getCommand(), pending.getLocation(), replyCode, false);
+            } catch (IOException | RuntimeException e) {
+                if (file != null) {
+                    listener.endFileEvent(FileOperation.SEND, file, pending.getLength(), pending.getPermissions(), e);
+                }
+                throw e;
+            }
+
+            if (file != null) {
+                listener.endFileEvent(FileOperation.SEND, file, pending.getLength(), pending.getPermissions(), null);
+            }
+        }
+    }
+
+    /**
+     * Reports the end of the sent files whose deferred acknowledgment will
+     * not be read due to the failure of the transfer
+     *
+     * @param reason The transfer failure
+     */
+    protected void abortDeferredAcks(Throwable reason) {
+        for (DeferredAck pending = deferredAcks.poll(); pending != null; pending = deferredAcks.poll()) {
+            Path file = pending.getFile();
+            if (file == null) {
+                continue;
+            }
+
+            try {
+                listener.endFileEvent(FileOperation.SEND, file, pending.getLength(), pending.getPermissions(), reason);
+            } catch (IOException | RuntimeException e) {
+                reason.addSuppressed(e);
+            }
+        }
+    }
+
     protected void validateOperationReadyCode(String command, Object location, int readyCode, boolean eofAllowed) throws IOException {
         validateCommandStatusCode(command, location, readyCode, eofAllowed);
     }
@@ -610,15 +767,17 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
 
             out.write(cmd.getBytes(StandardCharsets.UTF_8));
             out.write('\n');
-            out.flush();
+            if (deferAcks) {
+                deferredAcks.add(new DeferredAck(cmd, path));
+            } else {
+                out.flush();
 
-            int readyCode = readAck(false);
-            if (debugEnabled) {
+                int readyCode = readAck(false);
                 if (debugEnabled) {
                     log.debug("sendDir({})[{}] command='{}' ready code={}", this, path, cmd, readyCode);
                 }
+                validateAckReplyCode(cmd, path, readyCode, false);
             }
-            validateAckReplyCode(cmd, path, readyCode, false);
         }
 
         Set<PosixFilePermission> perms = opener.getLocalFilePermissions(path, options);
@@ -631,6 +790,7 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
         out.write('\n');
         out.flush();
 
+        readDeferredAcks();
         int readyCode = readAck(false);
         if (debugEnabled) {
             log.debug("sendDir({})[{}] command='{}' ready code={}",
@@ -661,6 +821,10 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
             log.debug("sendDir({})[{}] send 'E' command", this, path);
         }
         out.write("E\n".getBytes(StandardCharsets.UTF_8));
+        if (deferAcks) {
+            deferredAcks.add(new DeferredAck("E", path));
+            return;
+        }
         out.flush();
 
         readyCode = readAck(false);
@@ -838,4 +1002,51 @@ public class ScpHelper extends AbstractLoggingBean implements SessionHolder<Sess
     public String toString() {
         return getClass().getSimpleName() + "[" + getSession() + "]";
     }
+
+    /**
+     * A command whose acknowledgment was deferred in {@link #FAST_TRANSFER_PROP fast transfer}
+     * mode - along with the sent file if acknowledging its data
+     */
+    protected static class DeferredAck {
+        private final String command;
+        private final Object location;
+        private final Path file;
+        private final long length;
+        private final Set<PosixFilePermission> perms;
+
+        public DeferredAck(String command, Object location) {
+            this(command, location, null, -1L, null);
+        }
+
+        public DeferredAck(String command, Object location, Path file, long length, Set<PosixFilePermission> perms) {
+            this.command = command;
+            this.location = location;
+            this.file = file;
+            this.length = length;
+            this.perms = perms;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public Object getLocation() {
+            return location;
+        }
+
+        /**
+         * @return The sent file - {@code null} if not acknowledging a file's data
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public Set<PosixFilePermission> getPermissions() {
+            return perms;
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.scp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.FactoryManager;
+import org.apache.sshd.common.PropertyResolverUtils;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.common.scp.ScpHelper;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.scp.ScpCommandFactory;
+import org.apache.sshd.util.test.BaseTestSupport;
+import org.apache.sshd.util.test.Utils;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public abstract class AbstractScpClientTestSupport extends BaseTestSupport {
+    protected static SshServer sshd;
+    protected static int port;
+    protected static SshClient client;
+
+    protected AbstractScpClientTestSupport() {
+        super();
+    }
+
+    @BeforeClass
+    public static void setupClientAndServer() throws Exception {
+        sshd = Utils.setupTestServer(AbstractScpClientTestSupport.class);
+        sshd.setCommandFactory(new ScpCommandFactory());
+        // the receiver acknowledges several pipelined commands back-to-back
+        PropertyResolverUtils.updateProperty(sshd, FactoryManager.TCP_NODELAY, true);
+        sshd.start();
+        port = sshd.getPort();
+
+        client = Utils.setupTestClient(AbstractScpClientTestSupport.class);
+        PropertyResolverUtils.updateProperty(client, FactoryManager.TCP_NODELAY, true);
+        client.start();
+    }
+
+    @AfterClass
+    public static void tearDownClientAndServer() throws Exception {
+        if (sshd != null) {
+            try {
+                sshd.stop(true);
+            } finally {
+                sshd = null;
+            }
+        }
+
+        if (client != null) {
+            try {
+                client.stop();
+            } finally {
+                client = null;
+            }
+        }
+    }
+
+    @Before
+    public void setupServer() throws Exception {
+        sshd.setFileSystemFactory(new VirtualFileSystemFactory(detectTargetFolder().getParent()));
+    }
+
+    /**
+     * @return An empty folder for the current test - under the SCP sub-folder of the target
+     * @throws IOException If failed to create it
+     */
+    protected Path createScpRoot() throws IOException {
+        Path scpRoot = Utils.resolve(detectTargetFolder(), ScpHelper.SCP_COMMAND_PREFIX, getClass().getSimpleName(), getCurrentTestName());
+        Utils.deleteRecursive(scpRoot);
+        return assertHierarchyTargetFolderExists(scpRoot);
+    }
+
+    /**
+     * @return A session authenticated as the current test name - which is also used as password
+     * @throws IOException If failed to connect or authenticate
+     */
+    protected ClientSession createAuthenticatedClientSession() throws IOException {
+        ClientSession session = client.connect(getCurrentTestName(), TEST_LOCALHOST, port).verify(7L, TimeUnit.SECONDS).getSession();
+        try {
+            session.addPasswordIdentity(getCurrentTestName());
+            session.auth().verify(5L, TimeUnit.SECONDS);
+            return session;
+        } catch (IOException | RuntimeException e) {
+            session.close(true);
+            throw e;
+        }
+    }
+}
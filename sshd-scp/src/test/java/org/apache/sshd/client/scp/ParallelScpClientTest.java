@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.scp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.scp.ScpFileOpener;
+import org.apache.sshd.common.scp.ScpTransferEventListener;
+import org.apache.sshd.common.scp.helpers.DefaultScpFileOpener;
+import org.apache.sshd.util.test.Utils;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ParallelScpClientTest extends AbstractScpClientTestSupport {
+    public ParallelScpClientTest() {
+        super();
+    }
+
+    @Test
+    public void testDownloadPartitions() throws Exception {
+        Path scpRoot = createScpRoot();
+        Path remoteDir = populateFolder(scpRoot.resolve("remote"));
+        Path localDir = assertHierarchyTargetFolderExists(scpRoot.resolve("local"));
+        Path parentPath = detectTargetFolder().getParent();
+        String[] partitions;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(remoteDir)) {
+            Set<String> paths = new TreeSet<>();
+            for (Path p : ds) {
+                paths.add(Utils.resolveRelativeRemotePath(parentPath, p));
+            }
+            partitions = paths.toArray(new String[paths.size()]);
+        }
+
+        try (ClientSession session = createAuthenticatedClientSession()) {
+            ParallelScpClient scp = new ParallelScpClient(session, 2, 1, null, null);
+            scp.download(partitions, localDir, ScpClient.Option.Recursive);
+            assertEquals("Mismatched downloaded data", readFolder(remoteDir), readFolder(localDir));
+
+            ParallelScpClient.TransferProgress progress = scp.getTransferProgress();
+            assertEquals("Mismatched completed files", countFiles(readFolder(remoteDir)), progress.getCompletedFiles());
+            assertEquals("Unexpected failed files", 0L, progress.getFailedFiles());
+        }
+    }
+
+    @Test
+    public void testUploadMissingTarget() throws Exception {
+        Path scpRoot = createScpRoot();
+        Path localDir = populateFolder(scpRoot.resolve("local"));
+        String remotePath = Utils.resolveRelativeRemotePath(detectTargetFolder().getParent(), scpRoot.resolve("missing"));
+        try (ClientSession session = createAuthenticatedClientSession()) {
+            ParallelScpClient scp = new ParallelScpClient(session);
+            try {
+                scp.upload(localDir, remotePath);
+                fail("Unexpected success to upload into missing target");
+            } catch (IOException e) {
+                // expected
+            }
+            assertEquals("Unexpected completed files", 0L, scp.getTransferProgress().getCompletedFiles());
+        }
+    }
+
+    @Test
+    public void testUploadTree() throws Exception {
+        Path scpRoot = createScpRoot();
+        Path localDir = populateFolder(scpRoot.resolve("local"));
+        Map<String, String> expected = readFolder(localDir);
+        Path remoteDir = assertHierarchyTargetFolderExists(scpRoot.resolve("remote"));
+        String remotePath = Utils.resolveRelativeRemotePath(detectTargetFolder().getParent(), remoteDir);
+
+        Set<String> threads = Collections.synchronizedSet(new TreeSet<>());
+        ScpTransferEventListener listener = new ScpTransferEventListener() {
+            @Override
+            public void startFileEvent(FileOperation op, Path file, long length, Set<PosixFilePermission> perms) {
+                threads.add(Thread.currentThread().getName());
+            }
+        };
+
+        int maxChannels = 3;
+        try (ClientSession session = createAuthenticatedClientSession()) {
+            ParallelScpClient scp = new ParallelScpClient(session, maxChannels, 4, null, listener);
+            scp.upload(localDir, remotePath, ScpClient.Option.PreserveAttributes);
+            assertEquals("Mismatched uploaded data", expected, readFolder(remoteDir.resolve(localDir.getFileName())));
+
+            ParallelScpClient.TransferProgress progress = scp.getTransferProgress();
+            assertEquals("Mismatched completed files", countFiles(expected), progress.getCompletedFiles());
+            assertEquals("Mismatched started files", countFiles(expected), progress.getStartedFiles());
+            assertEquals("Unexpected failed files", 0L, progress.getFailedFiles());
+
+            long size = 0L;
+            for (String data : expected.values()) {
+                size += data.getBytes(StandardCharsets.UTF_8).length;
+            }
+            assertEquals("Mismatched transferred bytes", size, progress.getTransferredBytes());
+            assertEquals("Mismatched concurrent channels: " + threads, maxChannels, threads.size());
+        }
+    }
+
+    @Test
+    public void testUploadUsesConfiguredOpener() throws Exception {
+        Path scpRoot = createScpRoot();
+        Path localDir = populateFolder(scpRoot.resolve("local"));
+        Path excluded = localDir.resolve("b");
+        Map<String, String> expected = readFolder(localDir);
+        expected.keySet().removeIf(name -> name.startsWith("b"));
+        ScpFileOpener opener = new DefaultScpFileOpener() {
+            @Override
+            public boolean sendAsRegularFile(Path path, LinkOption... options) throws IOException {
+                return (!path.startsWith(excluded)) && super.sendAsRegularFile(path, options);
+            }
+
+            @Override
+            public boolean sendAsDirectory(Path path, LinkOption... options) throws IOException {
+                return (!path.startsWith(excluded)) && super.sendAsDirectory(path, options);
+            }
+        };
+
+        try (ClientSession session = createAuthenticatedClientSession()) {
+            ParallelScpClient scp = new ParallelScpClient(session, 2, 4, opener, null);
+            for (String target : Arrays.asList("remote-1", "remote-2")) {
+                Path remoteDir = assertHierarchyTargetFolderExists(scpRoot.resolve(target));
+                String remotePath = Utils.resolveRelativeRemotePath(detectTargetFolder().getParent(), remoteDir);
+                scp.upload(localDir, remotePath);
+                assertEquals("Mismatched uploaded data to " + target, expected, readFolder(remoteDir.resolve(localDir.getFileName())));
+
+                // the progress covers only the latest transfer
+                ParallelScpClient.TransferProgress progress = scp.getTransferProgress();
+                assertEquals("Mismatched completed files of " + target, countFiles(expected), progress.getCompletedFiles());
+                assertEquals("Mismatched started files of " + target, countFiles(expected), progress.getStartedFiles());
+            }
+        }
+    }
+
+    private Path populateFolder(Path root) throws IOException {
+        int index = 0;
+        for (String folder : Arrays.asList("", "a", "a/aa", "b", "b/bb/bbb", "c")) {
+            Path dir = assertHierarchyTargetFolderExists(folder.isEmpty() ? root : root.resolve(folder));
+            for (int count = 0; count < 5; count++, index++) {
+                Path file = dir.resolve(String.format("file-%03d.txt", index));
+                Files.write(file, (getCurrentTestName() + "#" + folder + "/" + file.getFileName()).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertHierarchyTargetFolderExists(root.resolve("empty"));
+
+        return root;
+    }
+
+    private static long countFiles(Map<String, String> contents) {
+        return contents.keySet().stream().filter(name -> !name.endsWith("/")).count();
+    }
+
+    private static Map<String, String> readFolder(Path root) throws IOException {
+        Map<String, String> contents = new TreeMap<>();
+        readFolder(root, "", contents);
+        return contents;
+    }
+
+    private static void readFolder(Path dir, String prefix, Map<String, String> contents) throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path child : ds) {
+                String name = prefix + child.getFileName();
+                if (Files.isDirectory(child)) {
+                    contents.put(name + "/", "");
+                    readFolder(child, name + "/", contents);
+                } else {
+                    contents.put(name, new String(Files.readAllBytes(child), StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.scp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.PropertyResolverUtils;
+import org.apache.sshd.common.scp.ScpHelper;
+import org.apache.sshd.util.test.Utils;
+import org.junit.After;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Measures recursive SCP transfers of many small files using the in-process
+ * {@link org.apache.sshd.server.scp.ScpCommand} - with and without the
+ * {@link ScpHelper#FAST_TRANSFER_PROP fast transfer} mode. By default only a few
+ * files are copied so that the regular build merely verifies both modes - for
+ * meaningful timings set the {@value #NUM_FILES_PROP} system property (e.g., 500).
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ScpSmallFilesBenchmarkTest extends AbstractScpClientTestSupport {
+    public static final String NUM_FILES_PROP = "scp-benchmark-files";
+    public static final int DEFAULT_NUM_FILES = 32;
+
+    public ScpSmallFilesBenchmarkTest() {
+        super();
+    }
+
+    @After
+    public void tearDown() {
+        updateFastTransfer(null);
+    }
+
+    @Test
+    public void testRecursiveDownload() throws Exception {
+        Path scpRoot = createScpRoot();
+        Path remoteDir = populateFolder(scpRoot.resolve("remote"));
+        Map<String, String> expected = readFolder(remoteDir);
+        String remotePath = Utils.resolveRelativeRemotePath(detectTargetFolder().getParent(), remoteDir);
+        try (ClientSession session = createAuthenticatedClientSession()) {
+            ScpClient scp = ScpClientCreator.instance().createScpClient(session);
+            for (boolean fast : new boolean[]{false, true}) {
+                updateFastTransfer(fast);
+                Path localDir = assertHierarchyTargetFolderExists(scpRoot.resolve("local-" + fast));
+                long start = System.nanoTime();
+                scp.download(remotePath, localDir, ScpClient.Option.Recursive, ScpClient.Option.PreserveAttributes);
+                long duration = System.nanoTime() - start;
+                assertEquals("Mismatched downloaded data - fast=" + fast,
+                    expected, readFolder(localDir.resolve(remoteDir.getFileName())));
+                outputDebugMessage("%s: fast=%s, files=%d, duration=%d msec.",
+                    getCurrentTestName(), fast, expected.size(), TimeUnit.NANOSECONDS.toMillis(duration));
+            }
+        }
+    }
+
+    @Test
+    public void testRecursiveUpload() throws Exception {
+        Path scpRoot = createScpRoot();
+        Path localDir = populateFolder(scpRoot.resolve("local"));
+        Map<String, String> expected = readFolder(localDir);
+        try (ClientSession session = createAuthenticatedClientSession()) {
+            ScpClient scp = ScpClientCreator.instance().createScpClient(session);
+            for (boolean fast : new boolean[]{false, true}) {
+                updateFastTransfer(fast);
+                Path remoteDir = assertHierarchyTargetFolderExists(scpRoot.resolve("remote-" + fast));
+                String remotePath = Utils.resolveRelativeRemotePath(detectTargetFolder().getParent(), remoteDir);
+                long start = System.nanoTime();
+                scp.upload(localDir, remotePath, ScpClient.Option.Recursive, ScpClient.Option.PreserveAttributes);
+                long duration = System.nanoTime() - start;
+                assertEquals("Mismatched uploaded data - fast=" + fast,
+                    expected, readFolder(remoteDir.resolve(localDir.getFileName())));
+                outputDebugMessage("%s: fast=%s, files=%d, duration=%d msec.",
+                    getCurrentTestName(), fast, expected.size(), TimeUnit.NANOSECONDS.toMillis(duration));
+            }
+        }
+    }
+
+    /*
+     * Spreads the files over a few sub-folders so that the 'D'/'E' commands are exercised as well
+     */
+    private Path populateFolder(Path root) throws IOException {
+        int numFiles = Integer.getInteger(NUM_FILES_PROP, DEFAULT_NUM_FILES);
+        for (int index = 0; index < numFiles; index++) {
+            Path dir = assertHierarchyTargetFolderExists(root.resolve("dir-" + (index % 4)));
+            Path file = dir.resolve(String.format("file-%06d.txt", index));
+            StringBuilder sb = new StringBuilder(Byte.MAX_VALUE);
+            for (int count = 0; count <= index % 7; count++) {
+                sb.append(getCurrentTestName()).append('#').append(file.getFileName()).append('\n');
+            }
+            Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return root;
+    }
+
+    private static Map<String, String> readFolder(Path root) throws IOException {
+        Map<String, String> contents = new TreeMap<>();
+        readFolder(root, "", contents);
+        return contents;
+    }
+
+    private static void readFolder(Path dir, String prefix, Map<String, String> contents) throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path child : ds) {
+                String name = prefix + child.getFileName();
+                if (Files.isDirectory(child)) {
+                    readFolder(child, name + "/", contents);
+                } else {
+                    contents.put(name, new String(Files.readAllBytes(child), StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    private static void updateFastTransfer(Boolean fast) {
+        PropertyResolverUtils.updateProperty(sshd, ScpHelper.FAST_TRANSFER_PROP, fast);
+        PropertyResolverUtils.updateProperty(client, ScpHelper.FAST_TRANSFER_PROP, fast);
+    }
+}
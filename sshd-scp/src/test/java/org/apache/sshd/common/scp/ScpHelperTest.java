@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.scp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.util.test.BaseTestSupport;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.mockito.Mockito;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ScpHelperTest extends BaseTestSupport {
+    public ScpHelperTest() {
+        super();
+    }
+
+    @Test
+    public void testFastTransferReportsEndOnceAcknowledged() throws Exception {
+        List<Path> files = createFiles();
+        List<String> events = new ArrayList<>();
+        // operation ready, 1st header, 1st data, 2nd header, 2nd data
+        ScpHelper helper = createFastHelper(new byte[]{0, 0, 0, 0, 0}, events);
+        helper.sendPaths(files, false, false, ScpHelper.MIN_SEND_BUFFER_SIZE);
+        assertEquals("Mismatched events", Arrays.asList(
+            "start:" + files.get(0).getFileName(), "end:" + files.get(0).getFileName() + ":null",
+            "start:" + files.get(1).getFileName(), "end:" + files.get(1).getFileName() + ":null"),
+            events);
+    }
+
+    @Test
+    public void testFastTransferNackAttributedToFile() throws Exception {
+        List<Path> files = createFiles();
+        List<String> events = new ArrayList<>();
+        // operation ready, 1st header, nack of the 1st data - read while sending the 2nd header
+        byte[] nack = "disk full\n".getBytes(StandardCharsets.UTF_8);
+        byte[] replies = new byte[3 + nack.length];
+        replies[2] = ScpHelper.ERROR;
+        System.arraycopy(nack, 0, replies, 3, nack.length);
+
+        ScpHelper helper = createFastHelper(replies, events);
+        try {
+            helper.sendPaths(files, false, false, ScpHelper.MIN_SEND_BUFFER_SIZE);
+            fail("Unexpected success");
+        } catch (ScpException e) {
+            assertEquals("Mismatched exit status", Integer.valueOf(ScpHelper.ERROR), e.getExitStatus());
+        }
+
+        assertEquals("Mismatched events", Arrays.asList(
+            "start:" + files.get(0).getFileName(), "end:" + files.get(0).getFileName() + ":" + ScpException.class.getSimpleName()),
+            events);
+    }
+
+    private List<Path> createFiles() throws IOException {
+        Path dir = assertHierarchyTargetFolderExists(getTempTargetRelativeFile(getClass().getSimpleName(), getCurrentTestName()));
+        List<Path> files = new ArrayList<>();
+        for (int index = 1; index <= 2; index++) {
+            Path file = dir.resolve("file-" + index + ".txt");
+            Files.write(file, (getCurrentTestName() + "#" + index).getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static ScpHelper createFastHelper(byte[] replies, List<String> events) {
+        Map<String, Object> props = new ConcurrentHashMap<>();
+        props.put(ScpHelper.FAST_TRANSFER_PROP, Boolean.TRUE);
+        Session session = Mockito.mock(Session.class);
+        Mockito.when(session.getProperties()).thenReturn(props);
+        return new ScpHelper(session, new ByteArrayInputStream(replies), new ByteArrayOutputStream(),
+            FileSystems.getDefault(), null, new ScpTransferEventListener() {
+                @Override
+                public void startFileEvent(FileOperation op, Path file, long length, Set<PosixFilePermission> perms) {
+                    events.add("start:" + file.getFileName());
+                }
+
+                @Override
+                public void endFileEvent(
+                        FileOperation op, Path file, long length, Set<PosixFilePermission> perms, Throwable thrown) {
+                    events.add("end:" + file.getFileName() + ":" + ((thrown == null) ? null : thrown.getClass().getSimpleName()));
+                }
+            });
+    }
+}
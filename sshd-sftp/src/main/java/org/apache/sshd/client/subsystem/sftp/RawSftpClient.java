@@ -20,8 +20,13 @@
 package org.apache.sshd.client.subsystem.sftp;
 
 import java.io.IOException;
+import java.util.Collection;
 
+import org.apache.sshd.common.SshException;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.subsystem.sftp.SftpException;
 import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
 
 /**
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
@@ -41,4 +46,94 @@ public interface RawSftpClient {
      * @throws IOException If connection closed or interrupted
      */
     Buffer receive(int id) throws IOException;
+
+    /**
+     * Sends an {@code SSH_FXP_READ} request without waiting for its response - used
+     * to keep several read requests outstanding
+     *
+     * @param handle The file handle identifier
+     * @param offset The file offset to read from
+     * @param length Max. number of bytes to read
+     * @return The assigned request id
+     * @throws IOException If failed to send the request
+     * @see #receiveData(int, byte[], int)
+     */
+    default int sendRead(byte[] handle, long offset, int length) throws IOException {
+        Buffer buffer = new ByteArrayBuffer(handle.length + Long.SIZE /* some extra fields */, false);
+        buffer.putBytes(handle);
+        buffer.putLong(offset);
+        buffer.putInt(length);
+        return send(SftpConstants.SSH_FXP_READ, buffer);
+    }
+
+    /**
+     * @param id The {@code SSH_FXP_READ} request id
+     * @param dst The buffer to place the data in
+     * @param dstOffset Offset in the buffer to place the data
+     * @return Number of read bytes - {@code -1} if EOF reached
+     * @throws IOException If failed to receive the response or read failed
+     */
+    default int receiveData(int id, byte[] dst, int dstOffset) throws IOException {
+        Buffer buffer = receive(id);
+        buffer.getInt();    // length
+        int type = buffer.getUByte();
+        buffer.getInt();    // id
+        if (type == SftpConstants.SSH_FXP_DATA) {
+            int len = buffer.getInt();
+            buffer.getRawBytes(dst, dstOffset, len);
+            return len;
+        }
+
+        if (type != SftpConstants.SSH_FXP_STATUS) {
+            throw new SshException("Unexpected SSH_FXP_READ response type: " + SftpConstants.getCommandMessageName(type));
+        }
+
+        int substatus = buffer.getInt();
+        if (substatus == SftpConstants.SSH_FX_EOF) {
+            return -1;
+        }
+        throw new SftpException(substatus, buffer.getString());
+    }
+
+    /**
+     * @param cmd The command whose status is expected - used only for reporting errors
+     * @param id The request id
+     * @throws IOException If failed to receive the response or it is not an
+     * {@code SSH_FX_OK} status
+     */
+    default void receiveStatus(int cmd, int id) throws IOException {
+        Buffer buffer = receive(id);
+        buffer.getInt();    // length
+        int type = buffer.getUByte();
+        buffer.getInt();    // id
+        if (type != SftpConstants.SSH_FXP_STATUS) {
+            throw new SshException("Unexpected " + SftpConstants.getCommandMessageName(cmd)
+                    + " response type: " + SftpConstants.getCommandMessageName(type));
+        }
+
+        int substatus = buffer.getInt();
+        if (substatus != SftpConstants.SSH_FX_OK) {
+            throw new SftpException(substatus, buffer.getString());
+        }
+    }
+
+    /**
+     * Receives and discards the responses of requests that are still outstanding
+     * after a pipelined operation failed, so that none are left pending. Stops at
+     * the first response that cannot be received since the channel is then unusable.
+     *
+     * @param ids The outstanding request ids
+     * @param failure The failure that aborted the operation - any exception
+     * encountered while draining is added to it as a suppressed one
+     */
+    default void drainResponses(Collection<Integer> ids, Throwable failure) {
+        for (Integer id : ids) {
+            try {
+                receive(id);
+            } catch (IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+                return;
+            }
+        }
+    }
 }
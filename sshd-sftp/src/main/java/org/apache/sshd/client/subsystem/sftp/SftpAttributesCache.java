@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
+import org.apache.sshd.common.util.ValidateUtils;
+
+/**
+ * A size-bounded cache of remote files attributes whose entries expire
+ * after a configured time. All methods are thread-safe. <B>Note:</B> the
+ * cache is not aware of changes made by other clients - it is up to the
+ * user to decide how stale the cached attributes may be.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpAttributesCache {
+    private final long ttlNanos;
+    private final Map<String, CachedAttributes> entries;
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+
+    /**
+     * @param ttl Time-to-live of the cached entries
+     * @param unit The {@link TimeUnit} of the time-to-live value
+     * @param maxEntries Max. number of cached entries - if exceeded then the
+     * least recently used ones are evicted
+     */
+    public SftpAttributesCache(long ttl, TimeUnit unit, int maxEntries) {
+        ValidateUtils.checkTrue(ttl > 0L, "Invalid time-to-live: %d", ttl);
+        ValidateUtils.checkTrue(maxEntries > 0, "Invalid max. entries: %d", maxEntries);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, CachedAttributes>(Math.min(maxEntries, Short.MAX_VALUE), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAttributes> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return Time-to-live (nanoseconds) of the cached entries
+     */
+    public long getTimeToLive() {
+        return ttlNanos;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param path The absolute remote path
+     * @param followLinks Whether the attributes are those of the link target
+     * @return The cached {@link Attributes} - {@code null} if none or expired
+     */
+    public Attributes get(String path, boolean followLinks) {
+        String key = toKey(path, followLinks);
+        CachedAttributes cached;
+        synchronized (this) {
+            cached = entries.get(key);
+            if ((cached != null) && ((System.nanoTime() - cached.time) >= ttlNanos)) {
+                entries.remove(key);
+                cached = null;
+            }
+        }
+
+        if (cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return cached.attributes;
+    }
+
+    /**
+     * @param path The absolute remote path
+     * @param followLinks Whether the attributes are those of the link target
+     * @param attributes The {@link Attributes} to cache - ignored if {@code null}
+     */
+    public void put(String path, boolean followLinks, Attributes attributes) {
+        if (attributes == null) {
+            return;
+        }
+
+        CachedAttributes cached = new CachedAttributes(attributes, System.nanoTime());
+        synchronized (this) {
+            entries.put(toKey(path, followLinks), cached);
+            // a non-link has the same attributes whether links are followed or not
+            if (!attributes.isSymbolicLink()) {
+                entries.put(toKey(path, !followLinks), cached);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached attributes of the path, its parent (whose modification
+     * time is affected) and all its descendants (in case it is a directory that
+     * was renamed or removed)
+     *
+     * @param path The absolute remote path that has been modified
+     */
+    public synchronized void invalidate(String path) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        int pos = path.lastIndexOf('/');
+        String parent = (pos > 0) ? path.substring(0, pos) : ((pos == 0) ? "/" : null);
+        String prefix = path.endsWith("/") ? path : path + "/";
+        for (Iterator<String> keys = entries.keySet().iterator(); keys.hasNext();) {
+            String p = keys.next().substring(1);
+            if (p.equals(path) || p.equals(parent) || p.startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    protected String toKey(String path, boolean followLinks) {
+        return (followLinks ? "+" : "-") + path;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()
+            + "[size=" + size()
+            + ", ttl=" + TimeUnit.NANOSECONDS.toMillis(getTimeToLive())
+            + ", hits=" + getHits()
+            + ", misses=" + getMisses()
+            + "]";
+    }
+
+    private static final class CachedAttributes {
+        private final Attributes attributes;
+        private final long time;
+
+        private CachedAttributes(Attributes attributes, long time) {
+            this.attributes = attributes;
+            this.time = time;
+        }
+    }
+}
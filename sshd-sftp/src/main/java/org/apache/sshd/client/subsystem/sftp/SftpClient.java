@@ -39,12 +39,14 @@ import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.sshd.client.subsystem.SubsystemClient;
 import org.apache.sshd.client.subsystem.sftp.extensions.SftpClientExtension;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.subsystem.sftp.SftpFileAttributes;
 import org.apache.sshd.common.subsystem.sftp.SftpHelper;
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.ValidateUtils;
@@ -466,6 +468,98 @@ public interface SftpClient extends SubsystemClient {
             return !isRegularFile() && !isDirectory() && !isSymbolicLink();
         }
 
+        /**
+         * @return The equivalent {@link SftpFileAttributes} - i.e., containing
+         * only the attributes whose {@link #getFlags() flags} are set
+         */
+        public SftpFileAttributes toFileAttributes() {
+            SftpFileAttributes attrs = new SftpFileAttributes();
+            int perms = getPermissions();
+            int fileType = getType();
+            if ((fileType == SftpConstants.SSH_FILEXFER_TYPE_UNKNOWN) && ((perms & SftpConstants.S_IFMT) != 0)) {
+                fileType = SftpHelper.permissionsToFileType(perms);
+            }
+            attrs.setType(fileType);
+
+            for (Attribute a : getFlags()) {
+                switch (a) {
+                    case Size:
+                        attrs.setSize(getSize());
+                        break;
+                    case UidGid:
+                        attrs.setUserAndGroupIds(getUserId(), getGroupId());
+                        break;
+                    case OwnerGroup:
+                        attrs.setOwnerAndGroup(getOwner(), getGroup());
+                        break;
+                    case Perms:
+                        attrs.setPermissions(perms);
+                        break;
+                    case AccessTime:
+                        attrs.setAccessTime(getAccessTime().toMillis());
+                        break;
+                    case CreateTime:
+                        attrs.setCreateTime(getCreateTime().toMillis());
+                        break;
+                    case ModifyTime:
+                        attrs.setModifyTime(getModifyTime().toMillis());
+                        break;
+                    case Acl:
+                        attrs.setAcl(getAcl());
+                        break;
+                    case Extensions:
+                        attrs.setExtensions(getExtensions());
+                        break;
+                    default:    // ignored
+                }
+            }
+
+            return attrs;
+        }
+
+        /**
+         * @param attrs The {@link SftpFileAttributes} to convert
+         * @return The equivalent {@link Attributes} - i.e., containing
+         * only the attributes whose {@link SftpFileAttributes#getFlags() flags}
+         * are set
+         */
+        public static Attributes fromFileAttributes(SftpFileAttributes attrs) {
+            Attributes result = new Attributes();
+            result.setType(attrs.getType());
+            if (attrs.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_SIZE)) {
+                result.setSize(attrs.getSize());
+            }
+            if (attrs.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_UIDGID)) {
+                result.owner(attrs.getUserId(), attrs.getGroupId());
+            }
+            if (attrs.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_OWNERGROUP)) {
+                result.setOwner(attrs.getOwner());
+                result.setGroup(attrs.getGroup());
+            }
+            if (attrs.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS)) {
+                result.setPermissions(attrs.getEncodedPermissions());
+            }
+            if (attrs.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_ACCESSTIME)) {
+                result.setAccessTime(FileTime.fromMillis(attrs.getAccessTime()));
+            }
+            if (attrs.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_CREATETIME)) {
+                result.setCreateTime(FileTime.fromMillis(attrs.getCreateTime()));
+            }
+            if (attrs.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_MODIFYTIME)) {
+                result.setModifyTime(FileTime.fromMillis(attrs.getModifyTime()));
+            }
+            if (attrs.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_ACL)) {
+                result.setAcl(attrs.getAcl());
+            }
+            if (attrs.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_EXTENDED)) {
+                Map<String, byte[]> extensions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                attrs.getExtensions().forEach((name, value) -> extensions.put(Objects.toString(name),
+                    (value instanceof byte[]) ? (byte[]) value : Objects.toString(value).getBytes(StandardCharsets.UTF_8)));
+                result.setExtensions(extensions);
+            }
+            return result;
+        }
+
         @Override
         public String toString() {
             return "type=" + getType()
@@ -935,8 +1029,24 @@ public interface SftpClient extends SubsystemClient {
         return new SftpIterableDirEntry(this, path);
     }
 
+    /**
+     * @return The internal buffer size used by the {@code read} methods that
+     * do not specify one - by default {@link #DEFAULT_READ_BUFFER_SIZE}
+     */
+    default int getDefaultReadBufferSize() {
+        return DEFAULT_READ_BUFFER_SIZE;
+    }
+
+    /**
+     * @return The internal buffer size used by the {@code write} methods that
+     * do not specify one - by default {@link #DEFAULT_WRITE_BUFFER_SIZE}
+     */
+    default int getDefaultWriteBufferSize() {
+        return DEFAULT_WRITE_BUFFER_SIZE;
+    }
+
     default InputStream read(String path) throws IOException {
-        return read(path, DEFAULT_READ_BUFFER_SIZE);
+        return read(path, getDefaultReadBufferSize());
     }
 
     default InputStream read(String path, int bufferSize) throws IOException {
@@ -944,7 +1054,7 @@ public interface SftpClient extends SubsystemClient {
     }
 
     default InputStream read(String path, OpenMode... mode) throws IOException {
-        return read(path, DEFAULT_READ_BUFFER_SIZE, mode);
+        return read(path, getDefaultReadBufferSize(), mode);
     }
 
     default InputStream read(String path, int bufferSize, OpenMode... mode) throws IOException {
@@ -952,7 +1062,7 @@ public interface SftpClient extends SubsystemClient {
     }
 
     default InputStream read(String path, Collection<OpenMode> mode) throws IOException {
-        return read(path, DEFAULT_READ_BUFFER_SIZE, mode);
+        return read(path, getDefaultReadBufferSize(), mode);
     }
 
     /**
@@ -977,7 +1087,7 @@ public interface SftpClient extends SubsystemClient {
     }
 
     default OutputStream write(String path) throws IOException {
-        return write(path, DEFAULT_WRITE_BUFFER_SIZE);
+        return write(path, getDefaultWriteBufferSize());
     }
 
     default OutputStream write(String path, int bufferSize) throws IOException {
@@ -985,7 +1095,7 @@ public interface SftpClient extends SubsystemClient {
     }
 
     default OutputStream write(String path, OpenMode... mode) throws IOException {
-        return write(path, DEFAULT_WRITE_BUFFER_SIZE, mode);
+        return write(path, getDefaultWriteBufferSize(), mode);
     }
 
     default OutputStream write(String path, int bufferSize, OpenMode... mode) throws IOException {
@@ -993,7 +1103,7 @@ public interface SftpClient extends SubsystemClient {
     }
 
     default OutputStream write(String path, Collection<OpenMode> mode) throws IOException {
-        return write(path, DEFAULT_WRITE_BUFFER_SIZE, mode);
+        return write(path, getDefaultWriteBufferSize(), mode);
     }
 
     /**
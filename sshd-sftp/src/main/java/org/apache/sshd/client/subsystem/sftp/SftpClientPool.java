@@ -0,0 +1,485 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.client.channel.ClientChannel;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.session.ClientSessionHolder;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+
+/**
+ * A pool of {@link SftpClient}-s (i.e., subsystem channels) opened on the same
+ * session. All methods are thread-safe.
+ * <UL>
+ *      <LI>
+ *      The most recently released client is reused first, so that surplus
+ *      clients remain idle and are closed once their idle timeout expires (checked
+ *      periodically as well as whenever a client is borrowed or released) - but never
+ *      below the configured min. number of idle clients, which can be opened in
+ *      advance via {@link #prestart()}.
+ *      </LI>
+ *
+ *      <LI>
+ *      If a max. size is configured, then borrowers wait (in FIFO order) for a
+ *      client to be released - up to the configured borrow timeout.
+ *      </LI>
+ *
+ *      <LI>
+ *      Clients are checked for liveness (open client, channel and session - no
+ *      round-trip to the server) when borrowed and released.
+ *      </LI>
+ * </UL>
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpClientPool extends AbstractLoggingBean implements ClientSessionHolder, Closeable {
+    private final ClientSession clientSession;
+    private final SftpClientFactory factory;
+    private final SftpVersionSelector selector;
+    private final int minIdle;
+    private final int maxIdle;
+    private final int maxSize;
+    private final long idleTimeoutNanos;
+    private final long borrowTimeoutNanos;
+    private final Semaphore permits;
+    private final ScheduledFuture<?> evictionTask;
+    private final Deque<IdleClient> idleClients = new LinkedList<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final long startTime = System.nanoTime();
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private final AtomicLong borrowCount = new AtomicLong(0L);
+    private final AtomicLong createdCount = new AtomicLong(0L);
+    private final AtomicLong evictedCount = new AtomicLong(0L);
+    private final AtomicLong invalidatedCount = new AtomicLong(0L);
+    private final AtomicLong timeoutCount = new AtomicLong(0L);
+    private final AtomicLong totalBorrowNanos = new AtomicLong(0L);
+    private final AtomicLong maxBorrowNanos = new AtomicLong(0L);
+
+    /**
+     * @param session The {@link ClientSession} on which the clients are opened
+     * @param factory The {@link SftpClientFactory} used to create the clients
+     * @param selector The {@link SftpVersionSelector} - may be {@code null}
+     * @param minIdle Min. number of idle clients that are not evicted
+     * @param maxIdle Max. number of idle clients kept for re-use
+     * @param maxSize Max. number of concurrently borrowed clients - non-positive means unlimited
+     * @param idleTimeout Time (msec.) after which an idle client is closed - non-positive means never
+     * @param borrowTimeout Max. time (msec.) to wait for a client if {@code maxSize} reached
+     */
+    public SftpClientPool(
+            ClientSession session, SftpClientFactory factory, SftpVersionSelector selector,
+            int minIdle, int maxIdle, int maxSize, long idleTimeout, long borrowTimeout) {
+        this.clientSession = Objects.requireNonNull(session, "No client session");
+        this.factory = Objects.requireNonNull(factory, "No client factory");
+        this.selector = selector;
+        ValidateUtils.checkTrue(maxIdle >= 0, "Invalid max. idle clients: %d", maxIdle);
+        ValidateUtils.checkTrue((minIdle >= 0) && (minIdle <= maxIdle), "Invalid min. idle clients: %d", minIdle);
+        this.minIdle = minIdle;
+        this.maxIdle = maxIdle;
+        this.maxSize = Math.max(0, maxSize);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, idleTimeout));
+        this.borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, borrowTimeout));
+        this.permits = (this.maxSize > 0) ? new Semaphore(this.maxSize, true) : null;
+
+        if (idleTimeoutNanos > 0L) {
+            // check twice per timeout so that idle clients do not linger much longer than it
+            long period = Math.max(1L, idleTimeoutNanos / 2L);
+            ScheduledExecutorService scheduler = session.getFactoryManager().getScheduledExecutorService();
+            this.evictionTask = scheduler.scheduleWithFixedDelay(this::evictIdleClients, period, period, TimeUnit.NANOSECONDS);
+        } else {
+            this.evictionTask = null;
+        }
+    }
+
+    @Override
+    public ClientSession getClientSession() {
+        return clientSession;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * @return Max. number of concurrently borrowed clients - zero means unlimited
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Opens clients so that at least the min. number of idle clients is available
+     *
+     * @throws IOException If failed to open a client
+     */
+    public void prestart() throws IOException {
+        int minCount = getMinIdle();
+        List<SftpClient> clients = new ArrayList<>(minCount);
+        try {
+            // borrow them all at once so that idle ones are not re-used
+            for (int count = 0; count < minCount; count++) {
+                clients.add(borrow());
+            }
+        } finally {
+            for (SftpClient client : clients) {
+                release(client);
+            }
+        }
+    }
+
+    /**
+     * Borrows a client - re-using an idle one if possible. The client must be
+     * {@link #release(SftpClient) released} when no longer needed
+     *
+     * @return The borrowed {@link SftpClient}
+     * @throws IOException If failed to create a new client, the pool is closed or
+     * timed out waiting for a client to be released
+     */
+    public SftpClient borrow() throws IOException {
+        long start = System.nanoTime();
+        if (closed.get()) {
+            throw new IOException("borrow(" + this + ") pool is closed");
+        }
+
+        if (permits != null) {
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                throw (IOException) new InterruptedIOException("Interrupted while waiting for an SFTP client").initCause(e);
+            }
+
+            if (!acquired) {
+                timeoutCount.incrementAndGet();
+                throw new SocketTimeoutException("No SFTP client released within "
+                    + TimeUnit.NANOSECONDS.toMillis(borrowTimeoutNanos) + " msec. - max. size=" + maxSize);
+            }
+        }
+
+        SftpClient client;
+        try {
+            client = pollIdleClient();
+            if (client == null) {
+                client = createClient();
+                createdCount.incrementAndGet();
+                if (log.isDebugEnabled()) {
+                    log.debug("borrow({}) created {}", this, client);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            throw e;
+        }
+
+        activeCount.incrementAndGet();
+        borrowCount.incrementAndGet();
+        evictIdleClients();
+
+        long elapsed = System.nanoTime() - start;
+        totalBorrowNanos.addAndGet(elapsed);
+        maxBorrowNanos.accumulateAndGet(elapsed, Math::max);
+        return client;
+    }
+
+    /**
+     * @param client A previously {@link #borrow() borrowed} client - kept for
+     * re-use if still alive and not too many idle clients, closed otherwise
+     */
+    public void release(SftpClient client) {
+        activeCount.decrementAndGet();
+        try {
+            boolean keep = (!closed.get()) && isAlive(client);
+            if (keep) {
+                synchronized (idleClients) {
+                    keep = idleClients.size() < maxIdle;
+                    if (keep) {
+                        idleClients.addFirst(new IdleClient(client, System.nanoTime()));
+                    }
+                }
+            }
+
+            if (!keep) {
+                closeClient(client);
+            }
+
+            evictIdleClients();
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * @return A newly opened {@link SftpClient}
+     * @throws IOException If failed to open the client
+     */
+    protected SftpClient createClient() throws IOException {
+        return factory.createSftpClient(getClientSession(), selector);
+    }
+
+    /**
+     * Checks (locally) if a client can still be used
+     *
+     * @param client The {@link SftpClient} to check
+     * @return {@code true} if the client, its channel and session are open
+     */
+    protected boolean isAlive(SftpClient client) {
+        if ((!client.isOpen()) || client.isClosing()) {
+            return false;
+        }
+
+        ClientChannel channel = client.getClientChannel();
+        if ((channel != null) && ((!channel.isOpen()) || channel.isClosing())) {
+            return false;
+        }
+
+        ClientSession session = client.getClientSession();
+        return (session == null) || (session.isOpen() && (!session.isClosing()));
+    }
+
+    protected SftpClient pollIdleClient() {
+        while (true) {
+            IdleClient idle;
+            synchronized (idleClients) {
+                idle = idleClients.pollFirst();
+            }
+
+            if (idle == null) {
+                return null;
+            }
+
+            SftpClient client = idle.getClient();
+            if (isAlive(client)) {
+                return client;
+            }
+
+            invalidatedCount.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("pollIdleClient({}) discard dead client={}", this, client);
+            }
+            closeClient(client);
+        }
+    }
+
+    /**
+     * Closes the clients that have been idle for more than the idle timeout
+     * - but keeps at least the min. number of idle clients
+     */
+    protected void evictIdleClients() {
+        if (idleTimeoutNanos <= 0L) {
+            return;
+        }
+
+        List<SftpClient> evicted = null;
+        int keep = getMinIdle();
+        long now = System.nanoTime();
+        synchronized (idleClients) {
+            // the least recently used ones are at the tail
+            for (Iterator<IdleClient> iter = idleClients.descendingIterator();
+                    iter.hasNext() && (idleClients.size() > keep);) {
+                IdleClient idle = iter.next();
+                if ((now - idle.getIdleSince()) < idleTimeoutNanos) {
+                    break;
+                }
+
+                iter.remove();
+                if (evicted == null) {
+                    evicted = new ArrayList<>();
+                }
+                evicted.add(idle.getClient());
+            }
+        }
+
+        if (evicted == null) {
+            return;
+        }
+
+        evictedCount.addAndGet(evicted.size());
+        if (log.isDebugEnabled()) {
+            log.debug("evictIdleClients({}) evicted {} idle clients", this, evicted.size());
+        }
+
+        for (SftpClient client : evicted) {
+            closeClient(client);
+        }
+    }
+
+    protected void closeClient(SftpClient client) {
+        IOException err = IoUtils.closeQuietly(client);
+        if ((err != null) && log.isDebugEnabled()) {
+            log.debug("closeClient({})[{}] failed ({}) to close: {}",
+                      this, client, err.getClass().getSimpleName(), err.getMessage());
+        }
+    }
+
+    /**
+     * @return Number of currently borrowed clients
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return Number of currently idle clients
+     */
+    public int getIdleCount() {
+        synchronized (idleClients) {
+            return idleClients.size();
+        }
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return Total number of clients (i.e., channels) created by the pool
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return Number of clients closed due to their idle timeout
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * @return Number of idle clients discarded since they failed the liveness check
+     */
+    public long getInvalidatedCount() {
+        return invalidatedCount.get();
+    }
+
+    /**
+     * @return Number of borrow attempts that timed out
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return Average time (nanoseconds) it took to borrow a client - including
+     * waiting for one to be released and creating a new one
+     */
+    public long getAverageBorrowNanos() {
+        long count = getBorrowCount();
+        return (count <= 0L) ? 0L : totalBorrowNanos.get() / count;
+    }
+
+    /**
+     * @return Longest time (nanoseconds) it took to borrow a client
+     */
+    public long getMaxBorrowNanos() {
+        return maxBorrowNanos.get();
+    }
+
+    /**
+     * @return Average number of clients created per second since the pool was created
+     */
+    public double getCreationRate() {
+        long elapsed = System.nanoTime() - startTime;
+        return (elapsed <= 0L) ? 0.0d : getCreatedCount() * (double) TimeUnit.SECONDS.toNanos(1L) / elapsed;
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    /**
+     * Closes all the idle clients - borrowed clients are closed when released
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.getAndSet(true)) {
+            if (evictionTask != null) {
+                evictionTask.cancel(false);
+            }
+
+            List<SftpClient> clients = new ArrayList<>();
+            synchronized (idleClients) {
+                for (IdleClient idle : idleClients) {
+                    clients.add(idle.getClient());
+                }
+                idleClients.clear();
+            }
+
+            IOException err = IoUtils.closeQuietly(clients.toArray(new SftpClient[clients.size()]));
+            if (err != null) {
+                throw err;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + getClientSession() + "]"
+            + " active=" + getActiveCount()
+            + ", idle=" + getIdleCount()
+            + ", created=" + getCreatedCount()
+            + ", evicted=" + getEvictedCount();
+    }
+
+    private static class IdleClient {
+        private final SftpClient client;
+        private final long idleSince;
+
+        IdleClient(SftpClient client, long idleSince) {
+            this.client = client;
+            this.idleSince = idleSince;
+        }
+
+        public SftpClient getClient() {
+            return client;
+        }
+
+        public long getIdleSince() {
+            return idleSince;
+        }
+    }
+}
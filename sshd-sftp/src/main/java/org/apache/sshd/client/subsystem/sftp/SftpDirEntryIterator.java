@@ -21,7 +21,9 @@ package org.apache.sshd.client.subsystem.sftp;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.channels.Channel;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -29,6 +31,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.sshd.client.subsystem.sftp.SftpClient.DirEntry;
 import org.apache.sshd.client.subsystem.sftp.SftpClient.Handle;
+import org.apache.sshd.client.subsystem.sftp.impl.AbstractSftpClient;
 import org.apache.sshd.common.util.ValidateUtils;
 import org.apache.sshd.common.util.logging.AbstractLoggingBean;
 
@@ -38,14 +41,29 @@ import org.apache.sshd.common.util.logging.AbstractLoggingBean;
  * no need to close the iterator. Otherwise, it is recommended to close it so
  * as to release the internal handle.
  *
+ * <P>While the caller iterates over a batch of entries, the next batch(es)
+ * are already being requested from the server - see {@link #READDIR_PREFETCH_DEPTH_PROP}.</P>
+ *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
 public class SftpDirEntryIterator extends AbstractLoggingBean implements Iterator<DirEntry>, Channel {
+    /**
+     * Max. number of {@code SSH_FXP_READDIR} requests kept outstanding while
+     * the caller iterates over the current batch of entries - zero or negative
+     * disables prefetching. Values above one require a server that handles
+     * several outstanding requests for the same handle in order (which most do)
+     */
+    public static final String READDIR_PREFETCH_DEPTH_PROP = "sftp-readdir-prefetch-depth";
+    public static final int DEFAULT_READDIR_PREFETCH_DEPTH = 1;
+
     private final AtomicReference<Boolean> eolIndicator = new AtomicReference<>();
     private final AtomicBoolean open = new AtomicBoolean(true);
     private final SftpClient client;
     private final String dirPath;
     private final boolean closeOnFinished;
+    private final int prefetchDepth;
+    private final Deque<Integer> pendingReads = new LinkedList<>();
+    private boolean exhausted;
     private Handle dirHandle;
     private List<DirEntry> dirEntries;
     private int index;
@@ -79,6 +97,9 @@ public class SftpDirEntryIterator extends AbstractLoggingBean implements Iterato
         this.dirPath = ValidateUtils.checkNotNullAndNotEmpty(path, "No path");
         this.dirHandle = Objects.requireNonNull(dirHandle, "No directory handle");
         this.closeOnFinished = closeOnFinished;
+        this.prefetchDepth = (client instanceof AbstractSftpClient)
+            ? client.getClientSession().getIntProperty(READDIR_PREFETCH_DEPTH_PROP, DEFAULT_READDIR_PREFETCH_DEPTH)
+            : 0;
         this.dirEntries = load(dirHandle);
     }
 
@@ -139,9 +160,19 @@ public class SftpDirEntryIterator extends AbstractLoggingBean implements Iterato
         return closeOnFinished;
     }
 
+    /**
+     * @return Max. number of outstanding {@code SSH_FXP_READDIR} requests while
+     * the caller iterates over the current batch - zero if no prefetching
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
     @Override
     public void close() throws IOException {
         if (open.getAndSet(false)) {
+            drainPendingReads();
+
             Handle handle = getHandle();
             if ((handle instanceof Closeable) && isCloseOnFinished()) {
                 if (log.isDebugEnabled()) {
@@ -163,13 +194,25 @@ public class SftpDirEntryIterator extends AbstractLoggingBean implements Iterato
                 return null;
             }
 
-            List<DirEntry> entries = client.readDir(handle, eolIndicator);
+            List<DirEntry> entries;
+            if (getPrefetchDepth() > 0) {
+                AbstractSftpClient raw = (AbstractSftpClient) client;
+                sendPendingReads(raw, handle);
+                entries = raw.receiveReadDir(pendingReads.removeFirst(), eolIndicator);
+            } else {
+                entries = client.readDir(handle, eolIndicator);
+            }
+
             eolReached = eolIndicator.get();
             if ((entries == null) || ((eolReached != null) && eolReached)) {
                 if (log.isTraceEnabled()) {
                     log.trace("load({})[{}] exhausted all entries - EOL={}", getPath(), handle, eolReached);
                 }
+                exhausted = true;
                 close();
+            } else if (getPrefetchDepth() > 0) {
+                // request the next batch(es) while the caller iterates over this one
+                sendPendingReads((AbstractSftpClient) client, handle);
             }
 
             return entries;
@@ -187,6 +230,30 @@ public class SftpDirEntryIterator extends AbstractLoggingBean implements Iterato
         }
     }
 
+    protected void sendPendingReads(AbstractSftpClient raw, Handle handle) throws IOException {
+        int depth = getPrefetchDepth();
+        while ((!exhausted) && (pendingReads.size() < depth)) {
+            pendingReads.addLast(raw.sendReadDir(handle));
+        }
+    }
+
+    /**
+     * Consumes the responses of any outstanding requests so they are not
+     * left behind when the iteration ends
+     */
+    protected void drainPendingReads() {
+        for (Integer id = pendingReads.pollFirst(); id != null; id = pendingReads.pollFirst()) {
+            try {
+                ((AbstractSftpClient) client).receiveReadDir(id, null);
+            } catch (IOException | RuntimeException e) {
+                if (log.isTraceEnabled()) {
+                    log.trace("drainPendingReads({}) ignore {} for id={}: {}",
+                              getPath(), e.getClass().getSimpleName(), id, e.getMessage());
+                }
+            }
+        }
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException("readDir(" + getPath() + ")[" + getHandle() + "] Iterator#remove() N/A");
@@ -18,6 +18,7 @@
  */
 package org.apache.sshd.client.subsystem.sftp;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -33,25 +34,75 @@ import java.util.Collections;
 import java.util.List;
 import java.util.NavigableMap;
 import java.util.Objects;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.sshd.client.channel.ClientChannel;
 import org.apache.sshd.client.session.ClientSession;
 import org.apache.sshd.client.session.ClientSessionHolder;
 import org.apache.sshd.client.subsystem.sftp.impl.AbstractSftpClient;
+import org.apache.sshd.client.subsystem.sftp.impl.DefaultCloseableHandle;
 import org.apache.sshd.common.file.util.BaseFileSystem;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.buffer.Buffer;
 
 public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSessionHolder {
+    /**
+     * Max. number of idle {@link SftpClient}-s kept for re-use
+     */
     public static final String POOL_SIZE_PROP = "sftp-fs-pool-size";
     public static final int DEFAULT_POOL_SIZE = 8;
 
+    /**
+     * Min. number of idle {@link SftpClient}-s that are not closed when their
+     * {@link #POOL_IDLE_TIMEOUT_PROP idle timeout} expires
+     */
+    public static final String POOL_MIN_SIZE_PROP = "sftp-fs-pool-min-size";
+    public static final int DEFAULT_POOL_MIN_SIZE = 1;
+
+    /**
+     * Max. number of concurrently used {@link SftpClient}-s (i.e., channels) - if
+     * reached, then threads wait for a client to be released - non-positive (default)
+     * means unlimited
+     *
+     * @see #POOL_BORROW_TIMEOUT_PROP
+     */
+    public static final String POOL_MAX_SIZE_PROP = "sftp-fs-pool-max-size";
+    public static final int DEFAULT_POOL_MAX_SIZE = 0;
+
+    /**
+     * Time (msec.) after which an idle {@link SftpClient} is closed - non-positive means never
+     */
+    public static final String POOL_IDLE_TIMEOUT_PROP = "sftp-fs-pool-idle-timeout";
+    public static final long DEFAULT_POOL_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5L);
+
+    /**
+     * Max. time (msec.) to wait for an {@link SftpClient} to be released if the
+     * {@link #POOL_MAX_SIZE_PROP max. size} has been reached
+     */
+    public static final String POOL_BORROW_TIMEOUT_PROP = "sftp-fs-pool-borrow-timeout";
+    public static final long DEFAULT_POOL_BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(30L);
+
+    /**
+     * Time-to-live (msec.) of cached remote files attributes - non-positive
+     * (default) means no caching. <B>Note:</B> only modifications made via
+     * this file system are detected - changes made by others may go unnoticed
+     * until the cached attributes expire
+     */
+    public static final String ATTRIBUTES_CACHE_TTL_PROP = "sftp-fs-attributes-cache-ttl";
+    public static final long DEFAULT_ATTRIBUTES_CACHE_TTL = 0L;
+
+    /**
+     * Max. number of cached remote files attributes
+     */
+    public static final String ATTRIBUTES_CACHE_SIZE_PROP = "sftp-fs-attributes-cache-size";
+    public static final int DEFAULT_ATTRIBUTES_CACHE_SIZE = 1024;
+
     public static final Set<String> UNIVERSAL_SUPPORTED_VIEWS =
             Collections.unmodifiableSet(
                     GenericUtils.asSortedSet(String.CASE_INSENSITIVE_ORDER,
@@ -61,10 +112,12 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
     private final ClientSession clientSession;
     private final SftpClientFactory factory;
     private final SftpVersionSelector selector;
-    private final Queue<SftpClient> pool;
+    private final SftpClientPool clientPool;
     private final ThreadLocal<Wrapper> wrappers = new ThreadLocal<>();
     private final int version;
     private final Set<String> supportedViews;
+    private final SftpAttributesCache attributesCache;
+    private final AtomicLong modificationsCount = new AtomicLong(0L);
     private SftpPath defaultDir;
     private int readBufferSize = SftpClient.DEFAULT_READ_BUFFER_SIZE;
     private int writeBufferSize = SftpClient.DEFAULT_WRITE_BUFFER_SIZE;
@@ -77,7 +130,13 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
         this.factory = factory != null ? factory : SftpClientFactory.instance();
         this.selector = selector;
         this.stores = Collections.unmodifiableList(Collections.<FileStore>singletonList(new SftpFileStore(id, this)));
-        this.pool = new LinkedBlockingQueue<>(session.getIntProperty(POOL_SIZE_PROP, DEFAULT_POOL_SIZE));
+        this.clientPool = createClientPool(session);
+        this.clientPool.prestart();
+
+        long ttl = session.getLongProperty(ATTRIBUTES_CACHE_TTL_PROP, DEFAULT_ATTRIBUTES_CACHE_TTL);
+        this.attributesCache = (ttl > 0L)
+            ? new SftpAttributesCache(ttl, TimeUnit.MILLISECONDS, session.getIntProperty(ATTRIBUTES_CACHE_SIZE_PROP, DEFAULT_ATTRIBUTES_CACHE_SIZE))
+            : null;
         try (SftpClient client = getClient()) {
             version = client.getVersion();
             defaultDir = getPath(client.canonicalPath("."));
@@ -93,6 +152,23 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
         }
     }
 
+    protected SftpClientPool createClientPool(ClientSession session) {
+        int maxIdle = session.getIntProperty(POOL_SIZE_PROP, DEFAULT_POOL_SIZE);
+        int minIdle = Math.min(maxIdle, session.getIntProperty(POOL_MIN_SIZE_PROP, DEFAULT_POOL_MIN_SIZE));
+        return new SftpClientPool(session, factory, getSftpVersionSelector(), minIdle, maxIdle,
+            session.getIntProperty(POOL_MAX_SIZE_PROP, DEFAULT_POOL_MAX_SIZE),
+            session.getLongProperty(POOL_IDLE_TIMEOUT_PROP, DEFAULT_POOL_IDLE_TIMEOUT),
+            session.getLongProperty(POOL_BORROW_TIMEOUT_PROP, DEFAULT_POOL_BORROW_TIMEOUT));
+    }
+
+    /**
+     * @return The {@link SftpClientPool} used to serve {@link #getClient()} - can
+     * be used to query its usage statistics
+     */
+    public SftpClientPool getClientPool() {
+        return clientPool;
+    }
+
     public final SftpVersionSelector getSftpVersionSelector() {
         return selector;
     }
@@ -149,20 +225,92 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
         return clientSession;
     }
 
+    /**
+     * @return The {@link SftpAttributesCache} - {@code null} if attributes
+     * are not cached
+     * @see #ATTRIBUTES_CACHE_TTL_PROP
+     */
+    public SftpAttributesCache getAttributesCache() {
+        return attributesCache;
+    }
+
+    /**
+     * @return Number of modifications made so far to remote files via this
+     * file system - used to detect whether previously retrieved attributes
+     * may be stale
+     */
+    public long getModificationsCount() {
+        return modificationsCount.get();
+    }
+
+    /**
+     * @param path The {@link SftpPath} whose attributes are requested
+     * @param followLinks Whether the attributes of the link target are requested
+     * @return The known (and still valid) {@link SftpClient.Attributes} of the
+     * path - {@code null} if the server needs to be queried
+     */
+    public SftpClient.Attributes getCachedAttributes(SftpPath path, boolean followLinks) {
+        if (path instanceof SftpPathWithAttributes) {
+            SftpPathWithAttributes p = (SftpPathWithAttributes) path;
+            SftpClient.Attributes attrs = p.getAttributes();
+            if ((attrs != null) && (p.getModificationsCount() == getModificationsCount())
+                    && ((!followLinks) || (!attrs.isSymbolicLink()))) {
+                return attrs;
+            }
+        }
+
+        SftpAttributesCache cache = getAttributesCache();
+        return (cache == null) ? null : cache.get(toCacheKey(path.toString()), followLinks);
+    }
+
+    /**
+     * @param path The {@link SftpPath} whose attributes were retrieved
+     * @param followLinks Whether these are the attributes of the link target
+     * @param attrs The retrieved {@link SftpClient.Attributes}
+     * @param modificationsCount The {@link #getModificationsCount() modifications count}
+     * before the attributes were retrieved - if it changed in the meantime then
+     * the attributes are not cached since they may be stale
+     */
+    public void cacheAttributes(SftpPath path, boolean followLinks, SftpClient.Attributes attrs, long modificationsCount) {
+        SftpAttributesCache cache = getAttributesCache();
+        if ((cache != null) && (modificationsCount == getModificationsCount())) {
+            cache.put(toCacheKey(path.toString()), followLinks, attrs);
+        }
+    }
+
+    /**
+     * Invoked whenever a remote file is about to be modified via this file system.
+     * <B>Note:</B> for data written via a handle this happens only when the handle
+     * is opened and closed - not on every write.
+     *
+     * @param path The remote path - {@code null} if unknown, in which case
+     * all cached attributes are discarded
+     */
+    protected void invalidateAttributes(String path) {
+        modificationsCount.incrementAndGet();
+
+        SftpAttributesCache cache = getAttributesCache();
+        if (cache == null) {
+            return;
+        }
+
+        if (path == null) {
+            cache.clear();
+        } else {
+            cache.invalidate(toCacheKey(path));
+        }
+    }
+
+    protected String toCacheKey(String path) {
+        return getDefaultDir().resolve(path).normalize().toString();
+    }
+
     @SuppressWarnings("synthetic-access")
     public SftpClient getClient() throws IOException {
         Wrapper wrapper = wrappers.get();
         if (wrapper == null) {
-            while (wrapper == null) {
-                SftpClient client = pool.poll();
-                if (client == null) {
-                    ClientSession session = getClientSession();
-                    client = factory.createSftpClient(session, getSftpVersionSelector());
-                }
-                if (!client.isClosing()) {
-                    wrapper = new Wrapper(client, getReadBufferSize(), getWriteBufferSize());
-                }
-            }
+            SftpClient client = clientPool.borrow();
+            wrapper = new Wrapper(client, getReadBufferSize(), getWriteBufferSize());
             wrappers.set(wrapper);
         } else {
             wrapper.increment();
@@ -177,7 +325,11 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             String fsId = getId();
             SftpFileSystem fs = provider.removeFileSystem(fsId);
             ClientSession session = getClientSession();
-            session.close(true);
+            try {
+                clientPool.close();
+            } finally {
+                session.close(true);
+            }
 
             if ((fs != null) && (fs != this)) {
                 throw new FileSystemException(fsId, fsId, "Mismatched FS instance for id=" + fsId);
@@ -216,6 +368,8 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
         private final AtomicInteger count = new AtomicInteger(1);
         private final int readSize;
         private final int writeSize;
+        // handles opened for modification - their file's attributes are invalidated on open and close
+        private final Set<Handle> modifiedHandles = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
         private Wrapper(SftpClient delegate, int readSize, int writeSize) {
             this.delegate = delegate;
@@ -267,9 +421,7 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
         @Override
         public void close() throws IOException {
             if (count.decrementAndGet() <= 0) {
-                if (!pool.offer(delegate)) {
-                    delegate.close();
-                }
+                clientPool.release(delegate);
                 wrappers.set(null);
             }
         }
@@ -283,7 +435,23 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("open(" + path + ")[" + options + "] client is closed");
             }
-            return delegate.open(path, options);
+            if (Collections.singleton(OpenMode.Read).containsAll(options)) {
+                return bindHandle(delegate.open(path, options));
+            }
+
+            invalidateAttributes(path);
+            CloseableHandle handle = bindHandle(delegate.open(path, options));
+            modifiedHandles.add(handle);
+            return handle;
+        }
+
+        /**
+         * @param handle A {@link CloseableHandle} opened by the delegate
+         * @return An equivalent handle that is closed through this wrapper - so that
+         * closing it via {@link CloseableHandle#close()} also invalidates the cached attributes
+         */
+        protected CloseableHandle bindHandle(CloseableHandle handle) {
+            return new DefaultCloseableHandle(this, handle.getPath(), handle.getIdentifier());
         }
 
         @Override
@@ -291,7 +459,14 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("close(" + handle + ") client is closed");
             }
-            delegate.close(handle);
+            try {
+                delegate.close(handle);
+            } finally {
+                // attributes cached while the file was being written may be stale
+                if (modifiedHandles.remove(handle)) {
+                    invalidateAttributes(handle.getPath());
+                }
+            }
         }
 
         @Override
@@ -299,6 +474,7 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("remove(" + path + ") client is closed");
             }
+            invalidateAttributes(path);
             delegate.remove(path);
         }
 
@@ -307,6 +483,8 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("rename(" + oldPath + " => " + newPath + ")[" + options + "] client is closed");
             }
+            invalidateAttributes(oldPath);
+            invalidateAttributes(newPath);
             delegate.rename(oldPath, newPath, options);
         }
 
@@ -331,6 +509,7 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("mkdir(" + path + ") client is closed");
             }
+            invalidateAttributes(path);
             delegate.mkdir(path);
         }
 
@@ -339,6 +518,7 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("rmdir(" + path + ") client is closed");
             }
+            invalidateAttributes(path);
             delegate.rmdir(path);
         }
 
@@ -403,6 +583,7 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("setStat(" + path + ")[" + attributes + "] client is closed");
             }
+            invalidateAttributes(path);
             delegate.setStat(path, attributes);
         }
 
@@ -411,6 +592,7 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("setStat(" + handle + ")[" + attributes + "] client is closed");
             }
+            invalidateAttributes(handle.getPath());
             delegate.setStat(handle, attributes);
         }
 
@@ -427,6 +609,7 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("symLink(" + linkPath + " => " + targetPath + ") client is closed");
             }
+            invalidateAttributes(linkPath);
             delegate.symLink(linkPath, targetPath);
         }
 
@@ -481,7 +664,23 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("write(" + path + ")[" + mode + "] size=" + bufferSize + ": client is closed");
             }
-            return delegate.write(path, bufferSize, mode);
+            invalidateAttributes(path);
+            // the data is written directly via the delegate
+            return new FilterOutputStream(delegate.write(path, bufferSize, mode)) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        invalidateAttributes(path);
+                    }
+                }
+            };
         }
 
         @Override
@@ -489,6 +688,7 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             if (!isOpen()) {
                 throw new IOException("link(" + linkPath + " => " + targetPath + "] symbolic=" + symbolic + ": client is closed");
             }
+            invalidateAttributes(linkPath);
             delegate.link(linkPath, targetPath, symbolic);
         }
 
@@ -515,12 +715,35 @@ public class SftpFileSystem extends BaseFileSystem<SftpPath> implements ClientSe
             }
 
             if (delegate instanceof RawSftpClient) {
+                if (isModifyingCommand(cmd)) {
+                    // the affected path is not known
+                    invalidateAttributes(null);
+                }
                 return ((RawSftpClient) delegate).send(cmd, buffer);
             } else {
                 throw new StreamCorruptedException("send(cmd=" + SftpConstants.getCommandMessageName(cmd) + ") delegate is not a " + RawSftpClient.class.getSimpleName());
             }
         }
 
+        private boolean isModifyingCommand(int cmd) {
+            switch (cmd) {
+                case SftpConstants.SSH_FXP_OPEN:
+                case SftpConstants.SSH_FXP_WRITE:
+                case SftpConstants.SSH_FXP_SETSTAT:
+                case SftpConstants.SSH_FXP_FSETSTAT:
+                case SftpConstants.SSH_FXP_REMOVE:
+                case SftpConstants.SSH_FXP_RENAME:
+                case SftpConstants.SSH_FXP_MKDIR:
+                case SftpConstants.SSH_FXP_RMDIR:
+                case SftpConstants.SSH_FXP_SYMLINK:
+                case SftpConstants.SSH_FXP_LINK:
+                case SftpConstants.SSH_FXP_EXTENDED:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
         @Override
         public Buffer receive(int id) throws IOException {
             if (!isOpen()) {
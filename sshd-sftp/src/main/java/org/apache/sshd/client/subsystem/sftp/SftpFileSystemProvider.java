@@ -19,8 +19,6 @@
 package org.apache.sshd.client.subsystem.sftp;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.URI;
@@ -59,7 +57,9 @@ import java.nio.file.spi.FileSystemProvider;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -71,6 +71,11 @@ import java.util.concurrent.TimeUnit;
 import org.apache.sshd.client.SshClient;
 import org.apache.sshd.client.session.ClientSession;
 import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Handle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.OpenMode;
+import org.apache.sshd.client.subsystem.sftp.extensions.CopyDataExtension;
+import org.apache.sshd.client.subsystem.sftp.extensions.CopyFileExtension;
 import org.apache.sshd.common.PropertyResolver;
 import org.apache.sshd.common.PropertyResolverUtils;
 import org.apache.sshd.common.SshException;
@@ -81,6 +86,8 @@ import org.apache.sshd.common.subsystem.sftp.SftpException;
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.NumberUtils;
 import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
 import org.apache.sshd.common.util.io.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -104,6 +111,22 @@ public class SftpFileSystemProvider extends FileSystemProvider {
     public static final String NAME_DECORDER_CHARSET_PROP_NAME = "sftp-fs-name-decoder-charset";
     public static final Charset DEFAULT_NAME_DECODER_CHARSET = SftpClient.DEFAULT_NAME_DECODING_CHARSET;
 
+    /**
+     * Whether {@link #copy(Path, Path, CopyOption...)} lets the server copy the
+     * file data - via the {@code copy-file} or {@code copy-data} extensions - if
+     * the server supports them, instead of transferring the data to the client
+     * and back
+     */
+    public static final String SERVER_SIDE_COPY_PROP_NAME = "sftp-fs-server-side-copy";
+    public static final boolean DEFAULT_SERVER_SIDE_COPY = true;
+
+    /**
+     * Max. number of outstanding read (and write) requests used when the file data
+     * is copied via the client
+     */
+    public static final String COPY_PIPELINE_DEPTH_PROP_NAME = "sftp-fs-copy-pipeline-depth";
+    public static final int DEFAULT_COPY_PIPELINE_DEPTH = 8;
+
     /**
      * <P>
      * URI parameter that can be used to specify a special version selection. Options are:
@@ -535,10 +558,7 @@ public class SftpFileSystemProvider extends FileSystemProvider {
         if (attrs.isDirectory()) {
             createDirectory(target);
         } else {
-            try (InputStream in = newInputStream(source);
-                 OutputStream os = newOutputStream(target)) {
-                IoUtils.copy(in, os);
-            }
+            copyFile(src, dst, replaceExisting);
         }
 
         // copy basic attributes to target
@@ -622,6 +642,139 @@ public class SftpFileSystemProvider extends FileSystemProvider {
         }
     }
 
+    /**
+     * Copies the data of a regular file. If the server supports the {@code copy-file}
+     * or {@code copy-data} extension, the data is copied by the server itself and
+     * is not transferred over the network. Otherwise, it is read and written via
+     * several outstanding requests.
+     *
+     * @param src The source file
+     * @param dst The (non-existing) target file
+     * @param replaceExisting Whether to replace the target if it was created in the meantime
+     * @throws IOException If failed to copy the file
+     * @see #SERVER_SIDE_COPY_PROP_NAME
+     * @see #COPY_PIPELINE_DEPTH_PROP_NAME
+     */
+    protected void copyFile(SftpPath src, SftpPath dst, boolean replaceExisting) throws IOException {
+        SftpFileSystem fs = src.getFileSystem();
+        ClientSession session = fs.getClientSession();
+        boolean serverSide = session.getBooleanProperty(SERVER_SIDE_COPY_PROP_NAME, DEFAULT_SERVER_SIDE_COPY);
+        try (SftpClient sftp = fs.getClient()) {
+            if (serverSide) {
+                CopyFileExtension ext = sftp.getExtension(CopyFileExtension.class);
+                if ((ext != null) && ext.isSupported()) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("copyFile({}) {} => {} using {}", fs, src, dst, SftpConstants.EXT_COPY_FILE);
+                    }
+                    ext.copyFile(src.toString(), dst.toString(), replaceExisting);
+                    return;
+                }
+            }
+
+            try (CloseableHandle srcHandle = sftp.open(src.toString(), OpenMode.Read);
+                 CloseableHandle dstHandle = sftp.open(dst.toString(), OpenMode.Write, OpenMode.Create, OpenMode.Truncate)) {
+                if (serverSide) {
+                    CopyDataExtension ext = sftp.getExtension(CopyDataExtension.class);
+                    if ((ext != null) && ext.isSupported()) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("copyFile({}) {} => {} using {}", fs, src, dst, SftpConstants.EXT_COPY_DATA);
+                        }
+                        // the server rejects copying zero bytes
+                        Attributes attrs = sftp.stat(srcHandle);
+                        if (attrs.getSize() > 0L) {
+                            ext.copyData(srcHandle, 0L, 0L /* till EOF */, dstHandle, 0L);
+                        }
+                        return;
+                    }
+                }
+
+                int depth = session.getIntProperty(COPY_PIPELINE_DEPTH_PROP_NAME, DEFAULT_COPY_PIPELINE_DEPTH);
+                if (log.isDebugEnabled()) {
+                    log.debug("copyFile({}) {} => {} via client - depth={}", fs, src, dst, depth);
+                }
+                copyData(sftp, srcHandle, dstHandle, fs.getReadBufferSize(), depth);
+            }
+        }
+    }
+
+    /**
+     * Copies the data between two remote handles via the client while keeping
+     * up to {@code depth} read and write requests outstanding
+     *
+     * @param sftp The {@link SftpClient} through which the handles were opened
+     * @param src The source {@link Handle} - read until EOF
+     * @param dst The destination {@link Handle}
+     * @param chunkSize The size of each read request
+     * @param depth Max. number of outstanding read/write requests - if not positive
+     * or the client is not a {@link RawSftpClient} then the data is copied one chunk
+     * at a time
+     * @throws IOException If failed to copy the data
+     */
+    protected void copyData(SftpClient sftp, Handle src, Handle dst, int chunkSize, int depth) throws IOException {
+        byte[] data = new byte[chunkSize];
+        if ((depth <= 1) || (!(sftp instanceof RawSftpClient))) {
+            for (long offset = 0L;;) {
+                int len = sftp.read(src, offset, data, 0, data.length);
+                if (len <= 0) {
+                    return;
+                }
+                sftp.write(dst, offset, data, 0, len);
+                offset += len;
+            }
+        }
+
+        RawSftpClient raw = (RawSftpClient) sftp;
+        byte[] srcId = src.getIdentifier();
+        byte[] dstId = dst.getIdentifier();
+        Deque<long[]> reads = new LinkedList<>();   // id, offset, length
+        Deque<Integer> writes = new LinkedList<>();
+        try {
+            long nextOffset = 0L;
+            boolean eof = false;
+            while (true) {
+                for (; (!eof) && (reads.size() < depth); nextOffset += chunkSize) {
+                    reads.addLast(new long[]{raw.sendRead(srcId, nextOffset, chunkSize), nextOffset, chunkSize});
+                }
+
+                long[] read = reads.pollFirst();
+                if (read == null) {
+                    break;
+                }
+
+                int len = raw.receiveData((int) read[0], data, 0);
+                if (len <= 0) {
+                    eof = true;
+                    continue;
+                }
+
+                Buffer buffer = new ByteArrayBuffer(dstId.length + len + Long.SIZE /* some extra fields */, false);
+                buffer.putBytes(dstId);
+                buffer.putLong(read[1]);
+                buffer.putBytes(data, 0, len);
+                writes.addLast(raw.send(SftpConstants.SSH_FXP_WRITE, buffer));
+                if (len < read[2]) {
+                    // short read - ask for the rest of the chunk
+                    long offset = read[1] + len;
+                    int remaining = (int) (read[2] - len);
+                    reads.addFirst(new long[]{raw.sendRead(srcId, offset, remaining), offset, remaining});
+                }
+
+                while (writes.size() >= depth) {
+                    raw.receiveStatus(SftpConstants.SSH_FXP_WRITE, writes.removeFirst());
+                }
+            }
+
+            while (!writes.isEmpty()) {
+                raw.receiveStatus(SftpConstants.SSH_FXP_WRITE, writes.removeFirst());
+            }
+        } catch (IOException | RuntimeException e) {
+            List<Integer> pending = SftpFileTransfer.requestIds(reads);
+            pending.addAll(writes);
+            raw.drainResponses(pending, e);
+            throw e;
+        }
+    }
+
     @Override
     public boolean isSameFile(Path path1, Path path2) throws IOException {
         SftpPath p1 = toSftpPath(path1);
@@ -841,10 +994,20 @@ public class SftpFileSystemProvider extends FileSystemProvider {
 
     public SftpClient.Attributes readRemoteAttributes(SftpPath path, LinkOption... options) throws IOException {
         SftpFileSystem fs = path.getFileSystem();
+        boolean followLinks = IoUtils.followLinks(options);
+        SftpClient.Attributes cached = fs.getCachedAttributes(path, followLinks);
+        if (cached != null) {
+            if (log.isTraceEnabled()) {
+                log.trace("readRemoteAttributes({})[{}] cached: {}", fs, path, cached);
+            }
+            return cached;
+        }
+
+        long modificationsCount = fs.getModificationsCount();
         try (SftpClient client = fs.getClient()) {
             try {
                 SftpClient.Attributes attrs;
-                if (IoUtils.followLinks(options)) {
+                if (followLinks) {
                     attrs = client.stat(path.toString());
                 } else {
                     attrs = client.lstat(path.toString());
@@ -852,6 +1015,7 @@ public class SftpFileSystemProvider extends FileSystemProvider {
                 if (log.isTraceEnabled()) {
                     log.trace("readRemoteAttributes({})[{}]: {}", fs, path, attrs);
                 }
+                fs.cacheAttributes(path, followLinks, attrs, modificationsCount);
                 return attrs;
             } catch (SftpException e) {
                 if (e.getStatus() == SftpConstants.SSH_FX_NO_SUCH_FILE) {
@@ -0,0 +1,676 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.client.channel.ClientChannel;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Handle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.OpenMode;
+import org.apache.sshd.client.subsystem.sftp.extensions.CheckFileHandleExtension;
+import org.apache.sshd.common.channel.Window;
+import org.apache.sshd.common.digest.BuiltinDigests;
+import org.apache.sshd.common.digest.Digest;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.util.GenericUtils;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+
+/**
+ * Uploads / downloads files in a resumable manner - i.e., if the target already
+ * exists (e.g., a previous transfer was interrupted) only the missing or modified
+ * data is transferred:
+ * <UL>
+ *      <LI>
+ *      The data common to both files (according to their sizes) is compared block
+ *      by block using the {@code check-file-handle} extension. If the extension
+ *      is not supported by the server then the common data is assumed to be
+ *      identical - i.e., the transfer is resumed from the target's size.
+ *      </LI>
+ *
+ *      <LI>
+ *      Mismatched blocks and the missing data are transferred using several
+ *      outstanding read/write requests.
+ *      </LI>
+ *
+ *      <LI>
+ *      If the target is larger than the source it is truncated.
+ *      </LI>
+ * </UL>
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpFileTransfer extends AbstractLoggingBean {
+    /**
+     * Default size of blocks whose hashes are compared
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    /**
+     * Default max. number of outstanding read/write requests - used if no
+     * explicit depth is set and none can be derived from the channel window
+     */
+    public static final int DEFAULT_PIPELINE_DEPTH = 8;
+    /**
+     * Bounds of the pipeline depth derived from the channel window and chunk size
+     */
+    public static final int MIN_DERIVED_PIPELINE_DEPTH = 2;
+    public static final int MAX_DERIVED_PIPELINE_DEPTH = 64;
+    /**
+     * Default hash algorithms offered to the server - in order of preference
+     */
+    public static final List<String> DEFAULT_HASH_ALGORITHMS =
+        Collections.unmodifiableList(
+            Arrays.asList(
+                BuiltinDigests.sha256.getName(),
+                BuiltinDigests.sha1.getName(),
+                BuiltinDigests.md5.getName()));
+
+    private final SftpClient client;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int chunkSize;
+    private int pipelineDepth;
+    private Collection<String> hashAlgorithms = DEFAULT_HASH_ALGORITHMS;
+    private SftpTransferListener transferListener;
+
+    public SftpFileTransfer(SftpClient client) {
+        this.client = Objects.requireNonNull(client, "No SFTP client");
+    }
+
+    public SftpClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return Size of blocks whose hashes are compared in order to detect
+     * modified data
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        ValidateUtils.checkTrue(blockSize >= SftpConstants.MIN_CHKFILE_BLOCKSIZE, "Block size too small: %d", blockSize);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return Size of the data sent/requested in each write/read request - zero
+     * (default) means use the client's {@link SftpClient#getDefaultWriteBufferSize() write}
+     * or {@link SftpClient#getDefaultReadBufferSize() read} buffer size - which
+     * reflects the limits reported by the server (if any)
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        ValidateUtils.checkTrue((chunkSize == 0) || (chunkSize >= SftpClient.MIN_BUFFER_SIZE), "Chunk size too small: %d", chunkSize);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return Max. number of outstanding read/write requests - if not above
+     * one or the client is not a {@link RawSftpClient} then the data is
+     * transferred one chunk at a time. Zero (default) means derive it from the
+     * chunk size and the channel window
+     * @see #resolvePipelineDepth(boolean, int)
+     */
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    public Collection<String> getHashAlgorithms() {
+        return hashAlgorithms;
+    }
+
+    public void setHashAlgorithms(Collection<String> hashAlgorithms) {
+        this.hashAlgorithms = ValidateUtils.checkNotNullAndNotEmpty(hashAlgorithms, "No hash algorithms");
+    }
+
+    public SftpTransferListener getTransferListener() {
+        return transferListener;
+    }
+
+    public void setTransferListener(SftpTransferListener transferListener) {
+        this.transferListener = transferListener;
+    }
+
+    /**
+     * Uploads a local file - resuming a previous upload if the remote file exists
+     *
+     * @param local The local file {@link Path}
+     * @param remote The remote file path
+     * @return The {@link Progress} of the completed transfer
+     * @throws IOException If failed to upload the file
+     */
+    public Progress upload(Path local, String remote) throws IOException {
+        SftpClient sftp = getClient();
+        long size = Files.size(local);
+        Progress progress = new Progress(true, local, remote, size);
+        try (FileChannel channel = FileChannel.open(local, StandardOpenOption.READ);
+             CloseableHandle handle = sftp.open(remote, OpenMode.Read, OpenMode.Write, OpenMode.Create)) {
+            long remoteSize = sftp.stat(handle).getSize();
+            if (remoteSize > size) {
+                sftp.setStat(handle, new Attributes().size(size));
+                remoteSize = size;
+            }
+
+            List<long[]> ranges = resolveTransferRanges(channel, handle, remoteSize, size);
+            transferStarted(progress, ranges);
+            try {
+                for (long[] r : ranges) {
+                    uploadRange(channel, handle, r[0], r[1], progress);
+                }
+            } catch (IOException | RuntimeException e) {
+                transferFinished(progress, e);
+                throw e;
+            }
+        }
+
+        transferFinished(progress, null);
+        return progress;
+    }
+
+    /**
+     * Downloads a remote file - resuming a previous download if the local file exists
+     *
+     * @param remote The remote file path
+     * @param local The local file {@link Path}
+     * @return The {@link Progress} of the completed transfer
+     * @throws IOException If failed to download the file
+     */
+    public Progress download(String remote, Path local) throws IOException {
+        SftpClient sftp = getClient();
+        try (CloseableHandle handle = sftp.open(remote, OpenMode.Read);
+             FileChannel channel = FileChannel.open(local, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            long size = sftp.stat(handle).getSize();
+            Progress progress = new Progress(false, local, remote, size);
+            long localSize = channel.size();
+            if (localSize > size) {
+                channel.truncate(size);
+                localSize = size;
+            }
+
+            List<long[]> ranges = resolveTransferRanges(channel, handle, localSize, size);
+            transferStarted(progress, ranges);
+            try {
+                for (long[] r : ranges) {
+                    downloadRange(handle, channel, r[0], r[1], progress);
+                }
+                channel.force(false);
+            } catch (IOException | RuntimeException e) {
+                transferFinished(progress, e);
+                throw e;
+            }
+
+            transferFinished(progress, null);
+            return progress;
+        }
+    }
+
+    /**
+     * @param channel The local {@link FileChannel}
+     * @param handle The remote file {@link Handle}
+     * @param commonSize Size of the data present in both files
+     * @param size Size of the source file
+     * @return A {@link List} of {offset, length} pairs of data that needs to be transferred
+     * @throws IOException If failed to compare the data
+     */
+    protected List<long[]> resolveTransferRanges(FileChannel channel, Handle handle, long commonSize, long size) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        if (commonSize > 0L) {
+            List<byte[]> remoteHashes = null;
+            String algorithm = null;
+            SftpClient sftp = getClient();
+            CheckFileHandleExtension ext = sftp.getExtension(CheckFileHandleExtension.class);
+            if ((ext != null) && ext.isSupported()) {
+                Map.Entry<String, Collection<byte[]>> result =
+                    ext.checkFileHandle(handle, getHashAlgorithms(), 0L, commonSize, getBlockSize());
+                algorithm = result.getKey();
+                remoteHashes = new ArrayList<>(result.getValue());
+            }
+
+            BuiltinDigests digest = BuiltinDigests.fromFactoryName(algorithm);
+            if (remoteHashes == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("resolveTransferRanges({}) no block hashes available - resume at {}", sftp, commonSize);
+                }
+            } else if ((digest == null) || (!digest.isSupported())) {
+                if (log.isDebugEnabled()) {
+                    log.debug("resolveTransferRanges({}) unsupported hash algorithm: {}", sftp, algorithm);
+                }
+                ranges.add(new long[]{0L, commonSize});
+            } else {
+                compareBlocks(channel, digest, commonSize, remoteHashes, ranges);
+            }
+        }
+
+        if (size > commonSize) {
+            addRange(ranges, commonSize, size - commonSize);
+        }
+
+        return ranges;
+    }
+
+    protected void compareBlocks(FileChannel channel, BuiltinDigests factory, long commonSize, List<byte[]> remoteHashes, List<long[]> ranges)
+            throws IOException {
+        int numBlocks = (int) ((commonSize + blockSize - 1L) / blockSize);
+        if (remoteHashes.size() != numBlocks) {
+            if (log.isDebugEnabled()) {
+                log.debug("compareBlocks({}) mismatched hashes count: expected={}, actual={}",
+                          getClient(), numBlocks, remoteHashes.size());
+            }
+            ranges.add(new long[]{0L, commonSize});
+            return;
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(blockSize);
+        Iterator<byte[]> hashes = remoteHashes.iterator();
+        for (long offset = 0L; offset < commonSize; offset += blockSize) {
+            int length = (int) Math.min(blockSize, commonSize - offset);
+            data.clear();
+            data.limit(length);
+            while (data.hasRemaining()) {
+                if (channel.read(data, offset + data.position()) < 0) {
+                    throw new EOFException("Premature EOF at offset=" + (offset + data.position()));
+                }
+            }
+
+            byte[] expected;
+            try {
+                Digest digest = factory.create();
+                digest.init();
+                digest.update(data.array(), 0, length);
+                expected = digest.digest();
+            } catch (Exception e) {
+                throw GenericUtils.toIOException(e);
+            }
+
+            if (!Arrays.equals(expected, hashes.next())) {
+                addRange(ranges, offset, length);
+            }
+        }
+    }
+
+    /**
+     * Adds a range - merging it with the last one if adjacent
+     *
+     * @param ranges The current ranges
+     * @param offset Range start offset
+     * @param length Range length
+     */
+    protected void addRange(List<long[]> ranges, long offset, long length) {
+        long[] last = GenericUtils.isEmpty(ranges) ? null : ranges.get(ranges.size() - 1);
+        if ((last != null) && ((last[0] + last[1]) == offset)) {
+            last[1] += length;
+        } else {
+            ranges.add(new long[]{offset, length});
+        }
+    }
+
+    /**
+     * @param upload {@code true} if resolving for an upload
+     * @return The effective size of each write/read request
+     * @see #getChunkSize()
+     */
+    protected int resolveChunkSize(boolean upload) {
+        int size = getChunkSize();
+        if (size > 0) {
+            return size;
+        }
+
+        SftpClient sftp = getClient();
+        return upload ? sftp.getDefaultWriteBufferSize() : sftp.getDefaultReadBufferSize();
+    }
+
+    /**
+     * @param upload {@code true} if resolving for an upload
+     * @param size The effective chunk size
+     * @return The configured {@link #getPipelineDepth() depth} - if not set, then enough
+     * outstanding chunks to fill the channel window through which the data flows (bounded
+     * by {@link #MIN_DERIVED_PIPELINE_DEPTH} and {@link #MAX_DERIVED_PIPELINE_DEPTH})
+     */
+    protected int resolvePipelineDepth(boolean upload, int size) {
+        int depth = getPipelineDepth();
+        if (depth > 0) {
+            return depth;
+        }
+
+        ClientChannel channel = getClient().getClientChannel();
+        if (channel == null) {
+            return DEFAULT_PIPELINE_DEPTH;
+        }
+
+        Window window = upload ? channel.getRemoteWindow() : channel.getLocalWindow();
+        long windowSize = window.getMaxSize();
+        if (windowSize <= 0L) {
+            return DEFAULT_PIPELINE_DEPTH;
+        }
+
+        long derived = windowSize / Math.max(1, size);
+        return (int) Math.max(MIN_DERIVED_PIPELINE_DEPTH, Math.min(MAX_DERIVED_PIPELINE_DEPTH, derived));
+    }
+
+    protected void uploadRange(FileChannel channel, Handle handle, long offset, long length, Progress progress) throws IOException {
+        SftpClient sftp = getClient();
+        int size = resolveChunkSize(true);
+        int depth = resolvePipelineDepth(true, size);
+        if ((depth <= 1) || (!(sftp instanceof RawSftpClient))) {
+            byte[] data = new byte[size];
+            for (long end = offset + length; offset < end;) {
+                int len = (int) Math.min(size, end - offset);
+                readFully(channel, data, len, offset);
+                sftp.write(handle, offset, data, 0, len);
+                progress.update(len);
+                transferProgress(progress);
+                offset += len;
+            }
+            return;
+        }
+
+        RawSftpClient raw = (RawSftpClient) sftp;
+        byte[] id = handle.getIdentifier();
+        Deque<Integer> writes = new LinkedList<>();
+        long end = offset + length;
+        try {
+            // writes are acknowledged in order, so their lengths follow from the acknowledged offset
+            for (long ackOffset = offset; ackOffset < end;) {
+                if ((offset < end) && (writes.size() < depth)) {
+                    int len = (int) Math.min(size, end - offset);
+                    Buffer buffer = new ByteArrayBuffer(id.length + len + Long.SIZE /* some extra fields */, false);
+                    buffer.putBytes(id);
+                    buffer.putLong(offset);
+                    buffer.putInt(len);
+                    // read the data directly into its place in the request
+                    int wpos = buffer.wpos();
+                    readFully(channel, buffer.array(), wpos, len, offset);
+                    buffer.wpos(wpos + len);
+                    writes.addLast(raw.send(SftpConstants.SSH_FXP_WRITE, buffer));
+                    offset += len;
+                    continue;
+                }
+
+                raw.receiveStatus(SftpConstants.SSH_FXP_WRITE, writes.removeFirst());
+                int len = (int) Math.min(size, end - ackOffset);
+                progress.update(len);
+                transferProgress(progress);
+                ackOffset += len;
+            }
+        } catch (IOException | RuntimeException e) {
+            raw.drainResponses(writes, e);
+            throw e;
+        }
+    }
+
+    protected void downloadRange(Handle handle, FileChannel channel, long offset, long length, Progress progress) throws IOException {
+        SftpClient sftp = getClient();
+        int size = resolveChunkSize(false);
+        int depth = resolvePipelineDepth(false, size);
+        byte[] data = new byte[size];
+        long end = offset + length;
+        if ((depth <= 1) || (!(sftp instanceof RawSftpClient))) {
+            while (offset < end) {
+                int len = sftp.read(handle, offset, data, 0, (int) Math.min(data.length, end - offset));
+                if (len <= 0) {
+                    throw new EOFException("Premature EOF at offset=" + offset);
+                }
+                writeFully(channel, data, len, offset);
+                progress.update(len);
+                transferProgress(progress);
+                offset += len;
+            }
+            return;
+        }
+
+        RawSftpClient raw = (RawSftpClient) sftp;
+        byte[] id = handle.getIdentifier();
+        Deque<long[]> reads = new LinkedList<>();   // id, offset, length
+        try {
+            for (long nextOffset = offset; (nextOffset < end) || (!reads.isEmpty());) {
+                while ((nextOffset < end) && (reads.size() < depth)) {
+                    int len = (int) Math.min(data.length, end - nextOffset);
+                    reads.addLast(new long[]{raw.sendRead(id, nextOffset, len), nextOffset, len});
+                    nextOffset += len;
+                }
+
+                long[] read = reads.removeFirst();
+                int len = raw.receiveData((int) read[0], data, 0);
+                if (len <= 0) {
+                    throw new EOFException("Premature EOF at offset=" + read[1]);
+                }
+
+                writeFully(channel, data, len, read[1]);
+                progress.update(len);
+                transferProgress(progress);
+                if (len < read[2]) {
+                    // short read - ask for the rest of the chunk
+                    long remOffset = read[1] + len;
+                    int remaining = (int) (read[2] - len);
+                    reads.addFirst(new long[]{raw.sendRead(id, remOffset, remaining), remOffset, remaining});
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            raw.drainResponses(requestIds(reads), e);
+            throw e;
+        }
+    }
+
+    protected void readFully(FileChannel channel, byte[] data, int len, long offset) throws IOException {
+        readFully(channel, data, 0, len, offset);
+    }
+
+    protected void readFully(FileChannel channel, byte[] data, int dataOffset, int len, long offset) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data, dataOffset, len);
+        while (bb.hasRemaining()) {
+            long pos = offset + bb.position() - dataOffset;
+            if (channel.read(bb, pos) < 0) {
+                throw new EOFException("Premature EOF at offset=" + pos);
+            }
+        }
+    }
+
+    protected void writeFully(FileChannel channel, byte[] data, int len, long offset) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data, 0, len);
+        while (bb.hasRemaining()) {
+            channel.write(bb, offset + bb.position());
+        }
+    }
+
+    /**
+     * @param requests The outstanding requests - each entry starting with the request id
+     * @return The request ids
+     */
+    static List<Integer> requestIds(Collection<long[]> requests) {
+        List<Integer> ids = new ArrayList<>(requests.size());
+        for (long[] r : requests) {
+            ids.add((int) r[0]);
+        }
+        return ids;
+    }
+
+    protected void transferStarted(Progress progress, List<long[]> ranges) {
+        long required = 0L;
+        for (long[] r : ranges) {
+            required += r[1];
+        }
+        progress.start(progress.getSize() - required);
+
+        if (log.isDebugEnabled()) {
+            log.debug("transferStarted({}) {} - ranges={}", getClient(), progress, ranges.size());
+        }
+
+        SftpTransferListener listener = getTransferListener();
+        if (listener != null) {
+            listener.started(progress);
+        }
+    }
+
+    protected void transferProgress(Progress progress) {
+        SftpTransferListener listener = getTransferListener();
+        if (listener != null) {
+            listener.progress(progress);
+        }
+    }
+
+    protected void transferFinished(Progress progress, Throwable thrown) {
+        progress.finish();
+
+        if (log.isDebugEnabled()) {
+            log.debug("transferFinished({}) {} - throughput={} bytes/sec.: {}",
+                      getClient(), progress, progress.getThroughput(), (thrown == null) ? "OK" : thrown.getMessage());
+        }
+
+        SftpTransferListener listener = getTransferListener();
+        if (listener != null) {
+            listener.finished(progress, thrown);
+        }
+    }
+
+    /**
+     * Progress report of an upload or download
+     *
+     * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+     */
+    public static class Progress {
+        private final boolean upload;
+        private final Path localPath;
+        private final String remotePath;
+        private final long size;
+        private final long startTime;
+        private volatile long skippedBytes;
+        private volatile long transferredBytes;
+        private volatile long endTime;
+
+        public Progress(boolean upload, Path localPath, String remotePath, long size) {
+            this.upload = upload;
+            this.localPath = localPath;
+            this.remotePath = remotePath;
+            this.size = size;
+            this.startTime = System.nanoTime();
+        }
+
+        /**
+         * @return {@code true} if uploading the local file, {@code false} if downloading it
+         */
+        public boolean isUpload() {
+            return upload;
+        }
+
+        public Path getLocalPath() {
+            return localPath;
+        }
+
+        public String getRemotePath() {
+            return remotePath;
+        }
+
+        /**
+         * @return Size of the transferred file
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return Number of bytes that were already present in the target and did
+         * not need to be transferred
+         */
+        public long getSkippedBytes() {
+            return skippedBytes;
+        }
+
+        /**
+         * @return Number of bytes transferred so far
+         */
+        public long getTransferredBytes() {
+            return transferredBytes;
+        }
+
+        /**
+         * @return Elapsed time (nanoseconds) since the transfer started - or its
+         * total duration if it has already finished
+         */
+        public long getElapsedNanos() {
+            long end = endTime;
+            return ((end == 0L) ? System.nanoTime() : end) - startTime;
+        }
+
+        /**
+         * @return Average number of bytes transferred per second
+         */
+        public double getThroughput() {
+            long elapsed = getElapsedNanos();
+            return (elapsed <= 0L) ? 0.0d : getTransferredBytes() * (double) TimeUnit.SECONDS.toNanos(1L) / elapsed;
+        }
+
+        /**
+         * @return {@code true} if the transfer has finished (successfully or not)
+         */
+        public boolean isDone() {
+            return endTime != 0L;
+        }
+
+        protected void start(long skipped) {
+            skippedBytes = skipped;
+        }
+
+        protected synchronized void update(long count) {
+            transferredBytes += count;
+        }
+
+        protected void finish() {
+            endTime = System.nanoTime();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName()
+                + "[" + (isUpload() ? (getLocalPath() + " => " + getRemotePath()) : (getRemotePath() + " => " + getLocalPath())) + "]"
+                + " size=" + getSize()
+                + ", skipped=" + getSkippedBytes()
+                + ", transferred=" + getTransferredBytes();
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.nio.file.LinkOption;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.List;
 
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
 import org.apache.sshd.common.file.util.BasePath;
 
 public class SftpPath extends BasePath<SftpPath, SftpFileSystem> {
@@ -31,6 +32,16 @@ public class SftpPath extends BasePath<SftpPath, SftpFileSystem> {
         super(fileSystem, root, names);
     }
 
+    /**
+     * @param attributes The {@link Attributes} of this path as reported by the server
+     * @param modificationsCount The file system {@link SftpFileSystem#getModificationsCount()
+     * modifications count} <U>before</U> the attributes were retrieved
+     * @return An {@link SftpPathWithAttributes} for the same path
+     */
+    public SftpPathWithAttributes withAttributes(Attributes attributes, long modificationsCount) {
+        return new SftpPathWithAttributes(getFileSystem(), root, names, attributes, modificationsCount);
+    }
+
     @Override
     public SftpPath toRealPath(LinkOption... options) throws IOException {
         // TODO: handle links
@@ -28,17 +28,30 @@ import java.util.NoSuchElementException;
  */
 public class SftpPathIterator implements Iterator<Path> {
     private final SftpPath p;
+    private final long modificationsCount;
     private final Iterator<? extends SftpClient.DirEntry> it;
     private boolean dotIgnored;
     private boolean dotdotIgnored;
     private SftpClient.DirEntry curEntry;
 
     public SftpPathIterator(SftpPath path, Iterable<? extends SftpClient.DirEntry> iter) {
-        this(path, (iter == null) ? null : iter.iterator());
+        // the entries are (lazily) loaded only once the iterator is created
+        this(path, path.getFileSystem().getModificationsCount(), (iter == null) ? null : iter.iterator());
     }
 
     public SftpPathIterator(SftpPath path, Iterator<? extends SftpClient.DirEntry> iter) {
+        this(path, path.getFileSystem().getModificationsCount(), iter);
+    }
+
+    /**
+     * @param path The listed directory {@link SftpPath}
+     * @param modificationsCount The file system {@link SftpFileSystem#getModificationsCount()
+     * modifications count} before the entries were retrieved
+     * @param iter The {@link Iterator} over the directory entries
+     */
+    public SftpPathIterator(SftpPath path, long modificationsCount, Iterator<? extends SftpClient.DirEntry> iter) {
         p = path;
+        this.modificationsCount = modificationsCount;
         it = iter;
         curEntry = nextEntry();
     }
@@ -56,7 +69,16 @@ public class SftpPathIterator implements Iterator<Path> {
 
         SftpClient.DirEntry entry = curEntry;
         curEntry = nextEntry();
-        return p.resolve(entry.getFilename());
+
+        SftpPath child = p.resolve(entry.getFilename());
+        SftpClient.Attributes attrs = entry.getAttributes();
+        if (attrs == null) {
+            return child;
+        }
+
+        SftpFileSystem fs = child.getFileSystem();
+        fs.cacheAttributes(child, false, attrs, modificationsCount);
+        return child.withAttributes(attrs, modificationsCount);
     }
 
     private SftpClient.DirEntry nextEntry() {
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.util.List;
+
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
+
+/**
+ * An {@link SftpPath} that carries the attributes that were received along
+ * with it - e.g., in a directory listing - so they can be used instead of
+ * querying the server again. The attributes are not used once the file
+ * system's client has modified any remote file (see {@link SftpFileSystem#getModificationsCount()}).
+ * <B>Note:</B> the attributes are not carried over to any path derived from this one.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpPathWithAttributes extends SftpPath {
+    private final Attributes attributes;
+    private final long modificationsCount;
+
+    /**
+     * @param fileSystem The {@link SftpFileSystem}
+     * @param root The path root
+     * @param names The path names
+     * @param attributes The {@link Attributes} of the path - as reported for
+     * the path itself (i.e., links are not followed)
+     * @param modificationsCount The file system {@link SftpFileSystem#getModificationsCount()
+     * modifications count} <U>before</U> the attributes were retrieved
+     */
+    public SftpPathWithAttributes(SftpFileSystem fileSystem, String root, List<String> names, Attributes attributes, long modificationsCount) {
+        super(fileSystem, root, names);
+        this.attributes = attributes;
+        this.modificationsCount = modificationsCount;
+    }
+
+    /**
+     * @return The {@link Attributes} of the path (may be {@code null})
+     */
+    public Attributes getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return The file system {@link SftpFileSystem#getModificationsCount()
+     * modifications count} before the attributes were retrieved
+     */
+    public long getModificationsCount() {
+        return modificationsCount;
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.OpenMode;
+import org.apache.sshd.client.subsystem.sftp.SftpFileTransfer.Progress;
+import org.apache.sshd.common.util.GenericUtils;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+
+/**
+ * Transfers a single (large) file by splitting it into stripes that are moved
+ * concurrently over several {@link SftpClient}-s. Each client is served by its
+ * own thread that opens its own handle, picks the next pending stripe and
+ * transfers it using pipelined requests (see {@link SftpFileTransfer}). The data
+ * is written at its offset in the target, so the stripes may complete in any order.
+ * <B>Note:</B> channels of the same session share that session's cipher, so in
+ * order to spread the encryption over several cores the clients should belong
+ * to different sessions.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpStripedTransfer extends AbstractLoggingBean {
+    /**
+     * Default size of each stripe
+     */
+    public static final long DEFAULT_STRIPE_SIZE = 64L * 1024L * 1024L;
+
+    private final List<SftpFileTransfer> fileTransfers;
+    private long stripeSize = DEFAULT_STRIPE_SIZE;
+    private SftpTransferListener transferListener;
+
+    /**
+     * @param clients The {@link SftpClient}-s to spread the stripes over - each
+     * one must use a different channel (of the same or different sessions)
+     */
+    public SftpStripedTransfer(Collection<? extends SftpClient> clients) {
+        ValidateUtils.checkNotNullAndNotEmpty(clients, "No SFTP clients");
+        List<SftpFileTransfer> transfers = new ArrayList<>(clients.size());
+        for (SftpClient c : clients) {
+            transfers.add(new SftpFileTransfer(c));
+        }
+        this.fileTransfers = Collections.unmodifiableList(transfers);
+    }
+
+    /**
+     * @return The {@link SftpFileTransfer}-s used to move the stripes - one per
+     * {@link SftpClient} - can be used to configure the chunk size and pipeline depth
+     */
+    public List<SftpFileTransfer> getFileTransfers() {
+        return fileTransfers;
+    }
+
+    public long getStripeSize() {
+        return stripeSize;
+    }
+
+    public void setStripeSize(long stripeSize) {
+        ValidateUtils.checkTrue(stripeSize >= SftpClient.MIN_BUFFER_SIZE, "Stripe size too small: %d", stripeSize);
+        this.stripeSize = stripeSize;
+    }
+
+    /**
+     * @return The {@link SftpTransferListener} to inform about the transfer - <B>Note:</B>
+     * progress is reported from several threads concurrently
+     */
+    public SftpTransferListener getTransferListener() {
+        return transferListener;
+    }
+
+    public void setTransferListener(SftpTransferListener transferListener) {
+        this.transferListener = transferListener;
+    }
+
+    /**
+     * Uploads a local file - the remote file is created or truncated
+     *
+     * @param local The local file {@link Path}
+     * @param remote The remote file path
+     * @return The {@link Progress} of the completed transfer
+     * @throws IOException If failed to upload the file
+     */
+    public Progress upload(Path local, String remote) throws IOException {
+        long size = Files.size(local);
+        SftpFileTransfer primary = fileTransfers.get(0);
+        SftpClient sftp = primary.getClient();
+        try (CloseableHandle handle = sftp.open(remote, OpenMode.Write, OpenMode.Create, OpenMode.Truncate)) {
+            if (log.isDebugEnabled()) {
+                log.debug("upload({}) created {}", sftp, remote);
+            }
+        }
+
+        Progress progress = new Progress(true, local, remote, size);
+        try (FileChannel channel = FileChannel.open(local, StandardOpenOption.READ)) {
+            transferStripes(progress, (transfer, stripes) -> {
+                try (CloseableHandle handle = transfer.getClient().open(remote, OpenMode.Write)) {
+                    for (long[] s = stripes.next(); s != null; s = stripes.next()) {
+                        transfer.uploadRange(channel, handle, s[0], s[1], progress);
+                    }
+                }
+            });
+        }
+
+        return progress;
+    }
+
+    /**
+     * Downloads a remote file - the local file is created or truncated
+     *
+     * @param remote The remote file path
+     * @param local The local file {@link Path}
+     * @return The {@link Progress} of the completed transfer
+     * @throws IOException If failed to download the file
+     */
+    public Progress download(String remote, Path local) throws IOException {
+        SftpFileTransfer primary = fileTransfers.get(0);
+        long size = primary.getClient().stat(remote).getSize();
+        Progress progress = new Progress(false, local, remote, size);
+        try (FileChannel channel = FileChannel.open(local,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            transferStripes(progress, (transfer, stripes) -> {
+                try (CloseableHandle handle = transfer.getClient().open(remote, OpenMode.Read)) {
+                    for (long[] s = stripes.next(); s != null; s = stripes.next()) {
+                        transfer.downloadRange(handle, channel, s[0], s[1], progress);
+                    }
+                }
+            });
+            channel.force(false);
+        }
+
+        return progress;
+    }
+
+    /**
+     * Splits the file into stripes and runs a worker per {@link SftpFileTransfer}
+     * until all the stripes have been transferred or one of the workers fails
+     *
+     * @param progress The {@link Progress} of the transfer
+     * @param worker The {@link StripeWorker} to run
+     * @throws IOException If any of the workers failed
+     */
+    protected void transferStripes(Progress progress, StripeWorker worker) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        long size = progress.getSize();
+        long stripe = getStripeSize();
+        for (long offset = 0L; offset < size; offset += stripe) {
+            ranges.add(new long[]{offset, Math.min(stripe, size - offset)});
+        }
+
+        SftpTransferListener listener = getTransferListener();
+        for (SftpFileTransfer t : fileTransfers) {
+            t.setTransferListener(listener);
+        }
+
+        SftpFileTransfer primary = fileTransfers.get(0);
+        primary.transferStarted(progress, ranges);
+
+        int numWorkers = Math.min(fileTransfers.size(), ranges.size());
+        AtomicBoolean failed = new AtomicBoolean(false);
+        AtomicInteger nextStripe = new AtomicInteger(0);
+        StripeSource stripes = () -> {
+            int index = nextStripe.getAndIncrement();
+            return ((index < ranges.size()) && (!failed.get())) ? ranges.get(index) : null;
+        };
+
+        IOException err = null;
+        ExecutorService executor = (numWorkers > 0) ? ThreadUtils.newFixedThreadPool(getClass().getSimpleName(), numWorkers) : null;
+        try {
+            List<Future<?>> futures = new ArrayList<>(numWorkers);
+            for (int index = 0; index < numWorkers; index++) {
+                SftpFileTransfer transfer = fileTransfers.get(index);
+                futures.add(executor.submit(() -> {
+                    try {
+                        worker.run(transfer, stripes);
+                    } catch (IOException | RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = GenericUtils.peelException(e.getCause());
+                    err = GenericUtils.accumulateException(err,
+                        (cause instanceof IOException) ? (IOException) cause : new IOException(cause.getMessage(), cause));
+                }
+            }
+        } catch (InterruptedException e) {
+            failed.set(true);
+            err = GenericUtils.accumulateException(err,
+                (IOException) new InterruptedIOException("Interrupted while waiting for stripes").initCause(e));
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        primary.transferFinished(progress, err);
+        if (err != null) {
+            throw err;
+        }
+    }
+
+    /**
+     * Opens a number of {@link SftpClient}-s (i.e., channels) on the same session
+     *
+     * @param session The {@link ClientSession}
+     * @param numClients Number of clients to open
+     * @return The opened clients - the caller is responsible for closing them
+     * @throws IOException If failed to open the clients - in which case the ones
+     * that were opened are closed
+     */
+    public static List<SftpClient> createClients(ClientSession session, int numClients) throws IOException {
+        ValidateUtils.checkTrue(numClients > 0, "Invalid number of clients: %d", numClients);
+        List<SftpClient> clients = new ArrayList<>(numClients);
+        try {
+            for (int index = 0; index < numClients; index++) {
+                clients.add(SftpClientFactory.instance().createSftpClient(session));
+            }
+        } catch (IOException | RuntimeException e) {
+            IOException err = IoUtils.closeQuietly(clients.toArray(new SftpClient[clients.size()]));
+            if (err != null) {
+                e.addSuppressed(err);
+            }
+            throw e;
+        }
+
+        return clients;
+    }
+
+    /**
+     * Provides the stripes to transfer - thread-safe
+     */
+    @FunctionalInterface
+    protected interface StripeSource {
+        /**
+         * @return The next {offset, length} stripe - {@code null} if no more stripes
+         * or the transfer has failed
+         */
+        long[] next();
+    }
+
+    /**
+     * Transfers stripes using a specific {@link SftpFileTransfer}
+     */
+    @FunctionalInterface
+    protected interface StripeWorker {
+        void run(SftpFileTransfer transfer, StripeSource stripes) throws IOException;
+    }
+}
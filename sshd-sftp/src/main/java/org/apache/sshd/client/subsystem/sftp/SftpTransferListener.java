@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import org.apache.sshd.common.util.SshdEventListener;
+
+/**
+ * Receives progress reports of {@link SftpFileTransfer} uploads and downloads
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public interface SftpTransferListener extends SshdEventListener {
+    /**
+     * Called once the already transferred data has been verified and the
+     * actual transfer is about to start
+     *
+     * @param progress The {@link SftpFileTransfer.Progress} of the transfer - the
+     * {@link SftpFileTransfer.Progress#getSkippedBytes() skipped bytes} count is
+     * already known at this stage
+     */
+    default void started(SftpFileTransfer.Progress progress) {
+        // ignored
+    }
+
+    /**
+     * Called whenever some data has been transferred and acknowledged
+     *
+     * @param progress The {@link SftpFileTransfer.Progress} of the transfer
+     */
+    default void progress(SftpFileTransfer.Progress progress) {
+        // ignored
+    }
+
+    /**
+     * Called when the transfer ends
+     *
+     * @param progress The {@link SftpFileTransfer.Progress} of the transfer
+     * @param thrown {@code null} if successful - otherwise the reason for the failure
+     */
+    default void finished(SftpFileTransfer.Progress progress, Throwable thrown) {
+        // ignored
+    }
+}
@@ -0,0 +1,544 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.DirEntry;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.subsystem.sftp.SftpException;
+import org.apache.sshd.common.util.GenericUtils;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+
+/**
+ * Uploads / downloads an entire directory tree using several concurrent workers,
+ * each of them issuing its own metadata (list, mkdir, open, close, set-stat) and
+ * data requests. The workers are spread over one or more {@link SftpClient}-s
+ * (i.e., channels) in a round-robin manner:
+ * <UL>
+ *      <LI>
+ *      Each directory is listed once - the listing is used to decide which files
+ *      need to be transferred, so no per-file {@code stat} is required.
+ *      </LI>
+ *
+ *      <LI>
+ *      Files whose target has the same size and modification time are skipped
+ *      (unless {@link #setSkipUnchanged(boolean) disabled}). The modification time
+ *      of transferred files is {@link #setPreserveModificationTime(boolean) preserved}
+ *      so that subsequent transfers can skip them.
+ *      </LI>
+ *
+ *      <LI>
+ *      The files themselves are transferred via {@link SftpFileTransfer} - i.e., a
+ *      previously interrupted transfer is resumed.
+ *      </LI>
+ * </UL>
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpTreeTransfer extends AbstractLoggingBean {
+    /**
+     * Default number of concurrent workers
+     */
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    private final List<SftpFileTransfer> fileTransfers;
+    private final AtomicInteger nextTransfer = new AtomicInteger(0);
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private boolean skipUnchanged = true;
+    private boolean preserveModificationTime = true;
+    private SftpTransferListener transferListener;
+
+    public SftpTreeTransfer(SftpClient client) {
+        this(Collections.singletonList(client));
+    }
+
+    /**
+     * @param clients The {@link SftpClient}-s to spread the work over - usually
+     * each one uses a different channel (of the same or different sessions)
+     */
+    public SftpTreeTransfer(Collection<? extends SftpClient> clients) {
+        ValidateUtils.checkNotNullAndNotEmpty(clients, "No SFTP clients");
+        List<SftpFileTransfer> transfers = new ArrayList<>(clients.size());
+        for (SftpClient c : clients) {
+            transfers.add(new SftpFileTransfer(c));
+        }
+        this.fileTransfers = Collections.unmodifiableList(transfers);
+    }
+
+    /**
+     * @return The {@link SftpFileTransfer}-s used to transfer the files - one per
+     * {@link SftpClient} - can be used to configure the per-file transfer
+     */
+    public List<SftpFileTransfer> getFileTransfers() {
+        return fileTransfers;
+    }
+
+    /**
+     * @return Number of concurrent workers
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        ValidateUtils.checkTrue(concurrency > 0, "Invalid concurrency: %d", concurrency);
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @return {@code true} if files whose target has the same size and
+     * modification time should not be transferred
+     */
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    /**
+     * @return {@code true} if the modification time of the source should be
+     * set on the transferred target
+     */
+    public boolean isPreserveModificationTime() {
+        return preserveModificationTime;
+    }
+
+    public void setPreserveModificationTime(boolean preserveModificationTime) {
+        this.preserveModificationTime = preserveModificationTime;
+    }
+
+    /**
+     * @return An {@link SftpTransferListener} to be informed about each file transfer
+     */
+    public SftpTransferListener getTransferListener() {
+        return transferListener;
+    }
+
+    public void setTransferListener(SftpTransferListener transferListener) {
+        this.transferListener = transferListener;
+    }
+
+    /**
+     * Uploads a local directory tree
+     *
+     * @param localDir The local directory {@link Path}
+     * @param remoteDir The remote directory - created if missing
+     * @return A {@link Summary} of the transfer
+     * @throws IOException If failed to upload the tree
+     */
+    public Summary upload(Path localDir, String remoteDir) throws IOException {
+        ValidateUtils.checkTrue(Files.isDirectory(localDir), "Not a directory: %s", localDir);
+        Execution execution = new Execution();
+        execution.run(t -> uploadDirectory(execution, t, localDir, remoteDir));
+        return execution.getSummary();
+    }
+
+    /**
+     * Downloads a remote directory tree
+     *
+     * @param remoteDir The remote directory
+     * @param localDir The local directory {@link Path} - created if missing
+     * @return A {@link Summary} of the transfer
+     * @throws IOException If failed to download the tree
+     */
+    public Summary download(String remoteDir, Path localDir) throws IOException {
+        Execution execution = new Execution();
+        execution.run(t -> downloadDirectory(execution, t, remoteDir, localDir));
+        return execution.getSummary();
+    }
+
+    protected void uploadDirectory(Execution execution, SftpFileTransfer transfer, Path localDir, String remoteDir) throws IOException {
+        Map<String, Attributes> existing = listRemoteDirectory(transfer.getClient(), remoteDir);
+        Summary summary = execution.getSummary();
+        summary.directories.incrementAndGet();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(localDir)) {
+            for (Path local : ds) {
+                String name = local.getFileName().toString();
+                String remote = resolveRemotePath(remoteDir, name);
+                BasicFileAttributes attrs = Files.readAttributes(local, BasicFileAttributes.class);
+                if (attrs.isDirectory()) {
+                    execution.submit(t -> uploadDirectory(execution, t, local, remote));
+                } else if (attrs.isRegularFile()) {
+                    Attributes target = existing.get(name);
+                    if (isSkipUnchanged() && (target != null) && target.isRegularFile()
+                            && isUnchanged(attrs.size(), attrs.lastModifiedTime(), target.getSize(), target.getModifyTime())) {
+                        summary.fileSkipped(attrs.size());
+                        continue;
+                    }
+                    execution.submit(t -> uploadFile(t, local, remote, attrs.lastModifiedTime()));
+                } else if (log.isDebugEnabled()) {
+                    log.debug("uploadDirectory({}) skip non-regular file: {}", remoteDir, local);
+                }
+            }
+        }
+    }
+
+    protected void uploadFile(SftpFileTransfer transfer, Path local, String remote, FileTime mtime) throws IOException {
+        transfer.upload(local, remote);
+        if (isPreserveModificationTime()) {
+            transfer.getClient().setStat(remote, new Attributes().accessTime(mtime).modifyTime(mtime));
+        }
+    }
+
+    /**
+     * @param sftp The {@link SftpClient} to use
+     * @param remoteDir The remote directory - created if missing
+     * @return A {@link Map} of the directory entries attributes - key=entry name
+     * @throws IOException If failed to list or create the directory
+     */
+    protected Map<String, Attributes> listRemoteDirectory(SftpClient sftp, String remoteDir) throws IOException {
+        Map<String, Attributes> entries = new TreeMap<>();
+        try {
+            for (DirEntry e : readDirectory(sftp, remoteDir)) {
+                entries.put(e.getFilename(), e.getAttributes());
+            }
+        } catch (SftpException e) {
+            if (e.getStatus() != SftpConstants.SSH_FX_NO_SUCH_FILE) {
+                throw e;
+            }
+            sftp.mkdir(remoteDir);
+        }
+        return entries;
+    }
+
+    /**
+     * @param sftp The {@link SftpClient} to use
+     * @param remoteDir The remote directory
+     * @return All the directory entries
+     * @throws IOException If failed to read the directory - <B>Note:</B> unlike
+     * {@link SftpClient#readDir(String)} the original {@link SftpException} is thrown
+     */
+    protected List<DirEntry> readDirectory(SftpClient sftp, String remoteDir) throws IOException {
+        List<DirEntry> entries = new ArrayList<>();
+        try (CloseableHandle handle = sftp.openDir(remoteDir)) {
+            for (List<DirEntry> batch = sftp.readDir(handle); batch != null; batch = sftp.readDir(handle)) {
+                entries.addAll(batch);
+            }
+        }
+        return entries;
+    }
+
+    protected void downloadDirectory(Execution execution, SftpFileTransfer transfer, String remoteDir, Path localDir) throws IOException {
+        Files.createDirectories(localDir);
+
+        Summary summary = execution.getSummary();
+        summary.directories.incrementAndGet();
+        for (DirEntry e : readDirectory(transfer.getClient(), remoteDir)) {
+            String name = e.getFilename();
+            if (".".equals(name) || "..".equals(name)) {
+                continue;
+            }
+
+            Attributes attrs = e.getAttributes();
+            String remote = resolveRemotePath(remoteDir, name);
+            Path local = resolveLocalPath(localDir, name);
+            if (attrs.isDirectory()) {
+                execution.submit(t -> downloadDirectory(execution, t, remote, local));
+            } else if (attrs.isRegularFile()) {
+                if (isSkipUnchanged() && Files.isRegularFile(local, LinkOption.NOFOLLOW_LINKS)
+                        && isUnchanged(Files.size(local), Files.getLastModifiedTime(local), attrs.getSize(), attrs.getModifyTime())) {
+                    summary.fileSkipped(attrs.getSize());
+                    continue;
+                }
+                execution.submit(t -> downloadFile(t, remote, local, attrs.getModifyTime()));
+            } else if (log.isDebugEnabled()) {
+                log.debug("downloadDirectory({}) skip non-regular file: {}", remoteDir, e);
+            }
+        }
+    }
+
+    protected void downloadFile(SftpFileTransfer transfer, String remote, Path local, FileTime mtime) throws IOException {
+        transfer.download(remote, local);
+        if (isPreserveModificationTime() && (mtime != null)) {
+            Files.setLastModifiedTime(local, mtime);
+        }
+    }
+
+    protected boolean isUnchanged(long size, FileTime mtime, long targetSize, FileTime targetTime) {
+        if ((size != targetSize) || (mtime == null) || (targetTime == null)) {
+            return false;
+        }
+        // SFTP v3 times have a resolution of seconds
+        return mtime.to(TimeUnit.SECONDS) == targetTime.to(TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param localDir The local directory
+     * @param name The name of a remote directory entry - as reported by the server
+     * @return The local {@link Path} of the entry
+     * @throws IOException If the name is not a plain file name - e.g., contains a
+     * path separator - or the entry does not resolve to a direct child of the directory
+     */
+    protected Path resolveLocalPath(Path localDir, String name) throws IOException {
+        String separator = localDir.getFileSystem().getSeparator();
+        if (GenericUtils.isEmpty(name) || (name.indexOf('/') >= 0) || (name.indexOf('\\') >= 0)
+                || name.contains(separator) || ".".equals(name) || "..".equals(name)) {
+            throw new IOException("Invalid remote entry name in " + localDir + ": " + name);
+        }
+
+        Path local = localDir.resolve(name);
+        Path dir = localDir.toAbsolutePath().normalize();
+        Path normalized = local.toAbsolutePath().normalize();
+        if ((!normalized.startsWith(dir)) || (!dir.equals(normalized.getParent()))) {
+            throw new IOException("Remote entry name resolves outside " + localDir + ": " + name);
+        }
+
+        return local;
+    }
+
+    protected String resolveRemotePath(String dir, String name) {
+        return dir.endsWith("/") ? dir + name : dir + "/" + name;
+    }
+
+    protected SftpFileTransfer nextFileTransfer() {
+        List<SftpFileTransfer> transfers = getFileTransfers();
+        return transfers.get((nextTransfer.getAndIncrement() & Integer.MAX_VALUE) % transfers.size());
+    }
+
+    /**
+     * A unit of work executed by one of the workers
+     */
+    @FunctionalInterface
+    protected interface TransferTask {
+        void execute(SftpFileTransfer transfer) throws IOException;
+    }
+
+    /**
+     * Keeps track of the tasks of a single upload/download
+     */
+    protected class Execution implements SftpTransferListener {
+        private final Summary summary = new Summary();
+        private final AtomicInteger pending = new AtomicInteger(0);
+        private ExecutorService executor;
+        private IOException error;
+
+        protected Execution() {
+            super();
+        }
+
+        public Summary getSummary() {
+            return summary;
+        }
+
+        public void run(TransferTask root) throws IOException {
+            for (SftpFileTransfer t : getFileTransfers()) {
+                t.setTransferListener(this);
+            }
+
+            executor = ThreadUtils.newFixedThreadPool(getClass().getSimpleName(), getConcurrency());
+            try {
+                submit(root);
+                synchronized (this) {
+                    while ((pending.get() > 0) && (error == null)) {
+                        wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw (IOException) new InterruptedIOException("Interrupted while waiting for transfer to complete").initCause(e);
+            } finally {
+                executor.shutdownNow();
+                summary.finish();
+            }
+
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        public void submit(TransferTask task) {
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    if (!isFailed()) {
+                        task.execute(nextFileTransfer());
+                    }
+                } catch (Throwable e) {
+                    failed(e);
+                } finally {
+                    if (pending.decrementAndGet() <= 0) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+
+        public synchronized boolean isFailed() {
+            return error != null;
+        }
+
+        protected synchronized void failed(Throwable e) {
+            if (log.isDebugEnabled()) {
+                log.debug("failed({}) {}: {}", summary, e.getClass().getSimpleName(), e.getMessage());
+            }
+            error = GenericUtils.accumulateException(error, GenericUtils.toIOException(e));
+            notifyAll();
+        }
+
+        @Override
+        public void started(SftpFileTransfer.Progress progress) {
+            SftpTransferListener listener = getTransferListener();
+            if (listener != null) {
+                listener.started(progress);
+            }
+        }
+
+        @Override
+        public void progress(SftpFileTransfer.Progress progress) {
+            SftpTransferListener listener = getTransferListener();
+            if (listener != null) {
+                listener.progress(progress);
+            }
+        }
+
+        @Override
+        public void finished(SftpFileTransfer.Progress progress, Throwable thrown) {
+            if (thrown == null) {
+                summary.fileTransferred(progress);
+            }
+
+            SftpTransferListener listener = getTransferListener();
+            if (listener != null) {
+                listener.finished(progress, thrown);
+            }
+        }
+    }
+
+    /**
+     * Aggregated report of a tree transfer - all methods are thread-safe
+     *
+     * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+     */
+    public static class Summary {
+        private final AtomicLong directories = new AtomicLong(0L);
+        private final AtomicLong transferredFiles = new AtomicLong(0L);
+        private final AtomicLong skippedFiles = new AtomicLong(0L);
+        private final AtomicLong transferredBytes = new AtomicLong(0L);
+        private final AtomicLong skippedBytes = new AtomicLong(0L);
+        private final long startTime = System.nanoTime();
+        private volatile long endTime;
+
+        public Summary() {
+            super();
+        }
+
+        /**
+         * @return Number of processed directories
+         */
+        public long getDirectories() {
+            return directories.get();
+        }
+
+        /**
+         * @return Number of (fully or partially) transferred files
+         */
+        public long getTransferredFiles() {
+            return transferredFiles.get();
+        }
+
+        /**
+         * @return Number of files skipped since they were unchanged
+         */
+        public long getSkippedFiles() {
+            return skippedFiles.get();
+        }
+
+        /**
+         * @return Number of transferred bytes
+         */
+        public long getTransferredBytes() {
+            return transferredBytes.get();
+        }
+
+        /**
+         * @return Number of bytes that did not need to be transferred - either
+         * of skipped files or already present in the target
+         */
+        public long getSkippedBytes() {
+            return skippedBytes.get();
+        }
+
+        /**
+         * @return Elapsed time (nanoseconds) since the transfer started - or its
+         * total duration if it has already finished
+         */
+        public long getElapsedNanos() {
+            long end = endTime;
+            return ((end == 0L) ? System.nanoTime() : end) - startTime;
+        }
+
+        /**
+         * @return Average number of bytes transferred per second
+         */
+        public double getThroughput() {
+            long elapsed = getElapsedNanos();
+            return (elapsed <= 0L) ? 0.0d : getTransferredBytes() * (double) TimeUnit.SECONDS.toNanos(1L) / elapsed;
+        }
+
+        protected void fileSkipped(long size) {
+            skippedFiles.incrementAndGet();
+            skippedBytes.addAndGet(size);
+        }
+
+        protected void fileTransferred(SftpFileTransfer.Progress progress) {
+            transferredFiles.incrementAndGet();
+            transferredBytes.addAndGet(progress.getTransferredBytes());
+            skippedBytes.addAndGet(progress.getSkippedBytes());
+        }
+
+        protected void finish() {
+            endTime = System.nanoTime();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName()
+                + "[directories=" + getDirectories()
+                + ", transferred=" + getTransferredFiles() + "/" + getTransferredBytes()
+                + ", skipped=" + getSkippedFiles() + "/" + getSkippedBytes()
+                + "]";
+        }
+    }
+}
@@ -38,12 +38,15 @@ import org.apache.sshd.client.subsystem.sftp.SftpClient;
 import org.apache.sshd.client.subsystem.sftp.extensions.BuiltinSftpClientExtensions;
 import org.apache.sshd.client.subsystem.sftp.extensions.SftpClientExtension;
 import org.apache.sshd.client.subsystem.sftp.extensions.SftpClientExtensionFactory;
+import org.apache.sshd.client.subsystem.sftp.extensions.openssh.OpenSSHLimitsExtension;
+import org.apache.sshd.common.PropertyResolverUtils;
 import org.apache.sshd.common.SshException;
 import org.apache.sshd.common.channel.Channel;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
 import org.apache.sshd.common.subsystem.sftp.SftpHelper;
 import org.apache.sshd.common.subsystem.sftp.extensions.ParserUtils;
+import org.apache.sshd.common.subsystem.sftp.extensions.openssh.LimitsExtensionInfo;
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.ValidateUtils;
 import org.apache.sshd.common.util.buffer.Buffer;
@@ -54,8 +57,26 @@ import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
 public abstract class AbstractSftpClient extends AbstractSubsystemClient implements SftpClient, RawSftpClient {
+    /**
+     * Whether to query the server's {@code limits@openssh.com} (if supported) and
+     * use them to size the read/write requests
+     *
+     * @see #DEFAULT_NEGOTIATE_LIMITS
+     */
+    public static final String NEGOTIATE_LIMITS_PROP = "sftp-negotiate-limits";
+    public static final boolean DEFAULT_NEGOTIATE_LIMITS = true;
+
+    /**
+     * Upper bound for the read/write buffer sizes derived from the server's
+     * reported limits - regardless of what the server reports
+     */
+    public static final int MAX_NEGOTIATED_BUFFER_SIZE = 1024 * 1024;
+
     private final Attributes fileOpenAttributes = new Attributes();
     private final AtomicReference<Map<String, Object>> parsedExtensionsHolder = new AtomicReference<>(null);
+    private final Object limitsLock = new Object();
+    private LimitsExtensionInfo serverLimits;
+    private boolean limitsResolved;
 
     protected AbstractSftpClient() {
         fileOpenAttributes.setType(SftpConstants.SSH_FILEXFER_TYPE_REGULAR);
@@ -91,6 +112,76 @@ public abstract class AbstractSftpClient extends AbstractSubsystemClient impleme
         return factory.create(this, this, extensions, parsed);
     }
 
+    /**
+     * @return The {@link LimitsExtensionInfo} reported by the server via the
+     * {@code limits@openssh.com} extension - {@code null} if the server does not
+     * support it or {@link #NEGOTIATE_LIMITS_PROP negotiation} is disabled. <B>Note:</B>
+     * the server is queried only once and the result is cached
+     */
+    public LimitsExtensionInfo getServerLimits() {
+        synchronized (limitsLock) {
+            if (!limitsResolved) {
+                serverLimits = resolveServerLimits();
+                limitsResolved = true;
+            }
+            return serverLimits;
+        }
+    }
+
+    protected LimitsExtensionInfo resolveServerLimits() {
+        ClientChannel channel = getClientChannel();
+        if (!PropertyResolverUtils.getBooleanProperty(channel, NEGOTIATE_LIMITS_PROP, DEFAULT_NEGOTIATE_LIMITS)) {
+            return null;
+        }
+
+        OpenSSHLimitsExtension ext = getExtension(OpenSSHLimitsExtension.class);
+        if ((ext == null) || (!ext.isSupported())) {
+            return null;
+        }
+
+        try {
+            LimitsExtensionInfo info = ext.limits();
+            if (log.isDebugEnabled()) {
+                log.debug("resolveServerLimits({}) {}", channel, info);
+            }
+            return info;
+        } catch (IOException | RuntimeException e) {
+            log.warn("resolveServerLimits({}) failed ({}) to query limits: {}",
+                     channel, e.getClass().getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return The max. data length of a single {@code SSH_FXP_READ} as reported
+     * by the server - zero if unknown
+     */
+    public int getMaxReadLength() {
+        LimitsExtensionInfo info = getServerLimits();
+        return (info == null) ? 0 : (int) Math.max(0L, Math.min(MAX_NEGOTIATED_BUFFER_SIZE, info.maxReadLength));
+    }
+
+    /**
+     * @return The max. data length of a single {@code SSH_FXP_WRITE} as reported
+     * by the server - zero if unknown
+     */
+    public int getMaxWriteLength() {
+        LimitsExtensionInfo info = getServerLimits();
+        return (info == null) ? 0 : (int) Math.max(0L, Math.min(MAX_NEGOTIATED_BUFFER_SIZE, info.maxWriteLength));
+    }
+
+    @Override
+    public int getDefaultReadBufferSize() {
+        int maxRead = getMaxReadLength();
+        return (maxRead >= MIN_READ_BUFFER_SIZE) ? maxRead : SftpClient.super.getDefaultReadBufferSize();
+    }
+
+    @Override
+    public int getDefaultWriteBufferSize() {
+        int maxWrite = getMaxWriteLength();
+        return (maxWrite >= MIN_WRITE_BUFFER_SIZE) ? maxWrite : SftpClient.super.getDefaultWriteBufferSize();
+    }
+
     protected Map<String, Object> getParsedServerExtensions() {
         return getParsedServerExtensions(getServerExtensions());
     }
@@ -854,11 +945,44 @@ public abstract class AbstractSftpClient extends AbstractSubsystemClient impleme
         }
 
         byte[] id = Objects.requireNonNull(handle, "No handle").getIdentifier();
-        Buffer buffer = new ByteArrayBuffer(id.length + len + Long.SIZE /* some extra fields */, false);
-        buffer.putBytes(id);
-        buffer.putLong(fileOffset);
-        buffer.putBytes(src, srcOffset, len);
-        checkCommandStatus(SftpConstants.SSH_FXP_WRITE, buffer);
+        int maxWrite = getMaxWriteLength();
+        if ((maxWrite < MIN_WRITE_BUFFER_SIZE) || (len <= maxWrite)) {
+            Buffer buffer = new ByteArrayBuffer(id.length + len + Long.SIZE /* some extra fields */, false);
+            buffer.putBytes(id);
+            buffer.putLong(fileOffset);
+            buffer.putBytes(src, srcOffset, len);
+            checkCommandStatus(SftpConstants.SSH_FXP_WRITE, buffer);
+            return;
+        }
+
+        // split according to the server's limit and send all the chunks before checking the results
+        List<Integer> reqIds = new ArrayList<>(1 + len / maxWrite);
+        for (int remaining = len; remaining > 0;) {
+            int chunkLen = Math.min(remaining, maxWrite);
+            Buffer buffer = new ByteArrayBuffer(id.length + chunkLen + Long.SIZE /* some extra fields */, false);
+            buffer.putBytes(id);
+            buffer.putLong(fileOffset);
+            buffer.putBytes(src, srcOffset, chunkLen);
+            reqIds.add(send(SftpConstants.SSH_FXP_WRITE, buffer));
+            fileOffset += chunkLen;
+            srcOffset += chunkLen;
+            remaining -= chunkLen;
+        }
+
+        IOException err = null;
+        for (int reqId : reqIds) {
+            Buffer response = receive(reqId);
+            try {
+                checkResponseStatus(SftpConstants.SSH_FXP_WRITE, response);
+            } catch (IOException e) {
+                // keep consuming the responses so that none are left pending
+                err = GenericUtils.accumulateException(err, e);
+            }
+        }
+
+        if (err != null) {
+            throw err;
+        }
     }
 
     @Override
@@ -924,11 +1048,40 @@ public abstract class AbstractSftpClient extends AbstractSubsystemClient impleme
             throw new IOException("readDir(" + handle + ") client is closed");
         }
 
+        return receiveReadDir(sendReadDir(handle), eolIndicator);
+    }
+
+    /**
+     * Sends an {@code SSH_FXP_READDIR} request without waiting for the response
+     *
+     * @param handle The directory {@link Handle}
+     * @return The request id to be used for {@link #receiveReadDir(int, AtomicReference) receiving}
+     * the response
+     * @throws IOException If failed to send the request
+     */
+    public int sendReadDir(Handle handle) throws IOException {
+        if (!isOpen()) {
+            throw new IOException("sendReadDir(" + handle + ") client is closed");
+        }
+
         byte[] id = Objects.requireNonNull(handle, "No handle").getIdentifier();
         Buffer buffer = new ByteArrayBuffer(id.length + Byte.SIZE /* some extra fields */, false);
         buffer.putBytes(id);
+        return send(SftpConstants.SSH_FXP_READDIR, buffer);
+    }
+
+    /**
+     * @param cmdId The {@link #sendReadDir(Handle) SSH_FXP_READDIR} request id
+     * @param eolIndicator An indicator that can be used to get information
+     * whether end of list has been reached - ignored if {@code null}
+     * @return A {@link List} of entries - {@code null} to indicate no more entries
+     * @throws IOException If failed to receive the response or the server reported an error
+     */
+    public List<DirEntry> receiveReadDir(int cmdId, AtomicReference<Boolean> eolIndicator) throws IOException {
+        if (eolIndicator != null) {
+            eolIndicator.set(null);    // assume unknown information
+        }
 
-        int cmdId = send(SftpConstants.SSH_FXP_READDIR, buffer);
         Buffer response = receive(cmdId);
         return checkDirResponse(SftpConstants.SSH_FXP_READDIR, response, eolIndicator);
     }
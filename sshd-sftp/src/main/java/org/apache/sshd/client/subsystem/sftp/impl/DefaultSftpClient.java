@@ -266,11 +266,14 @@ public class DefaultSftpClient extends AbstractSftpClient {
         }
 
         OutputStream dos = channel.getInvertedIn();
-        BufferUtils.writeInt(dos, 1 /* cmd */ + Integer.BYTES /* id */ + len, workBuf);
-        dos.write(cmd & 0xFF);
-        BufferUtils.writeInt(dos, id, workBuf);
-        dos.write(buffer.array(), buffer.rpos(), len);
-        dos.flush();
+        // the client may be used by several threads concurrently
+        synchronized (dos) {
+            BufferUtils.writeInt(dos, 1 /* cmd */ + Integer.BYTES /* id */ + len, workBuf);
+            dos.write(cmd & 0xFF);
+            BufferUtils.writeInt(dos, id, workBuf);
+            dos.write(buffer.array(), buffer.rpos(), len);
+            dos.flush();
+        }
         return id;
     }
 
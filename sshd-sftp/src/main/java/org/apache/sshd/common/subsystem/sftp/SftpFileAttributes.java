@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.common.subsystem.sftp;
+
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.common.util.GenericUtils;
+
+/**
+ * A compact, typed representation of a file / folder's SFTP attributes. Unlike
+ * the {@link Map} form (keyed by the file system attributes view names) the
+ * values are kept in primitive fields, and the {@link #getFlags() flags} mask
+ * indicates which of them are valid using the {@code SSH_FILEXFER_ATTR_xxx}
+ * values - <B>Note:</B> the mask is version-neutral, i.e., {@link SftpConstants#SSH_FILEXFER_ATTR_UIDGID}
+ * (V3) and {@link SftpConstants#SSH_FILEXFER_ATTR_OWNERGROUP} (V4+) may co-exist, and the
+ * V3 {@link SftpConstants#SSH_FILEXFER_ATTR_ACMODTIME} value is the same as the V4+
+ * {@link SftpConstants#SSH_FILEXFER_ATTR_ACCESSTIME} one - the modification time being
+ * marked separately by {@link SftpConstants#SSH_FILEXFER_ATTR_MODIFYTIME}.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpFileAttributes {
+    private int flags;
+    private int type = SftpConstants.SSH_FILEXFER_TYPE_UNKNOWN;
+    private long size;
+    private int uid;
+    private int gid;
+    private String owner;
+    private String group;
+    private int permissions;
+    private int linkCount;
+    private long accessTime;
+    private long createTime;
+    private long modifyTime;
+    private List<AclEntry> acl;
+    private Map<?, ?> extensions;
+
+    public SftpFileAttributes() {
+        super();
+    }
+
+    /**
+     * @return A mask of the {@code SSH_FILEXFER_ATTR_xxx} values indicating
+     * which attributes are valid
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * @param flag An {@code SSH_FILEXFER_ATTR_xxx} value (or mask)
+     * @return {@code true} if <U>all</U> the specified attributes are valid
+     */
+    public boolean hasFlags(int flag) {
+        return (flags & flag) == flag;
+    }
+
+    public void addFlags(int flag) {
+        flags |= flag;
+    }
+
+    public void removeFlags(int flag) {
+        flags &= ~flag;
+    }
+
+    /**
+     * @return The file type - one of the {@code SSH_FILEXFER_TYPE_xxx} values
+     */
+    public int getType() {
+        return type;
+    }
+
+    public void setType(int type) {
+        this.type = type;
+    }
+
+    public boolean isRegularFile() {
+        return getType() == SftpConstants.SSH_FILEXFER_TYPE_REGULAR;
+    }
+
+    public boolean isDirectory() {
+        return getType() == SftpConstants.SSH_FILEXFER_TYPE_DIRECTORY;
+    }
+
+    public boolean isSymbolicLink() {
+        return getType() == SftpConstants.SSH_FILEXFER_TYPE_SYMLINK;
+    }
+
+    public boolean isOther() {
+        return !isRegularFile() && !isDirectory() && !isSymbolicLink();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_SIZE);
+    }
+
+    public int getUserId() {
+        return uid;
+    }
+
+    public int getGroupId() {
+        return gid;
+    }
+
+    public void setUserAndGroupIds(int uid, int gid) {
+        this.uid = uid;
+        this.gid = gid;
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_UIDGID);
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * @param owner The owner name - may be {@code null} if unknown
+     * @param group The group name - may be {@code null} if unknown
+     */
+    public void setOwnerAndGroup(String owner, String group) {
+        this.owner = owner;
+        this.group = group;
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_OWNERGROUP);
+    }
+
+    /**
+     * @return The POSIX permissions mask - <B>excluding</B> the file type bits
+     * @see #getEncodedPermissions()
+     */
+    public int getPermissions() {
+        return permissions;
+    }
+
+    public void setPermissions(int permissions) {
+        this.permissions = permissions & ~SftpConstants.S_IFMT;
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS);
+    }
+
+    /**
+     * @return The POSIX permissions mask - <B>including</B> the file type
+     * bits derived from the {@link #getType() type} - as sent over the wire
+     */
+    public int getEncodedPermissions() {
+        return getPermissions() | SftpHelper.fileTypeToPermission(getType());
+    }
+
+    /**
+     * @return Number of hard links - valid only if {@link SftpConstants#SSH_FILEXFER_ATTR_LINK_COUNT}
+     * flag is set
+     */
+    public int getLinkCount() {
+        return linkCount;
+    }
+
+    public void setLinkCount(int linkCount) {
+        this.linkCount = linkCount;
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_LINK_COUNT);
+    }
+
+    /**
+     * @return Last access time in milliseconds since the epoch
+     */
+    public long getAccessTime() {
+        return accessTime;
+    }
+
+    public void setAccessTime(long millis) {
+        this.accessTime = millis;
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_ACCESSTIME);
+    }
+
+    /**
+     * @return Creation time in milliseconds since the epoch
+     */
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(long millis) {
+        this.createTime = millis;
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_CREATETIME);
+    }
+
+    /**
+     * @return Last modification time in milliseconds since the epoch
+     */
+    public long getModifyTime() {
+        return modifyTime;
+    }
+
+    public void setModifyTime(long millis) {
+        this.modifyTime = millis;
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_MODIFYTIME);
+    }
+
+    public List<AclEntry> getAcl() {
+        return acl;
+    }
+
+    public void setAcl(List<AclEntry> acl) {
+        this.acl = Objects.requireNonNull(acl, "No ACLs");
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_ACL);
+    }
+
+    /**
+     * @return The extended attributes - values may be either {@code byte[]}
+     * or {@link String}s
+     */
+    public Map<?, ?> getExtensions() {
+        return extensions;
+    }
+
+    public void setExtensions(Map<?, ?> extensions) {
+        this.extensions = Objects.requireNonNull(extensions, "No extensions");
+        addFlags(SftpConstants.SSH_FILEXFER_ATTR_EXTENDED);
+    }
+
+    /**
+     * Converts the attributes to the {@link Map} form used by the file system
+     * attributes views - i.e., the &quot;compatibility&quot; format
+     *
+     * @return A case <U>insensitive</U> {@link NavigableMap} of the valid attributes
+     * @see #fromMap(Map)
+     */
+    public NavigableMap<String, Object> toMap() {
+        NavigableMap<String, Object> attrs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        attrs.put("isRegularFile", isRegularFile());
+        attrs.put("isDirectory", isDirectory());
+        attrs.put("isSymbolicLink", isSymbolicLink());
+        attrs.put("isOther", isOther());
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_SIZE)) {
+            attrs.put("size", getSize());
+        }
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_UIDGID)) {
+            attrs.put("uid", getUserId());
+            attrs.put("gid", getGroupId());
+        }
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_OWNERGROUP)) {
+            attrs.put("owner", getOwner());
+            attrs.put("group", getGroup());
+        }
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS)) {
+            attrs.put("permissions", SftpHelper.permissionsToAttributes(getPermissions()));
+        }
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_LINK_COUNT)) {
+            attrs.put("nlink", getLinkCount());
+        }
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_ACCESSTIME)) {
+            attrs.put("lastAccessTime", FileTime.fromMillis(getAccessTime()));
+        }
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_CREATETIME)) {
+            attrs.put("creationTime", FileTime.fromMillis(getCreateTime()));
+        }
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_MODIFYTIME)) {
+            attrs.put("lastModifiedTime", FileTime.fromMillis(getModifyTime()));
+        }
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_ACL)) {
+            attrs.put("acl", getAcl());
+        }
+        if (hasFlags(SftpConstants.SSH_FILEXFER_ATTR_EXTENDED)) {
+            attrs.put("extended", getExtensions());
+        }
+        return attrs;
+    }
+
+    @Override
+    public String toString() {
+        return "type=" + getType()
+             + ";flags=0x" + Integer.toHexString(getFlags())
+             + ";size=" + getSize()
+             + ";uid=" + getUserId()
+             + ";gid=" + getGroupId()
+             + ";owner=" + getOwner()
+             + ";group=" + getGroup()
+             + ";perms=0" + Integer.toOctalString(getPermissions())
+             + ";nlink=" + getLinkCount()
+             + ";aTime=" + getAccessTime()
+             + ";cTime=" + getCreateTime()
+             + ";mTime=" + getModifyTime();
+    }
+
+    /**
+     * Builds the attributes from the typed file system ones - <B>Note:</B> the
+     * permissions, owner and group are available only if these are also
+     * {@link PosixFileAttributes}
+     *
+     * @param attrs The {@link BasicFileAttributes} - ignored if {@code null}
+     * @return The equivalent {@link SftpFileAttributes}
+     */
+    public static SftpFileAttributes fromFileAttributes(BasicFileAttributes attrs) {
+        SftpFileAttributes result = new SftpFileAttributes();
+        if (attrs == null) {
+            return result;
+        }
+
+        result.setType(attrs.isRegularFile() ? SftpConstants.SSH_FILEXFER_TYPE_REGULAR
+            : attrs.isDirectory() ? SftpConstants.SSH_FILEXFER_TYPE_DIRECTORY
+            : attrs.isSymbolicLink() ? SftpConstants.SSH_FILEXFER_TYPE_SYMLINK
+            : SftpConstants.SSH_FILEXFER_TYPE_UNKNOWN);
+        result.setSize(attrs.size());
+        updateTimes(result, attrs.lastAccessTime(), attrs.creationTime(), attrs.lastModifiedTime());
+
+        if (attrs instanceof PosixFileAttributes) {
+            PosixFileAttributes posix = (PosixFileAttributes) attrs;
+            result.setPermissions(SftpHelper.attributesToPermissions(false, false, false, posix.permissions()));
+            UserPrincipal owner = posix.owner();
+            UserPrincipal group = posix.group();
+            result.setOwnerAndGroup((owner == null) ? null : owner.getName(), (group == null) ? null : group.getName());
+        }
+
+        return result;
+    }
+
+    /**
+     * Builds the attributes from their {@link Map} form - i.e., the &quot;compatibility&quot; format
+     *
+     * @param attrs The attributes {@link Map} - keyed by the file system attributes views
+     * names (case <U>insensitive</U>). Ignored if {@code null}/empty
+     * @return The equivalent {@link SftpFileAttributes}
+     * @see #toMap()
+     */
+    public static SftpFileAttributes fromMap(Map<String, ?> attrs) {
+        SftpFileAttributes result = new SftpFileAttributes();
+        if (GenericUtils.isEmpty(attrs)) {
+            return result;
+        }
+
+        result.setType(SftpHelper.getBool((Boolean) attrs.get("isRegularFile")) ? SftpConstants.SSH_FILEXFER_TYPE_REGULAR
+            : SftpHelper.getBool((Boolean) attrs.get("isDirectory")) ? SftpConstants.SSH_FILEXFER_TYPE_DIRECTORY
+            : SftpHelper.getBool((Boolean) attrs.get("isSymbolicLink")) ? SftpConstants.SSH_FILEXFER_TYPE_SYMLINK
+            : SftpConstants.SSH_FILEXFER_TYPE_UNKNOWN);
+
+        Number size = (Number) attrs.get("size");
+        if (size != null) {
+            result.setSize(size.longValue());
+        }
+
+        if (attrs.containsKey("uid") && attrs.containsKey("gid")) {
+            result.setUserAndGroupIds(((Number) attrs.get("uid")).intValue(), ((Number) attrs.get("gid")).intValue());
+        }
+
+        if (attrs.containsKey("owner") && attrs.containsKey("group")) {
+            result.setOwnerAndGroup(Objects.toString(attrs.get("owner"), null), Objects.toString(attrs.get("group"), null));
+        }
+
+        @SuppressWarnings("unchecked")
+        Collection<PosixFilePermission> perms = (Collection<PosixFilePermission>) attrs.get("permissions");
+        if (perms != null) {
+            result.setPermissions(SftpHelper.attributesToPermissions(false, false, false, perms));
+        }
+
+        Number nlink = (Number) attrs.get("nlink");
+        if (nlink != null) {
+            result.setLinkCount(nlink.intValue());
+        }
+
+        updateTimes(result, (FileTime) attrs.get("lastAccessTime"), (FileTime) attrs.get("creationTime"), (FileTime) attrs.get("lastModifiedTime"));
+
+        @SuppressWarnings("unchecked")
+        List<AclEntry> acl = (List<AclEntry>) attrs.get("acl");
+        if (acl != null) {
+            result.setAcl(acl);
+        }
+
+        Map<?, ?> extensions = (Map<?, ?>) attrs.get("extended");
+        if (extensions != null) {
+            result.setExtensions(extensions);
+        }
+
+        return result;
+    }
+
+    private static void updateTimes(SftpFileAttributes result, FileTime atime, FileTime ctime, FileTime mtime) {
+        if (atime != null) {
+            result.setAccessTime(atime.to(TimeUnit.MILLISECONDS));
+        }
+        if (ctime != null) {
+            result.setCreateTime(ctime.to(TimeUnit.MILLISECONDS));
+        }
+        if (mtime != null) {
+            result.setModifyTime(mtime.to(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -314,7 +314,7 @@ public final class SftpHelper {
         }
 
         if ((flags & SftpConstants.SSH_FILEXFER_ATTR_CREATETIME) != 0) {
-            buffer = writeTime(buffer, version, flags, lastAccessTime);
+            buffer = writeTime(buffer, version, flags, creationTime);
         }
         if ((flags & SftpConstants.SSH_FILEXFER_ATTR_MODIFYTIME) != 0) {
             buffer = writeTime(buffer, version, flags, lastModifiedTime);
@@ -331,6 +331,124 @@ public final class SftpHelper {
         return buffer;
     }
 
+    /**
+     * Writes a file / folder's attributes to a buffer
+     *
+     * @param <B> Type of {@link Buffer} being updated
+     * @param buffer The target buffer instance
+     * @param version The output encoding version
+     * @param attributes The {@link SftpFileAttributes}
+     * @return The updated buffer
+     * @see #writeAttrsV3(Buffer, int, SftpFileAttributes)
+     * @see #writeAttrsV4(Buffer, int, SftpFileAttributes)
+     */
+    public static <B extends Buffer> B writeAttrs(B buffer, int version, SftpFileAttributes attributes) {
+        if (version == SftpConstants.SFTP_V3) {
+            return writeAttrsV3(buffer, version, attributes);
+        } else if (version >= SftpConstants.SFTP_V4) {
+            return writeAttrsV4(buffer, version, attributes);
+        } else {
+            throw new IllegalStateException("Unsupported SFTP version: " + version);
+        }
+    }
+
+    /**
+     * Writes the retrieved file / directory attributes in V3 format
+     *
+     * @param <B> Type of {@link Buffer} being updated
+     * @param buffer The target buffer instance
+     * @param version The actual version - must be {@link SftpConstants#SFTP_V3}
+     * @param attributes The {@link SftpFileAttributes}
+     * @return The updated buffer
+     */
+    public static <B extends Buffer> B writeAttrsV3(B buffer, int version, SftpFileAttributes attributes) {
+        ValidateUtils.checkTrue(version == SftpConstants.SFTP_V3, "Illegal version: %d", version);
+
+        boolean isReg = attributes.isRegularFile();
+        boolean isLnk = attributes.isSymbolicLink();
+        int flags = ((isReg || isLnk) && attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_SIZE) ? SftpConstants.SSH_FILEXFER_ATTR_SIZE : 0)
+                  | (attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_UIDGID) ? SftpConstants.SSH_FILEXFER_ATTR_UIDGID : 0)
+                  | (attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS) ? SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS : 0)
+                  | (attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_ACCESSTIME | SftpConstants.SSH_FILEXFER_ATTR_MODIFYTIME)
+                          ? SftpConstants.SSH_FILEXFER_ATTR_ACMODTIME : 0)
+                  | (attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_EXTENDED) ? SftpConstants.SSH_FILEXFER_ATTR_EXTENDED : 0);
+        buffer.putInt(flags);
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_SIZE) != 0) {
+            buffer.putLong(attributes.getSize());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_UIDGID) != 0) {
+            buffer.putInt(attributes.getUserId());
+            buffer.putInt(attributes.getGroupId());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS) != 0) {
+            buffer.putInt(attributes.getEncodedPermissions());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_ACMODTIME) != 0) {
+            buffer = writeTime(buffer, version, flags, attributes.getAccessTime());
+            buffer = writeTime(buffer, version, flags, attributes.getModifyTime());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_EXTENDED) != 0) {
+            buffer = writeExtensions(buffer, attributes.getExtensions());
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Writes the retrieved file / directory attributes in V4+ format
+     *
+     * @param <B> Type of {@link Buffer} being updated
+     * @param buffer The target buffer instance
+     * @param version The actual version - must be at least {@link SftpConstants#SFTP_V4}
+     * @param attributes The {@link SftpFileAttributes}
+     * @return The updated buffer
+     */
+    public static <B extends Buffer> B writeAttrsV4(B buffer, int version, SftpFileAttributes attributes) {
+        ValidateUtils.checkTrue(version >= SftpConstants.SFTP_V4, "Illegal version: %d", version);
+
+        boolean isReg = attributes.isRegularFile();
+        boolean isLnk = attributes.isSymbolicLink();
+        int flags = ((isReg || isLnk) && attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_SIZE) ? SftpConstants.SSH_FILEXFER_ATTR_SIZE : 0)
+                  | (attributes.getFlags() & (SftpConstants.SSH_FILEXFER_ATTR_OWNERGROUP
+                          | SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS
+                          | SftpConstants.SSH_FILEXFER_ATTR_MODIFYTIME
+                          | SftpConstants.SSH_FILEXFER_ATTR_CREATETIME
+                          | SftpConstants.SSH_FILEXFER_ATTR_ACCESSTIME
+                          | SftpConstants.SSH_FILEXFER_ATTR_ACL
+                          | SftpConstants.SSH_FILEXFER_ATTR_EXTENDED));
+        buffer.putInt(flags);
+        buffer.putByte((byte) attributes.getType());
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_SIZE) != 0) {
+            buffer.putLong(attributes.getSize());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_OWNERGROUP) != 0) {
+            String owner = attributes.getOwner();
+            buffer.putString((owner == null) ? SftpUniversalOwnerAndGroup.Owner.getName() : owner);
+            String group = attributes.getGroup();
+            buffer.putString((group == null) ? SftpUniversalOwnerAndGroup.Group.getName() : group);
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS) != 0) {
+            buffer.putInt(attributes.getEncodedPermissions());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_ACCESSTIME) != 0) {
+            buffer = writeTime(buffer, version, flags, attributes.getAccessTime());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_CREATETIME) != 0) {
+            buffer = writeTime(buffer, version, flags, attributes.getCreateTime());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_MODIFYTIME) != 0) {
+            buffer = writeTime(buffer, version, flags, attributes.getModifyTime());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_ACL) != 0) {
+            buffer = writeACLs(buffer, version, attributes.getAcl());
+        }
+        if ((flags & SftpConstants.SSH_FILEXFER_ATTR_EXTENDED) != 0) {
+            buffer = writeExtensions(buffer, attributes.getExtensions());
+        }
+
+        return buffer;
+    }
+
     /**
      * @param bool The {@link Boolean} value
      * @return {@code true} it the argument is non-{@code null} and
@@ -1024,6 +1142,31 @@ public final class SftpHelper {
         return buffer;
     }
 
+    /**
+     * Encodes a time value into a buffer
+     *
+     * @param <B> Type of {@link Buffer} being updated
+     * @param buffer The target buffer instance
+     * @param version The encoding version
+     * @param flags The encoding flags
+     * @param millis The value to encode - milliseconds since the epoch
+     * @return The updated buffer
+     */
+    public static <B extends Buffer> B writeTime(B buffer, int version, int flags, long millis) {
+        long secs = TimeUnit.MILLISECONDS.toSeconds(millis);
+        if (version >= SftpConstants.SFTP_V4) {
+            buffer.putLong(secs);
+            if ((flags & SftpConstants.SSH_FILEXFER_ATTR_SUBSECOND_TIMES) != 0) {
+                long nanos = TimeUnit.MILLISECONDS.toNanos(millis - TimeUnit.SECONDS.toMillis(secs));
+                buffer.putInt((int) nanos);
+            }
+        } else {
+            buffer.putInt(secs);
+        }
+
+        return buffer;
+    }
+
     /**
      * Decodes a {@link FileTime} value from a buffer
      *
@@ -1111,4 +1254,65 @@ public final class SftpHelper {
         sb.append(' ').append(lengthString).append(' ').append(timeStamp).append(' ').append(shortName);
         return sb.toString();
     }
+
+    /**
+     * Creates an &quot;ls -l&quot; compatible long name string
+     *
+     * @param shortName The short file name - can also be &quot;.&quot; or &quot;..&quot;
+     * @param attributes The file's {@link SftpFileAttributes}
+     * @return A {@link String} representing the &quot;long&quot; file name as per
+     * <A HREF="https://tools.ietf.org/html/draft-ietf-secsh-filexfer-02">SFTP version 3 - section 7</A>
+     */
+    public static String getLongName(String shortName, SftpFileAttributes attributes) {
+        String owner = attributes.getOwner();
+        String username = OsUtils.getCanonicalUser(owner);
+        if (GenericUtils.isEmpty(username)) {
+            username = SftpUniversalOwnerAndGroup.Owner.getName();
+        }
+
+        String group = OsUtils.resolveCanonicalGroup(attributes.getGroup(), owner);
+        if (GenericUtils.isEmpty(group)) {
+            group = SftpUniversalOwnerAndGroup.Group.getName();
+        }
+
+        String lengthString = attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_SIZE) ? Long.toString(attributes.getSize()) : "0";
+        String linkCount = attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_LINK_COUNT) ? Integer.toString(attributes.getLinkCount()) : "1";
+        String timeStamp = UnixDateFormat.getUnixDate(
+            attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_MODIFYTIME) ? attributes.getModifyTime() : -1L);
+        StringBuilder sb = new StringBuilder(
+                linkCount.length() + username.length() + group.length() + timeStamp.length()
+              + GenericUtils.length(shortName) + 2 * Integer.SIZE);
+        sb.append(attributes.isDirectory() ? 'd' : (attributes.isSymbolicLink() ? 'l' : '-'));
+        appendPermissions(sb, attributes.hasFlags(SftpConstants.SSH_FILEXFER_ATTR_PERMISSIONS) ? attributes.getPermissions() : 0);
+
+        sb.append(' ');
+        appendPadded(sb, linkCount, 3, true);
+        sb.append(' ');
+        appendPadded(sb, username, 8, false);
+        sb.append(' ');
+        appendPadded(sb, group, 8, false);
+        sb.append(' ');
+        appendPadded(sb, lengthString, 8, true);
+        sb.append(' ').append(timeStamp).append(' ').append(shortName);
+        return sb.toString();
+    }
+
+    private static void appendPermissions(StringBuilder sb, int perms) {
+        // S_IRUSR (0400) down to S_IXOTH (01) - i.e., "rwxrwxrwx"
+        for (int index = 0, bit = SftpConstants.S_IRUSR; bit != 0; index++, bit >>>= 1) {
+            sb.append(((perms & bit) != 0) ? "rwx".charAt(index % 3) : '-');
+        }
+    }
+
+    private static void appendPadded(StringBuilder sb, String value, int width, boolean rightAligned) {
+        if (!rightAligned) {
+            sb.append(value);
+        }
+        for (int index = value.length(); index < width; index++) {
+            sb.append(' ');
+        }
+        if (rightAligned) {
+            sb.append(value);
+        }
+    }
 }
@@ -35,6 +35,7 @@ import org.apache.sshd.common.subsystem.sftp.extensions.SupportedParser.Supporte
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.FstatVfsExtensionParser;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.FsyncExtensionParser;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.HardLinkExtensionParser;
+import org.apache.sshd.common.subsystem.sftp.extensions.openssh.LimitsExtensionParser;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.PosixRenameExtensionParser;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.StatVfsExtensionParser;
 import org.apache.sshd.common.util.GenericUtils;
@@ -58,7 +59,8 @@ public final class ParserUtils {
                             StatVfsExtensionParser.INSTANCE,
                             FstatVfsExtensionParser.INSTANCE,
                             HardLinkExtensionParser.INSTANCE,
-                            FsyncExtensionParser.INSTANCE
+                            FsyncExtensionParser.INSTANCE,
+                            LimitsExtensionParser.INSTANCE
                     ));
 
     private static final Map<String, ExtensionParser<?>> PARSERS_MAP;
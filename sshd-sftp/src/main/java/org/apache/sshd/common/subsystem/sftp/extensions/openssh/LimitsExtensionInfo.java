@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.common.subsystem.sftp.extensions.openssh;
+
+import org.apache.sshd.common.util.NumberUtils;
+import org.apache.sshd.common.util.buffer.Buffer;
+
+/**
+ * Response for the &quot;limits@openssh.com&quot; extension command. A zero
+ * value means that the limit is unknown/unlimited.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ * @see <A HREF="https://github.com/openssh/openssh-portable/blob/master/PROTOCOL">OpenSSH - section 4.8</A>
+ */
+public class LimitsExtensionInfo implements Cloneable {
+    // CHECKSTYLE:OFF
+    public long maxPacketLength;    /* max. SFTP message length (excluding the length field) */
+    public long maxReadLength;      /* max. SSH_FXP_READ request length */
+    public long maxWriteLength;     /* max. SSH_FXP_WRITE data length */
+    public long maxOpenHandles;     /* max. number of concurrently open handles */
+    // CHECKSTYLE:ON
+
+    public LimitsExtensionInfo() {
+        super();
+    }
+
+    public LimitsExtensionInfo(long maxPacketLength, long maxReadLength, long maxWriteLength, long maxOpenHandles) {
+        this.maxPacketLength = maxPacketLength;
+        this.maxReadLength = maxReadLength;
+        this.maxWriteLength = maxWriteLength;
+        this.maxOpenHandles = maxOpenHandles;
+    }
+
+    public LimitsExtensionInfo(Buffer buffer) {
+        decode(buffer, this);
+    }
+
+    @Override
+    public int hashCode() {
+        return NumberUtils.hashCode(maxPacketLength, maxReadLength, maxWriteLength, maxOpenHandles);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (this == obj) {
+            return true;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        LimitsExtensionInfo other = (LimitsExtensionInfo) obj;
+        return this.maxPacketLength == other.maxPacketLength
+                && this.maxReadLength == other.maxReadLength
+                && this.maxWriteLength == other.maxWriteLength
+                && this.maxOpenHandles == other.maxOpenHandles;
+    }
+
+    @Override
+    public LimitsExtensionInfo clone() {
+        try {
+            return getClass().cast(super.clone());
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException("Failed to clone " + toString() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "maxPacketLength=" + maxPacketLength
+                + ",maxReadLength=" + maxReadLength
+                + ",maxWriteLength=" + maxWriteLength
+                + ",maxOpenHandles=" + maxOpenHandles;
+    }
+
+    public static void encode(Buffer buffer, LimitsExtensionInfo info) {
+        buffer.putLong(info.maxPacketLength);
+        buffer.putLong(info.maxReadLength);
+        buffer.putLong(info.maxWriteLength);
+        buffer.putLong(info.maxOpenHandles);
+    }
+
+    public static LimitsExtensionInfo decode(Buffer buffer) {
+        LimitsExtensionInfo info = new LimitsExtensionInfo();
+        decode(buffer, info);
+        return info;
+    }
+
+    public static void decode(Buffer buffer, LimitsExtensionInfo info) {
+        info.maxPacketLength = buffer.getLong();
+        info.maxReadLength = buffer.getLong();
+        info.maxWriteLength = buffer.getLong();
+        info.maxOpenHandles = buffer.getLong();
+    }
+}
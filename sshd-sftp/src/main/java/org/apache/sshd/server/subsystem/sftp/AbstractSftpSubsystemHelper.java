@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.StreamCorruptedException;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
@@ -69,6 +70,8 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.IntUnaryOperator;
 
 import org.apache.sshd.common.FactoryManager;
@@ -82,12 +85,15 @@ import org.apache.sshd.common.digest.BuiltinDigests;
 import org.apache.sshd.common.digest.Digest;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
+import org.apache.sshd.common.subsystem.sftp.SftpFileAttributes;
 import org.apache.sshd.common.subsystem.sftp.SftpHelper;
 import org.apache.sshd.common.subsystem.sftp.extensions.AclSupportedParser;
 import org.apache.sshd.common.subsystem.sftp.extensions.SpaceAvailableExtensionInfo;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.AbstractOpenSSHExtensionParser.OpenSSHExtension;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.FsyncExtensionParser;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.HardLinkExtensionParser;
+import org.apache.sshd.common.subsystem.sftp.extensions.openssh.LimitsExtensionInfo;
+import org.apache.sshd.common.subsystem.sftp.extensions.openssh.LimitsExtensionParser;
 import org.apache.sshd.common.util.EventListenerUtils;
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.NumberUtils;
@@ -158,7 +164,8 @@ public abstract class AbstractSftpSubsystemHelper
             Collections.unmodifiableList(
                     Arrays.asList(
                             new OpenSSHExtension(FsyncExtensionParser.NAME, "1"),
-                            new OpenSSHExtension(HardLinkExtensionParser.NAME, "1")
+                            new OpenSSHExtension(HardLinkExtensionParser.NAME, "1"),
+                            new OpenSSHExtension(LimitsExtensionParser.NAME, "1")
                     ));
 
     public static final List<String> DEFAULT_OPEN_SSH_EXTENSIONS_NAMES =
@@ -192,11 +199,43 @@ public abstract class AbstractSftpSubsystemHelper
     public static final String MAX_READDATA_PACKET_LENGTH_PROP = "sftp-max-readdata-packet-length";
     public static final int DEFAULT_MAX_READDATA_PACKET_LENGTH = 63 * 1024;
 
+    /**
+     * Max. {@code SSH_FXP_WRITE} data length reported via the {@code limits@openssh.com}
+     * extension - <B>Note:</B> the value is advisory, larger writes are not rejected
+     *
+     * @see #DEFAULT_MAX_WRITEDATA_PACKET_LENGTH
+     */
+    public static final String MAX_WRITEDATA_PACKET_LENGTH_PROP = "sftp-max-writedata-packet-length";
+    public static final int DEFAULT_MAX_WRITEDATA_PACKET_LENGTH = 63 * 1024;
+
+    /**
+     * Extra room reported in the {@code limits@openssh.com} max. packet length on
+     * top of the max. read/write data length - covers the message header and handle
+     */
+    public static final int LIMITS_PACKET_LENGTH_OVERHEAD = 1024;
+
+    /**
+     * The {@link Map} based attributes resolution hooks - if any of them is overridden
+     * then {@link #resolveSftpFileAttributes(Path, int, LinkOption...)} always goes
+     * through them
+     */
+    public static final Set<String> MAP_ATTRIBUTES_HOOKS =
+            Collections.unmodifiableSet(
+                    new HashSet<>(Arrays.asList(
+                            "resolveFileAttributes",
+                            "handleUnknownStatusFileAttributes",
+                            "getAttributes",
+                            "resolveMissingFileAttributes",
+                            "resolveMissingFileAttributeValue",
+                            "readFileAttributes",
+                            "handleReadFileAttributesException")));
+
     private final UnsupportedAttributePolicy unsupportedAttributePolicy;
     private final Collection<SftpEventListener> sftpEventListeners = new CopyOnWriteArraySet<>();
     private final SftpEventListener sftpEventListenerProxy;
     private final SftpFileSystemAccessor fileSystemAccessor;
     private final SftpErrorStatusDataHandler errorStatusDataHandler;
+    private final boolean mapAttributesHooksOverridden;
 
     protected AbstractSftpSubsystemHelper(
             UnsupportedAttributePolicy policy, SftpFileSystemAccessor accessor, SftpErrorStatusDataHandler handler) {
@@ -204,6 +243,19 @@ public abstract class AbstractSftpSubsystemHelper
         fileSystemAccessor = Objects.requireNonNull(accessor, "No file system accessor");
         sftpEventListenerProxy = EventListenerUtils.proxyWrapper(SftpEventListener.class, getClass().getClassLoader(), sftpEventListeners);
         errorStatusDataHandler = Objects.requireNonNull(handler, "No error status data handler");
+        mapAttributesHooksOverridden = isMapAttributesHookOverridden(getClass());
+    }
+
+    protected static boolean isMapAttributesHookOverridden(Class<?> clazz) {
+        for (Class<?> c = clazz; (c != null) && (c != AbstractSftpSubsystemHelper.class); c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                if (MAP_ATTRIBUTES_HOOKS.contains(m.getName())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
     }
 
     @Override
@@ -537,7 +589,7 @@ public abstract class AbstractSftpSubsystemHelper
         long offset = buffer.getLong();
         int requestedLength = buffer.getInt();
         ServerSession session = getServerSession();
-        int maxAllowed = session.getIntProperty(MAX_READDATA_PACKET_LENGTH_PROP, DEFAULT_MAX_READDATA_PACKET_LENGTH);
+        int maxAllowed = resolveMaxReadDataLength(session);
         int readLen = Math.min(requestedLength, maxAllowed);
         if (log.isTraceEnabled()) {
             log.trace("doRead({})[id={}]({})[offset={}] - req={}, max={}, effective={}",
@@ -840,6 +892,58 @@ public abstract class AbstractSftpSubsystemHelper
 
     protected abstract void doOpenSSHFsync(int id, String handle) throws IOException;
 
+    // see https://github.com/openssh/openssh-portable/blob/master/PROTOCOL section 4.8
+    protected void doOpenSSHLimits(Buffer buffer, int id) throws IOException {
+        LimitsExtensionInfo info;
+        try {
+            info = resolveOpenSSHLimits(getServerSession());
+        } catch (RuntimeException e) {
+            sendStatus(prepareReply(buffer), id, e, SftpConstants.SSH_FXP_EXTENDED, LimitsExtensionParser.NAME);
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("doOpenSSHLimits({})[id={}] {}", getServerSession(), id, info);
+        }
+
+        buffer = prepareReply(buffer);
+        buffer.putByte((byte) SftpConstants.SSH_FXP_EXTENDED_REPLY);
+        buffer.putInt(id);
+        LimitsExtensionInfo.encode(buffer, info);
+        send(buffer);
+    }
+
+    /**
+     * @param session The {@link ServerSession}
+     * @return The {@link LimitsExtensionInfo} to report for the {@code limits@openssh.com}
+     * extension - by default derived from the {@link #resolveMaxReadDataLength(ServerSession) read}
+     * and {@link #resolveMaxWriteDataLength(ServerSession) write} limits
+     */
+    protected LimitsExtensionInfo resolveOpenSSHLimits(ServerSession session) {
+        int maxRead = resolveMaxReadDataLength(session);
+        int maxWrite = resolveMaxWriteDataLength(session);
+        long maxPacket = Math.max(maxRead, maxWrite) + (long) LIMITS_PACKET_LENGTH_OVERHEAD;
+        return new LimitsExtensionInfo(maxPacket, maxRead, maxWrite, 0L);
+    }
+
+    /**
+     * @param session The {@link ServerSession}
+     * @return Max. amount of data returned by a single {@code SSH_FXP_READ}
+     * @see #MAX_READDATA_PACKET_LENGTH_PROP
+     */
+    protected int resolveMaxReadDataLength(ServerSession session) {
+        return session.getIntProperty(MAX_READDATA_PACKET_LENGTH_PROP, DEFAULT_MAX_READDATA_PACKET_LENGTH);
+    }
+
+    /**
+     * @param session The {@link ServerSession}
+     * @return Max. amount of data the client is asked to send in a single {@code SSH_FXP_WRITE}
+     * @see #MAX_WRITEDATA_PACKET_LENGTH_PROP
+     */
+    protected int resolveMaxWriteDataLength(ServerSession session) {
+        return session.getIntProperty(MAX_WRITEDATA_PACKET_LENGTH_PROP, DEFAULT_MAX_WRITEDATA_PACKET_LENGTH);
+    }
+
     protected void doCheckFileHash(Buffer buffer, int id, String targetType) throws IOException {
         String target = buffer.getString();
         String algList = buffer.getString();
@@ -1624,6 +1728,9 @@ public abstract class AbstractSftpSubsystemHelper
             case HardLinkExtensionParser.NAME:
                 doOpenSSHHardLink(buffer, id);
                 break;
+            case LimitsExtensionParser.NAME:
+                doOpenSSHLimits(buffer, id);
+                break;
             default:
                 doUnsupportedExtension(buffer, id, extension);
                 break;
@@ -2027,7 +2134,8 @@ public abstract class AbstractSftpSubsystemHelper
     protected int doReadDir(
             int id, String handle, DirectoryHandle dir, Buffer buffer, int maxSize, LinkOption... options) throws IOException {
         int nb = 0;
-        Map<String, Path> entries = new TreeMap<>(Comparator.naturalOrder());
+        // the entries are reported only if someone is listening
+        Map<String, Path> entries = sftpEventListeners.isEmpty() ? null : new TreeMap<>(Comparator.naturalOrder());
         while ((dir.isSendDot() || dir.isSendDotDot() || dir.hasNext()) && (buffer.wpos() < maxSize)) {
             if (dir.isSendDot()) {
                 writeDirEntry(id, dir, entries, buffer, nb, dir.getFile(), ".", options);
@@ -2037,23 +2145,82 @@ public abstract class AbstractSftpSubsystemHelper
                 writeDirEntry(id, dir, entries, buffer, nb, dirPath.getParent(), "..", options);
                 dir.markDotDotSent(); // do not send it again
             } else {
-                Path f = dir.next();
-                writeDirEntry(id, dir, entries, buffer, nb, f, getShortName(f), options);
+                Map.Entry<Path, SftpFileAttributes> entry = dir.nextEntry();
+                Path f = entry.getKey();
+                SftpFileAttributes attrs = entry.getValue();
+                if (attrs == null) {
+                    writeDirEntry(id, dir, entries, buffer, nb, f, getShortName(f), options);
+                } else {
+                    writeDirEntry(id, dir, entries, buffer, nb, f, getShortName(f), attrs);
+                }
             }
 
             nb++;
         }
 
-        SftpEventListener listener = getSftpEventListenerProxy();
-        listener.read(getServerSession(), handle, dir, entries);
+        if (entries != null) {
+            SftpEventListener listener = getSftpEventListenerProxy();
+            listener.read(getServerSession(), handle, dir, entries);
+        }
         return nb;
     }
 
+    /**
+     * Starts resolving the attributes of the next entries of the directory ahead of
+     * the next {@code SSH_FXP_READDIR} request. The attributes are resolved by the
+     * given {@link Executor} so that requests which arrive meanwhile are not delayed.
+     * <B>Note:</B> the entries are not consumed - they are sent (in order) by the
+     * next {@code SSH_FXP_READDIR} along with whatever attributes are available by then.
+     *
+     * @param dir The {@link DirectoryHandle}
+     * @param maxEntries Max. number of entries to pre-fetch
+     * @param maxAgeNanos Max. age (nanoseconds) of the pre-fetched attributes when sent
+     * @param executor The {@link Executor} used to resolve the attributes
+     * @param options The {@link LinkOption}-s to use when querying the directory contents
+     * @return Number of entries being pre-fetched
+     */
+    protected int prefetchDirEntries(
+            DirectoryHandle dir, int maxEntries, long maxAgeNanos, Executor executor, LinkOption... options) {
+        if ((maxEntries <= 0) || (!dir.canPrefetch())) {
+            return 0;
+        }
+
+        DirectoryHandle.PrefetchBatch batch = dir.startPrefetch(maxEntries, maxAgeNanos);
+        try {
+            executor.execute(() -> resolvePrefetchedAttributes(dir, batch, options));
+        } catch (RejectedExecutionException e) {
+            // the attributes are resolved when the entries are sent
+            batch.cancel();
+            if (log.isDebugEnabled()) {
+                log.debug("prefetchDirEntries({})[{}] rejected: {}", getServerSession(), dir, e.getMessage());
+            }
+        }
+
+        return batch.size();
+    }
+
+    protected void resolvePrefetchedAttributes(DirectoryHandle dir, DirectoryHandle.PrefetchBatch batch, LinkOption... options) {
+        for (int index = 0, count = batch.size(); (index < count) && (!batch.isCancelled()); index++) {
+            Path f = batch.getPath(index);
+            try {
+                batch.setAttributes(index, resolveSftpFileAttributes(f, SftpConstants.SSH_FILEXFER_ATTR_ALL, options));
+            } catch (IOException | RuntimeException e) {
+                // the error (if persists) is reported when the entry is sent
+                if (log.isTraceEnabled()) {
+                    log.trace("resolvePrefetchedAttributes({})[{}] failed ({}) to resolve attributes of {}: {}",
+                              getServerSession(), dir, e.getClass().getSimpleName(), f, e.getMessage());
+                }
+                return; // no use going on if failed
+            }
+        }
+    }
+
     /**
      * @param id        Request id
      * @param dir       The {@link DirectoryHandle}
      * @param entries   An in / out {@link Map} for updating the written entry -
-     *                  key = short name, value = entry {@link Path}
+     *                  key = short name, value = entry {@link Path}. May be {@code null}
+     *                  if no one is interested in the written entries
      * @param buffer    The {@link Buffer} to write the results
      * @param index     Zero-based index of the entry to be written
      * @param f         The entry {@link Path}
@@ -2064,13 +2231,35 @@ public abstract class AbstractSftpSubsystemHelper
     protected void writeDirEntry(
             int id, DirectoryHandle dir, Map<String, Path> entries, Buffer buffer, int index, Path f, String shortName, LinkOption... options)
                     throws IOException {
-        Map<String, ?> attrs = resolveFileAttributes(f, SftpConstants.SSH_FILEXFER_ATTR_ALL, options);
-        entries.put(shortName, f);
+        // the same attributes are used for the long name as well as the entry itself
+        SftpFileAttributes attrs = resolveSftpFileAttributes(f, SftpConstants.SSH_FILEXFER_ATTR_ALL, options);
+        writeDirEntry(id, dir, entries, buffer, index, f, shortName, attrs);
+    }
+
+    /**
+     * @param id        Request id
+     * @param dir       The {@link DirectoryHandle}
+     * @param entries   An in / out {@link Map} for updating the written entry -
+     *                  key = short name, value = entry {@link Path}. May be {@code null}
+     *                  if no one is interested in the written entries
+     * @param buffer    The {@link Buffer} to write the results
+     * @param index     Zero-based index of the entry to be written
+     * @param f         The entry {@link Path}
+     * @param shortName The entry short name
+     * @param attrs     The (already resolved) entry attributes
+     * @throws IOException If failed to generate the entry data
+     */
+    protected void writeDirEntry(
+            int id, DirectoryHandle dir, Map<String, Path> entries, Buffer buffer, int index, Path f, String shortName, SftpFileAttributes attrs)
+                    throws IOException {
+        if (entries != null) {
+            entries.put(shortName, f);
+        }
 
         buffer.putString(shortName);
         int version = getVersion();
         if (version == SftpConstants.SFTP_V3) {
-            String longName = getLongName(f, shortName, options);
+            String longName = getLongName(f, shortName, attrs);
             buffer.putString(longName);
             if (log.isTraceEnabled()) {
                 log.trace("writeDirEntry(" + getServerSession() + ") id=" + id + ")[" + index + "] - "
@@ -2104,24 +2293,29 @@ public abstract class AbstractSftpSubsystemHelper
         return SftpHelper.getLongName(shortName, attributes);
     }
 
+    protected String getLongName(Path f, String shortName, SftpFileAttributes attributes) throws IOException {
+        return SftpHelper.getLongName(shortName, attributes);
+    }
+
     protected String getShortName(Path f) throws IOException {
-        Path nrm = normalize(f);
-        int  count = nrm.getNameCount();
-        /*
-         * According to the javadoc:
-         *
-         *      The number of elements in the path, or 0 if this path only
-         *      represents a root component
-         */
         if (OsUtils.isUNIX()) {
             Path name = f.getFileName();
-            if (name == null) {
-                Path p = resolveFile(".");
-                name = p.getFileName();
+            if (name != null) {
+                return name.toString();     // the most common case - no need to normalize
             }
 
+            Path p = resolveFile(".");
+            name = p.getFileName();
+
+            Path nrm = normalize(f);
+            /*
+             * According to the javadoc:
+             *
+             *      The number of elements in the path, or 0 if this path only
+             *      represents a root component
+             */
             if (name == null) {
-                if (count > 0) {
+                if (nrm.getNameCount() > 0) {
                     name = nrm.getFileName();
                 }
             }
@@ -2131,13 +2325,16 @@ public abstract class AbstractSftpSubsystemHelper
             } else {
                 return nrm.toString();
             }
-        } else {    // need special handling for Windows root drives
-            if (count > 0) {
-                Path name = nrm.getFileName();
-                return name.toString();
-            } else {
-                return nrm.toString().replace(File.separatorChar, '/');
-            }
+        }
+
+        // need special handling for Windows root drives
+        Path nrm = normalize(f);
+        int  count = nrm.getNameCount();
+        if (count > 0) {
+            Path name = nrm.getFileName();
+            return name.toString();
+        } else {
+            return nrm.toString().replace(File.separatorChar, '/');
         }
     }
 
@@ -2152,10 +2349,50 @@ public abstract class AbstractSftpSubsystemHelper
         }
     }
 
+    /**
+     * Retrieves the attributes of a {@code SSH_FXP_READDIR} entry - the same record is used
+     * for the entry itself as well as its V3 long name, so the attributes are resolved only
+     * once per entry. If none of the {@link #MAP_ATTRIBUTES_HOOKS Map based hooks} is overridden
+     * and the file system supports the &quot;unix&quot; view, then the view is read once and
+     * converted directly into the record - it already contains all the attributes that
+     * {@link #resolveMissingFileAttributes(Path, int, Map, LinkOption...)} would complete.
+     * Otherwise (or if failed to read the view) the record is built from the
+     * {@link #resolveFileAttributes(Path, int, LinkOption...) Map based} resolution.
+     *
+     * @param file The {@link Path} location for the required attributes
+     * @param flags A mask of the original required attributes
+     * @param options The {@link LinkOption}s to use in order to access the file
+     * @return The resolved {@link SftpFileAttributes}
+     * @throws IOException If failed to access the file
+     */
+    protected SftpFileAttributes resolveSftpFileAttributes(Path file, int flags, LinkOption... options) throws IOException {
+        if (!mapAttributesHooksOverridden) {
+            FileSystem fs = file.getFileSystem();
+            Collection<String> supportedViews = fs.supportedFileAttributeViews();
+            if (GenericUtils.isNotEmpty(supportedViews) && supportedViews.contains("unix")) {
+                try {
+                    return SftpFileAttributes.fromMap(Files.readAttributes(file, "unix:*", options));
+                } catch (IOException | RuntimeException e) {
+                    // the Map based resolution applies the existence check and unsupported attribute policy
+                    if (log.isTraceEnabled()) {
+                        log.trace("resolveSftpFileAttributes({})[{}] failed ({}) to read unix view: {}",
+                                  getServerSession(), file, e.getClass().getSimpleName(), e.getMessage());
+                    }
+                }
+            }
+        }
+
+        return SftpFileAttributes.fromMap(resolveFileAttributes(file, flags, options));
+    }
+
     protected void writeAttrs(Buffer buffer, Map<String, ?> attributes) throws IOException {
         SftpHelper.writeAttrs(buffer, getVersion(), attributes);
     }
 
+    protected void writeAttrs(Buffer buffer, SftpFileAttributes attributes) throws IOException {
+        SftpHelper.writeAttrs(buffer, getVersion(), attributes);
+    }
+
     protected NavigableMap<String, Object> getAttributes(Path file, LinkOption... options) throws IOException {
         return getAttributes(file, SftpConstants.SSH_FILEXFER_ATTR_ALL, options);
     }
@@ -0,0 +1,612 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.server.subsystem.sftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.CopyOption;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.apache.sshd.common.util.GenericUtils;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+import org.apache.sshd.server.session.ServerSession;
+
+/**
+ * Wraps an {@link SftpEventListener} so that the events are handed to a bounded
+ * queue and delivered to it by a dedicated thread instead of the thread that
+ * executes the SFTP command. <B>Note(s):</B>
+ * <UL>
+ *      <LI>
+ *      Exceptions thrown by the wrapped listener are logged - i.e., it cannot
+ *      veto an operation (e.g., by throwing an exception from a {@code removing} call).
+ *      </LI>
+ *
+ *      <LI>
+ *      The data buffers of the read / write events are re-used by the subsystem,
+ *      so they are copied before being queued. The exception is the {@code reading}
+ *      event - the data is not available yet at that point, so the wrapped listener
+ *      receives an empty buffer along with the requested read length.
+ *      </LI>
+ *
+ *      <LI>
+ *      In aggregation mode the successful per-packet read / write events are
+ *      not queued at all - instead, their byte counts are accumulated per file
+ *      handle and reported via {@link SftpEventListener#transferred(ServerSession, String, FileHandle, long, long)}
+ *      just before the handle is reported as closed. Failed reads / writes are
+ *      still reported individually.
+ *      </LI>
+ * </UL>
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class AsyncSftpEventListener extends AbstractLoggingBean implements SftpEventListener, Closeable {
+    /** Default max. number of queued events */
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+    /**
+     * What to do when an event is generated while the queue is full
+     */
+    public enum OverflowPolicy {
+        /** The generating thread waits until the event can be queued */
+        BLOCK,
+        /** The event is discarded (and counted) */
+        DROP
+    }
+
+    /**
+     * Delivers a single queued event
+     */
+    @FunctionalInterface
+    protected interface Event {
+        void dispatch(SftpEventListener listener) throws IOException;
+    }
+
+    // queued by close() in order to stop the dispatcher once all events have been delivered
+    private static final Event STOP = listener -> {
+        // ignored
+    };
+
+    // max. time (msec.) to wait for an event from an enqueue that raced with close()
+    private static final long LATE_EVENTS_POLL_MILLIS = 10L;
+
+    private final SftpEventListener listener;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean aggregate;
+    private final BlockingQueue<Event> events;
+    private final ExecutorService dispatcher;
+    private final Map<FileHandle, TransferTotals> transfers = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicInteger enqueuing = new AtomicInteger(0);
+    private final AtomicLong dispatchedCount = new AtomicLong(0L);
+    private final AtomicLong droppedCount = new AtomicLong(0L);
+    private final AtomicLong failedCount = new AtomicLong(0L);
+
+    public AsyncSftpEventListener(SftpEventListener listener) {
+        this(listener, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK, false);
+    }
+
+    /**
+     * @param listener The wrapped {@link SftpEventListener}
+     * @param capacity Max. number of queued events
+     * @param overflowPolicy The {@link OverflowPolicy} applied when the queue is full
+     * @param aggregate Whether to aggregate the per-packet read / write events
+     */
+    public AsyncSftpEventListener(SftpEventListener listener, int capacity, OverflowPolicy overflowPolicy, boolean aggregate) {
+        this.listener = SftpEventListener.validateListener(listener);
+        ValidateUtils.checkTrue(capacity > 0, "Non-positive queue capacity: %d", capacity);
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "No overflow policy");
+        this.aggregate = aggregate;
+        this.events = new ArrayBlockingQueue<>(capacity);
+        this.dispatcher = ThreadUtils.newSingleThreadExecutor(getClass().getSimpleName());
+        this.dispatcher.execute(this::dispatchEvents);
+    }
+
+    public SftpEventListener getListener() {
+        return listener;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public boolean isAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * @return Number of events delivered to the wrapped listener
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return Number of events discarded since the queue was full (or the
+     * listener already closed)
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return Number of events for which the wrapped listener threw an exception
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return Number of currently queued events
+     */
+    public int getPendingCount() {
+        return events.size();
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    @Override
+    public void initialized(ServerSession session, int version) {
+        enqueue(l -> l.initialized(session, version));
+    }
+
+    @Override
+    public void destroying(ServerSession session) {
+        if (aggregate) {
+            // report whatever was not reported since the handle was never closed
+            flushTotals(t -> t.getSession() == session);
+        }
+        enqueue(l -> l.destroying(session));
+    }
+
+    @Override
+    public void opening(ServerSession session, String remoteHandle, Handle localHandle) {
+        enqueue(l -> l.opening(session, remoteHandle, localHandle));
+    }
+
+    @Override
+    public void open(ServerSession session, String remoteHandle, Handle localHandle) {
+        enqueue(l -> l.open(session, remoteHandle, localHandle));
+    }
+
+    @Override
+    public void openFailed(ServerSession session, String remotePath, Path localPath, boolean isDirectory, Throwable thrown) {
+        enqueue(l -> l.openFailed(session, remotePath, localPath, isDirectory, thrown));
+    }
+
+    @Override
+    public void read(ServerSession session, String remoteHandle, DirectoryHandle localHandle, Map<String, Path> entries) {
+        enqueue(l -> l.read(session, remoteHandle, localHandle, entries));
+    }
+
+    @Override
+    public void reading(ServerSession session, String remoteHandle, FileHandle localHandle,
+            long offset, byte[] data, int dataOffset, int dataLen) {
+        if (aggregate) {
+            return;
+        }
+
+        // the data has not been read yet, so there is nothing to copy
+        enqueue(l -> l.reading(session, remoteHandle, localHandle, offset, GenericUtils.EMPTY_BYTE_ARRAY, 0, dataLen));
+    }
+
+    @Override
+    public void read(ServerSession session, String remoteHandle, FileHandle localHandle,
+            long offset, byte[] data, int dataOffset, int dataLen, int readLen, Throwable thrown) {
+        if (aggregate && (thrown == null)
+                && ((readLen <= 0) || addTotals(session, remoteHandle, localHandle, readLen, 0L))) {
+            return;
+        }
+
+        byte[] copy = copyData(data, dataOffset, dataLen, Math.min(dataLen, readLen));
+        enqueue(l -> l.read(session, remoteHandle, localHandle, offset, copy, 0, dataLen, readLen, thrown));
+    }
+
+    @Override
+    public void writing(ServerSession session, String remoteHandle, FileHandle localHandle,
+            long offset, byte[] data, int dataOffset, int dataLen) {
+        if (aggregate) {
+            return;
+        }
+
+        byte[] copy = copyData(data, dataOffset, dataLen, dataLen);
+        enqueue(l -> l.writing(session, remoteHandle, localHandle, offset, copy, 0, dataLen));
+    }
+
+    @Override
+    public void written(ServerSession session, String remoteHandle, FileHandle localHandle,
+            long offset, byte[] data, int dataOffset, int dataLen, Throwable thrown) {
+        if (aggregate && (thrown == null) && addTotals(session, remoteHandle, localHandle, 0L, dataLen)) {
+            return;
+        }
+
+        byte[] copy = copyData(data, dataOffset, dataLen, dataLen);
+        enqueue(l -> l.written(session, remoteHandle, localHandle, offset, copy, 0, dataLen, thrown));
+    }
+
+    @Override
+    public void transferred(ServerSession session, String remoteHandle, FileHandle localHandle,
+            long bytesRead, long bytesWritten) {
+        enqueue(l -> l.transferred(session, remoteHandle, localHandle, bytesRead, bytesWritten));
+    }
+
+    @Override
+    public void blocking(ServerSession session, String remoteHandle, FileHandle localHandle, long offset, long length, int mask) {
+        enqueue(l -> l.blocking(session, remoteHandle, localHandle, offset, length, mask));
+    }
+
+    @Override
+    public void blocked(ServerSession session, String remoteHandle, FileHandle localHandle,
+            long offset, long length, int mask, Throwable thrown) {
+        enqueue(l -> l.blocked(session, remoteHandle, localHandle, offset, length, mask, thrown));
+    }
+
+    @Override
+    public void unblocking(ServerSession session, String remoteHandle, FileHandle localHandle, long offset, long length) {
+        enqueue(l -> l.unblocking(session, remoteHandle, localHandle, offset, length));
+    }
+
+    @Override
+    public void unblocked(ServerSession session, String remoteHandle, FileHandle localHandle,
+            long offset, long length, Throwable thrown) {
+        enqueue(l -> l.unblocked(session, remoteHandle, localHandle, offset, length, thrown));
+    }
+
+    @Override
+    public void closing(ServerSession session, String remoteHandle, Handle localHandle) {
+        enqueue(l -> l.closing(session, remoteHandle, localHandle));
+    }
+
+    @Override
+    public void closed(ServerSession session, String remoteHandle, Handle localHandle, Throwable thrown) {
+        if (aggregate && (localHandle instanceof FileHandle)) {
+            TransferTotals totals = transfers.remove(localHandle);
+            if (totals != null) {
+                enqueueTotals((FileHandle) localHandle, totals);
+            }
+            // handles closed without being reported - e.g., when the session was torn down
+            flushTotals(t -> false);
+        }
+        enqueue(l -> l.closed(session, remoteHandle, localHandle, thrown));
+    }
+
+    @Override
+    public void creating(ServerSession session, Path path, Map<String, ?> attrs) {
+        enqueue(l -> l.creating(session, path, attrs));
+    }
+
+    @Override
+    public void created(ServerSession session, Path path, Map<String, ?> attrs, Throwable thrown) {
+        enqueue(l -> l.created(session, path, attrs, thrown));
+    }
+
+    @Override
+    public void moving(ServerSession session, Path srcPath, Path dstPath, Collection<CopyOption> opts) {
+        enqueue(l -> l.moving(session, srcPath, dstPath, opts));
+    }
+
+    @Override
+    public void moved(ServerSession session, Path srcPath, Path dstPath, Collection<CopyOption> opts, Throwable thrown) {
+        enqueue(l -> l.moved(session, srcPath, dstPath, opts, thrown));
+    }
+
+    @Override
+    public void removing(ServerSession session, Path path) {
+        enqueue(l -> l.removing(session, path));
+    }
+
+    @Override
+    public void removed(ServerSession session, Path path, Throwable thrown) {
+        enqueue(l -> l.removed(session, path, thrown));
+    }
+
+    @Override
+    public void linking(ServerSession session, Path source, Path target, boolean symLink) {
+        enqueue(l -> l.linking(session, source, target, symLink));
+    }
+
+    @Override
+    public void linked(ServerSession session, Path source, Path target, boolean symLink, Throwable thrown) {
+        enqueue(l -> l.linked(session, source, target, symLink, thrown));
+    }
+
+    @Override
+    public void modifyingAttributes(ServerSession session, Path path, Map<String, ?> attrs) {
+        enqueue(l -> l.modifyingAttributes(session, path, attrs));
+    }
+
+    @Override
+    public void modifiedAttributes(ServerSession session, Path path, Map<String, ?> attrs, Throwable thrown) {
+        enqueue(l -> l.modifiedAttributes(session, path, attrs, thrown));
+    }
+
+    /**
+     * Accumulates the byte counts of a successful read / write in aggregation mode
+     *
+     * @param session The {@link ServerSession}
+     * @param remoteHandle The remote handle identifier
+     * @param localHandle The {@link FileHandle}
+     * @param bytesRead Number of bytes read
+     * @param bytesWritten Number of bytes written
+     * @return {@code false} if the handle (or the listener) is already closed - i.e., its
+     * totals have been (or are about to be) reported, in which case the event should be
+     * reported individually
+     */
+    protected boolean addTotals(
+            ServerSession session, String remoteHandle, FileHandle localHandle, long bytesRead, long bytesWritten) {
+        if (closed.get() || (!localHandle.isOpen())) {
+            return false;
+        }
+
+        AtomicBoolean added = new AtomicBoolean(false);
+        // the check is repeated atomically with respect to the removal when the handle is reported closed
+        transfers.compute(localHandle, (h, totals) -> {
+            if (closed.get() || (!h.isOpen())) {
+                return totals;
+            }
+
+            TransferTotals result = (totals == null) ? new TransferTotals(session, remoteHandle) : totals;
+            result.bytesRead.add(bytesRead);
+            result.bytesWritten.add(bytesWritten);
+            added.set(true);
+            return result;
+        });
+        return added.get();
+    }
+
+    /**
+     * Reports (and removes) the totals of the handles that are either closed or match the predicate
+     *
+     * @param selector Selects the totals to report regardless of their handle's state
+     */
+    protected void flushTotals(Predicate<? super TransferTotals> selector) {
+        for (Map.Entry<FileHandle, TransferTotals> te : transfers.entrySet()) {
+            FileHandle handle = te.getKey();
+            TransferTotals totals = te.getValue();
+            if (((!handle.isOpen()) || selector.test(totals)) && transfers.remove(handle, totals)) {
+                enqueueTotals(handle, totals);
+            }
+        }
+    }
+
+    protected void enqueueTotals(FileHandle localHandle, TransferTotals totals) {
+        enqueue(totalsEvent(localHandle, totals));
+    }
+
+    protected Event totalsEvent(FileHandle localHandle, TransferTotals totals) {
+        ServerSession session = totals.getSession();
+        String remoteHandle = totals.getRemoteHandle();
+        long bytesRead = totals.bytesRead.sum();
+        long bytesWritten = totals.bytesWritten.sum();
+        return l -> l.transferred(session, remoteHandle, localHandle, bytesRead, bytesWritten);
+    }
+
+    /**
+     * @param data The original data buffer
+     * @param offset Offset of the data in the buffer
+     * @param length The reported data length - the size of the returned buffer
+     * @param copyLength Number of bytes to actually copy
+     * @return A copy of the data - starting at offset zero
+     */
+    protected byte[] copyData(byte[] data, int offset, int length, int copyLength) {
+        byte[] copy = new byte[Math.max(0, length)];
+        if ((data != null) && (copyLength > 0)) {
+            System.arraycopy(data, offset, copy, 0, copyLength);
+        }
+        return copy;
+    }
+
+    protected void enqueue(Event event) {
+        // the dispatcher keeps delivering events until no enqueue that passed the closed check is in progress
+        enqueuing.incrementAndGet();
+        try {
+            if (closed.get()) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+
+            queue(event);
+        } finally {
+            enqueuing.decrementAndGet();
+        }
+    }
+
+    /**
+     * Queues an event according to the {@link #getOverflowPolicy() overflow policy}
+     * regardless of whether the listener is closed
+     *
+     * @param event The {@link Event} to queue
+     */
+    protected void queue(Event event) {
+        boolean queued;
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                events.put(event);
+                queued = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+        } else {
+            queued = events.offer(event);
+        }
+
+        if (!queued) {
+            long dropped = droppedCount.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("enqueue({}) dropped event - total dropped={}", this, dropped);
+            }
+        }
+    }
+
+    protected void dispatchEvents() {
+        while (true) {
+            Event event;
+            try {
+                event = events.take();
+            } catch (InterruptedException e) {
+                log.warn("dispatchEvents({}) interrupted - pending={}", this, getPendingCount());
+                return;
+            }
+
+            if (event == STOP) {
+                dispatchLateEvents();
+                return;
+            }
+
+            dispatchEvent(event);
+        }
+    }
+
+    /**
+     * Delivers the events queued after {@link #STOP} by threads that passed the
+     * closed check just before {@link #close(long)} set it
+     */
+    protected void dispatchLateEvents() {
+        while (true) {
+            Event event = events.poll();
+            if (event == null) {
+                if (enqueuing.get() <= 0) {
+                    // re-check in case the last one was queued after the poll
+                    event = events.poll();
+                    if (event == null) {
+                        return;
+                    }
+                } else {
+                    try {
+                        event = events.poll(LATE_EVENTS_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        long dropped = droppedCount.addAndGet(events.size());
+                        log.warn("dispatchLateEvents({}) interrupted - total dropped={}", this, dropped);
+                        return;
+                    }
+                    if (event == null) {
+                        continue;
+                    }
+                }
+            }
+
+            dispatchEvent(event);
+        }
+    }
+
+    protected void dispatchEvent(Event event) {
+        try {
+            event.dispatch(getListener());
+        } catch (Throwable e) {
+            failedCount.incrementAndGet();
+            log.warn("dispatchEvent({}) failed ({}) to dispatch event: {}",
+                     this, e.getClass().getSimpleName(), e.getMessage());
+            if (log.isDebugEnabled()) {
+                log.debug("dispatchEvent(" + this + ") dispatch failure details", e);
+            }
+        }
+        dispatchedCount.incrementAndGet();
+    }
+
+    /**
+     * Stops accepting new events and waits for the already queued ones to be
+     * delivered - in aggregation mode the totals that were not reported yet are
+     * queued first
+     *
+     * @param timeout Max. time (msec.) to wait for the queued events to be delivered
+     * @return {@code true} if all queued events were delivered within the timeout
+     * @throws IOException If interrupted while waiting
+     */
+    public boolean close(long timeout) throws IOException {
+        if (!closed.getAndSet(true)) {
+            if (aggregate) {
+                // no more totals are accepted once closed - report the pending ones
+                for (FileHandle handle : transfers.keySet()) {
+                    TransferTotals totals = transfers.remove(handle);
+                    if (totals != null) {
+                        queue(totalsEvent(handle, totals));
+                    }
+                }
+            }
+
+            try {
+                events.put(STOP);
+            } catch (InterruptedException e) {
+                dispatcher.shutdownNow();
+                throw new IOException("Interrupted while stopping " + this, e);
+            }
+            dispatcher.shutdown();
+        }
+
+        try {
+            return dispatcher.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for " + this + " to stop", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!close(TimeUnit.SECONDS.toMillis(5L))) {
+            log.warn("close({}) not all events dispatched - pending={}", this, getPendingCount());
+            dispatcher.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + getListener() + "]";
+    }
+
+    /**
+     * Accumulated byte counts of a file handle in aggregation mode
+     */
+    protected static class TransferTotals {
+        protected final LongAdder bytesRead = new LongAdder();
+        protected final LongAdder bytesWritten = new LongAdder();
+        private final ServerSession session;
+        private final String remoteHandle;
+
+        public TransferTotals(ServerSession session, String remoteHandle) {
+            this.session = session;
+            this.remoteHandle = remoteHandle;
+        }
+
+        public ServerSession getSession() {
+            return session;
+        }
+
+        public String getRemoteHandle() {
+            return remoteHandle;
+        }
+    }
+}
@@ -21,8 +21,12 @@ package org.apache.sshd.server.subsystem.sftp;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.apache.sshd.common.subsystem.sftp.SftpFileAttributes;
 import org.apache.sshd.server.session.ServerSession;
 
 /**
@@ -36,6 +40,8 @@ public class DirectoryHandle extends Handle implements Iterator<Path> {
     // the directory should be read once at "open directory"
     private DirectoryStream<Path> ds;
     private Iterator<Path> fileList;
+    // entries whose attributes are being resolved ahead of the next SSH_FXP_READDIR
+    private PrefetchBatch prefetched;
 
     public DirectoryHandle(SftpSubsystem subsystem, Path dir, String handle) throws IOException {
         super(dir, handle);
@@ -67,6 +73,10 @@ public class DirectoryHandle extends Handle implements Iterator<Path> {
         this.done = true;
         // allow the garbage collector to do the job
         this.fileList = null;
+        if (prefetched != null) {
+            prefetched.cancel();
+            prefetched = null;
+        }
     }
 
     public boolean isSendDot() {
@@ -87,12 +97,59 @@ public class DirectoryHandle extends Handle implements Iterator<Path> {
 
     @Override
     public boolean hasNext() {
-        return fileList.hasNext();
+        return ((prefetched != null) && prefetched.hasNext()) || fileList.hasNext();
     }
 
     @Override
     public Path next() {
-        return fileList.next();
+        return nextEntry().getKey();
+    }
+
+    /**
+     * @return The next entry {@link Path} along with its attributes if these
+     * have been {@link #startPrefetch(int, long) pre-fetched} and are still
+     * fresh - {@code null} otherwise
+     */
+    public Map.Entry<Path, SftpFileAttributes> nextEntry() {
+        if (prefetched != null) {
+            if (prefetched.hasNext()) {
+                return prefetched.next();
+            }
+            prefetched = null;
+        }
+
+        return new SimpleImmutableEntry<>(fileList.next(), null);
+    }
+
+    /**
+     * @return {@code true} if there are more entries in the directory stream
+     * and no batch of entries is already being pre-fetched
+     */
+    public boolean canPrefetch() {
+        return (!isDone()) && ((prefetched == null) || (!prefetched.hasNext())) && fileList.hasNext();
+    }
+
+    /**
+     * Takes the next entries of the directory stream so that their attributes
+     * can be resolved (by another thread) ahead of the next {@code SSH_FXP_READDIR}
+     * request - <B>Note:</B> the directory stream itself is accessed only by
+     * the caller's thread.
+     *
+     * @param maxEntries Max. number of entries to take
+     * @param maxAgeNanos Max. age (nanoseconds) of resolved attributes - older
+     * ones are resolved again when the entry is sent
+     * @return The {@link PrefetchBatch} whose attributes should be resolved
+     */
+    public PrefetchBatch startPrefetch(int maxEntries, long maxAgeNanos) {
+        Path[] paths = new Path[maxEntries];
+        int count = 0;
+        while ((count < maxEntries) && fileList.hasNext()) {
+            paths[count] = fileList.next();
+            count++;
+        }
+
+        prefetched = new PrefetchBatch(paths, count, maxAgeNanos);
+        return prefetched;
     }
 
     @Override
@@ -106,4 +163,72 @@ public class DirectoryHandle extends Handle implements Iterator<Path> {
         markDone(); // just making sure
         ds.close();
     }
+
+    /**
+     * A batch of directory entries whose attributes are resolved by a background
+     * task while they are consumed - in order - by the {@code SSH_FXP_READDIR}
+     * processing. Entries whose attributes are not (yet) available are sent with
+     * attributes resolved at that time, and the background task is then cancelled
+     * so that it does not duplicate the work.
+     */
+    public static class PrefetchBatch {
+        private final Path[] paths;
+        private final int count;
+        private final long maxAgeNanos;
+        private final AtomicReferenceArray<SftpFileAttributes> attrs;
+        private final long[] resolveTimes;
+        private volatile boolean cancelled;
+        private int nextIndex;
+
+        public PrefetchBatch(Path[] paths, int count, long maxAgeNanos) {
+            this.paths = paths;
+            this.count = count;
+            this.maxAgeNanos = maxAgeNanos;
+            this.attrs = new AtomicReferenceArray<>(count);
+            this.resolveTimes = new long[count];
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public Path getPath(int index) {
+            return paths[index];
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Invoked by the background task
+         *
+         * @param index The entry index
+         * @param value The resolved attributes
+         */
+        public void setAttributes(int index, SftpFileAttributes value) {
+            resolveTimes[index] = System.nanoTime();
+            attrs.set(index, value);    // publishes the resolve time as well
+        }
+
+        public boolean hasNext() {
+            return nextIndex < count;
+        }
+
+        public Map.Entry<Path, SftpFileAttributes> next() {
+            int index = nextIndex++;
+            SftpFileAttributes value = attrs.get(index);
+            if (value == null) {
+                cancel();   // the consumer caught up with the background task
+            } else if ((System.nanoTime() - resolveTimes[index]) > maxAgeNanos) {
+                value = null;
+            }
+
+            return new SimpleImmutableEntry<>(paths[index], value);
+        }
+    }
 }
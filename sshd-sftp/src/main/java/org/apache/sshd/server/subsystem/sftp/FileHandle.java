@@ -19,15 +19,23 @@
 package org.apache.sshd.server.subsystem.sftp;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileAttribute;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -35,6 +43,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
@@ -52,6 +62,20 @@ public class FileHandle extends Handle {
     private final SftpSubsystem subsystem;
     private final Set<StandardOpenOption> openOptions;
     private final Collection<FileAttribute<?>> fileAttributes;
+    private final int mappedRegionSize;
+    private MappedByteBuffer mappedRegion;
+    private long mappedRegionOffset;
+    private long nextReadOffset;
+    private int sequentialReads;
+    private final SftpReadAheadManager readAheadManager;
+    private final Deque<SftpReadAheadManager.Block> readAheadBlocks;
+    private final int writeBehindSize;
+    private byte[] writeBehindData;
+    private long writeBehindOffset;
+    private int writeBehindLength;
+    private final AsynchronousFileChannel asyncChannel;
+    private final int maxPendingOperations;
+    private final List<PendingOperation> pendingOperations;
 
     public FileHandle(SftpSubsystem subsystem, Path file, String handle, int flags, int access, Map<String, Object> attrs) throws IOException {
         super(file, handle);
@@ -66,14 +90,48 @@ public class FileHandle extends Handle {
                 : fileAttributes.toArray(new FileAttribute<?>[fileAttributes.size()]);
         SftpFileSystemAccessor accessor = subsystem.getFileSystemAccessor();
         ServerSession session = subsystem.getServerSession();
+        ExecutorService asyncExecutor = subsystem.getAsyncFileIoExecutor();
         SeekableByteChannel channel;
-        try {
-            channel = accessor.openFile(session, subsystem, file, handle, openOptions, fileAttrs);
-        } catch (UnsupportedOperationException e) {
-            channel = accessor.openFile(session, subsystem, file, handle, openOptions, IoUtils.EMPTY_FILE_ATTRIBUTES);
-            subsystem.doSetAttributes(file, attrs);
+        // in append mode the offsets are ignored, so the writes must be executed in order using the channel position
+        if ((asyncExecutor != null) && (!openOptions.contains(StandardOpenOption.APPEND)) && (!isOpenAppend())) {
+            AsynchronousFileChannel asyncFile;
+            try {
+                asyncFile = accessor.openAsynchronousFile(session, subsystem, file, handle, openOptions, asyncExecutor, fileAttrs);
+            } catch (UnsupportedOperationException e) {
+                asyncFile = accessor.openAsynchronousFile(session, subsystem, file, handle, openOptions, asyncExecutor, IoUtils.EMPTY_FILE_ATTRIBUTES);
+                subsystem.doSetAttributes(file, attrs);
+            }
+            this.asyncChannel = asyncFile;
+            this.maxPendingOperations = Math.max(1,
+                session.getIntProperty(SftpSubsystem.MAX_PENDING_ASYNC_FILE_IO_PROP, SftpSubsystem.DEFAULT_MAX_PENDING_ASYNC_FILE_IO));
+            this.pendingOperations = new ArrayList<>(maxPendingOperations);
+            channel = new SeekableAsynchronousFileChannel(asyncFile);
+        } else {
+            this.asyncChannel = null;
+            this.maxPendingOperations = 0;
+            this.pendingOperations = null;
+            try {
+                channel = accessor.openFile(session, subsystem, file, handle, openOptions, fileAttrs);
+            } catch (UnsupportedOperationException e) {
+                channel = accessor.openFile(session, subsystem, file, handle, openOptions, IoUtils.EMPTY_FILE_ATTRIBUTES);
+                subsystem.doSetAttributes(file, attrs);
+            }
         }
         this.fileChannel = channel;
+        this.mappedRegionSize = (channel instanceof FileChannel)
+                ? session.getIntProperty(SftpSubsystem.READ_MAPPED_REGION_SIZE_PROP, SftpSubsystem.DEFAULT_READ_MAPPED_REGION_SIZE)
+                : 0;
+        // prefetched data might become stale if the handle is also used for writing
+        this.readAheadManager = ((channel instanceof FileChannel) && (!openOptions.contains(StandardOpenOption.WRITE)))
+                ? subsystem.getReadAheadManager()
+                : null;
+        this.readAheadBlocks = (readAheadManager == null)
+                ? null
+                : new ArrayDeque<>(SftpReadAheadManager.MAX_HANDLE_BLOCKS);
+        // in append mode the offsets are ignored, so there is nothing to coalesce by
+        this.writeBehindSize = (openOptions.contains(StandardOpenOption.APPEND) || (asyncChannel != null))
+                ? 0
+                : session.getIntProperty(SftpSubsystem.WRITE_BEHIND_SIZE_PROP, SftpSubsystem.DEFAULT_WRITE_BEHIND_SIZE);
 
         try {
             signalHandleOpen(subsystem);
@@ -95,6 +153,30 @@ public class FileHandle extends Handle {
         return fileChannel;
     }
 
+    /**
+     * @return {@code true} if the file was opened for asynchronous I/O
+     * @see SftpSubsystemFactory#setAsyncFileIoExecutor(ExecutorService)
+     */
+    public boolean isAsynchronous() {
+        return asyncChannel != null;
+    }
+
+    /**
+     * @return The {@link AsynchronousFileChannel} - {@code null} if the file
+     * was not opened for asynchronous I/O
+     */
+    public final AsynchronousFileChannel getAsynchronousFileChannel() {
+        return asyncChannel;
+    }
+
+    /**
+     * @return The {@link Channel} returned by the {@link SftpFileSystemAccessor}
+     * when the file was opened
+     */
+    public Channel getOpenedChannel() {
+        return (asyncChannel == null) ? fileChannel : asyncChannel;
+    }
+
     public int getAccessMask() {
         return access;
     }
@@ -108,16 +190,164 @@ public class FileHandle extends Handle {
     }
 
     public int read(byte[] data, int doff, int length, long offset) throws IOException {
+        awaitPendingOperations();
+        if ((writeBehindLength > 0) && (offset < (writeBehindOffset + writeBehindLength)) && ((offset + length) > writeBehindOffset)) {
+            flush();
+        }
+
         SeekableByteChannel channel = getFileChannel();
+        sequentialReads = (offset == nextReadOffset) ? (sequentialReads + 1) : 0;
+
+        int readLen;
+        if ((mappedRegionSize > 0) && (sequentialReads > 0)) {
+            readLen = readMapped((FileChannel) channel, data, doff, length, offset);
+        } else if (readAheadManager != null) {
+            readLen = readAhead((FileChannel) channel, data, doff, length, offset);
+        } else {
+            readLen = readChannel(channel, data, doff, length, offset);
+        }
+
+        if (readLen > 0) {
+            nextReadOffset = offset + readLen;
+        }
+        return readLen;
+    }
+
+    protected int readChannel(SeekableByteChannel channel, byte[] data, int doff, int length, long offset) throws IOException {
         channel = channel.position(offset);
         return channel.read(ByteBuffer.wrap(data, doff, length));
     }
 
+    /**
+     * Serves a read from the prefetched blocks (if any) and - once the access
+     * pattern is sequential - schedules prefetching of the following blocks
+     *
+     * @param channel The {@link FileChannel} to read from
+     * @param data The data buffer
+     * @param doff Offset in buffer to place the data
+     * @param length Max. number of bytes to read
+     * @param offset The file offset
+     * @return Number of read bytes - {@code -1} if offset is at/beyond end of file
+     * @throws IOException If failed to read the data
+     * @see SftpSubsystemFactory#setReadAheadManager(SftpReadAheadManager)
+     */
+    protected int readAhead(FileChannel channel, byte[] data, int doff, int length, long offset) throws IOException {
+        // discard blocks that do not cover the requested offset - e.g., random access
+        for (SftpReadAheadManager.Block block = readAheadBlocks.peekFirst();
+                (block != null) && (!block.contains(offset));
+                block = readAheadBlocks.peekFirst()) {
+            readAheadManager.release(readAheadBlocks.removeFirst());
+        }
+
+        int readLen = 0;
+        try {
+            for (SftpReadAheadManager.Block block = readAheadBlocks.peekFirst();
+                    (block != null) && (readLen < length);
+                    block = readAheadBlocks.peekFirst()) {
+                long pos = offset + readLen;
+                long blockOffset = block.getOffset();
+                int available = (int) (blockOffset + block.getLength() - pos);
+                if ((!block.contains(pos)) || (available <= 0)) {
+                    break;
+                }
+
+                int len = Math.min(available, length - readLen);
+                System.arraycopy(block.getData(), (int) (pos - blockOffset), data, doff + readLen, len);
+                readLen += len;
+                if ((pos + len) < (blockOffset + block.getData().length)) {
+                    break;  // more data remains in the block
+                }
+                readAheadManager.release(readAheadBlocks.removeFirst());
+            }
+        } catch (IOException e) {
+            // read the data directly - if the failure persists it will be reported by the direct read
+            discardReadAhead();
+        }
+
+        readAheadManager.readRequested(readLen >= length);
+        if (readLen < length) {
+            int len = readChannel(channel, data, doff + readLen, length - readLen, offset + readLen);
+            if (len > 0) {
+                readLen += len;
+            } else if (readLen <= 0) {
+                return len;
+            }
+        }
+
+        if (sequentialReads >= readAheadManager.getSequentialThreshold()) {
+            SftpReadAheadManager.Block last = readAheadBlocks.peekLast();
+            long nextOffset = (last == null) ? (offset + readLen) : (last.getOffset() + last.getData().length);
+            while ((readAheadBlocks.size() < SftpReadAheadManager.MAX_HANDLE_BLOCKS)
+                    && ((last == null) || (!last.isEndOfFile()))) {
+                last = readAheadManager.prefetch(channel, nextOffset);
+                if (last == null) {
+                    break;
+                }
+                readAheadBlocks.addLast(last);
+                nextOffset += last.getData().length;
+            }
+        }
+
+        return readLen;
+    }
+
+    protected void discardReadAhead() {
+        if (readAheadBlocks == null) {
+            return;
+        }
+
+        while (!readAheadBlocks.isEmpty()) {
+            readAheadManager.release(readAheadBlocks.removeFirst());
+        }
+    }
+
+    /**
+     * Serves a sequential read from a memory-mapped region of the file - thus
+     * avoiding the intermediate (direct) buffer used by the file channel
+     *
+     * @param channel The {@link FileChannel} to map
+     * @param data The data buffer
+     * @param doff Offset in buffer to place the data
+     * @param length Max. number of bytes to read
+     * @param offset The file offset
+     * @return Number of read bytes - {@code -1} if offset is at/beyond end of file
+     * @throws IOException If failed to map the file region
+     * @see SftpSubsystem#READ_MAPPED_REGION_SIZE_PROP
+     */
+    protected int readMapped(FileChannel channel, byte[] data, int doff, int length, long offset) throws IOException {
+        int readLen = 0;
+        while (readLen < length) {
+            long pos = offset + readLen;
+            MappedByteBuffer region = mappedRegion;
+            if ((region == null) || (pos < mappedRegionOffset) || (pos >= (mappedRegionOffset + region.limit()))) {
+                long size = channel.size();
+                if (pos >= size) {
+                    mappedRegion = null;
+                    break;
+                }
+
+                region = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(mappedRegionSize, size - pos));
+                mappedRegion = region;
+                mappedRegionOffset = pos;
+            }
+
+            ByteBuffer src = region.duplicate();
+            src.position((int) (pos - mappedRegionOffset));
+            int len = Math.min(length - readLen, src.remaining());
+            src.get(data, doff + readLen, len);
+            readLen += len;
+        }
+
+        return (readLen > 0) ? readLen : -1;
+    }
+
     public void append(byte[] data) throws IOException {
         append(data, 0, data.length);
     }
 
     public void append(byte[] data, int doff, int length) throws IOException {
+        flush();
+
         SeekableByteChannel channel = getFileChannel();
         write(data, doff, length, channel.size());
     }
@@ -126,28 +356,245 @@ public class FileHandle extends Handle {
         write(data, 0, data.length, offset);
     }
 
+    /**
+     * Writes data to the file. <B>Note:</B> if write-behind is enabled then small
+     * writes may be coalesced and written only once the buffer is full, a non-contiguous
+     * write is made or the handle is {@link #flush() flushed}. In that case, a failure
+     * to write the data is reported by the call that triggered the actual write.
+     *
+     * @param data The data bytes
+     * @param doff Offset of data in bytes
+     * @param length Number of data bytes
+     * @param offset The file offset
+     * @throws IOException If failed to write the data
+     * @see SftpSubsystem#WRITE_BEHIND_SIZE_PROP
+     */
     public void write(byte[] data, int doff, int length, long offset) throws IOException {
+        awaitPendingOperations();
+        discardReadAhead();
+
+        if (length < writeBehindSize) {
+            if ((writeBehindLength > 0)
+                    && ((offset != (writeBehindOffset + writeBehindLength)) || ((writeBehindLength + length) > writeBehindSize))) {
+                flush();
+            }
+
+            if (writeBehindData == null) {
+                writeBehindData = new byte[writeBehindSize];
+            }
+            if (writeBehindLength <= 0) {
+                writeBehindOffset = offset;
+            }
+            System.arraycopy(data, doff, writeBehindData, writeBehindLength, length);
+            writeBehindLength += length;
+            return;
+        }
+
+        flush();
+        writeChannel(data, doff, length, offset);
+    }
+
+    /**
+     * Writes any data pending in the write-behind buffer - <B>Note:</B> the
+     * pending data is discarded even if failed to write it, so the failure is
+     * reported only once
+     *
+     * @throws IOException If failed to write the data
+     */
+    public void flush() throws IOException {
+        awaitPendingOperations();
+
+        int length = writeBehindLength;
+        if (length <= 0) {
+            return;
+        }
+
+        writeBehindLength = 0;
+        writeChannel(writeBehindData, 0, length, writeBehindOffset);
+    }
+
+    protected void writeChannel(byte[] data, int doff, int length, long offset) throws IOException {
         SeekableByteChannel channel = getFileChannel();
         channel = channel.position(offset);
         channel.write(ByteBuffer.wrap(data, doff, length));
     }
 
+    /**
+     * Initiates an asynchronous read - <B>Note:</B> the caller may block until
+     * previously initiated overlapping writes have completed or the number of
+     * pending operations is below the configured maximum
+     *
+     * @param data The data buffer - must not be modified until the read completes
+     * @param doff Offset in buffer to place the data
+     * @param length Max. number of bytes to read
+     * @param offset The file offset
+     * @return A {@link CompletableFuture} completed with the number of read bytes
+     * ({@code -1} if offset is at/beyond end of file) on one of the asynchronous
+     * I/O threads
+     * @throws IOException If failed to initiate the read
+     * @see SftpSubsystem#MAX_PENDING_ASYNC_FILE_IO_PROP
+     */
+    public CompletableFuture<Integer> readAsync(byte[] data, int doff, int length, long offset) throws IOException {
+        PendingOperation op = startOperation(offset, length, false);
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        try {
+            asyncChannel.read(ByteBuffer.wrap(data, doff, length), offset, op, new CompletionHandler<Integer, PendingOperation>() {
+                @Override
+                public void completed(Integer readLen, PendingOperation pending) {
+                    try {
+                        result.complete(readLen);
+                    } finally {
+                        endOperation(pending);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable exc, PendingOperation pending) {
+                    try {
+                        result.completeExceptionally(exc);
+                    } finally {
+                        endOperation(pending);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            endOperation(op);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Initiates an asynchronous write - <B>Note:</B> the caller may block until
+     * previously initiated overlapping operations have completed or the number of
+     * pending operations is below the configured maximum
+     *
+     * @param data The data bytes - must not be modified until the write completes
+     * @param doff Offset of data in bytes
+     * @param length Number of data bytes
+     * @param offset The file offset
+     * @return A {@link CompletableFuture} completed with the number of written bytes
+     * once <U>all</U> the data has been written on one of the asynchronous I/O threads
+     * @throws IOException If failed to initiate the write
+     * @see SftpSubsystem#MAX_PENDING_ASYNC_FILE_IO_PROP
+     */
+    public CompletableFuture<Integer> writeAsync(byte[] data, int doff, int length, long offset) throws IOException {
+        PendingOperation op = startOperation(offset, length, true);
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        ByteBuffer src = ByteBuffer.wrap(data, doff, length);
+        try {
+            asyncChannel.write(src, offset, op, new CompletionHandler<Integer, PendingOperation>() {
+                @Override
+                public void completed(Integer writeLen, PendingOperation pending) {
+                    if (src.hasRemaining()) {
+                        try {
+                            asyncChannel.write(src, offset + length - src.remaining(), pending, this);
+                            return;
+                        } catch (RuntimeException e) {
+                            failed(e, pending);
+                            return;
+                        }
+                    }
+
+                    try {
+                        result.complete(length);
+                    } finally {
+                        endOperation(pending);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable exc, PendingOperation pending) {
+                    try {
+                        result.completeExceptionally(exc);
+                    } finally {
+                        endOperation(pending);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            endOperation(op);
+            throw e;
+        }
+        return result;
+    }
+
+    protected PendingOperation startOperation(long offset, int length, boolean write) throws IOException {
+        PendingOperation op = new PendingOperation(offset, length, write);
+        synchronized (pendingOperations) {
+            while ((pendingOperations.size() >= maxPendingOperations) || hasConflictingOperation(op)) {
+                try {
+                    pendingOperations.wait();
+                } catch (InterruptedException e) {
+                    throw (IOException) new InterruptedIOException("Interrupted while waiting for pending operations of " + this).initCause(e);
+                }
+            }
+            pendingOperations.add(op);
+        }
+        return op;
+    }
+
+    protected boolean hasConflictingOperation(PendingOperation op) {
+        for (PendingOperation pending : pendingOperations) {
+            if ((op.isWrite() || pending.isWrite()) && pending.overlaps(op)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void endOperation(PendingOperation op) {
+        synchronized (pendingOperations) {
+            pendingOperations.remove(op);
+            pendingOperations.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for all the pending asynchronous operations (if any) to complete
+     *
+     * @throws IOException If interrupted while waiting
+     */
+    public void awaitPendingOperations() throws IOException {
+        if (pendingOperations == null) {
+            return;
+        }
+
+        synchronized (pendingOperations) {
+            while (!pendingOperations.isEmpty()) {
+                try {
+                    pendingOperations.wait();
+                } catch (InterruptedException e) {
+                    throw (IOException) new InterruptedIOException("Interrupted while waiting for pending operations of " + this).initCause(e);
+                }
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
-        super.close();
-
-        SeekableByteChannel channel = getFileChannel();
-        if (channel.isOpen()) {
-            channel.close();
+        try {
+            flush();
+        } finally {
+            super.close();
+            mappedRegion = null;
+            discardReadAhead();
+
+            Channel channel = getOpenedChannel();
+            if (channel.isOpen()) {
+                channel.close();
+            }
         }
     }
 
     public void lock(long offset, long length, int mask) throws IOException {
+        flush();
+
         SeekableByteChannel channel = getFileChannel();
         long size = (length == 0L) ? channel.size() - offset : length;
         SftpFileSystemAccessor accessor = subsystem.getFileSystemAccessor();
         ServerSession session = subsystem.getServerSession();
-        FileLock lock = accessor.tryLock(session, subsystem, getFile(), getFileHandle(), channel, offset, size, false);
+        FileLock lock = accessor.tryLock(session, subsystem, getFile(), getFileHandle(), getOpenedChannel(), offset, size, false);
         if (lock == null) {
             throw new SftpException(SftpConstants.SSH_FX_BYTE_RANGE_LOCK_REFUSED,
                 "Overlapping lock held by another program on range [" + offset + "-" + (offset + length));
@@ -159,6 +606,8 @@ public class FileHandle extends Handle {
     }
 
     public void unlock(long offset, long length) throws IOException {
+        flush();
+
         SeekableByteChannel channel = getFileChannel();
         long size = (length == 0L) ? channel.size() - offset : length;
         FileLock lock = null;
@@ -178,6 +627,42 @@ public class FileHandle extends Handle {
         lock.release();
     }
 
+    /**
+     * A file range accessed by an asynchronous operation that has not completed yet
+     */
+    protected static class PendingOperation {
+        private final long offset;
+        private final int length;
+        private final boolean write;
+
+        public PendingOperation(long offset, int length, boolean write) {
+            this.offset = offset;
+            this.length = length;
+            this.write = write;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public boolean isWrite() {
+            return write;
+        }
+
+        public boolean overlaps(PendingOperation other) {
+            return (offset < (other.getOffset() + other.getLength())) && (other.getOffset() < (offset + length));
+        }
+
+        @Override
+        public String toString() {
+            return (isWrite() ? "write" : "read") + "[" + getOffset() + "-" + (getOffset() + getLength()) + ")";
+        }
+    }
+
     public static Collection<FileAttribute<?>> toFileAttributes(Map<String, Object> attrs) {
         if (GenericUtils.isEmpty(attrs)) {
             return Collections.emptyList();
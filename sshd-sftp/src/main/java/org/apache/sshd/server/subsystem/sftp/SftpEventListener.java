@@ -151,6 +151,24 @@ public interface SftpEventListener extends SshdEventListener {
                           // ignored
     }
 
+    /**
+     * Aggregated result of the data read from / written to a file - <B>Note:</B>
+     * invoked only by an {@link AsyncSftpEventListener} in aggregation mode, instead
+     * of the per-packet read / write calls, just before the file is reported as
+     * {@link #closed(ServerSession, String, Handle, Throwable) closed}
+     *
+     * @param session      The {@link ServerSession} through which the requests were handled
+     * @param remoteHandle The (opaque) assigned handle for the file
+     * @param localHandle  The associated {@link FileHandle}
+     * @param bytesRead    Total number of bytes read from the file
+     * @param bytesWritten Total number of bytes written to the file
+     * @throws IOException If failed to handle the call
+     */
+    default void transferred(ServerSession session, String remoteHandle, FileHandle localHandle,
+            long bytesRead, long bytesWritten) throws IOException {
+        // ignored
+    }
+
     /**
      * Preparing to write to file
      *
@@ -0,0 +1,430 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.server.subsystem.sftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.digest.Digest;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+import org.apache.sshd.server.session.ServerSession;
+
+/**
+ * Computes the {@code check-file-handle}/{@code check-file-name} hashes. The
+ * per-block hashes are independent of each other, so consecutive blocks are
+ * grouped into chunks that are hashed in parallel on a {@link ForkJoinPool}.
+ * The results are cached - keyed by the file identity, size and modification
+ * time - so repeated checks of an unchanged file do not read it again. The
+ * file is always opened via the {@link SftpFileSystemAccessor} first, so that
+ * a cached result is returned only to sessions that are allowed to read it.
+ * The manager should be {@link #close() closed} once no longer used so that
+ * the pool it owns (if any) is shut down.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ * @see SftpSubsystemFactory#setFileHashManager(SftpFileHashManager)
+ */
+public class SftpFileHashManager extends AbstractLoggingBean implements Closeable {
+    public static final int DEFAULT_MAX_CACHED_ENTRIES = 1024;
+    /**
+     * Min. size (bytes) of the data hashed by a single chunk job
+     */
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private final ForkJoinPool pool;
+    private final boolean shutdownPool;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final int maxCachedEntries;
+    private final Map<CacheKey, List<byte[]>> cache;
+    private final AtomicLong hashRequests = new AtomicLong(0L);
+    private final AtomicLong cacheHits = new AtomicLong(0L);
+    private final AtomicLong hashedBytes = new AtomicLong(0L);
+    private volatile int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+
+    public SftpFileHashManager() {
+        this(DEFAULT_MAX_CACHED_ENTRIES);
+    }
+
+    public SftpFileHashManager(int maxCachedEntries) {
+        this(maxCachedEntries, new ForkJoinPool(), true);
+    }
+
+    /**
+     * @param maxCachedEntries Max. number of cached results - the least recently
+     * used ones are evicted. Non-positive means no caching
+     * @param pool The {@link ForkJoinPool} used to hash the chunks - <B>Note:</B>
+     * not shut down by the manager
+     */
+    public SftpFileHashManager(int maxCachedEntries, ForkJoinPool pool) {
+        this(maxCachedEntries, pool, false);
+    }
+
+    /**
+     * @param maxCachedEntries Max. number of cached results - the least recently
+     * used ones are evicted. Non-positive means no caching
+     * @param pool The {@link ForkJoinPool} used to hash the chunks
+     * @param shutdownPool Whether to shut down the pool when the manager is {@link #close() closed}
+     */
+    public SftpFileHashManager(int maxCachedEntries, ForkJoinPool pool, boolean shutdownPool) {
+        this.pool = Objects.requireNonNull(pool, "No pool");
+        this.shutdownPool = shutdownPool;
+        this.maxCachedEntries = maxCachedEntries;
+        this.cache = new LinkedHashMap<CacheKey, List<byte[]>>(Math.max(16, Math.min(maxCachedEntries, 1024)), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, List<byte[]>> eldest) {
+                return size() > SftpFileHashManager.this.maxCachedEntries;
+            }
+        };
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public boolean isShutdownPool() {
+        return shutdownPool;
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    public int getMaxCachedEntries() {
+        return maxCachedEntries;
+    }
+
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    /**
+     * @param minChunkSize Min. size (bytes) of the data hashed by a single chunk job
+     */
+    public void setMinChunkSize(int minChunkSize) {
+        ValidateUtils.checkTrue(minChunkSize > 0, "Invalid min. chunk size: %d", minChunkSize);
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * @return Total number of hash requests
+     */
+    public long getHashRequests() {
+        return hashRequests.get();
+    }
+
+    /**
+     * @return Number of hash requests served from the cache
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return Total number of bytes read in order to compute hashes
+     */
+    public long getHashedBytes() {
+        return hashedBytes.get();
+    }
+
+    public int getCachedEntries() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @param accessor The {@link SftpFileSystemAccessor} used to open the file
+     * @param session The {@link ServerSession} through which the request was received
+     * @param subsystem The SFTP subsystem instance that manages the session
+     * @param file The file {@link Path}
+     * @param factory The {@link Digest} factory
+     * @param startOffset The start offset of the hashed data
+     * @param length Length of the hashed data - zero means till end of file
+     * @param blockSize Size of each hashed block - zero means a single hash
+     * of the entire data
+     * @return The computed hashes - one per block
+     * @throws Exception If failed to compute the hashes
+     */
+    public List<byte[]> computeHashes(
+            SftpFileSystemAccessor accessor, ServerSession session, SftpEventListenerManager subsystem,
+            Path file, NamedFactory<? extends Digest> factory, long startOffset, long length, int blockSize)
+                throws Exception {
+        if (!isOpen()) {
+            throw new IOException("Hash manager closed");
+        }
+        hashRequests.incrementAndGet();
+
+        List<byte[]> hashes;
+        CacheKey key;
+        // open the file first so that the accessor gets to check the session's access to it
+        try (SeekableByteChannel channel = accessor.openFile(session, subsystem, file, "", Collections.emptySet())) {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            long totalLength = attrs.size();
+            long effectiveLength = length;
+            if (effectiveLength == 0L) {
+                effectiveLength = totalLength - startOffset;
+            } else {
+                long maxRead = startOffset + length;
+                if (maxRead > totalLength) {
+                    effectiveLength = totalLength - startOffset;
+                }
+            }
+            ValidateUtils.checkTrue(effectiveLength > 0L, "Non-positive effective hash data length: %d", effectiveLength);
+
+            key = (maxCachedEntries > 0)
+                ? new CacheKey(file, attrs, factory.getName(), startOffset, effectiveLength, blockSize)
+                : null;
+            hashes = getCachedHashes(key);
+            if (hashes != null) {
+                cacheHits.incrementAndGet();
+                if (log.isDebugEnabled()) {
+                    log.debug("computeHashes({})[{}] offset={}, length={}, block={} - cached",
+                              session, file, startOffset, effectiveLength, blockSize);
+                }
+                return hashes;
+            }
+
+            long blockLength = (blockSize == 0) ? effectiveLength : blockSize;
+            long numBlocks = (effectiveLength + blockLength - 1L) / blockLength;
+            long blocksPerChunk = Math.max(1L, minChunkSize / blockLength);
+            if ((numBlocks <= blocksPerChunk) || (!(channel instanceof FileChannel))) {
+                hashes = hashBlocks(channel, factory, startOffset, effectiveLength, blockLength);
+            } else {
+                hashes = hashChunks((FileChannel) channel, factory, startOffset, effectiveLength, blockLength, blocksPerChunk);
+            }
+        }
+
+        hashes = Collections.unmodifiableList(hashes);
+        if (key != null) {
+            // do not cache if the file was modified while being hashed
+            BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+            if (key.matches(after)) {
+                synchronized (cache) {
+                    cache.put(key, hashes);
+                }
+            }
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Stops accepting hash requests and shuts down the pool if {@link #isShutdownPool() owned}
+     * by the manager - hashes already being computed are completed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed.getAndSet(true)) {
+            return;
+        }
+
+        if (isShutdownPool() && (!pool.isShutdown())) {
+            pool.shutdown();
+        }
+        clearCache();
+    }
+
+    protected List<byte[]> getCachedHashes(CacheKey key) {
+        if (key == null) {
+            return null;
+        }
+
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    protected List<byte[]> hashChunks(
+            FileChannel channel, NamedFactory<? extends Digest> factory,
+            long startOffset, long length, long blockLength, long blocksPerChunk)
+                throws Exception {
+        long chunkLength = blockLength * blocksPerChunk;
+        List<Future<List<byte[]>>> chunks = new ArrayList<>((int) ((length + chunkLength - 1L) / chunkLength));
+        for (long offset = 0L; offset < length; offset += chunkLength) {
+            long chunkOffset = startOffset + offset;
+            long len = Math.min(chunkLength, length - offset);
+            chunks.add(pool.submit(() -> hashBlocks(channel, factory, chunkOffset, len, blockLength)));
+        }
+
+        List<byte[]> hashes = new ArrayList<>((int) ((length + blockLength - 1L) / blockLength));
+        try {
+            for (Future<List<byte[]>> chunk : chunks) {
+                hashes.addAll(chunk.get());
+            }
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException("Interrupted while hashing " + channel).initCause(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new IOException("Failed to hash " + channel, cause);
+        } finally {
+            chunks.forEach(chunk -> chunk.cancel(false));
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Hashes consecutive blocks of the file
+     *
+     * @param channel The channel to read from - if not a {@link FileChannel} then it
+     * must not be used concurrently
+     * @param factory The {@link Digest} factory
+     * @param offset The offset of the first block
+     * @param length The total length of the blocks
+     * @param blockLength The length of each block - the last one may be shorter
+     * @return The blocks hashes
+     * @throws Exception If failed to hash the blocks
+     */
+    protected List<byte[]> hashBlocks(
+            SeekableByteChannel channel, NamedFactory<? extends Digest> factory, long offset, long length, long blockLength)
+                throws Exception {
+        Digest digest = factory.create();
+        digest.init();
+
+        byte[] data = new byte[(int) Math.min(IoUtils.DEFAULT_COPY_SIZE, Math.min(length, blockLength))];
+        List<byte[]> hashes = new ArrayList<>((int) ((length + blockLength - 1L) / blockLength));
+        long pos = offset;
+        boolean eof = false;
+        for (long remaining = length; (remaining > 0L) && (!eof);) {
+            long blockRemaining = Math.min(remaining, blockLength);
+            while (blockRemaining > 0L) {
+                ByteBuffer bb = ByteBuffer.wrap(data, 0, (int) Math.min(data.length, blockRemaining));
+                int readLen = (channel instanceof FileChannel)
+                    ? ((FileChannel) channel).read(bb, pos)
+                    : channel.position(pos).read(bb);
+                if (readLen < 0) {
+                    // file truncated while being hashed - hash whatever was read
+                    eof = true;
+                    break;
+                }
+
+                digest.update(data, 0, readLen);
+                pos += readLen;
+                blockRemaining -= readLen;
+                remaining -= readLen;
+                hashedBytes.addAndGet(readLen);
+            }
+
+            hashes.add(digest.digest()); // NOTE: this also resets the hash for the next block
+        }
+
+        return hashes;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()
+            + "[requests=" + getHashRequests()
+            + ", cacheHits=" + getCacheHits()
+            + ", cached=" + getCachedEntries() + "/" + getMaxCachedEntries()
+            + ", hashedBytes=" + getHashedBytes()
+            + "]";
+    }
+
+    /**
+     * Identifies a hash result - the file is identified by its {@link BasicFileAttributes#fileKey() key}
+     * (if available) and is considered unchanged as long as its size and modification time are the same
+     */
+    protected static class CacheKey {
+        private final Object fileKey;
+        private final long size;
+        private final long modified;
+        private final String algorithm;
+        private final long offset;
+        private final long length;
+        private final int blockSize;
+
+        public CacheKey(Path file, BasicFileAttributes attrs, String algorithm, long offset, long length, int blockSize) {
+            Object key = attrs.fileKey();
+            this.fileKey = (key == null) ? file.toAbsolutePath().normalize() : key;
+            this.size = attrs.size();
+            this.modified = attrs.lastModifiedTime().toMillis();
+            this.algorithm = algorithm;
+            this.offset = offset;
+            this.length = length;
+            this.blockSize = blockSize;
+        }
+
+        public boolean matches(BasicFileAttributes attrs) {
+            return (attrs.size() == size) && (attrs.lastModifiedTime().toMillis() == modified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileKey, size, modified, algorithm, offset, length, blockSize);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if ((obj == null) || (obj.getClass() != getClass())) {
+                return false;
+            }
+
+            CacheKey other = (CacheKey) obj;
+            return Objects.equals(fileKey, other.fileKey)
+                && (size == other.size)
+                && (modified == other.modified)
+                && Objects.equals(algorithm, other.algorithm)
+                && (offset == other.offset)
+                && (length == other.length)
+                && (blockSize == other.blockSize);
+        }
+
+        @Override
+        public String toString() {
+            return fileKey + "[size=" + size + ", modified=" + modified + ", algo=" + algorithm
+                + ", offset=" + offset + ", length=" + length + ", block=" + blockSize + "]";
+        }
+    }
+}
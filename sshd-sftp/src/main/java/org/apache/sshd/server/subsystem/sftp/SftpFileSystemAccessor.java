@@ -21,6 +21,7 @@ package org.apache.sshd.server.subsystem.sftp;
 
 import java.io.IOException;
 import java.io.StreamCorruptedException;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.Channel;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
@@ -34,6 +35,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.io.FileInfoExtractor;
@@ -88,6 +90,27 @@ public interface SftpFileSystemAccessor {
         return FileChannel.open(file, options, attrs);
     }
 
+    /**
+     * Called whenever a new file is opened for asynchronous I/O
+     *
+     * @param session The {@link ServerSession} through which the request was received
+     * @param subsystem The SFTP subsystem instance that manages the session
+     * @param file The requested <U>local</U> file {@link Path}
+     * @param handle The assigned file handle through which the remote peer references this file
+     * @param options The requested {@link OpenOption}s
+     * @param executor The {@link ExecutorService} to which the I/O completion handling is dispatched
+     * @param attrs The requested {@link FileAttribute}s
+     * @return The opened {@link AsynchronousFileChannel}
+     * @throws IOException If failed to open
+     * @see SftpSubsystemFactory#setAsyncFileIoExecutor(ExecutorService)
+     */
+    default AsynchronousFileChannel openAsynchronousFile(
+            ServerSession session, SftpEventListenerManager subsystem,
+            Path file, String handle, Set<? extends OpenOption> options, ExecutorService executor, FileAttribute<?>... attrs)
+                    throws IOException {
+        return AsynchronousFileChannel.open(file, options, executor, attrs);
+    }
+
     /**
      * Called when locking a section of a file is requested
      *
@@ -96,6 +119,7 @@ public interface SftpFileSystemAccessor {
      * @param file The requested <U>local</U> file {@link Path}
      * @param handle The assigned file handle through which the remote peer references this file
      * @param channel The original {@link Channel} that was returned by {@link #openFile(ServerSession, SftpEventListenerManager, Path, String, Set, FileAttribute...)}
+     * or {@link #openAsynchronousFile(ServerSession, SftpEventListenerManager, Path, String, Set, ExecutorService, FileAttribute...)}
      * @param position The position at which the locked region is to start - must be non-negative
      * @param size The size of the locked region; must be non-negative, and the sum
      * <tt>position</tt>&nbsp;+&nbsp;<tt>size</tt> must be non-negative
@@ -108,6 +132,9 @@ public interface SftpFileSystemAccessor {
     default FileLock tryLock(ServerSession session, SftpEventListenerManager subsystem,
             Path file, String handle, Channel channel, long position, long size, boolean shared)
                     throws IOException {
+        if (channel instanceof AsynchronousFileChannel) {
+            return ((AsynchronousFileChannel) channel).tryLock(position, size, shared);
+        }
         if (!(channel instanceof FileChannel)) {
             throw new StreamCorruptedException("Non file channel to lock: " + channel);
         }
@@ -123,6 +150,7 @@ public interface SftpFileSystemAccessor {
      * @param file The requested <U>local</U> file {@link Path}
      * @param handle The assigned file handle through which the remote peer references this file
      * @param channel The original {@link Channel} that was returned by {@link #openFile(ServerSession, SftpEventListenerManager, Path, String, Set, FileAttribute...)}
+     * or {@link #openAsynchronousFile(ServerSession, SftpEventListenerManager, Path, String, Set, ExecutorService, FileAttribute...)}
      * @throws IOException If failed to execute the request
      * @see FileChannel#force(boolean)
      * @see <A HREF="https://github.com/openssh/openssh-portable/blob/master/PROTOCOL">OpenSSH -  section 10</A>
@@ -130,6 +158,10 @@ public interface SftpFileSystemAccessor {
     default void syncFileData(ServerSession session, SftpEventListenerManager subsystem,
             Path file, String handle, Channel channel)
                 throws IOException {
+        if (channel instanceof AsynchronousFileChannel) {
+            ((AsynchronousFileChannel) channel).force(true);
+            return;
+        }
         if (!(channel instanceof FileChannel)) {
             throw new StreamCorruptedException("Non file channel to sync: " + channel);
         }
@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.server.subsystem.sftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+
+/**
+ * Prefetches file data ahead of sequential {@code SSH_FXP_READ} requests. The
+ * blocks are read asynchronously into per-handle buffers whose total size - across
+ * all the sessions sharing the same manager - is bounded. Once the memory cap is
+ * reached, reads simply go to the file until some block is released. The manager
+ * should be {@link #close() closed} once no longer used so that the executor it
+ * owns (if any) is shut down.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ * @see SftpSubsystemFactory#setReadAheadManager(SftpReadAheadManager)
+ */
+public class SftpReadAheadManager extends AbstractLoggingBean implements Closeable {
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    public static final long DEFAULT_MAX_MEMORY = 64L * 1024L * 1024L;
+    /**
+     * Number of consecutive sequential reads after which a handle starts prefetching
+     */
+    public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 2;
+    /**
+     * Max. number of blocks held by a single handle - i.e., the one being consumed
+     * and the one being prefetched
+     */
+    public static final int MAX_HANDLE_BLOCKS = 2;
+
+    private final int blockSize;
+    private final long maxMemory;
+    private final ExecutorService executor;
+    private final boolean shutdownExecutor;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicLong usedMemory = new AtomicLong(0L);
+    private final AtomicLong readRequests = new AtomicLong(0L);
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong prefetchedBlocks = new AtomicLong(0L);
+    private final AtomicLong rejectedBlocks = new AtomicLong(0L);
+    private volatile int sequentialThreshold = DEFAULT_SEQUENTIAL_THRESHOLD;
+
+    public SftpReadAheadManager() {
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_MAX_MEMORY);
+    }
+
+    public SftpReadAheadManager(int blockSize, long maxMemory) {
+        this(blockSize, maxMemory, ThreadUtils.newCachedThreadPool("sftp-read-ahead"), true);
+    }
+
+    /**
+     * @param blockSize Size (bytes) of each prefetched block
+     * @param maxMemory Max. total size (bytes) of the blocks held by all the handles
+     * @param executor The {@link ExecutorService} used to read the blocks - <B>Note:</B>
+     * not shut down by the manager
+     */
+    public SftpReadAheadManager(int blockSize, long maxMemory, ExecutorService executor) {
+        this(blockSize, maxMemory, executor, false);
+    }
+
+    /**
+     * @param blockSize Size (bytes) of each prefetched block
+     * @param maxMemory Max. total size (bytes) of the blocks held by all the handles
+     * @param executor The {@link ExecutorService} used to read the blocks
+     * @param shutdownExecutor Whether to shut down the executor when the manager is {@link #close() closed}
+     */
+    public SftpReadAheadManager(int blockSize, long maxMemory, ExecutorService executor, boolean shutdownExecutor) {
+        ValidateUtils.checkTrue(blockSize > 0, "Invalid block size: %d", blockSize);
+        ValidateUtils.checkTrue(maxMemory >= blockSize, "Max. memory (%d) below block size", maxMemory);
+        this.blockSize = blockSize;
+        this.maxMemory = maxMemory;
+        this.executor = Objects.requireNonNull(executor, "No executor");
+        this.shutdownExecutor = shutdownExecutor;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executor;
+    }
+
+    public boolean isShutdownExecutor() {
+        return shutdownExecutor;
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @return Total size (bytes) of the blocks currently held by all the handles
+     */
+    public long getUsedMemory() {
+        return usedMemory.get();
+    }
+
+    public int getSequentialThreshold() {
+        return sequentialThreshold;
+    }
+
+    /**
+     * @param sequentialThreshold Number of consecutive sequential reads after
+     * which a handle starts prefetching
+     */
+    public void setSequentialThreshold(int sequentialThreshold) {
+        ValidateUtils.checkTrue(sequentialThreshold > 0, "Invalid sequential threshold: %d", sequentialThreshold);
+        this.sequentialThreshold = sequentialThreshold;
+    }
+
+    /**
+     * @return Total number of reads on handles eligible for read-ahead
+     */
+    public long getReadRequests() {
+        return readRequests.get();
+    }
+
+    /**
+     * @return Number of reads served from prefetched data
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Ratio (0.0-1.0) of the reads served from prefetched data
+     */
+    public double getHitRate() {
+        long requests = getReadRequests();
+        return (requests <= 0L) ? 0.0d : (double) getHits() / (double) requests;
+    }
+
+    /**
+     * @return Number of blocks that were prefetched
+     */
+    public long getPrefetchedBlocks() {
+        return prefetchedBlocks.get();
+    }
+
+    /**
+     * @return Number of blocks that were not prefetched due to the memory cap
+     */
+    public long getRejectedBlocks() {
+        return rejectedBlocks.get();
+    }
+
+    void readRequested(boolean hit) {
+        readRequests.incrementAndGet();
+        if (hit) {
+            hits.incrementAndGet();
+        }
+    }
+
+    /**
+     * Starts prefetching a block - provided the memory cap allows it
+     *
+     * @param channel The {@link FileChannel} to read from
+     * @param offset The block's file offset
+     * @return The {@link Block} being read - {@code null} if the memory cap has been reached.
+     * <B>Note:</B> the block must be {@link #release(Block) released} when no longer needed
+     */
+    public Block prefetch(FileChannel channel, long offset) {
+        if (!isOpen()) {
+            return null;
+        }
+
+        for (long used = usedMemory.get(); ; used = usedMemory.get()) {
+            if ((used + blockSize) > maxMemory) {
+                rejectedBlocks.incrementAndGet();
+                return null;
+            }
+            if (usedMemory.compareAndSet(used, used + blockSize)) {
+                break;
+            }
+        }
+
+        Block block = new Block(offset, new byte[blockSize]);
+        try {
+            executor.execute(() -> block.readFrom(channel));
+        } catch (RejectedExecutionException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("prefetch({})[offset={}] rejected: {}", channel, offset, e.getMessage());
+            }
+            release(block);
+            return null;
+        }
+
+        prefetchedBlocks.incrementAndGet();
+        return block;
+    }
+
+    public void release(Block block) {
+        if (block != null) {
+            usedMemory.addAndGet(0L - block.getData().length);
+        }
+    }
+
+    /**
+     * Stops prefetching blocks and shuts down the executor if {@link #isShutdownExecutor() owned}
+     * by the manager. <B>Note:</B> the executor is not interrupted since that would close
+     * the file channels being read - blocks already being prefetched are completed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed.getAndSet(true)) {
+            return;
+        }
+
+        if (isShutdownExecutor() && (!executor.isShutdown())) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()
+            + "[blockSize=" + getBlockSize()
+            + ", memory=" + getUsedMemory() + "/" + getMaxMemory()
+            + ", requests=" + getReadRequests()
+            + ", hits=" + getHits()
+            + ", prefetched=" + getPrefetchedBlocks()
+            + ", rejected=" + getRejectedBlocks()
+            + "]";
+    }
+
+    /**
+     * A prefetched region of a file
+     */
+    public static class Block {
+        private final long offset;
+        private final byte[] data;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        public Block(long offset, byte[] data) {
+            this.offset = offset;
+            this.data = Objects.requireNonNull(data, "No data buffer");
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * @param position A file offset
+         * @return {@code true} if the offset falls within the block's region
+         */
+        public boolean contains(long position) {
+            return (position >= offset) && (position < (offset + data.length));
+        }
+
+        /**
+         * Waits for the block to be read
+         *
+         * @return Number of data bytes read into the block - may be less than
+         * its size if the end of file has been reached
+         * @throws IOException If failed to read the block
+         */
+        public int getLength() throws IOException {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                throw (IOException) new InterruptedIOException("Interrupted while waiting for block @" + offset).initCause(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Failed to read block @" + offset, cause);
+            }
+        }
+
+        /**
+         * @return {@code true} if the block has been read and the end of file was reached
+         */
+        public boolean isEndOfFile() {
+            return result.isDone() && (!result.isCompletedExceptionally()) && (result.join() < data.length);
+        }
+
+        protected void readFrom(FileChannel channel) {
+            try {
+                int len = 0;
+                while (len < data.length) {
+                    int count = channel.read(ByteBuffer.wrap(data, len, data.length - len), offset + len);
+                    if (count < 0) {
+                        break;
+                    }
+                    len += count;
+                }
+                result.complete(len);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[offset=" + getOffset() + ", size=" + data.length + "]";
+        }
+    }
+}
@@ -21,9 +21,12 @@ package org.apache.sshd.server.subsystem.sftp;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.StreamCorruptedException;
 import java.net.UnknownServiceException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemLoopException;
@@ -36,22 +39,30 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
 
 import org.apache.sshd.common.Factory;
 import org.apache.sshd.common.FactoryManager;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.PropertyResolverUtils;
 import org.apache.sshd.common.channel.BufferedIoOutputStream;
+import org.apache.sshd.common.channel.ChannelAsyncOutputStream;
 import org.apache.sshd.common.channel.Window;
 import org.apache.sshd.common.digest.BuiltinDigests;
+import org.apache.sshd.common.digest.Digest;
 import org.apache.sshd.common.digest.DigestFactory;
 import org.apache.sshd.common.file.FileSystemAware;
 import org.apache.sshd.common.io.IoInputStream;
@@ -61,6 +72,7 @@ import org.apache.sshd.common.session.Session;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.SftpException;
 import org.apache.sshd.common.subsystem.sftp.SftpHelper;
+import org.apache.sshd.common.subsystem.sftp.extensions.openssh.LimitsExtensionInfo;
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.ValidateUtils;
 import org.apache.sshd.common.util.buffer.Buffer;
@@ -119,13 +131,118 @@ public class SftpSubsystem
 
     /**
      * Maximum amount of data allocated for listing the contents of a directory
-     * in any single invocation of {@link #doReadDir(Buffer, int)}
+     * in any single invocation of {@link #doReadDir(Buffer, int)}. If not set
+     * then the size is derived from the client's channel packet size
      *
      * @see #DEFAULT_MAX_READDIR_DATA_SIZE
+     * @see #READDIR_REPLY_PACKETS_PROP
      */
     public static final String MAX_READDIR_DATA_SIZE_PROP = "sftp-max-readdir-data-size";
     public static final int DEFAULT_MAX_READDIR_DATA_SIZE = 16 * 1024;
 
+    /**
+     * Number of client channel packets worth of data to place in a single
+     * {@code SSH_FXP_READDIR} reply if no explicit {@link #MAX_READDIR_DATA_SIZE_PROP}
+     * has been configured - the result is never less than {@link #DEFAULT_MAX_READDIR_DATA_SIZE}
+     * and never more than {@link #MAX_DERIVED_READDIR_DATA_SIZE}
+     */
+    public static final String READDIR_REPLY_PACKETS_PROP = "sftp-readdir-reply-packets";
+    public static final int DEFAULT_READDIR_REPLY_PACKETS = 4;
+
+    /**
+     * Upper limit for the derived {@code SSH_FXP_READDIR} reply size - some
+     * clients (e.g., OpenSSH) reject SFTP messages above 256KB
+     */
+    public static final int MAX_DERIVED_READDIR_DATA_SIZE = 192 * 1024;
+
+    /**
+     * Number of channel packets worth of data to allow in a single {@code SSH_FXP_READ}
+     * reply (client's packet size) or {@code SSH_FXP_WRITE} request (our packet size)
+     * if no explicit {@link #MAX_READDATA_PACKET_LENGTH_PROP} or {@link #MAX_WRITEDATA_PACKET_LENGTH_PROP}
+     * has been configured. The result is reported via the {@code limits@openssh.com}
+     * extension and is never less than the respective default and never more than
+     * {@link #MAX_DERIVED_READWRITE_DATA_LENGTH}
+     */
+    public static final String READWRITE_DATA_PACKETS_PROP = "sftp-readwrite-data-packets";
+    public static final int DEFAULT_READWRITE_DATA_PACKETS = 4;
+
+    /**
+     * Upper limit for the derived {@code SSH_FXP_READ}/{@code SSH_FXP_WRITE} data
+     * length - leaves room for the header below the 256KB message size accepted
+     * by OpenSSH
+     */
+    public static final int MAX_DERIVED_READWRITE_DATA_LENGTH = 192 * 1024;
+
+    /**
+     * Whether to resolve the attributes of the next batch of directory entries
+     * once an {@code SSH_FXP_READDIR} reply has been sent - i.e., while the reply
+     * is being transmitted. The attributes are resolved by the
+     * {@link #setAsyncFileIoExecutor(ExecutorService) asynchronous I/O executor},
+     * so this is relevant only if one is set.
+     *
+     * @see #DEFAULT_READDIR_PREFETCH
+     * @see #READDIR_PREFETCH_MAX_AGE_PROP
+     */
+    public static final String READDIR_PREFETCH_PROP = "sftp-readdir-prefetch";
+    public static final boolean DEFAULT_READDIR_PREFETCH = true;
+
+    /**
+     * Max. age (msec.) of pre-fetched directory entry attributes - if the next
+     * {@code SSH_FXP_READDIR} arrives later than that then the attributes are
+     * resolved again so that the reply does not carry stale values
+     *
+     * @see #DEFAULT_READDIR_PREFETCH_MAX_AGE
+     */
+    public static final String READDIR_PREFETCH_MAX_AGE_PROP = "sftp-readdir-prefetch-max-age";
+    public static final long DEFAULT_READDIR_PREFETCH_MAX_AGE = 1000L;
+
+    /**
+     * Whether to reserve room for the channel packet header in each reply so
+     * that replies which fit in a single channel packet are sent as-is instead
+     * of being copied into a new packet
+     *
+     * @see #DEFAULT_IN_PLACE_REPLIES
+     * @see ChannelAsyncOutputStream#setInPlaceWrites(boolean)
+     */
+    public static final String IN_PLACE_REPLIES_PROP = "sftp-in-place-replies";
+    public static final boolean DEFAULT_IN_PLACE_REPLIES = true;
+
+    /**
+     * Size (bytes) of the memory-mapped file regions used to serve sequential
+     * {@code SSH_FXP_READ} requests - non-positive means that the file data is
+     * read via the file channel. <B>Note:</B> disabled by default since accessing
+     * a mapped region of a file that is concurrently truncated by another program
+     * may crash the JVM on some platforms
+     *
+     * @see #DEFAULT_READ_MAPPED_REGION_SIZE
+     */
+    public static final String READ_MAPPED_REGION_SIZE_PROP = "sftp-read-mapped-region-size";
+    public static final int DEFAULT_READ_MAPPED_REGION_SIZE = 0;
+
+    /**
+     * Size (bytes) of the per-handle buffer used to coalesce small contiguous
+     * {@code SSH_FXP_WRITE} requests into larger writes - non-positive means
+     * that each request is written as soon as it is received. The buffered data
+     * is written once the buffer is full, on a non-contiguous write, an overlapping
+     * read, a sync, a stat/setstat of the file or when the handle is closed - the
+     * failure to write it being reported as the status of that request.
+     *
+     * @see #DEFAULT_WRITE_BEHIND_SIZE
+     */
+    public static final String WRITE_BEHIND_SIZE_PROP = "sftp-write-behind-size";
+    public static final int DEFAULT_WRITE_BEHIND_SIZE = 0;
+
+    /**
+     * Max. number of asynchronous {@code SSH_FXP_READ}/{@code SSH_FXP_WRITE} requests
+     * that may be pending on a single file handle - once reached, processing of further
+     * requests waits for some of the pending ones to complete. Relevant only if an
+     * {@link #setAsyncFileIoExecutor(ExecutorService) asynchronous I/O executor} is set.
+     *
+     * @see #DEFAULT_MAX_PENDING_ASYNC_FILE_IO
+     */
+    public static final String MAX_PENDING_ASYNC_FILE_IO_PROP = "sftp-max-pending-async-file-io";
+    public static final int DEFAULT_MAX_PENDING_ASYNC_FILE_IO = 16;
+
     protected static final Buffer CLOSE = new ByteArrayBuffer(null, 0, 0);
 
     protected final AtomicBoolean closed = new AtomicBoolean(false);
@@ -147,11 +264,21 @@ public class SftpSubsystem
     protected FileSystem fileSystem = FileSystems.getDefault();
     protected Path defaultDir = fileSystem.getPath(System.getProperty("user.dir"));
     protected int version;
+    protected int replyHeaderLength;
 
     protected ServerSession serverSession;
     protected ChannelSession channelSession;
     protected ExecutorService executorService;
     protected boolean shutdownOnExit;
+    protected SftpReadAheadManager readAheadManager;
+    protected ExecutorService asyncFileIoExecutor;
+    protected SftpFileHashManager fileHashManager;
+    protected SftpTrafficShaper trafficShaper;
+    protected SftpTrafficShaper.Tenant shapingTenant;
+    // key=request id, value=when its reply may be sent and the window it holds until then
+    protected final Map<Integer, ReplyDeadline> replyDeadlines = new ConcurrentHashMap<>();
+    // channel window of the currently processed request - zeroed if held by its delayed reply
+    protected int processedRequestLength;
 
     /**
      * @param executorService The {@link ExecutorService} to be used by
@@ -200,6 +327,60 @@ public class SftpSubsystem
         return shutdownOnExit;
     }
 
+    public SftpReadAheadManager getReadAheadManager() {
+        return readAheadManager;
+    }
+
+    /**
+     * @param manager The {@link SftpReadAheadManager} used to prefetch data for
+     * sequentially read files - {@code null} disables read-ahead
+     */
+    public void setReadAheadManager(SftpReadAheadManager manager) {
+        this.readAheadManager = manager;
+    }
+
+    public SftpFileHashManager getFileHashManager() {
+        return fileHashManager;
+    }
+
+    /**
+     * @param manager The {@link SftpFileHashManager} used to compute (and cache)
+     * the {@code check-file-handle}/{@code check-file-name} hashes - {@code null}
+     * means that the hashes are computed sequentially on every request
+     */
+    public void setFileHashManager(SftpFileHashManager manager) {
+        this.fileHashManager = manager;
+    }
+
+    public SftpTrafficShaper getTrafficShaper() {
+        return trafficShaper;
+    }
+
+    /**
+     * @param shaper The {@link SftpTrafficShaper} used to delay the replies of the
+     * session's tenant once it exceeds its limits - if {@code null} then no shaping
+     */
+    public void setTrafficShaper(SftpTrafficShaper shaper) {
+        this.trafficShaper = shaper;
+    }
+
+    public ExecutorService getAsyncFileIoExecutor() {
+        return asyncFileIoExecutor;
+    }
+
+    /**
+     * @param executor The {@link ExecutorService} used to execute the I/O of files opened
+     * for asynchronous access - {@code null} means files are accessed synchronously. When
+     * set, the {@code SSH_FXP_READ}/{@code SSH_FXP_WRITE} replies are sent (and the
+     * {@link SftpEventListener#read read}/{@link SftpEventListener#written written}
+     * events are fired) from the I/O completion threads. <B>Note:</B> the executor
+     * is not shut down by the subsystem
+     * @see #MAX_PENDING_ASYNC_FILE_IO_PROP
+     */
+    public void setAsyncFileIoExecutor(ExecutorService executor) {
+        this.asyncFileIoExecutor = executor;
+    }
+
     @Override
     public void setSession(ServerSession session) {
         this.serverSession = Objects.requireNonNull(session, "No session");
@@ -272,6 +453,14 @@ public class SftpSubsystem
     @Override
     public void setIoOutputStream(IoOutputStream out) {
         this.out = new BufferedIoOutputStream("sftp out buffer", out);
+
+        ServerSession session = getServerSession();
+        if ((out instanceof ChannelAsyncOutputStream)
+                && ((session == null) || session.getBooleanProperty(IN_PLACE_REPLIES_PROP, DEFAULT_IN_PLACE_REPLIES))) {
+            // we never re-use a reply buffer once it has been sent
+            ((ChannelAsyncOutputStream) out).setInPlaceWrites(true);
+            this.replyHeaderLength = ChannelAsyncOutputStream.IN_PLACE_HEADER_LENGTH;
+        }
     }
 
     @Override
@@ -320,10 +509,11 @@ public class SftpSubsystem
                 if (buffer == CLOSE) {
                     break;
                 }
-                int len = buffer.available();
+                processedRequestLength = buffer.available();
                 process(buffer);
-                Window localWindow = channelSession.getLocalWindow();
-                localWindow.consumeAndCheck(len);
+                if (processedRequestLength > 0) {
+                    consumeWindow(processedRequestLength);
+                }
             }
         } catch (Throwable t) {
             if (!closed.get()) { // Ignore
@@ -335,11 +525,32 @@ public class SftpSubsystem
                 }
             }
         } finally {
+            releaseShapingTenant();
             closeAllHandles();
             callback.onExit(0);
         }
     }
 
+    protected void consumeWindow(int len) throws IOException {
+        Window localWindow = channelSession.getLocalWindow();
+        localWindow.consumeAndCheck(len);
+    }
+
+    protected void releaseShapingTenant() {
+        SftpTrafficShaper.Tenant tenant = shapingTenant;
+        if (tenant == null) {
+            return;
+        }
+
+        shapingTenant = null;
+        try {
+            getTrafficShaper().unregisterSession(tenant);
+        } catch (RuntimeException e) {
+            log.warn("releaseShapingTenant({}) failed ({}) to unregister from {}: {}",
+                     getServerSession(), e.getClass().getSimpleName(), tenant, e.getMessage());
+        }
+    }
+
     @Override
     public void close() throws IOException {
         requests.clear();
@@ -348,12 +559,61 @@ public class SftpSubsystem
 
     @Override
     protected void doProcess(Buffer buffer, int length, int type, int id) throws IOException {
+        SftpTrafficShaper shaper = getTrafficShaper();
+        if ((shaper != null) && (type != SftpConstants.SSH_FXP_INIT)) {
+            chargeRequest(shaper, buffer, type, id);
+        }
+
         super.doProcess(buffer, length, type, id);
         if (type != SftpConstants.SSH_FXP_INIT) {
             requestsCount.incrementAndGet();
         }
     }
 
+    /**
+     * Charges the request to the session's tenant and records the time before
+     * which its reply must not be sent - the request's channel window is consumed
+     * only once its reply has been sent
+     *
+     * @param shaper The {@link SftpTrafficShaper}
+     * @param buffer The request {@link Buffer} - positioned after the request ID
+     * @param type The SFTP command
+     * @param id The request ID
+     */
+    protected void chargeRequest(SftpTrafficShaper shaper, Buffer buffer, int type, int id) {
+        ServerSession session = getServerSession();
+        if (shapingTenant == null) {
+            shapingTenant = shaper.registerSession(session);
+        }
+
+        long dataLength = 0L;
+        if ((type == SftpConstants.SSH_FXP_READ) || (type == SftpConstants.SSH_FXP_WRITE)) {
+            int rpos = buffer.rpos();
+            try {
+                buffer.getBytes();  // handle
+                buffer.getLong();   // offset
+                dataLength = buffer.getInt();
+                if (type == SftpConstants.SSH_FXP_READ) {
+                    dataLength = Math.min(dataLength, resolveMaxReadDataLength(session));
+                }
+            } catch (RuntimeException e) {
+                dataLength = 0L;   // let the actual command processing report the malformed request
+            } finally {
+                buffer.rpos(rpos);
+            }
+        }
+
+        long delay = shaper.chargeRequest(shapingTenant, type, dataLength);
+        if (delay > 0L) {
+            replyDeadlines.put(id, new ReplyDeadline(System.nanoTime() + delay, processedRequestLength));
+            processedRequestLength = 0;
+            if (log.isTraceEnabled()) {
+                log.trace("chargeRequest({})[id={}] {} delay reply by {} nanos - tenant={}",
+                          session, id, SftpConstants.getCommandMessageName(type), delay, shapingTenant);
+            }
+        }
+    }
+
     @Override
     protected void createLink(int id, String existingPath, String linkPath, boolean symLink) throws IOException {
         Path link = resolveFile(linkPath);
@@ -400,8 +660,10 @@ public class SftpSubsystem
         }
 
         FileHandle fileHandle = validateHandle(handle, h, FileHandle.class);
+        fileHandle.flush();
+
         SftpFileSystemAccessor accessor = getFileSystemAccessor();
-        accessor.syncFileData(session, this, fileHandle.getFile(), fileHandle.getFileHandle(), fileHandle.getFileChannel());
+        accessor.syncFileData(session, this, fileHandle.getFile(), fileHandle.getFileHandle(), fileHandle.getOpenedChannel());
     }
 
     @Override
@@ -447,6 +709,7 @@ public class SftpSubsystem
             }
         }
 
+        flushFileHandles(path);
         ValidateUtils.checkNotNullAndNotEmpty(algos, "No hash algorithms specified");
 
         DigestFactory factory = null;
@@ -461,6 +724,32 @@ public class SftpSubsystem
         doCheckFileHash(id, path, factory, startOffset, length, blockSize, buffer);
     }
 
+    @Override
+    protected void doCheckFileHash(int id, Path file, NamedFactory<? extends Digest> factory,
+            long startOffset, long length, int blockSize, Buffer buffer)
+                    throws Exception {
+        SftpFileHashManager manager = getFileHashManager();
+        if (manager == null) {
+            super.doCheckFileHash(id, file, factory, startOffset, length, blockSize, buffer);
+            return;
+        }
+
+        ValidateUtils.checkTrue(startOffset >= 0L, "Invalid start offset: %d", startOffset);
+        ValidateUtils.checkTrue(length >= 0L, "Invalid length: %d", length);
+        ValidateUtils.checkTrue((blockSize == 0) || (blockSize >= SftpConstants.MIN_CHKFILE_BLOCKSIZE), "Invalid block size: %d", blockSize);
+        Objects.requireNonNull(factory, "No digest factory provided");
+
+        List<byte[]> hashes = manager.computeHashes(
+            getFileSystemAccessor(), getServerSession(), this, file, factory, startOffset, length, blockSize);
+        if (log.isTraceEnabled()) {
+            log.trace("doCheckFileHash({})[{}] offset={}, length={}, block={} - algo={}, hashes={}",
+                      getServerSession(), file, startOffset, length, blockSize, factory.getName(), hashes.size());
+        }
+
+        buffer.putString(factory.getName());
+        hashes.forEach(buffer::putBytes);
+    }
+
     @Override
     protected byte[] doMD5Hash(
             int id, String targetType, String target, long startOffset, long length, byte[] quickCheckHash)
@@ -500,6 +789,8 @@ public class SftpSubsystem
          *
          *      If both start-offset and length are zero, the entire file should be included
          */
+        flushFileHandles(path);
+
         long effectiveLength = length;
         long totalSize = Files.size(path);
         if ((startOffset == 0L) && (length == 0L)) {
@@ -648,6 +939,10 @@ public class SftpSubsystem
             }
         }
 
+        if ((!inPlaceCopy) && transferData(srcHandle, readOffset, effectiveLength, dstHandle, writeOffset)) {
+            return;
+        }
+
         byte[] copyBuf = new byte[Math.min(IoUtils.DEFAULT_COPY_SIZE, (int) effectiveLength)];
         while (effectiveLength > 0L) {
             int remainLength = Math.min(copyBuf.length, (int) effectiveLength);
@@ -663,6 +958,43 @@ public class SftpSubsystem
         }
     }
 
+    /**
+     * Copies data between two different file handles using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * - thus allowing the O/S to avoid copying the data to/from user space
+     *
+     * @param srcHandle The source {@link FileHandle}
+     * @param readOffset The source offset
+     * @param length Number of bytes to copy
+     * @param dstHandle The destination {@link FileHandle}
+     * @param writeOffset The destination offset
+     * @return {@code false} if the handles are not backed by {@link FileChannel}s
+     * and the data must be copied via the handles
+     * @throws IOException If failed to copy the data
+     */
+    protected boolean transferData(FileHandle srcHandle, long readOffset, long length, FileHandle dstHandle, long writeOffset) throws IOException {
+        SeekableByteChannel srcChannel = srcHandle.getFileChannel();
+        SeekableByteChannel dstChannel = dstHandle.getFileChannel();
+        if ((!(srcChannel instanceof FileChannel)) || (!(dstChannel instanceof FileChannel))) {
+            return false;
+        }
+
+        srcHandle.flush();
+        dstHandle.flush();
+
+        FileChannel src = (FileChannel) srcChannel;
+        FileChannel dst = ((FileChannel) dstChannel).position(writeOffset);
+        for (long remaining = length; remaining > 0L;) {
+            long count = src.transferTo(readOffset, remaining, dst);
+            if (count <= 0L) {
+                throw new EOFException("Premature EOF while still remaining " + remaining + " bytes");
+            }
+            remaining -= count;
+            readOffset += count;
+        }
+
+        return true;
+    }
+
     @Override
     protected void doReadDir(Buffer buffer, int id) throws IOException {
         String handle = buffer.getString();
@@ -675,8 +1007,10 @@ public class SftpSubsystem
         }
 
         Buffer reply = null;
+        DirectoryHandle dh;
+        int count;
         try {
-            DirectoryHandle dh = validateHandle(handle, h, DirectoryHandle.class);
+            dh = validateHandle(handle, h, DirectoryHandle.class);
             if (dh.isDone()) {
                 sendStatus(prepareReply(buffer), id, SftpConstants.SSH_FX_EOF, "Directory reading is done");
                 return;
@@ -710,8 +1044,8 @@ public class SftpSubsystem
                 int lenPos = reply.wpos();
                 reply.putInt(0);
 
-                int maxDataSize = session.getIntProperty(MAX_READDIR_DATA_SIZE_PROP, DEFAULT_MAX_READDIR_DATA_SIZE);
-                int count = doReadDir(id, handle, dh, reply, maxDataSize, IoUtils.getLinkOptions(false));
+                int maxDataSize = resolveReadDirDataSize(session);
+                count = doReadDir(id, handle, dh, reply, maxDataSize, IoUtils.getLinkOptions(false));
                 BufferUtils.updateLengthPlaceholder(reply, lenPos, count);
                 if ((!dh.isSendDot()) && (!dh.isSendDotDot()) && (!dh.hasNext())) {
                     dh.markDone();
@@ -736,6 +1070,81 @@ public class SftpSubsystem
         }
 
         send(reply);
+
+        // the reply is written asynchronously - use the time to prepare the next one
+        ExecutorService executor = getAsyncFileIoExecutor();
+        if ((executor != null) && (!dh.isDone())
+                && session.getBooleanProperty(READDIR_PREFETCH_PROP, DEFAULT_READDIR_PREFETCH)) {
+            long maxAge = session.getLongProperty(READDIR_PREFETCH_MAX_AGE_PROP, DEFAULT_READDIR_PREFETCH_MAX_AGE);
+            int prefetched = prefetchDirEntries(
+                dh, count, TimeUnit.MILLISECONDS.toNanos(maxAge), executor, IoUtils.getLinkOptions(false));
+            if (log.isTraceEnabled()) {
+                log.trace("doReadDir({})({})[{}] pre-fetched {} entries", session, handle, h, prefetched);
+            }
+        }
+    }
+
+    /**
+     * @param session The {@link ServerSession}
+     * @return The max. amount of data to place in an {@code SSH_FXP_READDIR}
+     * reply - if no explicit {@link #MAX_READDIR_DATA_SIZE_PROP} value is configured,
+     * then it is derived from the client's channel packet size
+     * @see #READDIR_REPLY_PACKETS_PROP
+     */
+    protected int resolveReadDirDataSize(ServerSession session) {
+        Integer maxDataSize = PropertyResolverUtils.getInteger(session, MAX_READDIR_DATA_SIZE_PROP);
+        if (maxDataSize != null) {
+            return maxDataSize;
+        }
+
+        Window remoteWindow = channelSession.getRemoteWindow();
+        long packetSize = remoteWindow.getPacketSize();
+        int numPackets = session.getIntProperty(READDIR_REPLY_PACKETS_PROP, DEFAULT_READDIR_REPLY_PACKETS);
+        long dataSize = packetSize * numPackets;
+        return (int) Math.max(DEFAULT_MAX_READDIR_DATA_SIZE, Math.min(MAX_DERIVED_READDIR_DATA_SIZE, dataSize));
+    }
+
+    @Override
+    protected int resolveMaxReadDataLength(ServerSession session) {
+        Integer maxLength = PropertyResolverUtils.getInteger(session, MAX_READDATA_PACKET_LENGTH_PROP);
+        if (maxLength != null) {
+            return maxLength;
+        }
+
+        return resolveDerivedDataLength(session, channelSession.getRemoteWindow(), DEFAULT_MAX_READDATA_PACKET_LENGTH);
+    }
+
+    @Override
+    protected int resolveMaxWriteDataLength(ServerSession session) {
+        Integer maxLength = PropertyResolverUtils.getInteger(session, MAX_WRITEDATA_PACKET_LENGTH_PROP);
+        if (maxLength != null) {
+            return maxLength;
+        }
+
+        return resolveDerivedDataLength(session, channelSession.getLocalWindow(), DEFAULT_MAX_WRITEDATA_PACKET_LENGTH);
+    }
+
+    /**
+     * @param session The {@link ServerSession}
+     * @param window The channel {@link Window} through which the data flows
+     * @param minLength The min. value to return
+     * @return The data length derived from the window's packet size
+     * @see #READWRITE_DATA_PACKETS_PROP
+     */
+    protected int resolveDerivedDataLength(ServerSession session, Window window, int minLength) {
+        long packetSize = window.getPacketSize();
+        int numPackets = session.getIntProperty(READWRITE_DATA_PACKETS_PROP, DEFAULT_READWRITE_DATA_PACKETS);
+        long dataLength = packetSize * numPackets;
+        return (int) Math.max(minLength, Math.min(MAX_DERIVED_READWRITE_DATA_LENGTH, dataLength));
+    }
+
+    @Override
+    protected LimitsExtensionInfo resolveOpenSSHLimits(ServerSession session) {
+        LimitsExtensionInfo info = super.resolveOpenSSHLimits(session);
+        int maxHandles = session.getIntProperty(MAX_OPEN_HANDLES_PER_SESSION, DEFAULT_MAX_OPEN_HANDLES);
+        // zero means unknown/unlimited
+        info.maxOpenHandles = (maxHandles == DEFAULT_MAX_OPEN_HANDLES) ? 0L : maxHandles;
+        return info;
     }
 
     @Override
@@ -779,9 +1188,31 @@ public class SftpSubsystem
         }
 
         Handle fileHandle = validateHandle(handle, h, Handle.class);
+        flushFileHandles(fileHandle.getFile());
         doSetAttributes(fileHandle.getFile(), attrs);
     }
 
+    @Override
+    protected void doSetStat(int id, String path, Map<String, ?> attrs) throws IOException {
+        flushFileHandles(resolveFile(path));
+        super.doSetStat(id, path, attrs);
+    }
+
+    /**
+     * Writes any data pending in the write-behind buffers of the handles open on the file
+     *
+     * @param file The file {@link Path}
+     * @throws IOException If failed to write the data
+     * @see #WRITE_BEHIND_SIZE_PROP
+     */
+    protected void flushFileHandles(Path file) throws IOException {
+        for (Handle h : handles.values()) {
+            if ((h instanceof FileHandle) && file.equals(h.getFile())) {
+                ((FileHandle) h).flush();
+            }
+        }
+    }
+
     @Override
     protected Map<String, Object> doFStat(int id, String handle, int flags) throws IOException {
         Handle h = handles.get(handle);
@@ -791,9 +1222,70 @@ public class SftpSubsystem
         }
 
         Handle fileHandle = validateHandle(handle, h, Handle.class);
+        if (fileHandle instanceof FileHandle) {
+            ((FileHandle) fileHandle).flush();
+        }
         return resolveFileAttributes(fileHandle.getFile(), flags, IoUtils.getLinkOptions(true));
     }
 
+    @Override
+    protected void doWrite(Buffer buffer, int id) throws IOException {
+        int rpos = buffer.rpos();
+        String handle = buffer.getString();
+        Handle h = handles.get(handle);
+        if ((!(h instanceof FileHandle)) || (!((FileHandle) h).isAsynchronous()) || ((FileHandle) h).isOpenAppend()) {
+            buffer.rpos(rpos);
+            super.doWrite(buffer, id);
+            return;
+        }
+
+        long offset = buffer.getLong();
+        int length = buffer.getInt();
+        FileHandle fh = (FileHandle) h;
+        ServerSession session = getServerSession();
+        if (log.isTraceEnabled()) {
+            log.trace("doWrite({})[id={}] SSH_FXP_WRITE (handle={}[{}], offset={}, data=byte[{}]) - asynchronous",
+                      session, id, handle, h, offset, length);
+        }
+
+        SftpEventListener listener = getSftpEventListenerProxy();
+        byte[] data = buffer.array();
+        int doff = buffer.rpos();
+        CompletableFuture<Integer> result;
+        try {
+            if (length < 0) {
+                throw new IllegalStateException("Bad length (" + length + ") for writing to " + fh);
+            }
+            if (buffer.available() < length) {
+                throw new IllegalStateException("Not enough buffer data for writing to " + fh + ": required=" + length + ", available=" + buffer.available());
+            }
+
+            listener.writing(session, handle, fh, offset, data, doff, length);
+            try {
+                result = fh.writeAsync(data, doff, length, offset);
+            } catch (IOException | RuntimeException e) {
+                listener.written(session, handle, fh, offset, data, doff, length, e);
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            sendStatus(prepareReply(buffer), id, e, SftpConstants.SSH_FXP_WRITE, handle, offset, length);
+            return;
+        }
+
+        result.whenComplete((len, t) -> {
+            try {
+                listener.written(session, handle, fh, offset, data, doff, length, t);
+                if (t == null) {
+                    sendStatus(prepareReply(buffer), id, SftpConstants.SSH_FX_OK, "");
+                } else {
+                    sendStatus(prepareReply(buffer), id, t, SftpConstants.SSH_FXP_WRITE, handle, offset, length);
+                }
+            } catch (IOException | RuntimeException e) {
+                handleAsyncFileIoReplyFailure(id, SftpConstants.SSH_FXP_WRITE, handle, e);
+            }
+        });
+    }
+
     @Override
     protected void doWrite(int id, String handle, long offset, int length, byte[] data, int doff, int remaining) throws IOException {
         Handle h = handles.get(handle);
@@ -827,6 +1319,90 @@ public class SftpSubsystem
         listener.written(session, handle, fh, offset, data, doff, length, null);
     }
 
+    @Override
+    protected void doRead(Buffer buffer, int id) throws IOException {
+        int rpos = buffer.rpos();
+        String handle = buffer.getString();
+        Handle h = handles.get(handle);
+        if ((!(h instanceof FileHandle)) || (!((FileHandle) h).isAsynchronous())) {
+            buffer.rpos(rpos);
+            super.doRead(buffer, id);
+            return;
+        }
+
+        long offset = buffer.getLong();
+        int requestedLength = buffer.getInt();
+        ServerSession session = getServerSession();
+        int maxAllowed = resolveMaxReadDataLength(session);
+        int readLen = Math.min(requestedLength, maxAllowed);
+        FileHandle fh = (FileHandle) h;
+        if (log.isTraceEnabled()) {
+            log.trace("doRead({})[id={}] SSH_FXP_READ (handle={}[{}], offset={}, length={}) - asynchronous",
+                    session, id, handle, h, offset, readLen);
+        }
+
+        SftpEventListener listener = getSftpEventListenerProxy();
+        Buffer reply = prepareReply(buffer);
+        int startPos;
+        CompletableFuture<Integer> result;
+        try {
+            ValidateUtils.checkTrue(readLen > 0, "Invalid read length: %d", readLen);
+
+            reply.ensureCapacity(readLen + Long.SIZE /* the header */, IntUnaryOperator.identity());
+            reply.putByte((byte) SftpConstants.SSH_FXP_DATA);
+            reply.putInt(id);
+            reply.putInt(0);
+            startPos = reply.wpos();
+
+            listener.reading(session, handle, fh, offset, reply.array(), startPos, readLen);
+            try {
+                result = fh.readAsync(reply.array(), startPos, readLen, offset);
+            } catch (IOException | RuntimeException e) {
+                listener.read(session, handle, fh, offset, reply.array(), startPos, readLen, -1, e);
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            sendStatus(prepareReply(buffer), id, e, SftpConstants.SSH_FXP_READ, handle, offset, requestedLength);
+            return;
+        }
+
+        result.whenComplete((len, t) -> {
+            try {
+                listener.read(session, handle, fh, offset, reply.array(), startPos, readLen, (t == null) ? len : -1, t);
+                if (t != null) {
+                    sendStatus(prepareReply(reply), id, t, SftpConstants.SSH_FXP_READ, handle, offset, requestedLength);
+                } else if (len < 0) {
+                    sendStatus(prepareReply(reply), id,
+                        new EOFException("Unable to read " + readLen + " bytes from offset=" + offset + " of " + handle),
+                        SftpConstants.SSH_FXP_READ, handle, offset, requestedLength);
+                } else {
+                    reply.wpos(startPos + len);
+                    BufferUtils.updateLengthPlaceholder(reply, startPos - Integer.BYTES, len);
+                    send(reply);
+                }
+            } catch (IOException | RuntimeException e) {
+                handleAsyncFileIoReplyFailure(id, SftpConstants.SSH_FXP_READ, handle, e);
+            }
+        });
+    }
+
+    protected void handleAsyncFileIoReplyFailure(int id, int cmd, String handle, Throwable e) {
+        ServerSession session = getServerSession();
+        if (closed.get()) {
+            if (log.isDebugEnabled()) {
+                log.debug("handleAsyncFileIoReplyFailure({})[id={}] {} (handle={}) failed ({}) to reply after close: {}",
+                          session, id, SftpConstants.getCommandMessageName(cmd), handle, e.getClass().getSimpleName(), e.getMessage());
+            }
+            return;
+        }
+
+        log.warn("handleAsyncFileIoReplyFailure({})[id={}] {} (handle={}) failed ({}) to reply: {}",
+                 session, id, SftpConstants.getCommandMessageName(cmd), handle, e.getClass().getSimpleName(), e.getMessage());
+        if (log.isDebugEnabled()) {
+            log.debug("handleAsyncFileIoReplyFailure(" + session + ")[id=" + id + "] reply failure details", e);
+        }
+    }
+
     @Override
     protected int doRead(int id, String handle, long offset, int length, byte[] data, int doff) throws IOException {
         Handle h = handles.get(handle);
@@ -868,6 +1444,7 @@ public class SftpSubsystem
             listener.closed(session, handle, nodeHandle, null);
         } catch (IOException | RuntimeException e) {
             listener.closed(session, handle, nodeHandle, e);
+            throw e;    // e.g., failed to write pending data
         }
     }
 
@@ -963,14 +1540,68 @@ public class SftpSubsystem
     @Override
     protected Buffer prepareReply(Buffer buffer) {
         buffer.clear();
+        if (replyHeaderLength > 0) {
+            buffer.wpos(replyHeaderLength);
+            buffer.rpos(replyHeaderLength);
+        }
         buffer.putInt(0);
         return buffer;
     }
 
     @Override
     protected void send(Buffer buffer) throws IOException {
-        BufferUtils.updateLengthPlaceholder(buffer, 0);
+        BufferUtils.updateLengthPlaceholder(buffer, buffer.rpos());
+        if (replyDeadlines.isEmpty()) {
+            out.writePacket(buffer);
+            return;
+        }
+
+        // reply = length + type + id
+        int id = (int) BufferUtils.getUInt(buffer.array(), buffer.rpos() + Integer.BYTES + 1, Integer.BYTES);
+        ReplyDeadline deadline = replyDeadlines.remove(id);
+        if (deadline == null) {
+            out.writePacket(buffer);
+            return;
+        }
+
+        long delay = deadline.getTime() - System.nanoTime();
+        int windowLength = deadline.getWindowLength();
+        if (delay > 0L) {
+            SftpTrafficShaper.Tenant tenant = shapingTenant;
+            if ((tenant != null)
+                    && getTrafficShaper().scheduleReply(tenant, () -> sendDelayedReply(id, buffer, windowLength), delay)) {
+                return;
+            }
+
+            // too many queued replies - delay the replying thread instead
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                throw (IOException) new InterruptedIOException("Interrupted while delaying reply id=" + id).initCause(e);
+            }
+        }
+
         out.writePacket(buffer);
+        consumeWindow(windowLength);
+    }
+
+    protected void sendDelayedReply(int id, Buffer buffer, int windowLength) {
+        try {
+            out.writePacket(buffer);
+            consumeWindow(windowLength);
+        } catch (IOException | RuntimeException e) {
+            ServerSession session = getServerSession();
+            if (closed.get()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("sendDelayedReply({})[id={}] failed ({}) to reply after close: {}",
+                              session, id, e.getClass().getSimpleName(), e.getMessage());
+                }
+                return;
+            }
+
+            log.warn("sendDelayedReply({})[id={}] failed ({}) to reply: {}",
+                     session, id, e.getClass().getSimpleName(), e.getMessage());
+        }
     }
 
     @Override
@@ -1047,4 +1678,29 @@ public class SftpSubsystem
         });
         handles.clear();
     }
+
+    /**
+     * The time before which a delayed reply must not be sent and the channel
+     * window its request holds until then
+     */
+    protected static class ReplyDeadline {
+        private final long time;
+        private final int windowLength;
+
+        public ReplyDeadline(long time, int windowLength) {
+            this.time = time;
+            this.windowLength = windowLength;
+        }
+
+        /**
+         * @return The {@link System#nanoTime()} before which the reply must not be sent
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public int getWindowLength() {
+            return windowLength;
+        }
+    }
 }
\ No newline at end of file
@@ -44,6 +44,10 @@ public class SftpSubsystemFactory
         private UnsupportedAttributePolicy policy = DEFAULT_POLICY;
         private SftpFileSystemAccessor fileSystemAccessor = SftpFileSystemAccessor.DEFAULT;
         private SftpErrorStatusDataHandler errorStatusDataHandler = SftpErrorStatusDataHandler.DEFAULT;
+        private SftpReadAheadManager readAheadManager;
+        private ExecutorService asyncFileIoExecutor;
+        private SftpFileHashManager fileHashManager;
+        private SftpTrafficShaper trafficShaper;
 
         public Builder() {
             super();
@@ -74,6 +78,26 @@ public class SftpSubsystemFactory
             return this;
         }
 
+        public Builder withReadAheadManager(SftpReadAheadManager manager) {
+            readAheadManager = manager;
+            return this;
+        }
+
+        public Builder withFileHashManager(SftpFileHashManager manager) {
+            fileHashManager = manager;
+            return this;
+        }
+
+        public Builder withTrafficShaper(SftpTrafficShaper shaper) {
+            trafficShaper = shaper;
+            return this;
+        }
+
+        public Builder withAsyncFileIoExecutor(ExecutorService executor) {
+            asyncFileIoExecutor = executor;
+            return this;
+        }
+
         @Override
         public SftpSubsystemFactory build() {
             SftpSubsystemFactory factory = new SftpSubsystemFactory();
@@ -82,6 +106,10 @@ public class SftpSubsystemFactory
             factory.setUnsupportedAttributePolicy(policy);
             factory.setFileSystemAccessor(fileSystemAccessor);
             factory.setErrorStatusDataHandler(errorStatusDataHandler);
+            factory.setReadAheadManager(readAheadManager);
+            factory.setAsyncFileIoExecutor(asyncFileIoExecutor);
+            factory.setFileHashManager(fileHashManager);
+            factory.setTrafficShaper(trafficShaper);
             GenericUtils.forEach(getRegisteredListeners(), factory::addSftpEventListener);
             return factory;
         }
@@ -92,6 +120,10 @@ public class SftpSubsystemFactory
     private UnsupportedAttributePolicy policy = DEFAULT_POLICY;
     private SftpFileSystemAccessor fileSystemAccessor = SftpFileSystemAccessor.DEFAULT;
     private SftpErrorStatusDataHandler errorStatusDataHandler = SftpErrorStatusDataHandler.DEFAULT;
+    private SftpReadAheadManager readAheadManager;
+    private ExecutorService asyncFileIoExecutor;
+    private SftpFileHashManager fileHashManager;
+    private SftpTrafficShaper trafficShaper;
 
     public SftpSubsystemFactory() {
         super();
@@ -161,12 +193,77 @@ public class SftpSubsystemFactory
         errorStatusDataHandler = Objects.requireNonNull(handler, "No error status data handler provided");
     }
 
+    public SftpReadAheadManager getReadAheadManager() {
+        return readAheadManager;
+    }
+
+    /**
+     * @param manager The {@link SftpReadAheadManager} used to prefetch data for sequentially
+     * read files - shared by all the subsystems created by this factory, so its memory cap and
+     * statistics span all the sessions. If {@code null} (default) then read-ahead is disabled.
+     * <B>Note:</B> the manager is not closed by the factory - it is up to the caller to do so
+     * once the server is stopped.
+     */
+    public void setReadAheadManager(SftpReadAheadManager manager) {
+        readAheadManager = manager;
+    }
+
+    public SftpFileHashManager getFileHashManager() {
+        return fileHashManager;
+    }
+
+    /**
+     * @param manager The {@link SftpFileHashManager} used to compute the {@code check-file-handle}/{@code check-file-name}
+     * hashes - shared by all the subsystems created by this factory, so its cache spans all the sessions. If {@code null}
+     * (default) then the hashes are computed sequentially on every request. <B>Note:</B> the manager
+     * is not closed by the factory - it is up to the caller to do so once the server is stopped.
+     */
+    public void setFileHashManager(SftpFileHashManager manager) {
+        fileHashManager = manager;
+    }
+
+    public SftpTrafficShaper getTrafficShaper() {
+        return trafficShaper;
+    }
+
+    /**
+     * @param shaper The {@link SftpTrafficShaper} used to limit the data and requests rates
+     * of users (or groups) - shared by all the subsystems created by this factory, so that the
+     * limits span all the sessions of the same tenant. If {@code null} (default) then no shaping.
+     * <B>Note:</B> the shaper is not closed by the factory.
+     */
+    public void setTrafficShaper(SftpTrafficShaper shaper) {
+        trafficShaper = shaper;
+    }
+
+    public ExecutorService getAsyncFileIoExecutor() {
+        return asyncFileIoExecutor;
+    }
+
+    /**
+     * @param executor The {@link ExecutorService} used to execute the file I/O of the
+     * created subsystems via {@link java.nio.channels.AsynchronousFileChannel}s - thus
+     * allowing several {@code SSH_FXP_READ}/{@code SSH_FXP_WRITE} requests of the same
+     * session to be executed concurrently. The replies (and the matching {@link SftpEventListener}
+     * read/written events) are then issued from the executor's threads. If {@code null}
+     * (default) then files are accessed synchronously. <B>Note:</B> the executor is
+     * shared by all the subsystems and is not shut down by the factory.
+     * @see SftpSubsystem#MAX_PENDING_ASYNC_FILE_IO_PROP
+     */
+    public void setAsyncFileIoExecutor(ExecutorService executor) {
+        asyncFileIoExecutor = executor;
+    }
+
     @Override
     public Command create() {
         SftpSubsystem subsystem =
             new SftpSubsystem(getExecutorService(), isShutdownOnExit(),
                 getUnsupportedAttributePolicy(), getFileSystemAccessor(),
                 getErrorStatusDataHandler());
+        subsystem.setReadAheadManager(getReadAheadManager());
+        subsystem.setAsyncFileIoExecutor(getAsyncFileIoExecutor());
+        subsystem.setFileHashManager(getFileHashManager());
+        subsystem.setTrafficShaper(getTrafficShaper());
         GenericUtils.forEach(getRegisteredListeners(), subsystem::addSftpEventListener);
         return subsystem;
     }
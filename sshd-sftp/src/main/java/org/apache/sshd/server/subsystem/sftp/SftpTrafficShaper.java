@@ -0,0 +1,570 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.server.subsystem.sftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+import org.apache.sshd.server.session.ServerSession;
+
+/**
+ * Shapes the SFTP traffic of &quot;tenants&quot; - i.e., users or groups of users - via
+ * token buckets that limit the {@code SSH_FXP_READ}/{@code SSH_FXP_WRITE} data rate
+ * and the overall requests rate of each tenant. Requests that exceed the limits are
+ * still executed, but their replies are delayed (via a scheduler - no thread is
+ * blocked) until enough tokens have accumulated. Since SFTP clients limit the number
+ * of outstanding requests - and the subsystem consumes the channel window of a request
+ * only once its reply has been sent - delaying the replies slows down the tenant's traffic.
+ * <UL>
+ *      <LI>
+ *      The tenant of a session is resolved by the configured function - by
+ *      default the session's username. Sessions of the same tenant share its
+ *      buckets.
+ *      </LI>
+ *
+ *      <LI>
+ *      The limits can be changed at runtime - per tenant or as the default
+ *      for tenants that have no explicitly configured ones.
+ *      </LI>
+ *
+ *      <LI>
+ *      Each bucket allows a burst of up to one second worth of its rate.
+ *      </LI>
+ *
+ *      <LI>
+ *      The delay of a reply - and hence the debt a tenant can accumulate - is
+ *      capped, as is the number of replies queued per tenant. Once the latter is
+ *      reached, the replying thread waits out the delay instead of queuing the reply.
+ *      </LI>
+ *
+ *      <LI>
+ *      Tenants are registered by the sessions using them and removed once idle
+ *      - i.e., no sessions, queued replies, debt or explicitly configured limits.
+ *      </LI>
+ * </UL>
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ * @see SftpSubsystemFactory#setTrafficShaper(SftpTrafficShaper)
+ */
+public class SftpTrafficShaper extends AbstractLoggingBean implements Closeable {
+    /** Uses the session's username as the tenant */
+    public static final Function<ServerSession, String> BY_USERNAME = ServerSession::getUsername;
+
+    /** Default max. delay (nanoseconds) of a single reply */
+    public static final long DEFAULT_MAX_REPLY_DELAY = TimeUnit.SECONDS.toNanos(10L);
+
+    /** Default max. number of delayed replies queued per tenant */
+    public static final int DEFAULT_MAX_QUEUED_REPLIES = 256;
+
+    private final Function<? super ServerSession, String> tenantResolver;
+    private final ScheduledExecutorService scheduler;
+    private final boolean shutdownOnExit;
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private volatile long defaultBytesPerSecond;
+    private volatile long defaultRequestsPerSecond;
+    private volatile long maxReplyDelay = DEFAULT_MAX_REPLY_DELAY;
+    private volatile int maxQueuedReplies = DEFAULT_MAX_QUEUED_REPLIES;
+
+    public SftpTrafficShaper() {
+        this(BY_USERNAME);
+    }
+
+    public SftpTrafficShaper(Function<? super ServerSession, String> tenantResolver) {
+        this(tenantResolver, ThreadUtils.newSingleThreadScheduledExecutor(SftpTrafficShaper.class.getSimpleName()), true);
+    }
+
+    /**
+     * @param tenantResolver Resolves the tenant of a session - e.g., its username or group
+     * @param scheduler The {@link ScheduledExecutorService} used to send the delayed replies
+     * @param shutdownOnExit Whether to shut down the scheduler when the shaper is closed
+     */
+    public SftpTrafficShaper(
+            Function<? super ServerSession, String> tenantResolver, ScheduledExecutorService scheduler, boolean shutdownOnExit) {
+        this.tenantResolver = Objects.requireNonNull(tenantResolver, "No tenant resolver");
+        this.scheduler = Objects.requireNonNull(scheduler, "No scheduler");
+        this.shutdownOnExit = shutdownOnExit;
+    }
+
+    public long getDefaultBytesPerSecond() {
+        return defaultBytesPerSecond;
+    }
+
+    public long getDefaultRequestsPerSecond() {
+        return defaultRequestsPerSecond;
+    }
+
+    public long getMaxReplyDelay() {
+        return maxReplyDelay;
+    }
+
+    /**
+     * @param maxDelay Max. delay (nanoseconds) of a single reply - limits the debt a tenant
+     * can accumulate to this much time worth of its rates
+     */
+    public void setMaxReplyDelay(long maxDelay) {
+        ValidateUtils.checkTrue(maxDelay > 0L, "Invalid max. reply delay: %d", maxDelay);
+        maxReplyDelay = maxDelay;
+        tenants.forEach((name, tenant) -> tenant.setMaxDelay(maxDelay));
+    }
+
+    public int getMaxQueuedReplies() {
+        return maxQueuedReplies;
+    }
+
+    /**
+     * @param maxReplies Max. number of delayed replies queued per tenant - beyond it
+     * the replying thread waits out the delay
+     */
+    public void setMaxQueuedReplies(int maxReplies) {
+        ValidateUtils.checkTrue(maxReplies >= 0, "Invalid max. queued replies: %d", maxReplies);
+        maxQueuedReplies = maxReplies;
+    }
+
+    /**
+     * @param bytesPerSecond Max. read + written data rate of tenants without explicitly
+     * configured limits - non-positive means unlimited
+     * @param requestsPerSecond Max. requests rate of tenants without explicitly configured
+     * limits - non-positive means unlimited
+     */
+    public void setDefaultLimits(long bytesPerSecond, long requestsPerSecond) {
+        defaultBytesPerSecond = bytesPerSecond;
+        defaultRequestsPerSecond = requestsPerSecond;
+        tenants.forEach((name, tenant) -> {
+            if (!tenant.isExplicitlyConfigured()) {
+                tenant.setLimits(bytesPerSecond, requestsPerSecond);
+            }
+        });
+    }
+
+    /**
+     * @param tenant The tenant name
+     * @param bytesPerSecond Max. read + written data rate - non-positive means unlimited
+     * @param requestsPerSecond Max. requests rate - non-positive means unlimited
+     */
+    public void setTenantLimits(String tenant, long bytesPerSecond, long requestsPerSecond) {
+        Tenant t = getTenant(tenant);
+        t.setExplicitlyConfigured(true);
+        t.setLimits(bytesPerSecond, requestsPerSecond);
+    }
+
+    /**
+     * Reverts the tenant to the default limits
+     *
+     * @param tenant The tenant name
+     */
+    public void resetTenantLimits(String tenant) {
+        Tenant t = getTenant(tenant);
+        t.setExplicitlyConfigured(false);
+        t.setLimits(getDefaultBytesPerSecond(), getDefaultRequestsPerSecond());
+        pruneIdleTenants();
+    }
+
+    /**
+     * @param session The {@link ServerSession}
+     * @return The session's {@link Tenant}
+     */
+    public Tenant resolveTenant(ServerSession session) {
+        return getTenant(resolveTenantName(session));
+    }
+
+    /**
+     * Registers a session with its tenant - which is kept as long as it has registered
+     * sessions. <B>Note:</B> must be matched by a call to {@link #unregisterSession(Tenant)}
+     *
+     * @param session The {@link ServerSession}
+     * @return The session's {@link Tenant}
+     */
+    public Tenant registerSession(ServerSession session) {
+        String name = resolveTenantName(session);
+        return tenants.compute(name, (n, t) -> {
+            Tenant tenant = (t == null) ? createTenant(n) : t;
+            tenant.sessions.incrementAndGet();
+            return tenant;
+        });
+    }
+
+    /**
+     * @param tenant The {@link Tenant} returned by {@link #registerSession(ServerSession)}
+     */
+    public void unregisterSession(Tenant tenant) {
+        tenant.sessions.decrementAndGet();
+        pruneIdleTenants();
+    }
+
+    /**
+     * Removes the tenants that have no registered sessions, queued replies, debt or
+     * explicitly configured limits
+     */
+    public void pruneIdleTenants() {
+        long now = System.nanoTime();
+        for (String name : tenants.keySet()) {
+            tenants.computeIfPresent(name, (n, t) -> t.isIdle(now) ? null : t);
+        }
+    }
+
+    /**
+     * @param name The tenant name
+     * @return The matching {@link Tenant} - created with the default limits if
+     * not already registered
+     */
+    public Tenant getTenant(String name) {
+        ValidateUtils.checkNotNullAndNotEmpty(name, "No tenant name");
+        return tenants.computeIfAbsent(name, this::createTenant);
+    }
+
+    protected String resolveTenantName(ServerSession session) {
+        return ValidateUtils.checkNotNullAndNotEmpty(tenantResolver.apply(session), "No tenant for %s", session);
+    }
+
+    protected Tenant createTenant(String name) {
+        Tenant tenant = new Tenant(name, getDefaultBytesPerSecond(), getDefaultRequestsPerSecond());
+        tenant.setMaxDelay(getMaxReplyDelay());
+        return tenant;
+    }
+
+    /**
+     * @return A snapshot of the currently known tenants - key=tenant name
+     */
+    public Map<String, Tenant> getTenants() {
+        return Collections.unmodifiableMap(tenants);
+    }
+
+    /**
+     * Charges a request to its tenant
+     *
+     * @param tenant The {@link Tenant}
+     * @param cmd The SFTP command
+     * @param dataLength The amount of data read / written by the request
+     * @return The time (nanoseconds) by which the request's reply should be delayed
+     */
+    public long chargeRequest(Tenant tenant, int cmd, long dataLength) {
+        return tenant.charge(cmd, dataLength, System.nanoTime());
+    }
+
+    /**
+     * Queues a delayed reply of the tenant - unless it already has the max. allowed
+     * number of queued replies
+     *
+     * @param tenant The {@link Tenant}
+     * @param reply The delayed reply sender
+     * @param delayNanos The delay (nanoseconds)
+     * @return {@code true} if the reply was queued - otherwise the caller should
+     * wait out the delay itself
+     */
+    public boolean scheduleReply(Tenant tenant, Runnable reply, long delayNanos) {
+        if (tenant.queuedReplies.incrementAndGet() > getMaxQueuedReplies()) {
+            tenant.queuedReplies.decrementAndGet();
+            return false;
+        }
+
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    reply.run();
+                } finally {
+                    tenant.queuedReplies.decrementAndGet();
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {  // e.g., RejectedExecutionException
+            tenant.queuedReplies.decrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("scheduleReply({}) failed ({}) to queue reply: {}",
+                          tenant, e.getClass().getSimpleName(), e.getMessage());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (shutdownOnExit && (!scheduler.isShutdown())) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[tenants=" + tenants.size() + "]";
+    }
+
+    /**
+     * The token buckets and metrics of a single tenant - all methods are thread-safe
+     */
+    public static class Tenant {
+        private final String name;
+        private final TokenBucket bytesBucket;
+        private final TokenBucket requestsBucket;
+        private final AtomicLong requests = new AtomicLong(0L);
+        private final AtomicLong bytesRead = new AtomicLong(0L);
+        private final AtomicLong bytesWritten = new AtomicLong(0L);
+        private final AtomicLong delayedRequests = new AtomicLong(0L);
+        private final AtomicLong totalDelayNanos = new AtomicLong(0L);
+        private final AtomicLong maxDelayNanos = new AtomicLong(0L);
+        private final AtomicInteger sessions = new AtomicInteger(0);
+        private final AtomicInteger queuedReplies = new AtomicInteger(0);
+        private volatile boolean explicitlyConfigured;
+
+        public Tenant(String name, long bytesPerSecond, long requestsPerSecond) {
+            this.name = name;
+            this.bytesBucket = new TokenBucket(bytesPerSecond);
+            this.requestsBucket = new TokenBucket(requestsPerSecond);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isExplicitlyConfigured() {
+            return explicitlyConfigured;
+        }
+
+        public void setExplicitlyConfigured(boolean explicitlyConfigured) {
+            this.explicitlyConfigured = explicitlyConfigured;
+        }
+
+        public void setLimits(long bytesPerSecond, long requestsPerSecond) {
+            long now = System.nanoTime();
+            bytesBucket.setRate(bytesPerSecond, now);
+            requestsBucket.setRate(requestsPerSecond, now);
+        }
+
+        /**
+         * @param maxDelay Max. delay (nanoseconds) - and hence debt - of the tenant's buckets
+         */
+        public void setMaxDelay(long maxDelay) {
+            bytesBucket.setMaxDelay(maxDelay);
+            requestsBucket.setMaxDelay(maxDelay);
+        }
+
+        /**
+         * @return Max. read + written data rate - non-positive means unlimited
+         */
+        public long getBytesPerSecond() {
+            return bytesBucket.getRate();
+        }
+
+        /**
+         * @return Max. requests rate - non-positive means unlimited
+         */
+        public long getRequestsPerSecond() {
+            return requestsBucket.getRate();
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * @return Total number of bytes requested by {@code SSH_FXP_READ} commands
+         */
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        /**
+         * @return Total number of bytes sent by {@code SSH_FXP_WRITE} commands
+         */
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        /**
+         * @return Number of requests whose reply was delayed
+         */
+        public long getDelayedRequests() {
+            return delayedRequests.get();
+        }
+
+        public long getTotalDelayNanos() {
+            return totalDelayNanos.get();
+        }
+
+        public long getMaxDelayNanos() {
+            return maxDelayNanos.get();
+        }
+
+        /**
+         * @return Number of sessions currently registered with the tenant
+         */
+        public int getSessions() {
+            return sessions.get();
+        }
+
+        /**
+         * @return Number of currently queued delayed replies
+         */
+        public int getQueuedReplies() {
+            return queuedReplies.get();
+        }
+
+        protected boolean isIdle(long now) {
+            return (!isExplicitlyConfigured())
+                && (sessions.get() <= 0)
+                && (queuedReplies.get() <= 0)
+                && (!bytesBucket.isInDebt(now))
+                && (!requestsBucket.isInDebt(now));
+        }
+
+        protected long charge(int cmd, long dataLength, long now) {
+            requests.incrementAndGet();
+            long delay = requestsBucket.acquire(1L, now);
+            if (dataLength > 0L) {
+                if (cmd == SftpConstants.SSH_FXP_READ) {
+                    bytesRead.addAndGet(dataLength);
+                } else {
+                    bytesWritten.addAndGet(dataLength);
+                }
+                delay = Math.max(delay, bytesBucket.acquire(dataLength, now));
+            }
+
+            if (delay > 0L) {
+                delayedRequests.incrementAndGet();
+                totalDelayNanos.addAndGet(delay);
+                maxDelayNanos.accumulateAndGet(delay, Math::max);
+            }
+            return delay;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[" + getName() + "]"
+                + " bytes/sec=" + getBytesPerSecond()
+                + ", requests/sec=" + getRequestsPerSecond()
+                + ", requests=" + getRequests()
+                + ", read=" + getBytesRead()
+                + ", written=" + getBytesWritten()
+                + ", delayed=" + getDelayedRequests()
+                + ", queued=" + getQueuedReplies();
+        }
+    }
+
+    /**
+     * A token bucket whose capacity is one second worth of its rate. Acquiring
+     * more tokens than available is allowed - the deficit determines how long
+     * the caller should wait before proceeding. The deficit is capped at the
+     * max. delay worth of the rate - any excess is forgiven
+     */
+    public static class TokenBucket {
+        private long rate;
+        private long maxDelay;
+        private double tokens;
+        private long lastRefill;
+
+        /**
+         * @param rate Tokens per second - non-positive means unlimited
+         */
+        public TokenBucket(long rate) {
+            this(rate, DEFAULT_MAX_REPLY_DELAY);
+        }
+
+        /**
+         * @param rate Tokens per second - non-positive means unlimited
+         * @param maxDelay Max. delay (nanoseconds) returned by {@link #acquire(long, long)}
+         */
+        public TokenBucket(long rate, long maxDelay) {
+            ValidateUtils.checkTrue(maxDelay > 0L, "Invalid max. delay: %d", maxDelay);
+            this.rate = rate;
+            this.maxDelay = maxDelay;
+            this.tokens = Math.max(0L, rate);
+            this.lastRefill = System.nanoTime();
+        }
+
+        public synchronized long getRate() {
+            return rate;
+        }
+
+        public synchronized long getMaxDelay() {
+            return maxDelay;
+        }
+
+        public synchronized void setMaxDelay(long newMaxDelay) {
+            ValidateUtils.checkTrue(newMaxDelay > 0L, "Invalid max. delay: %d", newMaxDelay);
+            maxDelay = newMaxDelay;
+        }
+
+        /**
+         * @param now Current {@link System#nanoTime()}
+         * @return {@code true} if more tokens were acquired than accumulated so far
+         */
+        public synchronized boolean isInDebt(long now) {
+            if (rate <= 0L) {
+                return false;
+            }
+
+            refill(now);
+            return tokens < 0.0d;
+        }
+
+        public synchronized void setRate(long newRate, long now) {
+            if (rate <= 0L) {
+                tokens = Math.max(0L, newRate);    // start with a full bucket
+            } else {
+                refill(now);
+                tokens = Math.min(tokens, Math.max(0L, newRate));
+            }
+            rate = newRate;
+            lastRefill = now;
+        }
+
+        /**
+         * @param amount Number of tokens to acquire
+         * @param now Current {@link System#nanoTime()}
+         * @return The time (nanoseconds) the caller should wait until the
+         * acquired tokens would have been available - zero if available now and
+         * at most the max. delay
+         */
+        public synchronized long acquire(long amount, long now) {
+            if (rate <= 0L) {
+                return 0L;
+            }
+
+            refill(now);
+            double maxDebt = (double) maxDelay * rate / TimeUnit.SECONDS.toNanos(1L);
+            tokens = Math.max(tokens - amount, -maxDebt);
+            if (tokens >= 0.0d) {
+                return 0L;
+            }
+
+            return (long) (-tokens * TimeUnit.SECONDS.toNanos(1L) / rate);
+        }
+
+        protected void refill(long now) {
+            long elapsed = now - lastRefill;
+            if (elapsed > 0L) {
+                tokens = Math.min(rate, tokens + (double) elapsed * rate / TimeUnit.SECONDS.toNanos(1L));
+                lastRefill = now;
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.sshd.client.subsystem.sftp;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.sshd.client.SshClient;
 import org.apache.sshd.client.session.ClientSession;
@@ -33,6 +34,7 @@ import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
 import org.apache.sshd.util.test.BaseTestSupport;
 import org.apache.sshd.util.test.JSchLogger;
 import org.apache.sshd.util.test.Utils;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 
@@ -83,10 +85,36 @@ public abstract class AbstractSftpClientTestSupport extends BaseTestSupport {
         }
     }
 
+    /**
+     * Restores the default SFTP subsystem in case the test replaced it
+     */
+    @After
+    public void resetSubsystemFactories() {
+        if (sshd != null) {
+            sshd.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        }
+    }
+
     protected void setupServer() throws Exception {
         sshd.setFileSystemFactory(fileSystemFactory);
     }
 
+    /**
+     * @return A session authenticated as the current test name - which is also used as password
+     * @throws IOException If failed to connect or authenticate
+     */
+    protected ClientSession createAuthenticatedClientSession() throws IOException {
+        ClientSession session = client.connect(getCurrentTestName(), TEST_LOCALHOST, port).verify(7L, TimeUnit.SECONDS).getSession();
+        try {
+            session.addPasswordIdentity(getCurrentTestName());
+            session.auth().verify(5L, TimeUnit.SECONDS);
+            return session;
+        } catch (IOException | RuntimeException e) {
+            session.close(true);
+            throw e;
+        }
+    }
+
     protected SftpClient createSftpClient(ClientSession session) throws IOException {
         return SftpClientFactory.instance().createSftpClient(session);
     }
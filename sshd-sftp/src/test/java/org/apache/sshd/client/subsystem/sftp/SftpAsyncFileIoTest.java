@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.OpenMode;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListenerManager;
+import org.apache.sshd.server.subsystem.sftp.SftpFileSystemAccessor;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.apache.sshd.util.test.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpAsyncFileIoTest extends AbstractSftpClientTestSupport {
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int NUM_CHUNKS = 32;
+
+    private final AtomicInteger asyncOpens = new AtomicInteger();
+    private ExecutorService ioExecutor;
+    private Path testFile;
+    private String remotePath;
+
+    public SftpAsyncFileIoTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+        asyncOpens.set(0);
+
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        testFile = assertHierarchyTargetFolderExists(lclSftp).resolve("file.bin");
+        Files.deleteIfExists(testFile);
+        remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), testFile);
+
+        ioExecutor = ThreadUtils.newFixedThreadPool(getClass().getSimpleName(), 4);
+        SftpSubsystemFactory factory = new SftpSubsystemFactory.Builder()
+            .withAsyncFileIoExecutor(ioExecutor)
+            .withFileSystemAccessor(new SftpFileSystemAccessor() {
+                @Override
+                public AsynchronousFileChannel openAsynchronousFile(
+                        ServerSession session, SftpEventListenerManager subsystem,
+                        Path file, String handle, Set<? extends OpenOption> options, ExecutorService executor, FileAttribute<?>... attrs)
+                            throws IOException {
+                    asyncOpens.incrementAndGet();
+                    return SftpFileSystemAccessor.super.openAsynchronousFile(session, subsystem, file, handle, options, executor, attrs);
+                }
+            })
+            .build();
+        sshd.setSubsystemFactories(Collections.singletonList(factory));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ioExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testPipelinedWritesAndReads() throws Exception {
+        byte[] expected = new byte[NUM_CHUNKS * CHUNK_SIZE];
+        for (int index = 0; index < expected.length; index++) {
+            expected[index] = (byte) (index / 7);
+        }
+
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session);
+             CloseableHandle handle = sftp.open(remotePath, OpenMode.Create, OpenMode.Write, OpenMode.Read)) {
+            assertObjectInstanceOf("Not a raw client", RawSftpClient.class, sftp);
+            RawSftpClient raw = (RawSftpClient) sftp;
+            byte[] id = handle.getIdentifier();
+
+            int[] ids = new int[NUM_CHUNKS];
+            // send in reverse order so the writes are not all appended to the file
+            for (int index = NUM_CHUNKS - 1; index >= 0; index--) {
+                Buffer buffer = new ByteArrayBuffer(id.length + CHUNK_SIZE + Long.SIZE, false);
+                buffer.putBytes(id);
+                buffer.putLong((long) index * CHUNK_SIZE);
+                buffer.putBytes(expected, index * CHUNK_SIZE, CHUNK_SIZE);
+                ids[index] = raw.send(SftpConstants.SSH_FXP_WRITE, buffer);
+            }
+            for (int reqId : ids) {
+                Buffer response = raw.receive(reqId);
+                response.getInt();  // length
+                assertEquals("Mismatched write response type", SftpConstants.SSH_FXP_STATUS, response.getUByte());
+                assertEquals("Mismatched write response id", reqId, response.getInt());
+                assertEquals("Mismatched write status", SftpConstants.SSH_FX_OK, response.getInt());
+            }
+
+            for (int index = 0; index < NUM_CHUNKS; index++) {
+                Buffer buffer = new ByteArrayBuffer(id.length + Long.SIZE, false);
+                buffer.putBytes(id);
+                buffer.putLong((long) index * CHUNK_SIZE);
+                buffer.putInt(CHUNK_SIZE);
+                ids[index] = raw.send(SftpConstants.SSH_FXP_READ, buffer);
+            }
+
+            byte[] actual = new byte[expected.length];
+            for (int index = 0; index < NUM_CHUNKS; index++) {
+                Buffer response = raw.receive(ids[index]);
+                response.getInt();  // length
+                assertEquals("Mismatched read response type", SftpConstants.SSH_FXP_DATA, response.getUByte());
+                assertEquals("Mismatched read response id", ids[index], response.getInt());
+                assertEquals("Mismatched read length", CHUNK_SIZE, response.getInt());
+                response.getRawBytes(actual, index * CHUNK_SIZE, CHUNK_SIZE);
+            }
+            assertArrayEquals("Mismatched read data", expected, actual);
+
+            assertEquals("Mismatched EOF read result", -1, sftp.read(handle, expected.length, new byte[CHUNK_SIZE], 0, CHUNK_SIZE));
+        }
+
+        assertArrayEquals("Mismatched written data", expected, Files.readAllBytes(testFile));
+        assertEquals("Mismatched asynchronous opens", 1, asyncOpens.get());
+    }
+
+    @Test
+    public void testOverlappingReadAfterWrite() throws Exception {
+        byte[] initial = new byte[CHUNK_SIZE];
+        Arrays.fill(initial, (byte) 'a');
+        Files.write(testFile, initial);
+
+        byte[] expected = new byte[CHUNK_SIZE];
+        Arrays.fill(expected, (byte) 'b');
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session);
+             CloseableHandle handle = sftp.open(remotePath, OpenMode.Write, OpenMode.Read)) {
+            assertObjectInstanceOf("Not a raw client", RawSftpClient.class, sftp);
+            RawSftpClient raw = (RawSftpClient) sftp;
+            byte[] id = handle.getIdentifier();
+            for (int round = 0; round < NUM_CHUNKS; round++) {
+                Arrays.fill(expected, (byte) ('b' + round));
+
+                // the read is sent before the write is acknowledged
+                Buffer buffer = new ByteArrayBuffer(id.length + CHUNK_SIZE + Long.SIZE, false);
+                buffer.putBytes(id);
+                buffer.putLong(0L);
+                buffer.putBytes(expected);
+                int writeId = raw.send(SftpConstants.SSH_FXP_WRITE, buffer);
+
+                buffer = new ByteArrayBuffer(id.length + Long.SIZE, false);
+                buffer.putBytes(id);
+                buffer.putLong(0L);
+                buffer.putInt(CHUNK_SIZE);
+                int readId = raw.send(SftpConstants.SSH_FXP_READ, buffer);
+
+                Buffer response = raw.receive(writeId);
+                response.getInt();  // length
+                assertEquals("Mismatched write response type", SftpConstants.SSH_FXP_STATUS, response.getUByte());
+                response.getInt();  // id
+                assertEquals("Mismatched write status", SftpConstants.SSH_FX_OK, response.getInt());
+
+                response = raw.receive(readId);
+                response.getInt();  // length
+                assertEquals("Mismatched read response type", SftpConstants.SSH_FXP_DATA, response.getUByte());
+                response.getInt();  // id
+                assertArrayEquals("Mismatched data in round " + round, expected, response.getBytes());
+            }
+        }
+
+        assertArrayEquals("Mismatched file data", expected, Files.readAllBytes(testFile));
+    }
+
+    @Test
+    public void testAppendNotAsynchronous() throws Exception {
+        byte[] data = new byte[CHUNK_SIZE];
+        Arrays.fill(data, (byte) 'x');
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            for (int index = 0; index < 2; index++) {
+                try (CloseableHandle handle = sftp.open(remotePath, OpenMode.Create, OpenMode.Write, OpenMode.Append)) {
+                    sftp.write(handle, 0L, data);
+                }
+            }
+        }
+
+        assertEquals("Mismatched file size", 2L * CHUNK_SIZE, Files.size(testFile));
+        assertEquals("Unexpected asynchronous opens", 0, asyncOpens.get());
+    }
+}
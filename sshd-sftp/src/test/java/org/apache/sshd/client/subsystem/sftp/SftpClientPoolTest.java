@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpClientPoolTest extends AbstractSftpClientTestSupport {
+    public SftpClientPoolTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+    }
+
+    @Test
+    public void testBorrowReusesReleasedClient() throws Exception {
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClientPool pool = new SftpClientPool(session, SftpClientFactory.instance(), null, 0, 2, 0, 0L, 0L)) {
+            SftpClient c1 = pool.borrow();
+            SftpClient c2 = pool.borrow();
+            assertNotSame("Same client borrowed twice", c1, c2);
+            assertEquals("Mismatched active count", 2, pool.getActiveCount());
+
+            pool.release(c1);
+            assertEquals("Mismatched idle count", 1, pool.getIdleCount());
+            assertSame("Released client not re-used", c1, pool.borrow());
+            assertEquals("Mismatched created count", 2L, pool.getCreatedCount());
+
+            // a dead client must not be handed out again
+            pool.release(c2);
+            c2.close();
+            SftpClient c3 = pool.borrow();
+            assertNotSame("Dead client re-used", c2, c3);
+            assertTrue("New client not open", c3.isOpen());
+            assertEquals("Mismatched invalidated count", 1L, pool.getInvalidatedCount());
+            assertEquals("Mismatched borrow count", 4L, pool.getBorrowCount());
+
+            pool.release(c1);
+            pool.release(c3);
+            assertEquals("Unexpected active clients", 0, pool.getActiveCount());
+        }
+    }
+
+    @Test
+    public void testBorrowTimeout() throws Exception {
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClientPool pool = new SftpClientPool(session, SftpClientFactory.instance(), null, 0, 1, 1, 0L, 250L)) {
+            SftpClient c1 = pool.borrow();
+            try {
+                SftpClient c2 = pool.borrow();
+                fail("Unexpected borrow success beyond max. size: " + c2);
+            } catch (SocketTimeoutException e) {
+                assertEquals("Mismatched timeout count", 1L, pool.getTimeoutCount());
+            }
+
+            Thread releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(100L);
+                } catch (InterruptedException e) {
+                    // ignored
+                }
+                pool.release(c1);
+            });
+            releaser.start();
+            assertSame("Waiting borrower did not get the released client", c1, pool.borrow());
+            releaser.join(TimeUnit.SECONDS.toMillis(5L));
+            assertEquals("Mismatched created count", 1L, pool.getCreatedCount());
+            pool.release(c1);
+        }
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClientPool pool = new SftpClientPool(session, SftpClientFactory.instance(), null, 1, 3, 0, 50L, 0L)) {
+            SftpClient[] clients = {pool.borrow(), pool.borrow(), pool.borrow()};
+            for (SftpClient c : clients) {
+                pool.release(c);
+            }
+            assertEquals("Mismatched idle count", clients.length, pool.getIdleCount());
+
+            // eviction must not depend on clients being borrowed or released
+            for (long maxWait = TimeUnit.SECONDS.toMillis(5L); (pool.getIdleCount() > 1) && (maxWait > 0L); maxWait -= 50L) {
+                Thread.sleep(50L);
+            }
+            assertEquals("Mismatched evicted count", clients.length - 1L, pool.getEvictedCount());
+            assertEquals("Min. idle clients not kept", 1, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    public void testPrestartOpensMinIdleClients() throws Exception {
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClientPool pool = new SftpClientPool(session, SftpClientFactory.instance(), null, 2, 3, 0, 0L, 0L)) {
+            pool.prestart();
+            assertEquals("Mismatched idle count", 2, pool.getIdleCount());
+            assertEquals("Mismatched created count", 2L, pool.getCreatedCount());
+
+            pool.prestart();
+            assertEquals("Idle clients not re-used", 2L, pool.getCreatedCount());
+        }
+    }
+}
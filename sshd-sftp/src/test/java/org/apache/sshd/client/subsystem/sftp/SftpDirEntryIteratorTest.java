@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.DirEntry;
+import org.apache.sshd.common.PropertyResolverUtils;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.util.test.Utils;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpDirEntryIteratorTest extends AbstractSftpClientTestSupport {
+    private static final int NUM_FILES = 1000;
+
+    private Path lclDir;
+    private String remotePath;
+    private Set<String> expected;
+
+    public SftpDirEntryIteratorTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName());
+        lclDir = assertHierarchyTargetFolderExists(lclSftp.resolve("dir"));
+        expected = new TreeSet<>();
+        for (int index = 0; index < NUM_FILES; index++) {
+            String name = String.format("file-%04d.txt", index);
+            Path file = lclDir.resolve(name);
+            if (!Files.exists(file)) {
+                Files.write(file, Collections.singletonList(name));
+            }
+            expected.add(name);
+        }
+        remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), lclDir);
+    }
+
+    @Test
+    public void testListingWithPrefetchDepth() throws Exception {
+        for (int depth : new int[]{0, 1, 4}) {
+            try (ClientSession session = createAuthenticatedClientSession()) {
+                PropertyResolverUtils.updateProperty(session, SftpDirEntryIterator.READDIR_PREFETCH_DEPTH_PROP, depth);
+                try (SftpClient sftp = createSftpClient(session)) {
+                    Set<String> actual = new TreeSet<>();
+                    try (CloseableHandle handle = sftp.openDir(remotePath)) {
+                        SftpDirEntryIterator iter = new SftpDirEntryIterator(sftp, remotePath, handle, false);
+                        assertEquals("Mismatched prefetch depth", depth, iter.getPrefetchDepth());
+                        while (iter.hasNext()) {
+                            DirEntry entry = iter.next();
+                            String name = entry.getFilename();
+                            if (".".equals(name) || "..".equals(name)) {
+                                continue;
+                            }
+                            assertTrue("Duplicate entry for depth=" + depth + ": " + name, actual.add(name));
+                        }
+                        assertFalse("Iterator still open for depth=" + depth, iter.isOpen());
+                    }
+                    assertEquals("Mismatched entries for depth=" + depth, expected, actual);
+
+                    // make sure no stale responses were left behind
+                    assertTrue("Not a directory", sftp.stat(remotePath).isDirectory());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEarlyCloseWithOutstandingRequests() throws Exception {
+        try (ClientSession session = createAuthenticatedClientSession()) {
+            PropertyResolverUtils.updateProperty(session, SftpDirEntryIterator.READDIR_PREFETCH_DEPTH_PROP, 4);
+            try (SftpClient sftp = createSftpClient(session)) {
+                SftpDirEntryIterator iter = new SftpDirEntryIterator(sftp, remotePath);
+                try {
+                    assertTrue("No entries", iter.hasNext());
+                    iter.next();
+                } finally {
+                    iter.close();
+                }
+
+                assertFalse("Iterator still open", iter.isOpen());
+                assertTrue("Not a directory", sftp.stat(remotePath).isDirectory());
+                assertEquals("Mismatched file size", "file-0000.txt".length() + 1L,
+                    sftp.stat(remotePath + "/file-0000.txt").getSize());
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.OpenMode;
+import org.apache.sshd.client.subsystem.sftp.extensions.CheckFileHandleExtension;
+import org.apache.sshd.client.subsystem.sftp.extensions.CheckFileNameExtension;
+import org.apache.sshd.common.Factory;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.digest.BuiltinDigests;
+import org.apache.sshd.common.digest.Digest;
+import org.apache.sshd.common.random.Random;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.subsystem.sftp.SftpException;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListenerManager;
+import org.apache.sshd.server.subsystem.sftp.SftpFileHashManager;
+import org.apache.sshd.server.subsystem.sftp.SftpFileSystemAccessor;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.apache.sshd.util.test.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpFileHashManagerTest extends AbstractSftpClientTestSupport {
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private ForkJoinPool pool;
+    private SftpFileHashManager manager;
+    private Path testFile;
+    private String remotePath;
+    private byte[] data;
+
+    public SftpFileHashManagerTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        testFile = assertHierarchyTargetFolderExists(lclSftp).resolve("file.bin");
+        data = new byte[32 * CHUNK_SIZE + 1234];
+
+        Factory<? extends Random> factory = sshd.getRandomFactory();
+        Random rnd = factory.create();
+        rnd.fill(data);
+        Files.write(testFile, data);
+        remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), testFile);
+
+        pool = new ForkJoinPool(4);
+        manager = new SftpFileHashManager(Byte.MAX_VALUE, pool);
+        manager.setMinChunkSize(CHUNK_SIZE);
+        sshd.setSubsystemFactories(Collections.singletonList(
+            new SftpSubsystemFactory.Builder()
+                .withFileHashManager(manager)
+                .build()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.close();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testParallelBlockHashes() throws Exception {
+        String algorithm = BuiltinDigests.sha256.getName();
+        int[] blockSizes = {SftpConstants.MIN_CHKFILE_BLOCKSIZE, 1024, 3 * CHUNK_SIZE, 0};
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            CheckFileNameExtension ext = assertExtensionCreated(sftp, CheckFileNameExtension.class);
+            for (int blockSize : blockSizes) {
+                Map.Entry<String, Collection<byte[]>> result =
+                    ext.checkFileName(remotePath, Collections.singletonList(algorithm), 0L, 0L, blockSize);
+                assertEquals("Mismatched algorithm for block size=" + blockSize, algorithm, result.getKey());
+                assertHashes("block size=" + blockSize, computeHashes(BuiltinDigests.sha256, data, blockSize), result.getValue());
+            }
+
+            CheckFileHandleExtension hndl = assertExtensionCreated(sftp, CheckFileHandleExtension.class);
+            try (CloseableHandle handle = sftp.open(remotePath, OpenMode.Read)) {
+                // a sub-range of the file
+                long offset = CHUNK_SIZE + 17;
+                int length = data.length - 2 * CHUNK_SIZE;
+                Map.Entry<String, Collection<byte[]>> result =
+                    hndl.checkFileHandle(handle, Collections.singletonList(algorithm), offset, length, 1024);
+                byte[] expected = new byte[length];
+                System.arraycopy(data, (int) offset, expected, 0, length);
+                assertHashes("sub-range", computeHashes(BuiltinDigests.sha256, expected, 1024), result.getValue());
+            }
+        }
+
+        assertEquals("Unexpected cache hits", 0L, manager.getCacheHits());
+    }
+
+    @Test
+    public void testCachedHashesOfUnchangedFile() throws Exception {
+        String algorithm = BuiltinDigests.md5.getName();
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            CheckFileNameExtension ext = assertExtensionCreated(sftp, CheckFileNameExtension.class);
+            Collection<byte[]> first = ext.checkFileName(remotePath, Collections.singletonList(algorithm), 0L, 0L, 1024).getValue();
+            long hashedBytes = manager.getHashedBytes();
+            assertEquals("Mismatched hashed bytes", data.length, hashedBytes);
+
+            Collection<byte[]> second = ext.checkFileName(remotePath, Collections.singletonList(algorithm), 0L, 0L, 1024).getValue();
+            assertHashes("cached", first, second);
+            assertEquals("No cache hit", 1L, manager.getCacheHits());
+            assertEquals("File re-read", hashedBytes, manager.getHashedBytes());
+
+            byte[] extra = new byte[Byte.MAX_VALUE];
+            Files.write(testFile, extra, StandardOpenOption.APPEND);
+            byte[] modified = new byte[data.length + extra.length];
+            System.arraycopy(data, 0, modified, 0, data.length);
+
+            Collection<byte[]> third = ext.checkFileName(remotePath, Collections.singletonList(algorithm), 0L, 0L, 1024).getValue();
+            assertHashes("modified", computeHashes(BuiltinDigests.md5, modified, 1024), third);
+            assertEquals("Unexpected cache hit for modified file", 1L, manager.getCacheHits());
+        }
+    }
+
+    @Test
+    public void testCachedHashesRequireFileAccess() throws Exception {
+        AtomicBoolean denied = new AtomicBoolean(false);
+        sshd.setSubsystemFactories(Collections.singletonList(
+            new SftpSubsystemFactory.Builder()
+                .withFileHashManager(manager)
+                .withFileSystemAccessor(new SftpFileSystemAccessor() {
+                    @Override
+                    public SeekableByteChannel openFile(
+                            ServerSession session, SftpEventListenerManager subsystem,
+                            Path file, String handle, Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+                                throws IOException {
+                        if (denied.get()) {
+                            throw new AccessDeniedException(file.toString());
+                        }
+                        return SftpFileSystemAccessor.super.openFile(session, subsystem, file, handle, options, attrs);
+                    }
+                })
+                .build()));
+
+        String algorithm = BuiltinDigests.md5.getName();
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            CheckFileNameExtension ext = assertExtensionCreated(sftp, CheckFileNameExtension.class);
+            ext.checkFileName(remotePath, Collections.singletonList(algorithm), 0L, 0L, 1024);
+            assertEquals("Result not cached", 1, manager.getCachedEntries());
+
+            denied.set(true);
+            try {
+                ext.checkFileName(remotePath, Collections.singletonList(algorithm), 0L, 0L, 1024);
+                fail("Unexpected success for a denied file");
+            } catch (SftpException e) {
+                assertEquals("Mismatched status", SftpConstants.SSH_FX_PERMISSION_DENIED, e.getStatus());
+            }
+            assertEquals("Unexpected cache hit", 0L, manager.getCacheHits());
+        }
+    }
+
+    @Test
+    public void testCloseShutsDownOwnedPoolOnly() throws Exception {
+        manager.close();
+        assertFalse("Manager still open", manager.isOpen());
+        assertFalse("Shared pool shut down", pool.isShutdown());
+
+        SftpFileHashManager owner = new SftpFileHashManager();
+        owner.close();
+        assertTrue("Owned pool not shut down", owner.getPool().isShutdown());
+    }
+
+    private static List<byte[]> computeHashes(NamedFactory<? extends Digest> factory, byte[] data, int blockSize) throws Exception {
+        int blockLength = (blockSize == 0) ? data.length : blockSize;
+        List<byte[]> hashes = new ArrayList<>();
+        for (int offset = 0; offset < data.length; offset += blockLength) {
+            Digest digest = factory.create();
+            digest.init();
+            digest.update(data, offset, Math.min(blockLength, data.length - offset));
+            hashes.add(digest.digest());
+        }
+        return hashes;
+    }
+
+    private static void assertHashes(String message, Collection<byte[]> expected, Collection<byte[]> actual) {
+        assertEquals(message + ": mismatched hashes count", expected.size(), actual.size());
+
+        int index = 0;
+        for (Iterator<byte[]> e = expected.iterator(), a = actual.iterator(); e.hasNext(); index++) {
+            assertArrayEquals(message + ": mismatched hash #" + index, e.next(), a.next());
+        }
+    }
+}
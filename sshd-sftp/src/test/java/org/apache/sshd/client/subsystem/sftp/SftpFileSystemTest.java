@@ -59,6 +59,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.sshd.client.SshClient;
 import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.OpenMode;
+import org.apache.sshd.common.PropertyResolverUtils;
 import org.apache.sshd.common.file.FileSystemFactory;
 import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
 import org.apache.sshd.common.session.Session;
@@ -67,6 +70,10 @@ import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.OsUtils;
 import org.apache.sshd.common.util.io.IoUtils;
 import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.FileHandle;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListener;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystem;
 import org.apache.sshd.server.subsystem.sftp.SftpSubsystemEnvironment;
 import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
 import org.apache.sshd.util.test.BaseTestSupport;
@@ -242,6 +249,130 @@ public class SftpFileSystemTest extends BaseTestSupport {
         assertArrayEquals("Mismatched persisted data", expected, actual);
     }
 
+    @Test
+    public void testServerSideCopy() throws Exception {
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        Path srcFile = assertHierarchyTargetFolderExists(lclSftp).resolve("src.bin");
+        byte[] expected = new byte[IoUtils.DEFAULT_COPY_SIZE * 16 + Byte.MAX_VALUE];
+        for (int index = 0; index < expected.length; index++) {
+            expected[index] = (byte) (index / 3);
+        }
+        Files.write(srcFile, expected);
+
+        AtomicInteger serverReads = new AtomicInteger();
+        SftpSubsystemFactory factory = new SftpSubsystemFactory();
+        factory.addSftpEventListener(new SftpEventListener() {
+            @Override
+            public void reading(ServerSession session, String remoteHandle, FileHandle localHandle,
+                    long offset, byte[] data, int dataOffset, int dataLen) throws IOException {
+                serverReads.incrementAndGet();
+            }
+        });
+        sshd.setSubsystemFactories(Collections.singletonList(factory));
+
+        Path parentPath = targetPath.getParent();
+        // null = default extensions (copy-file), space-available = no copy extensions (copy via the client)
+        String[] extensions = {null, SftpConstants.EXT_COPY_DATA, SftpConstants.EXT_SPACE_AVAILABLE};
+        try {
+            for (String ext : extensions) {
+                PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.CLIENT_EXTENSIONS_PROP, ext);
+                serverReads.set(0);
+
+                Path dstFile = lclSftp.resolve("dst-" + ext + ".bin");
+                Files.deleteIfExists(dstFile);
+                try (FileSystem fs = FileSystems.newFileSystem(createDefaultFileSystemURI(), Collections.emptyMap())) {
+                    Path src = fs.getPath(Utils.resolveRelativeRemotePath(parentPath, srcFile));
+                    Path dst = fs.getPath(Utils.resolveRelativeRemotePath(parentPath, dstFile));
+                    Files.copy(src, dst);
+                }
+
+                assertArrayEquals("Mismatched copied data for extension=" + ext, expected, Files.readAllBytes(dstFile));
+                if (SftpConstants.EXT_SPACE_AVAILABLE.equals(ext)) {
+                    assertTrue("No data read via the client", serverReads.get() > 0);
+                } else {
+                    assertEquals("Unexpected data read via the client for extension=" + ext, 0, serverReads.get());
+                }
+            }
+        } finally {
+            PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.CLIENT_EXTENSIONS_PROP, null);
+            sshd.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        }
+    }
+
+    @Test
+    public void testDirectoryEntriesCarryAttributes() throws Exception {
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        Utils.deleteRecursive(lclSftp);
+        Path lclDir = assertHierarchyTargetFolderExists(lclSftp.resolve("dir"));
+        Path lclFile = lclDir.resolve("file.txt");
+        Files.write(lclFile, "0123456789".getBytes(StandardCharsets.UTF_8));
+
+        Path parentPath = targetPath.getParent();
+        try (FileSystem fs = FileSystems.newFileSystem(createDefaultFileSystemURI(), Collections.emptyMap())) {
+            Path dir = fs.getPath(Utils.resolveRelativeRemotePath(parentPath, lclDir));
+            Path file;
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                List<Path> entries = new LinkedList<>();
+                ds.forEach(entries::add);
+                assertEquals("Mismatched entries count: " + entries, 1, entries.size());
+                file = entries.get(0);
+            }
+            assertObjectInstanceOf("Listed path has no attributes", SftpPathWithAttributes.class, file);
+            assertTrue("Not a regular file", Files.isRegularFile(file));
+            assertEquals("Mismatched listed size", 10L, Files.size(file));
+
+            // modify the file behind the client's back - the listed path should not query the server
+            Files.write(lclFile, "01234567890123456789".getBytes(StandardCharsets.UTF_8));
+            assertEquals("Listed size not used", 10L, Files.size(file));
+            assertEquals("Mismatched actual size", 20L, Files.size(fs.getPath(file.toString())));
+
+            // any modification via the file system makes the listed attributes obsolete
+            Files.write(dir.resolve("other.txt"), "other".getBytes(StandardCharsets.UTF_8));
+            assertEquals("Stale listed size used", 20L, Files.size(file));
+        }
+    }
+
+    @Test
+    public void testAttributesCache() throws Exception {
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        Path lclFile = assertHierarchyTargetFolderExists(lclSftp).resolve("file.txt");
+        Files.write(lclFile, "0123456789".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, Object> params = Collections.singletonMap(SftpFileSystem.ATTRIBUTES_CACHE_TTL_PROP, TimeUnit.MINUTES.toMillis(5L));
+        try (SftpFileSystem fs = (SftpFileSystem) FileSystems.newFileSystem(createDefaultFileSystemURI(params), Collections.emptyMap())) {
+            SftpAttributesCache cache = fs.getAttributesCache();
+            assertNotNull("No attributes cache", cache);
+
+            Path file = fs.getPath(Utils.resolveRelativeRemotePath(targetPath.getParent(), lclFile));
+            assertEquals("Mismatched initial size", 10L, Files.size(file));
+
+            // modify the file behind the client's back - the cached attributes should be used
+            Files.write(lclFile, "01234567890123456789".getBytes(StandardCharsets.UTF_8));
+            assertEquals("Cached size not used", 10L, Files.size(fs.getPath(file.toString())));
+            assertTrue("No cache hits: " + cache, cache.getHits() > 0L);
+
+            // modifications via the file system invalidate the cached attributes
+            Files.write(file, "01234".getBytes(StandardCharsets.UTF_8));
+            assertEquals("Stale size after write", 5L, Files.size(file));
+
+            // closing a written handle through the handle itself invalidates the attributes cached meanwhile
+            String remotePath = file.toString();
+            try (SftpClient client = fs.getClient();
+                 CloseableHandle handle = client.open(remotePath, OpenMode.Write, OpenMode.Truncate)) {
+                client.write(handle, 0L, "abc".getBytes(StandardCharsets.UTF_8));
+                assertEquals("Mismatched size while writing", 3L, Files.size(file));
+                client.write(handle, 3L, "defgh".getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals("Stale size after handle close", 8L, Files.size(file));
+
+            Files.delete(file);
+            assertFalse("File still exists", Files.exists(file));
+        }
+    }
+
     @Test
     public void testFileStore() throws IOException {
         try (FileSystem fs = FileSystems.newFileSystem(createDefaultFileSystemURI(), Collections.emptyMap())) {
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.Factory;
+import org.apache.sshd.common.random.Random;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.util.test.Utils;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpFileTransferTest extends AbstractSftpClientTestSupport {
+    private static final int BLOCK_SIZE = 4 * 1024;
+
+    private Path localFile;
+    private Path remoteFile;
+    private String remotePath;
+    private byte[] data;
+
+    public SftpFileTransferTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        Utils.deleteRecursive(lclSftp);
+        assertHierarchyTargetFolderExists(lclSftp);
+        localFile = lclSftp.resolve("local.bin");
+        remoteFile = lclSftp.resolve("remote.bin");
+        remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), remoteFile);
+
+        data = new byte[20 * BLOCK_SIZE + 1234];
+        Factory<? extends Random> factory = sshd.getRandomFactory();
+        Random rnd = factory.create();
+        rnd.fill(data);
+    }
+
+    @Test
+    public void testUploadNewFile() throws Exception {
+        Files.write(localFile, data);
+        SftpFileTransfer.Progress progress = transfer(true);
+        assertArrayEquals("Mismatched uploaded data", data, Files.readAllBytes(remoteFile));
+        assertEquals("Unexpected skipped bytes", 0L, progress.getSkippedBytes());
+        assertEquals("Mismatched transferred bytes", data.length, progress.getTransferredBytes());
+    }
+
+    @Test
+    public void testResumeInterruptedUpload() throws Exception {
+        Files.write(localFile, data);
+        // simulate an interrupted upload with a corrupted block
+        byte[] partial = Arrays.copyOf(data, 12 * BLOCK_SIZE + 17);
+        partial[3 * BLOCK_SIZE + 7]++;
+        Files.write(remoteFile, partial);
+
+        SftpFileTransfer.Progress progress = transfer(true);
+        assertArrayEquals("Mismatched uploaded data", data, Files.readAllBytes(remoteFile));
+        // only the corrupted block and the missing data
+        long expected = BLOCK_SIZE + (data.length - partial.length);
+        assertEquals("Mismatched transferred bytes", expected, progress.getTransferredBytes());
+        assertEquals("Mismatched skipped bytes", data.length - expected, progress.getSkippedBytes());
+    }
+
+    @Test
+    public void testUploadTruncatesLargerRemoteFile() throws Exception {
+        Files.write(localFile, data);
+        byte[] larger = Arrays.copyOf(data, data.length + 3 * BLOCK_SIZE);
+        Files.write(remoteFile, larger);
+
+        SftpFileTransfer.Progress progress = transfer(true);
+        assertArrayEquals("Mismatched uploaded data", data, Files.readAllBytes(remoteFile));
+        assertEquals("Unexpected transferred bytes", 0L, progress.getTransferredBytes());
+        assertEquals("Mismatched skipped bytes", data.length, progress.getSkippedBytes());
+    }
+
+    @Test
+    public void testResumeInterruptedDownload() throws Exception {
+        Files.write(remoteFile, data);
+        byte[] partial = Arrays.copyOf(data, 7 * BLOCK_SIZE);
+        partial[BLOCK_SIZE]++;
+        partial[5 * BLOCK_SIZE + 1]++;
+        Files.write(localFile, partial);
+
+        SftpFileTransfer.Progress progress = transfer(false);
+        assertArrayEquals("Mismatched downloaded data", data, Files.readAllBytes(localFile));
+        long expected = 2L * BLOCK_SIZE + (data.length - 7L * BLOCK_SIZE);
+        assertEquals("Mismatched transferred bytes", expected, progress.getTransferredBytes());
+    }
+
+    private SftpFileTransfer.Progress transfer(boolean upload) throws Exception {
+        AtomicInteger started = new AtomicInteger();
+        AtomicReference<Object> finished = new AtomicReference<>();
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            SftpFileTransfer transfer = new SftpFileTransfer(sftp);
+            transfer.setBlockSize(BLOCK_SIZE);
+            transfer.setChunkSize(BLOCK_SIZE / 2);
+            transfer.setTransferListener(new SftpTransferListener() {
+                @Override
+                public void started(SftpFileTransfer.Progress progress) {
+                    started.incrementAndGet();
+                }
+
+                @Override
+                public void finished(SftpFileTransfer.Progress progress, Throwable thrown) {
+                    finished.set((thrown == null) ? progress : thrown);
+                }
+            });
+
+            SftpFileTransfer.Progress progress = upload ? transfer.upload(localFile, remotePath) : transfer.download(remotePath, localFile);
+            assertEquals("Mismatched started notifications", 1, started.get());
+            assertSame("Mismatched finished notification", progress, finished.get());
+            assertTrue("Progress not done", progress.isDone());
+            assertEquals("Mismatched size", data.length, progress.getSize());
+            return progress;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.OpenMode;
+import org.apache.sshd.common.Factory;
+import org.apache.sshd.common.random.Random;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+import org.apache.sshd.server.subsystem.sftp.SftpReadAheadManager;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.apache.sshd.util.test.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpReadAheadTest extends AbstractSftpClientTestSupport {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private Path testFile;
+    private String remotePath;
+    private byte[] expected;
+    private SftpReadAheadManager readAheadManager;
+
+    public SftpReadAheadTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        testFile = assertHierarchyTargetFolderExists(lclSftp).resolve("file.bin");
+        expected = new byte[5 * BLOCK_SIZE + 1234];
+
+        Factory<? extends Random> factory = sshd.getRandomFactory();
+        Random rnd = factory.create();
+        rnd.fill(expected);
+        Files.write(testFile, expected);
+        remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), testFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (readAheadManager != null) {
+            readAheadManager.close();
+        }
+    }
+
+    @Test
+    public void testSequentialReadsServedFromPrefetchedData() throws Exception {
+        SftpReadAheadManager manager = setupReadAheadManager(BLOCK_SIZE, 4L * BLOCK_SIZE);
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            try (CloseableHandle handle = sftp.open(remotePath, OpenMode.Read)) {
+                byte[] actual = new byte[expected.length];
+                for (int offset = 0; offset < actual.length;) {
+                    int readLen = sftp.read(handle, offset, actual, offset, Math.min(CHUNK_SIZE, actual.length - offset));
+                    assertTrue("Premature EOF at offset=" + offset, readLen > 0);
+                    offset += readLen;
+                }
+                assertArrayEquals("Mismatched data", expected, actual);
+                assertEquals("Unexpected data beyond EOF", -1, sftp.read(handle, actual.length, actual, 0, CHUNK_SIZE));
+            }
+
+            assertEquals("Prefetched memory not released", 0L, manager.getUsedMemory());
+        }
+
+        outputDebugMessage("%s: %s - hit rate=%f", getCurrentTestName(), manager, manager.getHitRate());
+        assertTrue("No blocks prefetched", manager.getPrefetchedBlocks() > 0L);
+        // all but the first few reads (needed to detect the sequential pattern) should be hits
+        long expectedHits = (expected.length / CHUNK_SIZE) - manager.getSequentialThreshold();
+        assertTrue("Not enough hits: " + manager, manager.getHits() >= expectedHits);
+    }
+
+    @Test
+    public void testRandomAccessNotPrefetched() throws Exception {
+        SftpReadAheadManager manager = setupReadAheadManager(BLOCK_SIZE, 4L * BLOCK_SIZE);
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session);
+             CloseableHandle handle = sftp.open(remotePath, OpenMode.Read)) {
+            byte[] actual = new byte[CHUNK_SIZE];
+            for (int offset = expected.length - CHUNK_SIZE; offset > 0; offset -= 3 * CHUNK_SIZE) {
+                int readLen = sftp.read(handle, offset, actual, 0, actual.length);
+                assertEquals("Mismatched read length at offset=" + offset, actual.length, readLen);
+                assertArrayEquals("Mismatched data at offset=" + offset,
+                    Arrays.copyOfRange(expected, offset, offset + actual.length), actual);
+            }
+        }
+
+        assertEquals("Unexpected prefetched blocks", 0L, manager.getPrefetchedBlocks());
+        assertEquals("Unexpected hits", 0L, manager.getHits());
+    }
+
+    @Test
+    public void testMemoryCapSharedByHandles() throws Exception {
+        SftpReadAheadManager manager = setupReadAheadManager(BLOCK_SIZE, BLOCK_SIZE);
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session);
+             CloseableHandle h1 = sftp.open(remotePath, OpenMode.Read);
+             CloseableHandle h2 = sftp.open(remotePath, OpenMode.Read)) {
+            byte[] actual1 = new byte[expected.length];
+            byte[] actual2 = new byte[expected.length];
+            for (int offset = 0; offset < expected.length; offset += CHUNK_SIZE) {
+                int len = Math.min(CHUNK_SIZE, expected.length - offset);
+                assertEquals("Mismatched 1st handle read length at offset=" + offset, len, sftp.read(h1, offset, actual1, offset, len));
+                assertEquals("Mismatched 2nd handle read length at offset=" + offset, len, sftp.read(h2, offset, actual2, offset, len));
+                assertTrue("Memory cap exceeded: " + manager, manager.getUsedMemory() <= manager.getMaxMemory());
+            }
+
+            assertArrayEquals("Mismatched 1st handle data", expected, actual1);
+            assertArrayEquals("Mismatched 2nd handle data", expected, actual2);
+        }
+
+        assertTrue("No blocks rejected: " + manager, manager.getRejectedBlocks() > 0L);
+        assertEquals("Prefetched memory not released", 0L, manager.getUsedMemory());
+    }
+
+    @Test
+    public void testCloseShutsDownOwnedExecutorOnly() throws Exception {
+        ExecutorService executor = ThreadUtils.newCachedThreadPool(getCurrentTestName());
+        try {
+            SftpReadAheadManager manager = new SftpReadAheadManager(BLOCK_SIZE, BLOCK_SIZE, executor);
+            manager.close();
+            assertFalse("Manager still open", manager.isOpen());
+            assertFalse("Shared executor shut down", executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        SftpReadAheadManager manager = new SftpReadAheadManager(BLOCK_SIZE, BLOCK_SIZE);
+        manager.close();
+        assertTrue("Owned executor not shut down", manager.getExecutorService().isShutdown());
+    }
+
+    private SftpReadAheadManager setupReadAheadManager(int blockSize, long maxMemory) {
+        readAheadManager = new SftpReadAheadManager(blockSize, maxMemory);
+        SftpSubsystemFactory factory = new SftpSubsystemFactory.Builder()
+            .withReadAheadManager(readAheadManager)
+            .build();
+        sshd.setSubsystemFactories(Collections.singletonList(factory));
+        return readAheadManager;
+    }
+}
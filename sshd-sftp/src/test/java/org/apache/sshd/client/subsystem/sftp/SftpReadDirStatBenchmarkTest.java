@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.DirEntry;
+import org.apache.sshd.common.PropertyResolverUtils;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.subsystem.sftp.SftpFileAttributes;
+import org.apache.sshd.common.subsystem.sftp.SftpHelper;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystem;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.apache.sshd.util.test.Utils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the cost of {@code SSH_FXP_READDIR} and {@code SSH_FXP_(L)STAT} on a large
+ * directory - both end-to-end and for the server-side attributes encoding alone. The
+ * number of entries can be controlled via the {@value #NUM_ENTRIES_PROP} system property.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpReadDirStatBenchmarkTest extends AbstractSftpClientTestSupport {
+    public static final String NUM_ENTRIES_PROP = "sftp-benchmark-entries";
+    public static final int DEFAULT_NUM_ENTRIES = 2000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private Path lclSftp;
+    private String remotePath;
+    private int numEntries;
+
+    public SftpReadDirStatBenchmarkTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+
+        numEntries = Integer.getInteger(NUM_ENTRIES_PROP, DEFAULT_NUM_ENTRIES);
+        Path targetPath = detectTargetFolder();
+        lclSftp = assertHierarchyTargetFolderExists(
+            Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), "entries-" + numEntries));
+        for (int index = 0; index < numEntries; index++) {
+            Path file = lclSftp.resolve(String.format("entry-%06d.txt", index));
+            if (!Files.exists(file)) {
+                Files.write(file, file.getFileName().toString().getBytes());
+            }
+        }
+        remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), lclSftp);
+    }
+
+    @Test
+    public void testReadDirAndStat() throws Exception {
+        try (ClientSession session = client.connect(getCurrentTestName(), TEST_LOCALHOST, port).verify(7L, TimeUnit.SECONDS).getSession()) {
+            session.addPasswordIdentity(getCurrentTestName());
+            session.auth().verify(5L, TimeUnit.SECONDS);
+
+            for (int version : new int[]{SftpConstants.SFTP_V3, SftpConstants.SFTP_V6}) {
+                try (SftpClient sftp = createSftpClient(session, version)) {
+                    // warm up
+                    sftp.readDir(remotePath).forEach(e -> e.getFilename());
+
+                    long start = System.nanoTime();
+                    List<String> names = new ArrayList<>(numEntries + 2);
+                    for (DirEntry entry : sftp.readDir(remotePath)) {
+                        String name = entry.getFilename();
+                        if (".".equals(name) || "..".equals(name)) {
+                            continue;
+                        }
+                        names.add(name);
+                    }
+                    long readDirNanos = System.nanoTime() - start;
+                    assertEquals("Mismatched entries count - version=" + version, numEntries, names.size());
+
+                    start = System.nanoTime();
+                    for (String name : names) {
+                        Attributes attrs = sftp.lstat(remotePath + "/" + name);
+                        assertTrue("Not a regular file: " + name, attrs.isRegularFile());
+                    }
+                    long statNanos = System.nanoTime() - start;
+
+                    log.info("{}: version={}, entries={}, readDir={} msec. ({} entries/sec.), lstat={} msec. ({} calls/sec.)",
+                        getCurrentTestName(), version, numEntries,
+                        TimeUnit.NANOSECONDS.toMillis(readDirNanos), ratePerSecond(numEntries, readDirNanos),
+                        TimeUnit.NANOSECONDS.toMillis(statNanos), ratePerSecond(numEntries, statNanos));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadDirPrefetch() throws Exception {
+        Set<String> expected = new TreeSet<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(lclSftp)) {
+            ds.forEach(p -> expected.add(p.getFileName().toString()));
+        }
+
+        // the attributes are pre-fetched by the asynchronous I/O executor
+        ExecutorService ioExecutor = ThreadUtils.newFixedThreadPool(getCurrentTestName(), 2);
+        sshd.setSubsystemFactories(Collections.singletonList(
+            new SftpSubsystemFactory.Builder().withAsyncFileIoExecutor(ioExecutor).build()));
+        try (ClientSession session = client.connect(getCurrentTestName(), TEST_LOCALHOST, port).verify(7L, TimeUnit.SECONDS).getSession()) {
+            session.addPasswordIdentity(getCurrentTestName());
+            session.auth().verify(5L, TimeUnit.SECONDS);
+
+            for (boolean prefetch : new boolean[]{false, true}) {
+                PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.READDIR_PREFETCH_PROP, prefetch);
+                try (SftpClient sftp = createSftpClient(session)) {
+                    long start = System.nanoTime();
+                    Set<String> names = new TreeSet<>();
+                    for (DirEntry entry : sftp.readDir(remotePath)) {
+                        String name = entry.getFilename();
+                        if (".".equals(name) || "..".equals(name)) {
+                            continue;
+                        }
+                        assertTrue("Duplicate entry: " + name, names.add(name));
+                        assertTrue("Not a regular file: " + name, entry.getAttributes().isRegularFile());
+                    }
+                    long readDirNanos = System.nanoTime() - start;
+                    assertEquals("Mismatched entries - prefetch=" + prefetch, expected, names);
+
+                    log.info("{}: prefetch={}, entries={}, readDir={} msec. ({} entries/sec.)",
+                        getCurrentTestName(), prefetch, numEntries,
+                        TimeUnit.NANOSECONDS.toMillis(readDirNanos), ratePerSecond(numEntries, readDirNanos));
+                } finally {
+                    PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.READDIR_PREFETCH_PROP, null);
+                }
+            }
+        } finally {
+            ioExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testServerSideAttributesEncoding() throws Exception {
+        Assume.assumeTrue("POSIX view not supported", lclSftp.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        boolean unixView = lclSftp.getFileSystem().supportedFileAttributeViews().contains("unix");
+        List<Path> entries = new ArrayList<>(numEntries);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(lclSftp)) {
+            ds.forEach(entries::add);
+        }
+
+        LinkOption[] options = IoUtils.getLinkOptions(false);
+        for (int version : new int[]{SftpConstants.SFTP_V3, SftpConstants.SFTP_V6}) {
+            Buffer buffer = new ByteArrayBuffer(Short.MAX_VALUE, false);
+            long mapNanos = Long.MAX_VALUE;
+            long recordNanos = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {   // first round(s) serve as warm-up
+                buffer.clear();
+                long start = System.nanoTime();
+                for (Path p : entries) {
+                    NavigableMap<String, Object> attrs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                    attrs.putAll(Files.readAttributes(p, unixView ? "unix:*" : "posix:*", options));
+                    if (version == SftpConstants.SFTP_V3) {
+                        buffer.putString(SftpHelper.getLongName(p.getFileName().toString(), attrs));
+                    }
+                    SftpHelper.writeAttrs(buffer, version, attrs);
+                    buffer.clear();
+                }
+                mapNanos = Math.min(mapNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (Path p : entries) {
+                    SftpFileAttributes attrs = SftpFileAttributes.fromFileAttributes(
+                        Files.readAttributes(p, PosixFileAttributes.class, options));
+                    if (version == SftpConstants.SFTP_V3) {
+                        if (unixView) {
+                            Map<String, ?> ids = Files.readAttributes(p, "unix:uid,gid,nlink", options);
+                            attrs.setUserAndGroupIds(((Number) ids.get("uid")).intValue(), ((Number) ids.get("gid")).intValue());
+                            attrs.setLinkCount(((Number) ids.get("nlink")).intValue());
+                        }
+                        buffer.putString(SftpHelper.getLongName(p.getFileName().toString(), attrs));
+                    }
+                    SftpHelper.writeAttrs(buffer, version, attrs);
+                    buffer.clear();
+                }
+                recordNanos = Math.min(recordNanos, System.nanoTime() - start);
+            }
+
+            log.info("{}: version={}, entries={}, map={} msec. ({} entries/sec.), record={} msec. ({} entries/sec.)",
+                getCurrentTestName(), version, entries.size(),
+                TimeUnit.NANOSECONDS.toMillis(mapNanos), ratePerSecond(entries.size(), mapNanos),
+                TimeUnit.NANOSECONDS.toMillis(recordNanos), ratePerSecond(entries.size(), recordNanos));
+        }
+    }
+
+    private static long ratePerSecond(long count, long nanos) {
+        return (nanos <= 0L) ? count : (count * TimeUnit.SECONDS.toNanos(1L)) / nanos;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpFileTransfer.Progress;
+import org.apache.sshd.common.Factory;
+import org.apache.sshd.common.random.Random;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.util.test.Utils;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpStripedTransferTest extends AbstractSftpClientTestSupport {
+    private static final int STRIPE_SIZE = 64 * 1024;
+
+    private Path targetPath;
+    private Path lclSftp;
+    private Path srcFile;
+    private byte[] data;
+
+    public SftpStripedTransferTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+
+        targetPath = detectTargetFolder();
+        lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        Utils.deleteRecursive(lclSftp);
+        assertHierarchyTargetFolderExists(lclSftp);
+
+        Factory<? extends Random> factory = sshd.getRandomFactory();
+        Random rnd = factory.create();
+        data = new byte[STRIPE_SIZE * 10 + rnd.random(STRIPE_SIZE)];
+        rnd.fill(data);
+        srcFile = lclSftp.resolve("source.bin");
+        Files.write(srcFile, data);
+    }
+
+    @Test
+    public void testStripedUpload() throws Exception {
+        Path dstFile = lclSftp.resolve("remote.bin");
+        Files.write(dstFile, new byte[data.length * 2]);    // make sure it is truncated
+        String remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), dstFile);
+        try (ClientSession session1 = createAuthenticatedClientSession();
+             ClientSession session2 = createAuthenticatedClientSession()) {
+            List<SftpClient> clients = new ArrayList<>(SftpStripedTransfer.createClients(session1, 2));
+            clients.add(createSftpClient(session2));
+            try {
+                SftpStripedTransfer transfer = new SftpStripedTransfer(clients);
+                transfer.setStripeSize(STRIPE_SIZE);
+                AtomicInteger finished = new AtomicInteger(0);
+                transfer.setTransferListener(new SftpTransferListener() {
+                    @Override
+                    public void finished(Progress progress, Throwable thrown) {
+                        assertNull("Unexpected failure", thrown);
+                        finished.incrementAndGet();
+                    }
+                });
+
+                Progress progress = transfer.upload(srcFile, remotePath);
+                assertTrue("Transfer not done", progress.isDone());
+                assertEquals("Mismatched transferred bytes", data.length, progress.getTransferredBytes());
+                assertEquals("Mismatched finish notifications", 1, finished.get());
+                assertArrayEquals("Mismatched uploaded data", data, Files.readAllBytes(dstFile));
+            } finally {
+                IoUtils.closeQuietly(clients.toArray(new SftpClient[clients.size()]));
+            }
+        }
+    }
+
+    @Test
+    public void testStripedDownload() throws Exception {
+        Path dstFile = lclSftp.resolve("local.bin");
+        Files.write(dstFile, new byte[data.length * 2]);    // make sure it is truncated
+        String remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), srcFile);
+        try (ClientSession session = createAuthenticatedClientSession()) {
+            List<SftpClient> clients = SftpStripedTransfer.createClients(session, 3);
+            try {
+                SftpStripedTransfer transfer = new SftpStripedTransfer(clients);
+                transfer.setStripeSize(STRIPE_SIZE);
+                for (SftpFileTransfer t : transfer.getFileTransfers()) {
+                    t.setChunkSize(STRIPE_SIZE / 8);
+                }
+
+                Progress progress = transfer.download(remotePath, dstFile);
+                assertEquals("Mismatched transferred bytes", data.length, progress.getTransferredBytes());
+                assertArrayEquals("Mismatched downloaded data", data, Files.readAllBytes(dstFile));
+            } finally {
+                IoUtils.closeQuietly(clients.toArray(new SftpClient[clients.size()]));
+            }
+        }
+    }
+}
@@ -100,6 +100,7 @@ import org.apache.sshd.server.subsystem.sftp.Handle;
 import org.apache.sshd.server.subsystem.sftp.SftpEventListener;
 import org.apache.sshd.server.subsystem.sftp.SftpEventListenerManager;
 import org.apache.sshd.server.subsystem.sftp.SftpFileSystemAccessor;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystem;
 import org.apache.sshd.server.subsystem.sftp.SftpSubsystemEnvironment;
 import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
 import org.apache.sshd.util.test.SimpleUserInfo;
@@ -232,6 +233,50 @@ public class SftpTest extends AbstractSftpClientTestSupport {
         }
     }
 
+    @Test
+    public void testReadMappedRegions() throws Exception {
+        Path targetPath = detectTargetFolder();
+        Path parentPath = targetPath.getParent();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        Path testFile = assertHierarchyTargetFolderExists(lclSftp).resolve("file.bin");
+        byte[] expected = new byte[350003];
+
+        Factory<? extends Random> factory = sshd.getRandomFactory();
+        Random rnd = factory.create();
+        rnd.fill(expected);
+        Files.write(testFile, expected);
+
+        try (ClientSession session = client.connect(getCurrentTestName(), TEST_LOCALHOST, port).verify(7L, TimeUnit.SECONDS).getSession()) {
+            session.addPasswordIdentity(getCurrentTestName());
+            session.auth().verify(5L, TimeUnit.SECONDS);
+
+            // use a region size that is not a multiple of the read size so reads span regions
+            PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.READ_MAPPED_REGION_SIZE_PROP, 100000);
+            try (SftpClient sftp = createSftpClient(session);
+                 CloseableHandle handle = sftp.open(Utils.resolveRelativeRemotePath(parentPath, testFile), OpenMode.Read)) {
+                // the replies exceed the channel packet size and are therefore split
+                byte[] actual = new byte[expected.length];
+                int chunkSize = 32 * 1024;
+                for (int offset = 0; offset < actual.length;) {
+                    int readLen = sftp.read(handle, offset, actual, offset, Math.min(chunkSize, actual.length - offset));
+                    assertTrue("Premature EOF at offset=" + offset, readLen > 0);
+                    offset += readLen;
+                }
+                assertArrayEquals("Mismatched sequential data", expected, actual);
+
+                byte[] chunk = new byte[1000];
+                int readLen = sftp.read(handle, 12345L, chunk, 0, chunk.length);
+                assertEquals("Mismatched random access read length", chunk.length, readLen);
+                assertArrayEquals("Mismatched random access data", Arrays.copyOfRange(expected, 12345, 12345 + chunk.length), chunk);
+
+                readLen = sftp.read(handle, expected.length, chunk, 0, chunk.length);
+                assertEquals("Unexpected read beyond EOF", -1, readLen);
+            } finally {
+                PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.READ_MAPPED_REGION_SIZE_PROP, null);
+            }
+        }
+    }
+
     @Test   // see extra fix for SSHD-538
     public void testNavigateBeyondRootFolder() throws Exception {
         Path rootLocation = Paths.get(OsUtils.isUNIX() ? "/" : "C:\\");
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.apache.sshd.server.subsystem.sftp.SftpTrafficShaper;
+import org.apache.sshd.server.subsystem.sftp.SftpTrafficShaper.Tenant;
+import org.apache.sshd.util.test.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpTrafficShapingTest extends AbstractSftpClientTestSupport {
+    private SftpTrafficShaper shaper;
+
+    public SftpTrafficShapingTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+        shaper = new SftpTrafficShaper();
+        SftpSubsystemFactory factory = new SftpSubsystemFactory.Builder()
+            .withTrafficShaper(shaper)
+            .build();
+        sshd.setSubsystemFactories(Collections.singletonList(factory));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        shaper.close();
+    }
+
+    @Test
+    public void testBandwidthLimit() throws Exception {
+        int rate = 128 * 1024;
+        shaper.setTenantLimits(getCurrentTestName(), rate, 0L);
+
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        Path file = assertHierarchyTargetFolderExists(lclSftp).resolve("file.bin");
+        byte[] expected = new byte[3 * rate];
+        for (int index = 0; index < expected.length; index++) {
+            expected[index] = (byte) index;
+        }
+        Files.write(file, expected);
+        String remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), file);
+
+        byte[] actual;
+        long elapsed;
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            long start = System.nanoTime();
+            try (InputStream input = sftp.read(remotePath)) {
+                actual = IoUtils.toByteArray(input);
+            }
+            elapsed = System.nanoTime() - start;
+        }
+
+        assertArrayEquals("Mismatched read data", expected, actual);
+        // the 1st second worth of data is a burst, the rest is shaped
+        assertTrue("Read not shaped: " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " msec.",
+            elapsed >= TimeUnit.MILLISECONDS.toNanos(1500L));
+
+        Tenant tenant = shaper.getTenant(getCurrentTestName());
+        assertTrue("Read bytes not reported: " + tenant, tenant.getBytesRead() >= expected.length);
+        assertTrue("No delayed requests reported: " + tenant, tenant.getDelayedRequests() > 0L);
+    }
+
+    @Test
+    public void testRequestsRateLimit() throws Exception {
+        int rate = Byte.SIZE;
+        shaper.setTenantLimits(getCurrentTestName(), 0L, rate);
+
+        Path targetPath = detectTargetFolder();
+        String remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), targetPath);
+        long elapsed;
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            long start = System.nanoTime();
+            for (int index = 0; index < 3 * rate; index++) {
+                assertNotNull("No attributes at iteration #" + index, sftp.stat(remotePath));
+            }
+            elapsed = System.nanoTime() - start;
+        }
+
+        assertTrue("Requests not shaped: " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " msec.",
+            elapsed >= TimeUnit.MILLISECONDS.toNanos(1500L));
+
+        Tenant tenant = shaper.getTenant(getCurrentTestName());
+        assertTrue("Requests not reported: " + tenant, tenant.getRequests() >= 3 * rate);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.DirEntry;
+import org.apache.sshd.common.Factory;
+import org.apache.sshd.common.random.Random;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.util.test.Utils;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpTreeTransferTest extends AbstractSftpClientTestSupport {
+    private static final int NUM_DIRS = 3;
+    private static final int FILES_PER_DIR = 10;
+    private static final long NUM_FILES = NUM_DIRS * FILES_PER_DIR;
+
+    private Path targetPath;
+    private Path lclSftp;
+    private Path sourceTree;
+
+    public SftpTreeTransferTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+
+        targetPath = detectTargetFolder();
+        lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        Utils.deleteRecursive(lclSftp);
+        sourceTree = assertHierarchyTargetFolderExists(lclSftp.resolve("source"));
+
+        Factory<? extends Random> factory = sshd.getRandomFactory();
+        Random rnd = factory.create();
+        for (int d = 0; d < NUM_DIRS; d++) {
+            Path dir = assertHierarchyTargetFolderExists(sourceTree.resolve("dir" + d).resolve("sub" + d));
+            for (int f = 0; f < FILES_PER_DIR; f++) {
+                byte[] data = new byte[1 + rnd.random(Short.MAX_VALUE)];
+                rnd.fill(data);
+                Path file = dir.resolve("file" + f + ".bin");
+                Files.write(file, data);
+                // make sure the time can be represented in seconds
+                Files.setLastModifiedTime(file, FileTime.from(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - f, TimeUnit.SECONDS));
+            }
+        }
+        assertHierarchyTargetFolderExists(sourceTree.resolve("empty"));
+    }
+
+    @Test
+    public void testUploadTree() throws Exception {
+        Path remoteTree = lclSftp.resolve("remote");
+        String remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), remoteTree);
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp1 = createSftpClient(session);
+             SftpClient sftp2 = createSftpClient(session)) {
+            SftpTreeTransfer transfer = new SftpTreeTransfer(Arrays.asList(sftp1, sftp2));
+            transfer.setConcurrency(4);
+
+            SftpTreeTransfer.Summary summary = transfer.upload(sourceTree, remotePath);
+            assertEquals("Mismatched transferred files", NUM_FILES, summary.getTransferredFiles());
+            assertEquals("Unexpected skipped files", 0L, summary.getSkippedFiles());
+            assertTrue("No data transferred", summary.getTransferredBytes() > 0L);
+            assertTreeEquals(sourceTree, remoteTree);
+
+            summary = transfer.upload(sourceTree, remotePath);
+            assertEquals("Unchanged files transferred", 0L, summary.getTransferredFiles());
+            assertEquals("Mismatched skipped files", NUM_FILES, summary.getSkippedFiles());
+
+            Path modified = sourceTree.resolve("dir1").resolve("sub1").resolve("file3.bin");
+            Files.write(modified, "modified".getBytes());
+            summary = transfer.upload(sourceTree, remotePath);
+            assertEquals("Mismatched transferred files", 1L, summary.getTransferredFiles());
+            assertEquals("Mismatched skipped files", NUM_FILES - 1L, summary.getSkippedFiles());
+            assertTreeEquals(sourceTree, remoteTree);
+        }
+    }
+
+    @Test
+    public void testDownloadTree() throws Exception {
+        Path localTree = lclSftp.resolve("local");
+        String remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), sourceTree);
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            SftpTreeTransfer transfer = new SftpTreeTransfer(sftp);
+
+            SftpTreeTransfer.Summary summary = transfer.download(remotePath, localTree);
+            assertEquals("Mismatched transferred files", NUM_FILES, summary.getTransferredFiles());
+            assertTreeEquals(sourceTree, localTree);
+
+            summary = transfer.download(remotePath, localTree);
+            assertEquals("Unchanged files transferred", 0L, summary.getTransferredFiles());
+            assertEquals("Mismatched skipped files", NUM_FILES, summary.getSkippedFiles());
+        }
+    }
+
+    @Test
+    public void testDownloadRejectsEscapingEntryNames() throws Exception {
+        Path localTree = lclSftp.resolve("local");
+        String remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), sourceTree);
+        for (String name : new String[]{"../escaped.bin", "..\\escaped.bin", "sub/escaped.bin"}) {
+            try (ClientSession session = createAuthenticatedClientSession();
+                 SftpClient sftp = createSftpClient(session)) {
+                SftpTreeTransfer transfer = new SftpTreeTransfer(sftp) {
+                    @Override
+                    protected List<DirEntry> readDirectory(SftpClient client, String remoteDir) throws IOException {
+                        // simulate a server reporting a malicious entry name
+                        Attributes attrs = new Attributes();
+                        attrs.setType(SftpConstants.SSH_FILEXFER_TYPE_REGULAR);
+                        attrs.setSize(1L);
+                        return Collections.singletonList(new DirEntry(name, name, attrs));
+                    }
+                };
+
+                try {
+                    transfer.download(remotePath, localTree);
+                    fail("Unexpected success for name=" + name);
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+
+            assertFalse("Escaped file created for name=" + name, Files.exists(lclSftp.resolve("escaped.bin")));
+            assertFalse("Sub-directory created for name=" + name, Files.exists(localTree.resolve("sub")));
+        }
+    }
+
+    private static void assertTreeEquals(Path expected, Path actual) throws Exception {
+        assertTrue("Missing directory: " + actual, Files.isDirectory(actual));
+        try (Stream<Path> entries = Files.list(expected)) {
+            for (Path e : (Iterable<Path>) entries::iterator) {
+                Path a = actual.resolve(e.getFileName().toString());
+                if (Files.isDirectory(e)) {
+                    assertTreeEquals(e, a);
+                } else {
+                    assertArrayEquals("Mismatched content of " + a, Files.readAllBytes(e), Files.readAllBytes(a));
+                    assertEquals("Mismatched modification time of " + a,
+                        Files.getLastModifiedTime(e).to(TimeUnit.SECONDS), Files.getLastModifiedTime(a).to(TimeUnit.SECONDS));
+                }
+            }
+        }
+    }
+}
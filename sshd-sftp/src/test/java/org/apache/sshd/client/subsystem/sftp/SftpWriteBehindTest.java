@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.client.subsystem.sftp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
+import org.apache.sshd.client.subsystem.sftp.SftpClient.OpenMode;
+import org.apache.sshd.common.PropertyResolverUtils;
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.common.subsystem.sftp.SftpException;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListenerManager;
+import org.apache.sshd.server.subsystem.sftp.SftpFileSystemAccessor;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystem;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.apache.sshd.util.test.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpWriteBehindTest extends AbstractSftpClientTestSupport {
+    private static final int WRITE_BEHIND_SIZE = 16 * 1024;
+    private static final int CHUNK_SIZE = 1024;
+
+    private final AtomicInteger channelWrites = new AtomicInteger();
+    private final AtomicBoolean failWrites = new AtomicBoolean();
+    private Path testFile;
+    private String remotePath;
+
+    public SftpWriteBehindTest() throws Exception {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        setupServer();
+        channelWrites.set(0);
+        failWrites.set(false);
+
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        testFile = assertHierarchyTargetFolderExists(lclSftp).resolve("file.bin");
+        Files.deleteIfExists(testFile);
+        remotePath = Utils.resolveRelativeRemotePath(targetPath.getParent(), testFile);
+
+        SftpSubsystemFactory factory = new SftpSubsystemFactory.Builder()
+            .withFileSystemAccessor(new SftpFileSystemAccessor() {
+                @Override
+                public SeekableByteChannel openFile(
+                        ServerSession session, SftpEventListenerManager subsystem,
+                        Path file, String handle, Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+                            throws IOException {
+                    return new CountingChannel(FileChannel.open(file, options, attrs));
+                }
+            })
+            .build();
+        sshd.setSubsystemFactories(Collections.singletonList(factory));
+        PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.WRITE_BEHIND_SIZE_PROP, WRITE_BEHIND_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.WRITE_BEHIND_SIZE_PROP, null);
+    }
+
+    @Test
+    public void testContiguousWritesCoalesced() throws Exception {
+        byte[] expected = new byte[4 * WRITE_BEHIND_SIZE + CHUNK_SIZE / 2];
+        for (int index = 0; index < expected.length; index++) {
+            expected[index] = (byte) index;
+        }
+
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            try (CloseableHandle handle = sftp.open(remotePath, OpenMode.Create, OpenMode.Write, OpenMode.Read)) {
+                for (int offset = 0; offset < expected.length; offset += CHUNK_SIZE) {
+                    sftp.write(handle, offset, expected, offset, Math.min(CHUNK_SIZE, expected.length - offset));
+                }
+
+                Attributes attrs = sftp.stat(handle);
+                assertEquals("Mismatched size before close", expected.length, attrs.getSize());
+            }
+        }
+
+        assertArrayEquals("Mismatched written data", expected, Files.readAllBytes(testFile));
+        int expectedWrites = (expected.length + WRITE_BEHIND_SIZE - 1) / WRITE_BEHIND_SIZE;
+        assertEquals("Mismatched number of channel writes", expectedWrites, channelWrites.get());
+    }
+
+    @Test
+    public void testNonContiguousWritesAndOverlappingReads() throws Exception {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        Arrays.fill(chunk, (byte) 'x');
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session);
+             CloseableHandle handle = sftp.open(remotePath, OpenMode.Create, OpenMode.Write, OpenMode.Read)) {
+            sftp.write(handle, 0L, chunk);
+            // a gap forces the pending data to be written
+            sftp.write(handle, 2L * CHUNK_SIZE, chunk);
+            assertEquals("Mismatched writes after gap", 1, channelWrites.get());
+
+            byte[] actual = new byte[CHUNK_SIZE];
+            int readLen = sftp.read(handle, 2L * CHUNK_SIZE, actual, 0, actual.length);
+            assertEquals("Mismatched read length of pending data", actual.length, readLen);
+            assertArrayEquals("Mismatched read pending data", chunk, actual);
+            assertEquals("Mismatched writes after read", 2, channelWrites.get());
+        }
+
+        assertEquals("Mismatched file size", 3L * CHUNK_SIZE, Files.size(testFile));
+    }
+
+    @Test
+    public void testWriteFailureReportedOnClose() throws Exception {
+        try (ClientSession session = createAuthenticatedClientSession();
+             SftpClient sftp = createSftpClient(session)) {
+            CloseableHandle handle = sftp.open(remotePath, OpenMode.Create, OpenMode.Write);
+            sftp.write(handle, 0L, new byte[CHUNK_SIZE]);
+            failWrites.set(true);
+            try {
+                sftp.close(handle);
+                fail("Unexpected close success");
+            } catch (SftpException e) {
+                assertEquals("Mismatched status", SftpConstants.SSH_FX_FAILURE, e.getStatus());
+            }
+        }
+    }
+
+    private class CountingChannel implements SeekableByteChannel {
+        private final SeekableByteChannel delegate;
+
+        CountingChannel(SeekableByteChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failWrites.get()) {
+                throw new IOException("Simulated write failure");
+            }
+            channelWrites.incrementAndGet();
+            return delegate.write(src);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+    }
+}
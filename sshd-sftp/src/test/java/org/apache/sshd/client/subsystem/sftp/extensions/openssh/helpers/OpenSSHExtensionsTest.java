@@ -29,6 +29,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -38,18 +39,22 @@ import org.apache.sshd.client.subsystem.sftp.AbstractSftpClientTestSupport;
 import org.apache.sshd.client.subsystem.sftp.SftpClient;
 import org.apache.sshd.client.subsystem.sftp.SftpClient.CloseableHandle;
 import org.apache.sshd.client.subsystem.sftp.extensions.openssh.OpenSSHFsyncExtension;
+import org.apache.sshd.client.subsystem.sftp.extensions.openssh.OpenSSHLimitsExtension;
 import org.apache.sshd.client.subsystem.sftp.extensions.openssh.OpenSSHStatExtensionInfo;
 import org.apache.sshd.client.subsystem.sftp.extensions.openssh.OpenSSHStatHandleExtension;
 import org.apache.sshd.client.subsystem.sftp.extensions.openssh.OpenSSHStatPathExtension;
+import org.apache.sshd.common.PropertyResolverUtils;
 import org.apache.sshd.common.subsystem.sftp.SftpConstants;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.AbstractOpenSSHExtensionParser.OpenSSHExtension;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.FstatVfsExtensionParser;
+import org.apache.sshd.common.subsystem.sftp.extensions.openssh.LimitsExtensionInfo;
 import org.apache.sshd.common.subsystem.sftp.extensions.openssh.StatVfsExtensionParser;
 import org.apache.sshd.common.util.GenericUtils;
 import org.apache.sshd.common.util.buffer.Buffer;
 import org.apache.sshd.common.util.io.IoUtils;
 import org.apache.sshd.server.command.Command;
 import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.AbstractSftpSubsystemHelper;
 import org.apache.sshd.server.subsystem.sftp.SftpSubsystem;
 import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
 import org.apache.sshd.util.test.Utils;
@@ -98,6 +103,50 @@ public class OpenSSHExtensionsTest extends AbstractSftpClientTestSupport {
         }
     }
 
+    @Test
+    public void testLimits() throws Exception {
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName());
+        Path srcFile = assertHierarchyTargetFolderExists(lclSftp).resolve(getCurrentTestName() + ".bin");
+        Path parentPath = targetPath.getParent();
+        String srcPath = Utils.resolveRelativeRemotePath(parentPath, srcFile);
+
+        int maxRead = 96 * 1024;
+        int maxWrite = 20 * 1024;
+        int maxHandles = Byte.MAX_VALUE;
+        PropertyResolverUtils.updateProperty(sshd, AbstractSftpSubsystemHelper.MAX_READDATA_PACKET_LENGTH_PROP, maxRead);
+        PropertyResolverUtils.updateProperty(sshd, AbstractSftpSubsystemHelper.MAX_WRITEDATA_PACKET_LENGTH_PROP, maxWrite);
+        PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.MAX_OPEN_HANDLES_PER_SESSION, maxHandles);
+        try (ClientSession session = client.connect(getCurrentTestName(), TEST_LOCALHOST, port).verify(7L, TimeUnit.SECONDS).getSession()) {
+            session.addPasswordIdentity(getCurrentTestName());
+            session.auth().verify(5L, TimeUnit.SECONDS);
+
+            try (SftpClient sftp = createSftpClient(session)) {
+                OpenSSHLimitsExtension ext = assertExtensionCreated(sftp, OpenSSHLimitsExtension.class);
+                LimitsExtensionInfo limits = ext.limits();
+                assertEquals("Mismatched max. read length", maxRead, limits.maxReadLength);
+                assertEquals("Mismatched max. write length", maxWrite, limits.maxWriteLength);
+                assertTrue("Max. packet length below data length: " + limits, limits.maxPacketLength > maxRead);
+                assertEquals("Mismatched max. open handles", maxHandles, limits.maxOpenHandles);
+
+                assertEquals("Mismatched default read buffer size", maxRead, sftp.getDefaultReadBufferSize());
+                assertEquals("Mismatched default write buffer size", maxWrite, sftp.getDefaultWriteBufferSize());
+
+                // make sure writes above the limit are split correctly
+                byte[] expected = new byte[maxWrite * 3 + Byte.MAX_VALUE];
+                new Random(System.nanoTime()).nextBytes(expected);
+                try (CloseableHandle fileHandle = sftp.open(srcPath, SftpClient.OpenMode.Write, SftpClient.OpenMode.Create)) {
+                    sftp.write(fileHandle, 0L, expected);
+                }
+                assertArrayEquals("Mismatched written data", expected, Files.readAllBytes(srcFile));
+            }
+        } finally {
+            PropertyResolverUtils.updateProperty(sshd, AbstractSftpSubsystemHelper.MAX_READDATA_PACKET_LENGTH_PROP, null);
+            PropertyResolverUtils.updateProperty(sshd, AbstractSftpSubsystemHelper.MAX_WRITEDATA_PACKET_LENGTH_PROP, null);
+            PropertyResolverUtils.updateProperty(sshd, SftpSubsystem.MAX_OPEN_HANDLES_PER_SESSION, null);
+        }
+    }
+
     @Test
     public void testStat() throws Exception {
         Path targetPath = detectTargetFolder();
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.common.subsystem.sftp;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.sshd.client.subsystem.sftp.SftpClient.Attributes;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.util.test.BaseTestSupport;
+import org.apache.sshd.util.test.Utils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SftpFileAttributesTest extends BaseTestSupport {
+    private Path lclFile;
+    private Path lclDir;
+
+    public SftpFileAttributesTest() {
+        super();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Path targetPath = detectTargetFolder();
+        Path lclSftp = Utils.resolve(targetPath, SftpConstants.SFTP_SUBSYSTEM_NAME, getClass().getSimpleName(), getCurrentTestName());
+        lclDir = assertHierarchyTargetFolderExists(lclSftp);
+        lclFile = lclDir.resolve(getCurrentTestName() + ".txt");
+        Files.write(lclFile, getClass().getName().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testV3EncodingMatchesMapForm() throws Exception {
+        for (Path p : Arrays.asList(lclFile, lclDir)) {
+            NavigableMap<String, Object> attrs = readAttributesMap(p);
+            SftpFileAttributes record = SftpFileAttributes.fromMap(attrs);
+            byte[] expected = SftpHelper.writeAttrs(new ByteArrayBuffer(), SftpConstants.SFTP_V3, attrs).getCompactData();
+            byte[] actual = SftpHelper.writeAttrs(new ByteArrayBuffer(), SftpConstants.SFTP_V3, record).getCompactData();
+            assertArrayEquals("Mismatched encoding for " + p, expected, actual);
+        }
+    }
+
+    @Test
+    public void testV4EncodingMatchesMapForm() throws Exception {
+        for (int version = SftpConstants.SFTP_V4; version <= SftpConstants.SFTP_V6; version++) {
+            for (Path p : Arrays.asList(lclFile, lclDir)) {
+                NavigableMap<String, Object> attrs = readAttributesMap(p);
+                SftpFileAttributes record = SftpFileAttributes.fromMap(attrs);
+                byte[] expected = SftpHelper.writeAttrs(new ByteArrayBuffer(), version, attrs).getCompactData();
+                byte[] actual = SftpHelper.writeAttrs(new ByteArrayBuffer(), version, record).getCompactData();
+                assertArrayEquals("Mismatched encoding for " + p + " - version=" + version, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testTypedAttributesMatchMapForm() throws Exception {
+        Assume.assumeTrue("POSIX view not supported", lclFile.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        for (Path p : Arrays.asList(lclFile, lclDir)) {
+            NavigableMap<String, Object> attrs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            attrs.putAll(Files.readAttributes(p, "posix:*", LinkOption.NOFOLLOW_LINKS));
+            SftpFileAttributes expected = SftpFileAttributes.fromMap(attrs);
+            SftpFileAttributes actual = SftpFileAttributes.fromFileAttributes(
+                Files.readAttributes(p, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+            for (int version = SftpConstants.SFTP_V3; version <= SftpConstants.SFTP_V6; version++) {
+                assertArrayEquals("Mismatched encoding for " + p + " - version=" + version,
+                    SftpHelper.writeAttrs(new ByteArrayBuffer(), version, expected).getCompactData(),
+                    SftpHelper.writeAttrs(new ByteArrayBuffer(), version, actual).getCompactData());
+            }
+            assertEquals("Mismatched long name for " + p,
+                SftpHelper.getLongName(p.getFileName().toString(), expected),
+                SftpHelper.getLongName(p.getFileName().toString(), actual));
+        }
+    }
+
+    @Test
+    public void testLongNameMatchesMapForm() throws Exception {
+        for (Path p : Arrays.asList(lclFile, lclDir)) {
+            NavigableMap<String, Object> attrs = readAttributesMap(p);
+            String shortName = p.getFileName().toString();
+            assertEquals("Mismatched long name for " + p,
+                SftpHelper.getLongName(shortName, attrs), SftpHelper.getLongName(shortName, SftpFileAttributes.fromMap(attrs)));
+        }
+
+        Map<String, Object> empty = Collections.emptyMap();
+        assertEquals("Mismatched empty attributes long name",
+            SftpHelper.getLongName(getCurrentTestName(), empty),
+            SftpHelper.getLongName(getCurrentTestName(), SftpFileAttributes.fromMap(empty)));
+    }
+
+    @Test
+    public void testMapAdapterRoundTrip() throws Exception {
+        for (Path p : Arrays.asList(lclFile, lclDir)) {
+            SftpFileAttributes expected = SftpFileAttributes.fromMap(readAttributesMap(p));
+            SftpFileAttributes actual = SftpFileAttributes.fromMap(expected.toMap());
+            assertEquals("Mismatched round trip for " + p, expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void testClientAttributesConversion() throws Exception {
+        for (int version = SftpConstants.SFTP_V3; version <= SftpConstants.SFTP_V6; version++) {
+            for (Path p : Arrays.asList(lclFile, lclDir)) {
+                SftpFileAttributes expected = SftpFileAttributes.fromMap(readAttributesMap(p));
+                Attributes attrs = Attributes.fromFileAttributes(expected);
+                assertEquals("Mismatched directory indicator for " + p, expected.isDirectory(), attrs.isDirectory());
+                assertEquals("Mismatched regular file indicator for " + p, expected.isRegularFile(), attrs.isRegularFile());
+
+                SftpFileAttributes actual = attrs.toFileAttributes();
+                Buffer expBuffer = SftpHelper.writeAttrs(new ByteArrayBuffer(), version, expected);
+                Buffer actBuffer = SftpHelper.writeAttrs(new ByteArrayBuffer(), version, actual);
+                assertArrayEquals("Mismatched encoding for " + p + " - version=" + version,
+                    expBuffer.getCompactData(), actBuffer.getCompactData());
+            }
+        }
+    }
+
+    private static NavigableMap<String, Object> readAttributesMap(Path p) throws Exception {
+        Collection<String> views = p.getFileSystem().supportedFileAttributeViews();
+        NavigableMap<String, Object> attrs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        attrs.putAll(Files.readAttributes(p, views.contains("unix") ? "unix:*" : "basic:*", LinkOption.NOFOLLOW_LINKS));
+        return attrs;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.server.subsystem.sftp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.common.util.threads.ThreadUtils;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.AsyncSftpEventListener.OverflowPolicy;
+import org.apache.sshd.util.test.BaseTestSupport;
+import org.apache.sshd.util.test.NoIoTestCase;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runners.MethodSorters;
+import org.mockito.Mockito;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@Category({ NoIoTestCase.class })
+public class AsyncSftpEventListenerTest extends BaseTestSupport {
+    public AsyncSftpEventListenerTest() {
+        super();
+    }
+
+    @Test
+    public void testDataCopiedBeforeDispatch() throws Exception {
+        ServerSession session = Mockito.mock(ServerSession.class);
+        FileHandle handle = Mockito.mock(FileHandle.class);
+        byte[] expected = getCurrentTestName().getBytes(StandardCharsets.UTF_8);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch gate = new CountDownLatch(1);
+        SftpEventListener listener = new SftpEventListener() {
+            @Override
+            public void writing(ServerSession s, String remoteHandle, FileHandle localHandle,
+                    long offset, byte[] data, int dataOffset, int dataLen) throws IOException {
+                try {
+                    assertTrue("Gate not opened in time", gate.await(5L, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                written.add(new String(data, dataOffset, dataLen, StandardCharsets.UTF_8));
+            }
+        };
+
+        try (AsyncSftpEventListener async = new AsyncSftpEventListener(listener)) {
+            byte[] data = new byte[expected.length + Byte.SIZE];
+            System.arraycopy(expected, 0, data, Byte.SIZE, expected.length);
+            async.writing(session, getCurrentTestName(), handle, 0L, data, Byte.SIZE, expected.length);
+            // simulate buffer re-use by the subsystem
+            System.arraycopy(new byte[data.length], 0, data, 0, data.length);
+            gate.countDown();
+            assertTrue("Events not dispatched", async.close(TimeUnit.SECONDS.toMillis(5L)));
+            assertEquals("Mismatched dispatched events", 1L, async.getDispatchedCount());
+        }
+
+        assertEquals("Mismatched written data", Collections.singletonList(getCurrentTestName()), written);
+    }
+
+    @Test
+    public void testAggregatedTransferTotals() throws Exception {
+        ServerSession session = Mockito.mock(ServerSession.class);
+        AtomicBoolean open = new AtomicBoolean(true);
+        FileHandle handle = Mockito.mock(FileHandle.class);
+        Mockito.when(handle.isOpen()).then(invocation -> open.get());
+        long[] totals = {-1L, -1L};
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        SftpEventListener listener = new SftpEventListener() {
+            @Override
+            public void read(ServerSession s, String remoteHandle, FileHandle localHandle,
+                    long offset, byte[] data, int dataOffset, int dataLen, int readLen, Throwable thrown) {
+                calls.add("read");
+            }
+
+            @Override
+            public void written(ServerSession s, String remoteHandle, FileHandle localHandle,
+                    long offset, byte[] data, int dataOffset, int dataLen, Throwable thrown) {
+                calls.add("written");
+            }
+
+            @Override
+            public void transferred(ServerSession s, String remoteHandle, FileHandle localHandle,
+                    long bytesRead, long bytesWritten) {
+                calls.add("transferred");
+                totals[0] = bytesRead;
+                totals[1] = bytesWritten;
+            }
+
+            @Override
+            public void closed(ServerSession s, String remoteHandle, Handle localHandle, Throwable thrown) {
+                calls.add("closed");
+            }
+        };
+
+        String remoteHandle = getCurrentTestName();
+        byte[] data = new byte[Byte.MAX_VALUE];
+        try (AsyncSftpEventListener async = new AsyncSftpEventListener(listener, Byte.SIZE, OverflowPolicy.BLOCK, true)) {
+            for (int index = 1; index <= Short.SIZE; index++) {
+                async.read(session, remoteHandle, handle, 0L, data, 0, data.length, index, null);
+                async.written(session, remoteHandle, handle, 0L, data, 0, index, null);
+            }
+            async.read(session, remoteHandle, handle, 0L, data, 0, data.length, -1, null);    // EOF
+            // the subsystem closes the handle before reporting it
+            open.set(false);
+            async.closed(session, remoteHandle, handle, null);
+            // an asynchronous read completing after the handle was reported closed
+            async.read(session, remoteHandle, handle, 0L, data, 0, data.length, data.length, null);
+            assertTrue("Events not dispatched", async.close(TimeUnit.SECONDS.toMillis(5L)));
+        }
+
+        long expected = Short.SIZE * (Short.SIZE + 1) / 2;
+        assertEquals("Mismatched calls", Arrays.asList("transferred", "closed", "read"), calls);
+        assertEquals("Mismatched bytes read", expected, totals[0]);
+        assertEquals("Mismatched bytes written", expected, totals[1]);
+    }
+
+    @Test
+    public void testEventsAccountedForWhenClosedConcurrently() throws Exception {
+        ServerSession session = Mockito.mock(ServerSession.class);
+        AtomicLong delivered = new AtomicLong();
+        SftpEventListener listener = new SftpEventListener() {
+            @Override
+            public void initialized(ServerSession s, int version) {
+                delivered.incrementAndGet();
+            }
+        };
+
+        int numThreads = 4;
+        int eventsPerThread = Short.MAX_VALUE;
+        AsyncSftpEventListener async = new AsyncSftpEventListener(listener, Byte.SIZE, OverflowPolicy.BLOCK, false);
+        ExecutorService producers = ThreadUtils.newFixedThreadPool(getCurrentTestName(), numThreads);
+        try {
+            CountDownLatch started = new CountDownLatch(numThreads);
+            List<Future<?>> futures = new ArrayList<>(numThreads);
+            for (int index = 0; index < numThreads; index++) {
+                futures.add(producers.submit(() -> {
+                    started.countDown();
+                    for (int count = 0; count < eventsPerThread; count++) {
+                        async.initialized(session, SftpSubsystemEnvironment.HIGHER_SFTP_IMPL);
+                    }
+                }));
+            }
+
+            assertTrue("Producers not started", started.await(5L, TimeUnit.SECONDS));
+            assertTrue("Events not dispatched", async.close(TimeUnit.SECONDS.toMillis(15L)));
+            for (Future<?> f : futures) {
+                f.get(15L, TimeUnit.SECONDS);
+            }
+        } finally {
+            producers.shutdownNow();
+        }
+
+        long total = (long) numThreads * eventsPerThread;
+        assertEquals("Mismatched delivered events", async.getDispatchedCount(), delivered.get());
+        assertEquals("Events not accounted for", total, async.getDispatchedCount() + async.getDroppedCount());
+        assertEquals("Events left in queue", 0, async.getPendingCount());
+    }
+
+    @Test
+    public void testDropOverflowPolicy() throws Exception {
+        ServerSession session = Mockito.mock(ServerSession.class);
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        SftpEventListener listener = new SftpEventListener() {
+            @Override
+            public void initialized(ServerSession s, int version) {
+                started.countDown();
+                try {
+                    gate.await(5L, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        int capacity = Byte.SIZE;
+        try (AsyncSftpEventListener async = new AsyncSftpEventListener(listener, capacity, OverflowPolicy.DROP, false)) {
+            async.initialized(session, SftpSubsystemEnvironment.HIGHER_SFTP_IMPL);
+            assertTrue("Dispatcher not started", started.await(5L, TimeUnit.SECONDS));
+
+            int numEvents = capacity + Short.SIZE;
+            for (int index = 0; index < numEvents; index++) {
+                async.initialized(session, SftpSubsystemEnvironment.HIGHER_SFTP_IMPL);
+            }
+            assertEquals("Mismatched dropped events", numEvents - capacity, async.getDroppedCount());
+            assertEquals("Mismatched pending events", capacity, async.getPendingCount());
+
+            gate.countDown();
+            assertTrue("Events not dispatched", async.close(TimeUnit.SECONDS.toMillis(5L)));
+            assertEquals("Mismatched dispatched events", capacity + 1, async.getDispatchedCount());
+        }
+    }
+}
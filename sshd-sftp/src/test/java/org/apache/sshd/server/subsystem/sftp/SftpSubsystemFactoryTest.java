@@ -20,6 +20,7 @@
 package org.apache.sshd.server.subsystem.sftp;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.sshd.util.test.BaseTestSupport;
 import org.apache.sshd.util.test.NoIoTestCase;
@@ -49,6 +50,10 @@ public class SftpSubsystemFactoryTest extends BaseTestSupport {
         assertNull("Mismatched executor", factory.getExecutorService());
         assertFalse("Mismatched shutdown state", factory.isShutdownOnExit());
         assertSame("Mismatched unsupported attribute policy", SftpSubsystemFactory.DEFAULT_POLICY, factory.getUnsupportedAttributePolicy());
+        assertNull("Unexpected read-ahead manager", factory.getReadAheadManager());
+        assertNull("Unexpected asynchronous I/O executor", factory.getAsyncFileIoExecutor());
+        assertNull("Unexpected file hash manager", factory.getFileHashManager());
+        assertNull("Unexpected traffic shaper", factory.getTrafficShaper());
     }
 
     /**
@@ -58,11 +63,22 @@ public class SftpSubsystemFactoryTest extends BaseTestSupport {
     public void testBuilderCorrectlyInitializesFactory() {
         SftpSubsystemFactory.Builder builder = new SftpSubsystemFactory.Builder();
         ExecutorService service = dummyExecutor();
+        SftpReadAheadManager readAhead = new SftpReadAheadManager(Byte.MAX_VALUE, Short.MAX_VALUE, service);
+        SftpFileHashManager hashManager = new SftpFileHashManager(Byte.MAX_VALUE, ForkJoinPool.commonPool());
+        SftpTrafficShaper shaper = Mockito.mock(SftpTrafficShaper.class);
         SftpSubsystemFactory factory = builder.withExecutorService(service)
                 .withShutdownOnExit(true)
+                .withReadAheadManager(readAhead)
+                .withAsyncFileIoExecutor(service)
+                .withFileHashManager(hashManager)
+                .withTrafficShaper(shaper)
                 .build();
         assertSame("Mismatched executor", service, factory.getExecutorService());
         assertTrue("Mismatched shutdown state", factory.isShutdownOnExit());
+        assertSame("Mismatched read-ahead manager", readAhead, factory.getReadAheadManager());
+        assertSame("Mismatched asynchronous I/O executor", service, factory.getAsyncFileIoExecutor());
+        assertSame("Mismatched file hash manager", hashManager, factory.getFileHashManager());
+        assertSame("Mismatched traffic shaper", shaper, factory.getTrafficShaper());
 
         for (UnsupportedAttributePolicy policy : UnsupportedAttributePolicy.VALUES) {
             SftpSubsystemFactory actual = builder.withUnsupportedAttributePolicy(policy).build();
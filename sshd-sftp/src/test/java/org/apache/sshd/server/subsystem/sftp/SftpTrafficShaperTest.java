@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.server.subsystem.sftp;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.common.subsystem.sftp.SftpConstants;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.SftpTrafficShaper.Tenant;
+import org.apache.sshd.server.subsystem.sftp.SftpTrafficShaper.TokenBucket;
+import org.apache.sshd.util.test.BaseTestSupport;
+import org.apache.sshd.util.test.NoIoTestCase;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runners.MethodSorters;
+import org.mockito.Mockito;
+
+/**
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@Category({ NoIoTestCase.class })
+public class SftpTrafficShaperTest extends BaseTestSupport {
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    public SftpTrafficShaperTest() {
+        super();
+    }
+
+    @Test
+    public void testTokenBucketDelay() {
+        TokenBucket bucket = new TokenBucket(1000L);
+        long now = System.nanoTime();
+        assertEquals("Unexpected delay for burst", 0L, bucket.acquire(1000L, now));
+        assertEquals("Mismatched delay for deficit", ONE_SECOND / 2L, bucket.acquire(500L, now));
+        // one second later the deficit has been paid and half the bucket refilled
+        assertEquals("Unexpected delay after refill", 0L, bucket.acquire(500L, now + ONE_SECOND));
+        assertEquals("Mismatched delay after refill", ONE_SECOND / 10L, bucket.acquire(100L, now + ONE_SECOND));
+    }
+
+    @Test
+    public void testTokenBucketDebtCapped() {
+        TokenBucket bucket = new TokenBucket(1000L, 2L * ONE_SECOND);
+        long now = System.nanoTime();
+        assertEquals("Unexpected delay for burst", 0L, bucket.acquire(1000L, now));
+        assertEquals("Delay not capped", 2L * ONE_SECOND, bucket.acquire(10000L, now));
+        assertTrue("Debt not reported", bucket.isInDebt(now));
+        // the excess debt was forgiven
+        assertEquals("Unexpected delay after debt paid", 0L, bucket.acquire(500L, now + 3L * ONE_SECOND));
+        assertFalse("Unexpected debt", bucket.isInDebt(now + 3L * ONE_SECOND));
+    }
+
+    @Test
+    public void testUnlimitedTokenBucket() {
+        TokenBucket bucket = new TokenBucket(0L);
+        long now = System.nanoTime();
+        for (int index = 0; index < Byte.SIZE; index++) {
+            assertEquals("Unexpected delay at iteration #" + index, 0L, bucket.acquire(Long.MAX_VALUE / Byte.SIZE, now));
+        }
+
+        bucket.setRate(100L, now);
+        assertEquals("Unexpected delay for initial burst", 0L, bucket.acquire(100L, now));
+        assertEquals("Mismatched delay after rate set", ONE_SECOND, bucket.acquire(100L, now));
+    }
+
+    @Test
+    public void testRuntimeTenantLimits() throws Exception {
+        try (SftpTrafficShaper shaper = new SftpTrafficShaper()) {
+            shaper.setTenantLimits(getCurrentTestName(), 1000L, 0L);
+            Tenant tenant = shaper.getTenant(getCurrentTestName());
+            long now = System.nanoTime();
+            assertEquals("Unexpected delay for burst", 0L, tenant.charge(SftpConstants.SSH_FXP_READ, 1000L, now));
+            assertEquals("Mismatched read delay", ONE_SECOND, tenant.charge(SftpConstants.SSH_FXP_WRITE, 1000L, now));
+            assertEquals("Mismatched requests", 2L, tenant.getRequests());
+            assertEquals("Mismatched bytes read", 1000L, tenant.getBytesRead());
+            assertEquals("Mismatched bytes written", 1000L, tenant.getBytesWritten());
+            assertEquals("Mismatched delayed requests", 1L, tenant.getDelayedRequests());
+            assertEquals("Mismatched max. delay", ONE_SECOND, tenant.getMaxDelayNanos());
+
+            Tenant other = shaper.getTenant(getClass().getSimpleName());
+            assertEquals("Unexpected default limit", 0L, other.getBytesPerSecond());
+            shaper.setDefaultLimits(Short.MAX_VALUE, Byte.MAX_VALUE);
+            assertEquals("Default bytes limit not applied", Short.MAX_VALUE, other.getBytesPerSecond());
+            assertEquals("Default requests limit not applied", Byte.MAX_VALUE, other.getRequestsPerSecond());
+            assertEquals("Explicit limit overridden", 1000L, tenant.getBytesPerSecond());
+
+            shaper.resetTenantLimits(getCurrentTestName());
+            assertEquals("Default limit not restored", Short.MAX_VALUE, tenant.getBytesPerSecond());
+        }
+    }
+
+    @Test
+    public void testResolveTenantByUsername() throws Exception {
+        ServerSession session = Mockito.mock(ServerSession.class);
+        Mockito.when(session.getUsername()).thenReturn(getCurrentTestName());
+        try (SftpTrafficShaper shaper = new SftpTrafficShaper()) {
+            Tenant tenant = shaper.resolveTenant(session);
+            assertEquals("Mismatched tenant name", getCurrentTestName(), tenant.getName());
+            assertSame("Tenant not shared", tenant, shaper.resolveTenant(session));
+            assertEquals("Mismatched tenants count", 1, shaper.getTenants().size());
+        }
+    }
+
+    @Test
+    public void testIdleTenantsPruned() throws Exception {
+        ServerSession session = Mockito.mock(ServerSession.class);
+        Mockito.when(session.getUsername()).thenReturn(getCurrentTestName());
+        try (SftpTrafficShaper shaper = new SftpTrafficShaper()) {
+            Tenant tenant = shaper.registerSession(session);
+            assertSame("Tenant not shared", tenant, shaper.registerSession(session));
+            assertEquals("Mismatched sessions count", 2, tenant.getSessions());
+
+            shaper.unregisterSession(tenant);
+            assertSame("Tenant with sessions pruned", tenant, shaper.getTenants().get(getCurrentTestName()));
+            shaper.unregisterSession(tenant);
+            assertTrue("Idle tenant not pruned: " + shaper.getTenants(), shaper.getTenants().isEmpty());
+
+            shaper.setTenantLimits(getCurrentTestName(), 1000L, 0L);
+            tenant = shaper.registerSession(session);
+            shaper.unregisterSession(tenant);
+            assertSame("Configured tenant pruned", tenant, shaper.getTenants().get(getCurrentTestName()));
+
+            tenant.charge(SftpConstants.SSH_FXP_READ, 2000L, System.nanoTime());
+            shaper.setDefaultLimits(1000L, 0L);
+            shaper.resetTenantLimits(getCurrentTestName());
+            assertSame("Indebted tenant pruned", tenant, shaper.getTenants().get(getCurrentTestName()));
+        }
+    }
+
+    @Test
+    public void testQueuedRepliesCapped() throws Exception {
+        ScheduledExecutorService scheduler = Mockito.mock(ScheduledExecutorService.class);
+        try (SftpTrafficShaper shaper = new SftpTrafficShaper(SftpTrafficShaper.BY_USERNAME, scheduler, false)) {
+            shaper.setMaxQueuedReplies(Byte.SIZE);
+            Tenant tenant = shaper.getTenant(getCurrentTestName());
+            for (int index = 0; index < Byte.SIZE; index++) {
+                assertTrue("Reply #" + index + " not queued", shaper.scheduleReply(tenant, () -> { }, ONE_SECOND));
+            }
+            assertFalse("Excess reply queued", shaper.scheduleReply(tenant, () -> { }, ONE_SECOND));
+            assertEquals("Mismatched queued replies", Byte.SIZE, tenant.getQueuedReplies());
+        }
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.sshd.spring.integration.sftp;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.security.KeyPair;
 import java.security.PublicKey;
@@ -55,7 +56,11 @@ import org.springframework.integration.file.remote.session.SessionFactory;
 import org.springframework.integration.file.remote.session.SharedSessionCapable;
 
 /**
- * A proper replacement for the {@link org.springframework.integration.sftp.session.DefaultSftpSessionFactory}
+ * A proper replacement for the {@link org.springframework.integration.sftp.session.DefaultSftpSessionFactory}.
+ * Unless a {@link #setPoolSize(int) pool size} is configured, each {@link #getSession()} call
+ * either opens a new SSH session or uses the shared one (if so configured). In pooling mode
+ * the returned sessions lease their SFTP channel from an {@link SftpSessionPool} of
+ * authenticated SSH sessions, and return it there when closed.
  *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
@@ -64,6 +69,12 @@ public class ApacheSshdSftpSessionFactory
         implements SessionFactory<DirEntry>, SharedSessionCapable,
         SimpleClientConfigurator,
         InitializingBean, DisposableBean {
+    /** Default number of SFTP channels per pooled session */
+    public static final int DEFAULT_POOL_CHANNELS_PER_SESSION = 1;
+    /** Default time (seconds) after which an idle pooled channel is closed */
+    public static final long DEFAULT_POOL_IDLE_TIMEOUT = TimeUnit.MINUTES.toSeconds(5L);
+    /** Default time (seconds) to wait for a pooled channel to be returned */
+    public static final long DEFAULT_POOL_BORROW_TIMEOUT = 30L;
 
     // TODO add support for loading multiple private keys
     protected volatile KeyPair privateKeyPair;
@@ -81,8 +92,14 @@ public class ApacheSshdSftpSessionFactory
     private volatile long connTimeout = DEFAULT_CONNECT_TIMEOUT;
     private volatile long authTimeout = DEFAULT_AUTHENTICATION_TIMEOUT;
     private volatile SftpVersionSelector versionSelector = SftpVersionSelector.CURRENT;
+    private volatile int poolSize;
+    private volatile int poolChannelsPerSession = DEFAULT_POOL_CHANNELS_PER_SESSION;
+    private volatile int poolMinIdle;
+    private volatile long poolIdleTimeout = DEFAULT_POOL_IDLE_TIMEOUT;
+    private volatile long poolBorrowTimeout = DEFAULT_POOL_BORROW_TIMEOUT;
 
     private SshClient sshClient;
+    private SftpSessionPool sessionPool;
 
     public ApacheSshdSftpSessionFactory() {
         this(false);
@@ -251,6 +268,80 @@ public class ApacheSshdSftpSessionFactory
         versionSelector = Objects.requireNonNull(selector, "No version selector provided");
     }
 
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @param poolSize Max. number of pooled authenticated SSH sessions - if positive,
+     * then the factory works in pooling mode (which takes precedence over the
+     * {@link #isSharedSession() shared session} one). Must be set before
+     * {@link #afterPropertiesSet()} is invoked
+     */
+    public void setPoolSize(int poolSize) {
+        ValidateUtils.checkTrue(poolSize >= 0, "Negative pool size specified: %d", poolSize);
+        this.poolSize = poolSize;
+    }
+
+    public int getPoolChannelsPerSession() {
+        return poolChannelsPerSession;
+    }
+
+    /**
+     * @param channelsPerSession Max. number of SFTP channels opened on each pooled
+     * session - i.e., the pool leases at most {@code poolSize * channelsPerSession}
+     * channels concurrently
+     */
+    public void setPoolChannelsPerSession(int channelsPerSession) {
+        ValidateUtils.checkTrue(channelsPerSession > 0, "Non-positive channels per session specified: %d", channelsPerSession);
+        this.poolChannelsPerSession = channelsPerSession;
+    }
+
+    public int getPoolMinIdle() {
+        return poolMinIdle;
+    }
+
+    /**
+     * @param minIdle Number of SFTP channels pre-opened when the pool is started
+     * - they are not closed due to idle timeout
+     */
+    public void setPoolMinIdle(int minIdle) {
+        ValidateUtils.checkTrue(minIdle >= 0, "Negative min. idle channels specified: %d", minIdle);
+        this.poolMinIdle = minIdle;
+    }
+
+    public long getPoolIdleTimeout() {
+        return poolIdleTimeout;
+    }
+
+    /**
+     * @param timeout Time (seconds) after which an idle pooled channel is closed
+     * - non-positive means never. A pooled session is closed with its last channel
+     */
+    public void setPoolIdleTimeout(long timeout) {
+        this.poolIdleTimeout = timeout;
+    }
+
+    public long getPoolBorrowTimeout() {
+        return poolBorrowTimeout;
+    }
+
+    /**
+     * @param timeout Max. time (seconds) {@link #getSession()} waits for a pooled
+     * channel to be returned when all of them are leased
+     */
+    public void setPoolBorrowTimeout(long timeout) {
+        this.poolBorrowTimeout = timeout;
+    }
+
+    /**
+     * @return The {@link SftpSessionPool} used in pooling mode - {@code null}
+     * if not in pooling mode or {@link #afterPropertiesSet()} not invoked yet
+     */
+    public SftpSessionPool getSessionPool() {
+        return sessionPool;
+    }
+
     protected ClientSession getSharedClientSession() {
         synchronized (sharedSessionHolder) {
             return sharedSessionHolder.get();
@@ -299,6 +390,18 @@ public class ApacheSshdSftpSessionFactory
             client.start();
             log.info("afterPropertiesSet() - client started");
         }
+
+        if ((getPoolSize() > 0) && (sessionPool == null)) {
+            SftpSessionPool pool = createSessionPool();
+            log.info("afterPropertiesSet() - starting {}", pool);
+            pool.prestart();
+            sessionPool = pool;
+        }
+    }
+
+    protected SftpSessionPool createSessionPool() throws Exception {
+        return new SftpSessionPool(this, getPoolSize(), getPoolChannelsPerSession(), getPoolMinIdle(),
+            getEffectiveTimeoutValue(getPoolIdleTimeout()), getEffectiveTimeoutValue(getPoolBorrowTimeout()));
     }
 
     protected SshClient createSshClientInstance() throws Exception {
@@ -307,6 +410,12 @@ public class ApacheSshdSftpSessionFactory
 
     @Override
     public void destroy() throws Exception {
+        SftpSessionPool pool = getSessionPool();
+        if (pool != null) {
+            log.info("destroy() - closing {}", pool);
+            pool.close();
+        }
+
         SshClient client = getSshClient();
         if ((client != null) && client.isOpen()) {
             log.info("destroy() - stopping client");
@@ -332,14 +441,22 @@ public class ApacheSshdSftpSessionFactory
 
     @Override
     public Session<DirEntry> getSession() {
+        SftpSessionPool pool = getSessionPool();
+        if (pool != null) {
+            try {
+                return new PooledSpringSftpSession(pool.lease(), pool);
+            } catch (IOException e) {
+                throw GenericUtils.toRuntimeException(e);
+            }
+        }
+
         boolean sharedInstance = isSharedSession();
         try {
             ClientSession session = null;
             try {
                 session = resolveClientSession(sharedInstance);
 
-                SftpVersionSelector selector = getSftpVersionSelector();
-                SftpClient sftpClient = SftpClientFactory.instance().createSftpClient(session, selector);
+                SftpClient sftpClient = createSftpClient(session);
                 try {
                     ClientSession sessionInstance = session;
                     Session<DirEntry> result = sharedInstance
@@ -377,6 +494,11 @@ public class ApacheSshdSftpSessionFactory
         }
     }
 
+    protected SftpClient createSftpClient(ClientSession session) throws IOException {
+        SftpVersionSelector selector = getSftpVersionSelector();
+        return SftpClientFactory.instance().createSftpClient(session, selector);
+    }
+
     protected ClientSession resolveClientSession(boolean sharedInstance) throws Exception {
         ClientSession session;
         if (sharedInstance) {
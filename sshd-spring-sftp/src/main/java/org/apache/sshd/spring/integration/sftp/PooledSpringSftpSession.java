@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.sshd.spring.integration.sftp;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+
+/**
+ * A <I>Spring</I> session whose SFTP channel is leased from an {@link SftpSessionPool}
+ * - closing it returns the channel to the pool instead of closing it
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class PooledSpringSftpSession extends SpringSftpSession {
+    private final SftpSessionPool sessionPool;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    public PooledSpringSftpSession(SftpClient clientInstance, SftpSessionPool sessionPool) {
+        super(clientInstance, null);
+        this.sessionPool = Objects.requireNonNull(sessionPool, "No session pool");
+    }
+
+    public SftpSessionPool getSessionPool() {
+        return sessionPool;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return (!released.get()) && super.isOpen();
+    }
+
+    @Override
+    public void close() {
+        if (released.getAndSet(true)) {
+            return; // already returned to the pool
+        }
+
+        SftpClient client = getClientInstance();
+        if (log.isDebugEnabled()) {
+            log.debug("close({}) return to pool", client);
+        }
+        getSessionPool().release(client);
+    }
+}
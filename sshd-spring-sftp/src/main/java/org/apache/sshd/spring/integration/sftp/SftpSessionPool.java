@@ -0,0 +1,516 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.spring.integration.sftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.subsystem.sftp.SftpClient;
+import org.apache.sshd.client.subsystem.sftp.SftpClientFactory;
+import org.apache.sshd.client.subsystem.sftp.SftpClientPool;
+import org.apache.sshd.common.util.GenericUtils;
+import org.apache.sshd.common.util.ValidateUtils;
+import org.apache.sshd.common.util.io.IoUtils;
+import org.apache.sshd.common.util.logging.AbstractLoggingBean;
+
+/**
+ * A bounded pool of authenticated {@link ClientSession}-s and pre-opened
+ * {@link SftpClient} channels on them, used by the {@link ApacheSshdSftpSessionFactory}
+ * in pooling mode so that the connect, KEX and authentication overhead is paid
+ * once per pooled session rather than once per <I>Spring</I> session.
+ * All methods are thread-safe.
+ * <UL>
+ *      <LI>
+ *      At most {@code maxSessions} live sessions are opened, each carrying
+ *      at most {@code channelsPerSession} SFTP channels - leases beyond that
+ *      wait (in FIFO order) for a channel to be returned - up to the borrow timeout.
+ *      </LI>
+ *
+ *      <LI>
+ *      The channels of each session are managed by an {@link SftpClientPool} - i.e.,
+ *      they are validated when leased and returned, re-used in most recently returned
+ *      order and closed once their idle timeout expires - but never below the min.
+ *      number of idle channels (counted over all the sessions).
+ *      </LI>
+ *
+ *      <LI>
+ *      A session is closed once its last channel is closed.
+ *      </LI>
+ * </UL>
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class SftpSessionPool extends AbstractLoggingBean implements Closeable {
+    private final ApacheSshdSftpSessionFactory factory;
+    private final int maxSessions;
+    private final int channelsPerSession;
+    private final int minIdle;
+    private final long idleTimeout;
+    private final long borrowTimeoutNanos;
+    private final Semaphore permits;
+    private final Map<ClientSession, SessionClients> sessions = new IdentityHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private final AtomicLong leaseCount = new AtomicLong(0L);
+    private final AtomicLong sessionsCreated = new AtomicLong(0L);
+    private final AtomicLong timeoutCount = new AtomicLong(0L);
+    // statistics of the sessions that have already been closed
+    private final AtomicLong closedClientsCreated = new AtomicLong(0L);
+    private final AtomicLong closedEvictedCount = new AtomicLong(0L);
+    private final AtomicLong closedInvalidatedCount = new AtomicLong(0L);
+    private int pendingSessions;
+
+    /**
+     * @param factory The {@link ApacheSshdSftpSessionFactory} used to create the
+     * sessions and channels
+     * @param maxSessions Max. number of pooled sessions
+     * @param channelsPerSession Max. number of SFTP channels per pooled session
+     * @param minIdle Min. number of idle channels that are not evicted
+     * @param idleTimeout Time (msec.) after which an idle channel is closed - non-positive means never
+     * @param borrowTimeout Max. time (msec.) to wait for a channel to be returned if all are leased
+     */
+    public SftpSessionPool(
+            ApacheSshdSftpSessionFactory factory, int maxSessions, int channelsPerSession,
+            int minIdle, long idleTimeout, long borrowTimeout) {
+        this.factory = Objects.requireNonNull(factory, "No session factory");
+        ValidateUtils.checkTrue(maxSessions > 0, "Invalid max. sessions: %d", maxSessions);
+        ValidateUtils.checkTrue(channelsPerSession > 0, "Invalid channels per session: %d", channelsPerSession);
+        this.maxSessions = maxSessions;
+        this.channelsPerSession = channelsPerSession;
+        ValidateUtils.checkTrue((minIdle >= 0) && (minIdle <= getMaxChannels()), "Invalid min. idle channels: %d", minIdle);
+        this.minIdle = minIdle;
+        this.idleTimeout = Math.max(0L, idleTimeout);
+        this.borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, borrowTimeout));
+        this.permits = new Semaphore(getMaxChannels(), true);
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public int getChannelsPerSession() {
+        return channelsPerSession;
+    }
+
+    /**
+     * @return Max. number of concurrently leased channels
+     */
+    public int getMaxChannels() {
+        return maxSessions * channelsPerSession;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * Opens channels (and the sessions required to carry them) so that at least
+     * the min. number of idle channels is available
+     *
+     * @throws IOException If failed to open a session or channel
+     */
+    public void prestart() throws IOException {
+        List<SftpClient> clients = new ArrayList<>(minIdle);
+        try {
+            // lease them all at once so that idle ones are not re-used
+            for (int count = 0; count < minIdle; count++) {
+                clients.add(lease());
+            }
+        } finally {
+            for (SftpClient client : clients) {
+                release(client);
+            }
+        }
+    }
+
+    /**
+     * Leases a channel - re-using an idle one if possible. The channel must be
+     * {@link #release(SftpClient) returned} when no longer needed
+     *
+     * @return The leased {@link SftpClient}
+     * @throws IOException If failed to open a new session or channel, the pool
+     * is closed or timed out waiting for a channel to be returned
+     */
+    public SftpClient lease() throws IOException {
+        if (closed.get()) {
+            throw new IOException("lease(" + this + ") pool is closed");
+        }
+
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException("Interrupted while waiting for an SFTP channel").initCause(e);
+        }
+
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SocketTimeoutException("No SFTP channel returned within "
+                + TimeUnit.NANOSECONDS.toMillis(borrowTimeoutNanos) + " msec. - max. channels=" + getMaxChannels());
+        }
+
+        SftpClient client;
+        try {
+            SessionClients clients = reserveSession();
+            try {
+                client = clients.borrow();
+            } finally {
+                synchronized (sessions) {
+                    clients.reserved--;
+                }
+                // in case the channel could not be opened
+                closeIfUnused(clients);
+            }
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        activeCount.incrementAndGet();
+        leaseCount.incrementAndGet();
+        return client;
+    }
+
+    /**
+     * @param client A previously {@link #lease() leased} channel - kept for
+     * re-use if still valid, closed otherwise
+     */
+    public void release(SftpClient client) {
+        activeCount.decrementAndGet();
+        try {
+            SessionClients clients;
+            synchronized (sessions) {
+                clients = sessions.get(client.getClientSession());
+            }
+
+            if (clients != null) {
+                clients.release(client);
+            } else {
+                IoUtils.closeQuietly(client);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    protected boolean isAlive(ClientSession session) {
+        return session.isOpen() && (!session.isClosing()) && session.isAuthenticated();
+    }
+
+    /**
+     * Reserves a channel slot on a live pooled session - preferring ones with
+     * idle channels, then the least loaded ones - opening a new session if all
+     * are fully loaded
+     *
+     * @return The {@link SessionClients} from which the channel should be borrowed
+     * @throws IOException If failed to open a new session
+     */
+    protected SessionClients reserveSession() throws IOException {
+        List<SessionClients> dead = null;
+        try {
+            synchronized (sessions) {
+                SessionClients selected = null;
+                int numAlive = 0;
+                for (SessionClients clients : sessions.values()) {
+                    if (!isAlive(clients.getClientSession())) {
+                        if ((clients.reserved <= 0) && (clients.getActiveCount() <= 0)) {
+                            if (dead == null) {
+                                dead = new ArrayList<>();
+                            }
+                            dead.add(clients);
+                        }
+                        continue;
+                    }
+
+                    numAlive++;
+                    if (clients.getLoad() >= channelsPerSession) {
+                        continue;
+                    }
+
+                    if ((selected == null) || isPreferred(clients, selected)) {
+                        selected = clients;
+                    }
+                }
+
+                if (selected != null) {
+                    selected.reserved++;
+                    return selected;
+                }
+
+                if ((numAlive + pendingSessions) >= maxSessions) {
+                    throw new IOException("reserveSession(" + this + ") no capacity left on " + numAlive + " sessions");
+                }
+                pendingSessions++;
+            }
+        } finally {
+            if (dead != null) {
+                for (SessionClients clients : dead) {
+                    closeSession(clients);
+                }
+            }
+        }
+
+        SessionClients clients = null;
+        try {
+            ClientSession session = factory.createClientSession();
+            sessionsCreated.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("reserveSession({}) created {}", this, session);
+            }
+            clients = new SessionClients(session);
+            clients.reserved++;
+        } catch (Exception e) {
+            throw GenericUtils.toIOException(e);
+        } finally {
+            synchronized (sessions) {
+                pendingSessions--;
+                if (clients != null) {
+                    sessions.put(clients.getClientSession(), clients);
+                }
+            }
+        }
+
+        return clients;
+    }
+
+    protected boolean isPreferred(SessionClients clients, SessionClients selected) {
+        boolean idle = clients.getIdleCount() > 0;
+        boolean selectedIdle = selected.getIdleCount() > 0;
+        if (idle != selectedIdle) {
+            return idle;
+        }
+        return clients.getLoad() < selected.getLoad();
+    }
+
+    /**
+     * Closes the pooled session if it has no reserved, leased or idle channels left
+     *
+     * @param clients The {@link SessionClients} of the pooled session
+     */
+    protected void closeIfUnused(SessionClients clients) {
+        synchronized (sessions) {
+            if ((clients.reserved > 0) || (clients.getActiveCount() > 0) || (clients.getIdleCount() > 0)) {
+                return;
+            }
+        }
+
+        closeSession(clients);
+    }
+
+    /**
+     * Closes the pooled session and its idle channels - unless already closed
+     *
+     * @param clients The {@link SessionClients} of the pooled session
+     */
+    protected void closeSession(SessionClients clients) {
+        ClientSession session = clients.getClientSession();
+        synchronized (sessions) {
+            if (sessions.remove(session) != clients) {
+                return;
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("closeSession({}) closing session={}", this, session);
+        }
+
+        IOException err = IoUtils.closeQuietly(clients, session);
+        closedClientsCreated.addAndGet(clients.getCreatedCount());
+        closedEvictedCount.addAndGet(clients.getEvictedCount());
+        closedInvalidatedCount.addAndGet(clients.getInvalidatedCount());
+        if ((err != null) && log.isDebugEnabled()) {
+            log.debug("closeSession({})[{}] failed ({}) to close: {}",
+                      this, session, err.getClass().getSimpleName(), err.getMessage());
+        }
+    }
+
+    protected List<SessionClients> getSessionClients() {
+        synchronized (sessions) {
+            return new ArrayList<>(sessions.values());
+        }
+    }
+
+    /**
+     * @return Number of currently open pooled sessions
+     */
+    public int getSessionCount() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    /**
+     * @return Number of currently leased channels
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return Number of currently idle channels
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (SessionClients clients : getSessionClients()) {
+            count += clients.getIdleCount();
+        }
+        return count;
+    }
+
+    public long getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    /**
+     * @return Total number of sessions (i.e., connect + KEX + authentication) created by the pool
+     */
+    public long getSessionsCreated() {
+        return sessionsCreated.get();
+    }
+
+    /**
+     * @return Total number of channels created by the pool
+     */
+    public long getClientsCreated() {
+        long count = closedClientsCreated.get();
+        for (SessionClients clients : getSessionClients()) {
+            count += clients.getCreatedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of channels closed due to their idle timeout
+     */
+    public long getEvictedCount() {
+        long count = closedEvictedCount.get();
+        for (SessionClients clients : getSessionClients()) {
+            count += clients.getEvictedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of idle channels discarded since they failed the validation
+     */
+    public long getInvalidatedCount() {
+        long count = closedInvalidatedCount.get();
+        for (SessionClients clients : getSessionClients()) {
+            count += clients.getInvalidatedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of lease attempts that timed out
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    /**
+     * Closes all the idle channels (and the sessions without leased channels) -
+     * leased channels are closed when returned, along with their session
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.getAndSet(true)) {
+            for (SessionClients clients : getSessionClients()) {
+                IOException err = IoUtils.closeQuietly(clients);
+                if ((err != null) && log.isDebugEnabled()) {
+                    log.debug("close({})[{}] failed ({}) to close: {}",
+                              this, clients, err.getClass().getSimpleName(), err.getMessage());
+                }
+                closeIfUnused(clients);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()
+            + "[sessions=" + getSessionCount() + "/" + getMaxSessions()
+            + ", active=" + getActiveCount()
+            + ", idle=" + getIdleCount()
+            + "]";
+    }
+
+    /**
+     * The channels of a single pooled session
+     */
+    protected class SessionClients extends SftpClientPool {
+        // channels about to be borrowed - guarded by the sessions map
+        private int reserved;
+
+        public SessionClients(ClientSession session) {
+            super(session, SftpClientFactory.instance(), null, 0, channelsPerSession, channelsPerSession, idleTimeout, 0L);
+        }
+
+        /**
+         * @return Number of leased and reserved channels
+         */
+        public int getLoad() {
+            return getActiveCount() + reserved;
+        }
+
+        /**
+         * @return The number of idle channels to keep on this session so that
+         * the pool's min. idle channels are kept
+         */
+        @Override
+        public int getMinIdle() {
+            int ownIdle = getIdleCount();
+            int otherIdle = SftpSessionPool.this.getIdleCount() - ownIdle;
+            return Math.max(0, SftpSessionPool.this.getMinIdle() - otherIdle);
+        }
+
+        @Override
+        protected SftpClient createClient() throws IOException {
+            return factory.createSftpClient(getClientSession());
+        }
+
+        @Override
+        protected boolean isAlive(SftpClient client) {
+            return super.isAlive(client) && SftpSessionPool.this.isAlive(client.getClientSession());
+        }
+
+        @Override
+        protected void closeClient(SftpClient client) {
+            super.closeClient(client);
+            closeIfUnused(this);
+        }
+    }
+}
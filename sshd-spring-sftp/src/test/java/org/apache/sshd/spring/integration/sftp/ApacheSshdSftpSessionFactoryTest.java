@@ -21,6 +21,7 @@ package org.apache.sshd.spring.integration.sftp;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -171,6 +172,94 @@ public class ApacheSshdSftpSessionFactoryTest extends BaseTestSupport {
         }
     }
 
+    @Test
+    public void testPooledSessionReuse() throws Exception {
+        ApacheSshdSftpSessionFactory sshdFactory = getSshdSessionFactory(false, 1, 2);
+        try (SftpSessionPool pool = sshdFactory.getSessionPool()) {
+            assertNotNull("No session pool", pool);
+            assertEquals("Mismatched pre-opened channels", 1, pool.getIdleCount());
+
+            SftpClient pooledClient;
+            try (Session<SftpClient.DirEntry> sshdSession = sshdFactory.getSession()) {
+                assertTrue("Session not reported as open", sshdSession.isOpen());
+                pooledClient = (SftpClient) sshdSession.getClientInstance();
+                sshdSession.close();
+                assertFalse("Session not reported as closed", sshdSession.isOpen());
+                assertTrue("Pooled client closed", pooledClient.isOpen());
+            }
+
+            for (int index = 1; index <= Byte.SIZE; index++) {
+                try (Session<SftpClient.DirEntry> s1 = sshdFactory.getSession();
+                     Session<SftpClient.DirEntry> s2 = sshdFactory.getSession()) {
+                    SftpClient c1 = (SftpClient) s1.getClientInstance();
+                    SftpClient c2 = (SftpClient) s2.getClientInstance();
+                    assertSame("Idle client not re-used at iteration #" + index, pooledClient, c1);
+                    assertNotSame("Same client leased twice at iteration #" + index, c1, c2);
+                    assertSame("Mismatched session at iteration #" + index, c1.getClientSession(), c2.getClientSession());
+                }
+            }
+
+            assertEquals("Mismatched created sessions", 1L, pool.getSessionsCreated());
+            assertEquals("Mismatched created channels", 2L, pool.getClientsCreated());
+            assertEquals("Mismatched active channels", 0, pool.getActiveCount());
+        }
+    }
+
+    @Test
+    public void testPooledSessionValidatedOnReturn() throws Exception {
+        ApacheSshdSftpSessionFactory sshdFactory = getSshdSessionFactory(false, 1, 1);
+        try (SftpSessionPool pool = sshdFactory.getSessionPool()) {
+            ClientSession sessionInstance;
+            try (Session<SftpClient.DirEntry> sshdSession = sshdFactory.getSession()) {
+                SftpClient client = (SftpClient) sshdSession.getClientInstance();
+                sessionInstance = client.getClientSession();
+                sessionInstance.close(true);
+            }
+            assertEquals("Dead channel not discarded", 0, pool.getIdleCount());
+            assertEquals("Dead session not discarded", 0, pool.getSessionCount());
+
+            try (Session<SftpClient.DirEntry> sshdSession = sshdFactory.getSession()) {
+                SftpClient client = (SftpClient) sshdSession.getClientInstance();
+                assertNotSame("Dead session re-used", sessionInstance, client.getClientSession());
+                assertTrue("Replacement session not open", client.getClientSession().isOpen());
+            }
+            assertEquals("Mismatched created sessions", 2L, pool.getSessionsCreated());
+        }
+    }
+
+    @Test
+    public void testPooledSessionBorrowTimeout() throws Exception {
+        ApacheSshdSftpSessionFactory sshdFactory = getSshdSessionFactory();
+        try (SftpSessionPool pool = new SftpSessionPool(sshdFactory, 1, 1, 0, 0L, TimeUnit.SECONDS.toMillis(1L));
+             Session<SftpClient.DirEntry> sshdSession = new PooledSpringSftpSession(pool.lease(), pool)) {
+            try {
+                SftpClient client = pool.lease();
+                fail("Unexpected lease success: " + client);
+            } catch (SocketTimeoutException e) {
+                assertEquals("Mismatched timeout count", 1L, pool.getTimeoutCount());
+            }
+        }
+    }
+
+    @Test
+    public void testPooledSessionIdleEviction() throws Exception {
+        ApacheSshdSftpSessionFactory sshdFactory = getSshdSessionFactory();
+        try (SftpSessionPool pool = new SftpSessionPool(sshdFactory, 1, 2, 0, 100L, TimeUnit.SECONDS.toMillis(1L))) {
+            SftpClient c1 = pool.lease();
+            SftpClient c2 = pool.lease();
+            pool.release(c1);
+            pool.release(c2);
+            assertEquals("Mismatched idle channels", 2, pool.getIdleCount());
+
+            // idle channels are evicted even if no channel is leased or returned
+            for (long maxWait = TimeUnit.SECONDS.toMillis(5L); (pool.getSessionCount() > 0) && (maxWait > 0L); maxWait -= 50L) {
+                Thread.sleep(50L);
+            }
+            assertEquals("Idle session not closed", 0, pool.getSessionCount());
+            assertEquals("Mismatched evicted channels", 2L, pool.getEvictedCount());
+        }
+    }
+
     @Test
     public void testWriteRemoteFileContents() throws Exception {
         Path targetPath = detectTargetFolder();
@@ -384,7 +473,15 @@ public class ApacheSshdSftpSessionFactoryTest extends BaseTestSupport {
     }
 
     protected ApacheSshdSftpSessionFactory getSshdSessionFactory(boolean sharedSession) throws Exception {
+        return getSshdSessionFactory(sharedSession, 0, ApacheSshdSftpSessionFactory.DEFAULT_POOL_CHANNELS_PER_SESSION);
+    }
+
+    protected ApacheSshdSftpSessionFactory getSshdSessionFactory(
+            boolean sharedSession, int poolSize, int channelsPerSession) throws Exception {
         ApacheSshdSftpSessionFactory factory = new ApacheSshdSftpSessionFactory(sharedSession);
+        factory.setPoolSize(poolSize);
+        factory.setPoolChannelsPerSession(channelsPerSession);
+        factory.setPoolMinIdle((poolSize > 0) ? 1 : 0);
         factory.setHost(TEST_LOCALHOST);
         factory.setPort(port);
         factory.setUser(getCurrentTestName());